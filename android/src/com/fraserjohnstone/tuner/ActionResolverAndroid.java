@@ -1,7 +1,12 @@
 package com.fraserjohnstone.tuner;
 
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
 import android.os.Handler;
 
+import com.fraserjohnstone.tuner.audio.AudioSource;
+import com.fraserjohnstone.tuner.audio.MicrophoneAudioSource;
 import com.fraserjohnstone.tuner.screens.SplashScreen;
 import com.fraserjohnstone.tuner.utils.ActionResolver;
 
@@ -37,4 +42,25 @@ public class ActionResolverAndroid implements ActionResolver {
 			}
 		});
 	}
+
+	@Override
+	public String getAppVersion() {
+		try {
+			PackageInfo info = mAndroidLauncher.getPackageManager()
+					.getPackageInfo(mAndroidLauncher.getPackageName(), 0);
+			return info.versionName + " (" + info.versionCode + ")";
+		} catch (PackageManager.NameNotFoundException e) {
+			return "unknown";
+		}
+	}
+
+	@Override
+	public String getDeviceName() {
+		return Build.MANUFACTURER + " " + Build.MODEL + " (API " + Build.VERSION.SDK_INT + ")";
+	}
+
+	@Override
+	public AudioSource createAudioSource() {
+		return new MicrophoneAudioSource();
+	}
 }
@@ -0,0 +1,154 @@
+package com.fraserjohnstone.tuner.benchmarks;
+
+import com.fraserjohnstone.tuner.audio.AdaptiveWindowPitchProcessor;
+import com.fraserjohnstone.tuner.audio.AnalysisSettings;
+import com.fraserjohnstone.tuner.audio.DecimatingProcessor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+import be.tarsos.dsp.pitch.PitchDetectionHandler;
+import be.tarsos.dsp.pitch.PitchDetectionResult;
+
+/**
+ * Measures the processing time for one second of audio (ms per audio second) through the tuner's
+ * pitch detection with the audio decimated by a factor of 1 (not decimated), 2 and 4, and reports
+ * the accuracy in cents of each factor when the trial ends so that a lower cost can be checked
+ * against the accuracy it gives up.
+ * <p>
+ * The buffers are slid along the signal a hop at a time and passed through a
+ * {@link DecimatingProcessor} and an {@link AdaptiveWindowPitchProcessor}, just as the
+ * {@link be.tarsos.dsp.AudioDispatcher} would pass them, without the cost of reading a stream.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecimationBenchmark {
+
+    private static final float SAMPLE_RATE = AnalysisSettings.SAMPLE_RATE;
+    private static final int BUFFER_SIZE = AnalysisSettings.BUFFER_SIZE;
+    private static final int HOP = AnalysisSettings.BUFFER_SIZE - AnalysisSettings.OVERLAP;
+
+    //number of buffers in one second of audio
+    private static final int BUFFERS_PER_SECOND = (int) (SAMPLE_RATE / HOP);
+
+    @Param({"1", "2", "4"})
+    public int factor;
+
+    @Param({"SINE", "HARMONIC", "NOISY"})
+    public SyntheticSignal signal;
+
+    //E1, E2, A4 and E6: the bottom of a bass, the bottom of a guitar, concert pitch and the top of
+    //a violin
+    @Param({"41.2", "82.41", "440.0", "1318.51"})
+    public double hertz;
+
+    private DecimatingProcessor mDecimator;
+    private AdaptiveWindowPitchProcessor mPitchProcessor;
+    private AudioEvent mAudioEvent;
+    private float[] mSignal;
+    private float[] mBuffer;
+    private int mPosition;
+
+    //accuracy, accumulated over the whole trial
+    private long mFrames;
+    private long mUnpitchedFrames;
+    private long mOctaveErrors;
+    private double mTotalAbsCents;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mDecimator = new DecimatingProcessor(factor, BUFFER_SIZE);
+        mPitchProcessor = new AdaptiveWindowPitchProcessor(AnalysisSettings.getDetectors(),
+                mDecimator.getOutputSampleRate(SAMPLE_RATE), mDecimator.getOutputBufferSize(BUFFER_SIZE),
+                mDecimator.getOutputBufferSize(HOP), 0, Float.MAX_VALUE,
+                new PitchDetectionHandler() {
+                    @Override
+                    public void handlePitch(PitchDetectionResult _result, AudioEvent _audioEvent) {
+                        record(_result.getPitch());
+                    }
+                });
+
+        //a few seconds of signal, played in a loop
+        mSignal = new float[(int) SAMPLE_RATE * 4];
+        signal.fill(mSignal, SAMPLE_RATE, hertz);
+        mBuffer = new float[BUFFER_SIZE];
+        mAudioEvent = new AudioEvent(new TarsosDSPAudioFormat(SAMPLE_RATE, 16, 1, true, false), -1);
+    }
+
+    @Benchmark
+    public int oneSecondOfAudio() {
+        for (int i = 0; i < BUFFERS_PER_SECOND; i++) {
+            nextBuffer();
+            mAudioEvent.setFloatBuffer(mBuffer);
+            mDecimator.process(mAudioEvent);
+            mPitchProcessor.process(mAudioEvent);
+        }
+        return mPitchProcessor.getWindowSize();
+    }
+
+    /**
+     * Slides mBuffer along the signal by one hop, starting again with no overlap at the end of the
+     * signal
+     */
+    private void nextBuffer() {
+        if (mPosition == 0 || mPosition + HOP > mSignal.length) {
+            System.arraycopy(mSignal, 0, mBuffer, 0, BUFFER_SIZE);
+            mPosition = BUFFER_SIZE;
+            mAudioEvent.setOverlap(0);
+            return;
+        }
+        System.arraycopy(mBuffer, HOP, mBuffer, 0, BUFFER_SIZE - HOP);
+        System.arraycopy(mSignal, mPosition, mBuffer, BUFFER_SIZE - HOP, HOP);
+        mPosition += HOP;
+        mAudioEvent.setOverlap(BUFFER_SIZE - HOP);
+    }
+
+    /**
+     * @param _pitch float. The pitch detected in one frame, or -1
+     */
+    private void record(float _pitch) {
+        mFrames++;
+        if (_pitch <= 0) {
+            mUnpitchedFrames++;
+            return;
+        }
+        double cents = Math.abs(SyntheticSignal.centsError(_pitch, hertz));
+        if (cents > 600) {
+            mOctaveErrors++;
+        } else {
+            mTotalAbsCents += cents;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void reportAccuracy() {
+        long pitched = mFrames - mUnpitchedFrames - mOctaveErrors;
+        System.out.println(String.format(Locale.US,
+                "%n[accuracy] factor=%d %s %.2fHz: mean |error| %.3f cents, "
+                        + "%.2f%% unpitched, %.2f%% octave errors",
+                factor, signal, hertz,
+                pitched > 0 ? mTotalAbsCents / pitched : Double.NaN,
+                100.0 * mUnpitchedFrames / Math.max(1, mFrames),
+                100.0 * mOctaveErrors / Math.max(1, mFrames)));
+    }
+}
@@ -0,0 +1,56 @@
+package com.fraserjohnstone.tuner.benchmarks;
+
+import com.fraserjohnstone.tuner.audio.AnalysisSettings;
+import com.fraserjohnstone.tuner.audio.PitchDetectorCalibration;
+import com.fraserjohnstone.tuner.audio.PitchDetectorCalibration.Measurement;
+import com.fraserjohnstone.tuner.audio.PitchDetectorFactory;
+import com.fraserjohnstone.tuner.utils.InstrumentProfile;
+
+import java.util.Locale;
+
+/**
+ * Runs the pitch detector calibration the app runs the first time it starts on a device, for each
+ * budget fraction given as an argument (or {@link AnalysisSettings#DETECTOR_BUDGET_FRACTION}), and
+ * prints the measurements of every candidate as CSV, with the detector chosen and why, and how long
+ * the calibration took. If the first argument is "all" every detector is a candidate, see
+ * {@link PitchDetectorCalibration#getAllCandidates()}, rather than those the app chooses from.
+ * <p>
+ * The first run is done before anything is printed, so that the calibration code itself has been
+ * compiled, as it would be by the time the app is installed.
+ */
+public class DetectorCalibrationReport {
+
+    public static void main(String[] _args) {
+        boolean all = _args.length > 0 && _args[0].equals("all");
+        int first = all ? 1 : 0;
+        double[] fractions = new double[Math.max(1, _args.length - first)];
+        fractions[0] = AnalysisSettings.DETECTOR_BUDGET_FRACTION;
+        for (int i = first; i < _args.length; i++) {
+            fractions[i - first] = Double.parseDouble(_args[i]);
+        }
+        PitchDetectorFactory[] candidates = all ? PitchDetectorCalibration.getAllCandidates()
+                : PitchDetectorCalibration.getDefaultCandidates();
+
+        AnalysisSettings.createDetectorCalibration(AnalysisSettings.SAMPLE_RATE).run();
+
+        System.out.println("budget_fraction,detector,micros_per_buffer,error_cents,within_budget,selected");
+        for (int i = 0; i < fractions.length; i++) {
+            PitchDetectorCalibration calibration = new PitchDetectorCalibration(candidates,
+                    AnalysisSettings.SAMPLE_RATE, InstrumentProfile.CHROMATIC, fractions[i]);
+            long start = System.nanoTime();
+            calibration.run();
+            long nanos = System.nanoTime() - start;
+
+            Measurement[] measurements = calibration.getMeasurements();
+            for (int j = 0; j < measurements.length; j++) {
+                Measurement measurement = measurements[j];
+                System.out.println(String.format(Locale.US, "%.2f,%s,%.1f,%.3f,%b,%b", fractions[i],
+                        measurement.getFactory(), measurement.getNanosPerBuffer() / 1e3,
+                        measurement.getErrorCents(), measurement.isWithinBudget(),
+                        measurement.getFactory() == calibration.getSelected()));
+            }
+            System.out.println(String.format(Locale.US, "# %s (calibration took %.0f ms)",
+                    calibration.getReason(), nanos / 1e6));
+        }
+    }
+}
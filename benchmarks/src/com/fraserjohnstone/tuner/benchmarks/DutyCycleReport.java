@@ -0,0 +1,186 @@
+package com.fraserjohnstone.tuner.benchmarks;
+
+import com.fraserjohnstone.tuner.audio.AnalysisSettings;
+import com.fraserjohnstone.tuner.audio.AudioEngine;
+import com.fraserjohnstone.tuner.utils.InstrumentProfile;
+import com.fraserjohnstone.tuner.audio.MemoryAudioSource;
+import com.fraserjohnstone.tuner.audio.NoiseGateProcessor;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.Random;
+
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.pitch.PitchDetectionHandler;
+import be.tarsos.dsp.pitch.PitchDetectionResult;
+
+/**
+ * Reports the CPU time the capture thread uses for each minute of audio while the room is quiet
+ * and while notes are being played, with and without a {@link NoiseGateProcessor}, along with how
+ * long the tuner takes to find the pitch of a note played after a long quiet spell.
+ * <p>
+ * The audio is run through an {@link AudioEngine} set up as the tuner sets it up, reading from a
+ * {@link MemoryAudioSource} as fast as it can be analysed. The CPU time is that of the capture
+ * thread, so it includes reading and converting the audio as well as running the processors.
+ */
+public class DutyCycleReport {
+
+    private static final int SAMPLE_RATE = AnalysisSettings.SAMPLE_RATE;
+    private static final InstrumentProfile PROFILE = InstrumentProfile.CHROMATIC;
+    private static final int BUFFER_SIZE = AnalysisSettings.getBufferSize(PROFILE, SAMPLE_RATE);
+    private static final int OVERLAP = AnalysisSettings.getOverlap(PROFILE, SAMPLE_RATE);
+    private static final double MINUTE_SECONDS = 60;
+    private static final double NOTE_SECONDS = 2;
+    private static final double QUIET_BEFORE_NOTE_SECONDS = 10;
+
+    //level of the room noise, about -65 dB relative to full scale
+    private static final double NOISE_AMPLITUDE = 0.001;
+
+    //E2 (guitar), A3, A4, E5 (violin)
+    private static final double[] NOTES = new double[]{82.41, 220.0, 440.0, 659.26};
+
+    //a reading within this many cents of the note counts as having found its pitch
+    private static final double FOUND_CENTS = 5;
+
+    private static final int WARM_UP_RUNS = 2;
+
+    private enum Scenario {
+        //a minute of room noise
+        QUIET,
+        //a minute of notes, one after the other
+        PLAYING,
+        //room noise followed by one note
+        QUIET_THEN_NOTE
+    }
+
+    public static void main(String[] _args) {
+        //let the JIT compile the analysis before anything is measured
+        for (int i = 0; i < WARM_UP_RUNS; i++) {
+            run(Scenario.PLAYING, true);
+            run(Scenario.PLAYING, false);
+        }
+
+        System.out.println("scenario,gate,audio_seconds,cpu_ms,cpu_ms_per_minute,buffers,idle_buffers,"
+                + "pitched_frames,first_pitch_ms");
+        for (Scenario scenario : Scenario.values()) {
+            System.out.println(run(scenario, false));
+            System.out.println(run(scenario, true));
+        }
+    }
+
+    /**
+     * @return String. One CSV row for _scenario
+     */
+    private static String run(Scenario _scenario, boolean _gated) {
+        final float[] audio = createAudio(_scenario);
+        final long onset = _scenario == Scenario.QUIET_THEN_NOTE
+                ? (long) (QUIET_BEFORE_NOTE_SECONDS * SAMPLE_RATE)
+                : 0;
+        final double firstNote = _scenario == Scenario.QUIET ? -1 : NOTES[0];
+
+        AudioEngine engine = new AudioEngine(new MemoryAudioSource(audio, SAMPLE_RATE), SAMPLE_RATE,
+                BUFFER_SIZE, OVERLAP);
+
+        final long[] pitchedFrames = new long[1];
+        final long[] firstPitchAt = new long[]{-1};
+        PitchDetectionHandler handler = new PitchDetectionHandler() {
+            @Override
+            public void handlePitch(PitchDetectionResult _result, AudioEvent _audioEvent) {
+                float pitch = _result.getPitch();
+                if (pitch <= 0) {
+                    return;
+                }
+                pitchedFrames[0]++;
+                long bufferEnd = _audioEvent.getSamplesProcessed() + BUFFER_SIZE - _audioEvent.getOverlap();
+                if (firstPitchAt[0] < 0 && bufferEnd > onset && firstNote > 0
+                        && Math.abs(SyntheticSignal.centsError(pitch, firstNote)) <= FOUND_CENTS) {
+                    firstPitchAt[0] = bufferEnd;
+                }
+            }
+        };
+
+        if (_gated) {
+            engine.setNoiseGate(new NoiseGateProcessor(handler));
+        }
+        AudioProcessor[] chain = AnalysisSettings.createPitchChain(SAMPLE_RATE, PROFILE, handler);
+        for (int i = 0; i < chain.length; i++) {
+            engine.addAudioProcessor(chain[i]);
+        }
+        CpuTimeProbe probe = new CpuTimeProbe();
+        engine.addAudioProcessor(probe);
+
+        engine.start();
+        while (engine.getState() != AudioEngine.State.STOPPED) {
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return "";
+            }
+        }
+
+        double seconds = (double) audio.length / SAMPLE_RATE;
+        double cpuMillis = probe.mCpuNanos / 1e6;
+        return String.format(Locale.US, "%s,%s,%.0f,%.1f,%.1f,%d,%d,%d,%s",
+                _scenario, _gated ? "on" : "off", seconds, cpuMillis, cpuMillis / (seconds / MINUTE_SECONDS),
+                engine.getBuffersProcessed(), engine.getIdleBuffers(), pitchedFrames[0],
+                firstPitchAt[0] < 0 ? "-" : String.format(Locale.US, "%.1f",
+                        (firstPitchAt[0] - onset) * 1000.0 / SAMPLE_RATE));
+    }
+
+    /**
+     * @return float[]. The audio for _scenario: room noise with notes added where the scenario
+     * has them
+     */
+    private static float[] createAudio(Scenario _scenario) {
+        double seconds = _scenario == Scenario.QUIET_THEN_NOTE
+                ? QUIET_BEFORE_NOTE_SECONDS + NOTE_SECONDS
+                : MINUTE_SECONDS;
+        float[] audio = new float[(int) (seconds * SAMPLE_RATE)];
+
+        Random random = new Random(42);
+        for (int i = 0; i < audio.length; i++) {
+            audio[i] = (float) (NOISE_AMPLITUDE * (random.nextDouble() * 2 - 1));
+        }
+
+        int noteLength = (int) (NOTE_SECONDS * SAMPLE_RATE);
+        float[] note = new float[noteLength];
+        if (_scenario == Scenario.PLAYING) {
+            for (int start = 0, i = 0; start + noteLength <= audio.length; start += noteLength, i++) {
+                SyntheticSignal.HARMONIC.fill(note, SAMPLE_RATE, NOTES[i % NOTES.length]);
+                add(note, audio, start);
+            }
+        } else if (_scenario == Scenario.QUIET_THEN_NOTE) {
+            SyntheticSignal.HARMONIC.fill(note, SAMPLE_RATE, NOTES[0]);
+            add(note, audio, (int) (QUIET_BEFORE_NOTE_SECONDS * SAMPLE_RATE));
+        }
+        return audio;
+    }
+
+    private static void add(float[] _note, float[] _audio, int _start) {
+        for (int i = 0; i < _note.length; i++) {
+            _audio[_start + i] += _note[i];
+        }
+    }
+
+    /**
+     * Records the CPU time of the capture thread when the stream ends. It is added last so that
+     * it sees the thread after everything else has finished with the stream.
+     */
+    private static class CpuTimeProbe implements AudioProcessor {
+        private final ThreadMXBean mThreadMXBean = ManagementFactory.getThreadMXBean();
+        private volatile long mCpuNanos;
+
+        @Override
+        public boolean process(AudioEvent _audioEvent) {
+            return true;
+        }
+
+        @Override
+        public void processingFinished() {
+            mCpuNanos = mThreadMXBean.getCurrentThreadCpuTime();
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.fraserjohnstone.tuner.benchmarks;
+
+import com.fraserjohnstone.tuner.audio.AnalysisSettings;
+import com.fraserjohnstone.tuner.audio.AudioEngine;
+import com.fraserjohnstone.tuner.audio.AudioSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+
+import be.tarsos.dsp.AudioDispatcher;
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+import be.tarsos.dsp.io.UniversalAudioInputStream;
+
+/**
+ * Pauses and resumes an {@link AudioEngine} hundreds of times, as the tuner screen does when the app
+ * goes in and out of the background, against an endless fake microphone, and exits with status 1
+ * if there is ever more than one capture thread alive or a capture thread is left behind, so that
+ * it can be run on a build server.
+ * <p>
+ * {@link Scenario#PAUSE_RESUME} waits for a few buffers before each pause,
+ * {@link Scenario#RAPID_TOGGLE} pauses straight after resuming, often before the capture thread has
+ * read anything, and {@link Scenario#STUCK_READ} uses a microphone whose reads ignore the stream
+ * being closed and take longer than the engine waits, so that stop() gives up and start() has to
+ * wait for the old capture thread.
+ * <p>
+ * One line of CSV is printed for each scenario.
+ */
+public class EngineSoakReport {
+
+    private static final int SAMPLE_RATE = AnalysisSettings.SAMPLE_RATE;
+    private static final int BUFFER_SIZE = 2048;
+    private static final int OVERLAP = 1536;
+
+    //buffers processed before each pause in PAUSE_RESUME
+    private static final int BUFFERS_BEFORE_PAUSE = 3;
+    //how long a stuck read blocks for, longer than stop() waits
+    private static final long STUCK_READ_MILLIS = 2500;
+    //how long the capture threads are given to disappear at the end of a scenario
+    private static final long SETTLE_MILLIS = 5000;
+
+    enum Scenario {
+        PAUSE_RESUME(500),
+        RAPID_TOGGLE(500),
+        STUCK_READ(3);
+
+        private final int mCycles;
+
+        Scenario(int _cycles) {
+            mCycles = _cycles;
+        }
+    }
+
+    public static void main(String[] _args) throws InterruptedException {
+        boolean passed = true;
+        System.out.println("scenario,cycles,threads_started,max_live_threads,stop_timeouts,"
+                + "refused_starts,leaked_threads,passed");
+        for (Scenario scenario : Scenario.values()) {
+            passed &= run(scenario);
+        }
+
+        System.out.println(passed ? "# passed" : "# FAILED");
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @param _scenario {@link Scenario}. How the engine is paused and resumed.
+     * @return boolean. True if there was never more than one capture thread and none was left behind
+     */
+    private static boolean run(Scenario _scenario) throws InterruptedException {
+        FakeMicrophone microphone = new FakeMicrophone(_scenario == Scenario.STUCK_READ);
+        AudioEngine engine = new AudioEngine(microphone, SAMPLE_RATE, BUFFER_SIZE, OVERLAP);
+        ThreadWatcher watcher = new ThreadWatcher();
+        engine.addAudioProcessor(watcher);
+
+        int stopTimeouts = 0;
+        int refusedStarts = 0;
+        int expectedStarts = 0;
+        for (int i = 0; i < _scenario.mCycles; i++) {
+            if (engine.start()) {
+                expectedStarts++;
+            } else {
+                refusedStarts++;
+            }
+            if (_scenario == Scenario.PAUSE_RESUME) {
+                watcher.awaitBuffers(BUFFERS_BEFORE_PAUSE);
+            } else if (_scenario == Scenario.STUCK_READ) {
+                microphone.awaitRead();
+            }
+            watcher.sample();
+            if (!engine.stop()) {
+                stopTimeouts++;
+            }
+            watcher.sample();
+        }
+
+        long deadline = System.currentTimeMillis() + SETTLE_MILLIS;
+        while ((engine.getState() != AudioEngine.State.STOPPED || countCaptureThreads() > 0)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        int leaked = countCaptureThreads();
+
+        boolean passed = watcher.getMaxLiveThreads() <= 1 && leaked == 0
+                && AudioEngine.getLiveThreadCount() == 0
+                && engine.getState() == AudioEngine.State.STOPPED
+                && engine.getThreadsStarted() == expectedStarts
+                //a stuck read must make stop() give up at least once and be waited out by start()
+                && (_scenario != Scenario.STUCK_READ || stopTimeouts > 0);
+        System.out.println(String.format(Locale.US, "%s,%d,%d,%d,%d,%d,%d,%b", _scenario,
+                _scenario.mCycles, engine.getThreadsStarted(), watcher.getMaxLiveThreads(), stopTimeouts,
+                refusedStarts, leaked, passed));
+        return passed;
+    }
+
+    /**
+     * @return int. The number of threads alive with the name of the capture thread
+     */
+    private static int countCaptureThreads() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (AudioEngine.THREAD_NAME.equals(thread.getName()) && thread.isAlive()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Counts the buffers processed and keeps the largest number of capture threads seen alive at
+     * once, both from the capture thread and from the thread pausing and resuming the engine
+     */
+    private static class ThreadWatcher implements AudioProcessor {
+        private final Object mLock = new Object();
+        private int mBuffers;
+        private volatile int mMaxLiveThreads;
+
+        @Override
+        public boolean process(AudioEvent _audioEvent) {
+            sample();
+            synchronized (mLock) {
+                mBuffers++;
+                mLock.notifyAll();
+            }
+            return true;
+        }
+
+        void sample() {
+            int live = Math.max(AudioEngine.getLiveThreadCount(), countCaptureThreads());
+            synchronized (mLock) {
+                mMaxLiveThreads = Math.max(mMaxLiveThreads, live);
+            }
+        }
+
+        void awaitBuffers(int _count) throws InterruptedException {
+            synchronized (mLock) {
+                int target = mBuffers + _count;
+                while (mBuffers < target) {
+                    mLock.wait();
+                }
+            }
+        }
+
+        int getMaxLiveThreads() {
+            return mMaxLiveThreads;
+        }
+
+        @Override
+        public void processingFinished() {
+        }
+    }
+
+    /**
+     * An {@link AudioSource} which never runs out of quiet 16 bit audio, delivered as fast as it is
+     * read so that hundreds of cycles run quickly. A stuck microphone blocks the first read of each
+     * stream for {@link #STUCK_READ_MILLIS} whether or not the stream is closed meanwhile.
+     */
+    private static class FakeMicrophone implements AudioSource {
+        private final boolean mStuck;
+        private final Object mLock = new Object();
+        private boolean mReading;
+
+        FakeMicrophone(boolean _stuck) {
+            mStuck = _stuck;
+        }
+
+        @Override
+        public AudioDispatcher createDispatcher(int _sampleRate, int _bufferSize, int _overlap) {
+            synchronized (mLock) {
+                mReading = false;
+            }
+            TarsosDSPAudioFormat format = new TarsosDSPAudioFormat(_sampleRate, 16, 1, true, false);
+            return new AudioDispatcher(new UniversalAudioInputStream(new EndlessStream(), format),
+                    _bufferSize, _overlap);
+        }
+
+        /**
+         * Waits until the capture thread has started reading the latest stream
+         */
+        void awaitRead() throws InterruptedException {
+            synchronized (mLock) {
+                while (!mReading) {
+                    mLock.wait();
+                }
+            }
+        }
+
+        private class EndlessStream extends InputStream {
+            private boolean mFirstRead = true;
+
+            @Override
+            public int read() {
+                return 0;
+            }
+
+            @Override
+            public int read(byte[] _bytes, int _offset, int _length) throws IOException {
+                synchronized (mLock) {
+                    mReading = true;
+                    mLock.notifyAll();
+                }
+                if (mStuck && mFirstRead) {
+                    sleepUninterruptibly(STUCK_READ_MILLIS);
+                }
+                mFirstRead = false;
+                for (int i = 0; i < _length; i++) {
+                    _bytes[_offset + i] = 0;
+                }
+                return _length;
+            }
+        }
+    }
+
+    private static void sleepUninterruptibly(long _millis) {
+        long deadline = System.currentTimeMillis() + _millis;
+        long remaining = _millis;
+        while (remaining > 0) {
+            try {
+                Thread.sleep(remaining);
+            } catch (InterruptedException e) {
+                //a stuck read ignores interruption as well as the stream closing
+            }
+            remaining = deadline - System.currentTimeMillis();
+        }
+    }
+}
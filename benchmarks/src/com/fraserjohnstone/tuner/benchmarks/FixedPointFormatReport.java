@@ -0,0 +1,126 @@
+package com.fraserjohnstone.tuner.benchmarks;
+
+import com.fraserjohnstone.tuner.utils.FixedPointFormat;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Checks the text the tuner screen writes every frame, and exits with status 1 if it differs from
+ * the half even rounding {@link DecimalFormat} makes or from {@link String#valueOf(int)}, so that it
+ * can be run on a build server. That writing it allocates nothing is checked on the tuner screen
+ * itself, see {@link TunerScreenBatchReport}.
+ * <p>
+ * {@link FixedPointFormat#setFixed(StringBuilder, double, int)} is compared with the exact value of
+ * the double rounded half even by {@link BigDecimal}, as DecimalFormat ("#.0" to "#.000000") rounds
+ * it, on random values of every size the tuner shows, on values which are exact ties, such as 0.125
+ * to two places, and on values which only look like ties in decimal, such as 1.005, whose nearest
+ * double is just below it. The values for which DecimalFormat itself differs from the exact
+ * rounding are counted and printed: the JDK's DecimalFormat treats a value such as 0.0005 to three
+ * places, whose nearest double is just above the tie, as a tie when every digit shown is zero.
+ * {@link FixedPointFormat#setInteger(StringBuilder, char, int)} is compared with String.valueOf().
+ */
+public class FixedPointFormatReport {
+
+    private static final int MAX_DECIMAL_PLACES = 6;
+    private static final int RANDOM_VALUES = 200000;
+    private static final long SEED = 42;
+
+    public static void main(String[] _args) {
+        boolean passed = checkFixed();
+        passed &= checkInteger();
+
+        System.out.println(passed ? "# passed" : "# FAILED");
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    //values for which DecimalFormat differs from the exact rounding
+    private static long sDecimalFormatDifferences;
+
+    /**
+     * @return boolean. True if setFixed() wrote the exact rounding for every value
+     */
+    private static boolean checkFixed() {
+        Random random = new Random(SEED);
+        StringBuilder builder = new StringBuilder();
+        long checked = 0;
+        long mismatches = 0;
+        for (int places = 1; places <= MAX_DECIMAL_PLACES; places++) {
+            StringBuilder pattern = new StringBuilder("#.");
+            for (int i = 0; i < places; i++) {
+                pattern.append('0');
+            }
+            DecimalFormat format = new DecimalFormat(pattern.toString());
+            double scale = Math.pow(10, places);
+
+            for (int i = 0; i < RANDOM_VALUES; i++) {
+                //from 10^-4 to 10^5, the range of the hertz, cents and milliseconds shown
+                double value = Math.pow(10, random.nextDouble() * 9 - 4);
+                mismatches += checkFixed(format, builder, value, places);
+                checked++;
+            }
+            for (long tie = 0; tie < 100000; tie++) {
+                //exact ties in binary, such as 0.125 to two places, and values halfway between two
+                //decimals which are not exact in binary, such as 1.005
+                mismatches += checkFixed(format, builder, (tie + 0.5) / 8 / scale * 8, places);
+                mismatches += checkFixed(format, builder, tie / 8.0 + 1.0 / 16 / scale * 8, places);
+                mismatches += checkFixed(format, builder, (tie * 2 + 1) / (2 * scale), places);
+                checked += 3;
+            }
+        }
+        System.out.println(String.format(Locale.US, "setFixed,%d values,%d mismatches,"
+                + "%d where DecimalFormat is not exact", checked, mismatches, sDecimalFormatDifferences));
+        return mismatches == 0;
+    }
+
+    /**
+     * @return long. 1 if setFixed() wrote _value differently from its exact rounding, or else 0
+     */
+    private static long checkFixed(DecimalFormat _format, StringBuilder _builder, double _value,
+                                   int _places) {
+        FixedPointFormat.setFixed(_builder, _value, _places);
+        String expected = new BigDecimal(_value).setScale(_places, RoundingMode.HALF_EVEN).toPlainString();
+        //like "#.00", the integer part is left out when it is zero
+        if (expected.startsWith("0.")) {
+            expected = expected.substring(1);
+        }
+        String decimalFormat = _format.format(_value);
+        if (!expected.equals(decimalFormat)) {
+            sDecimalFormatDifferences++;
+            System.out.println(String.format(Locale.US, "# %.20g to %d places: exact %s, DecimalFormat %s",
+                    _value, _places, expected, decimalFormat));
+        }
+        if (expected.contentEquals(_builder)) {
+            return 0;
+        }
+        System.out.println(String.format(Locale.US, "# %.20g to %d places: %s, exact %s", _value,
+                _places, _builder, expected));
+        return 1;
+    }
+
+    /**
+     * @return boolean. True if setInteger() wrote the same as String.valueOf() for every value
+     */
+    private static boolean checkInteger() {
+        Random random = new Random(SEED);
+        StringBuilder builder = new StringBuilder();
+        long mismatches = 0;
+        int[] edges = {0, 1, -1, 9, 10, -10, 99, 100, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        for (int i = 0; i < RANDOM_VALUES + edges.length; i++) {
+            int value = i < edges.length ? edges[i] : random.nextInt();
+            FixedPointFormat.setInteger(builder, '+', value);
+            if (!("+" + value).contentEquals(builder)) {
+                System.out.println("# " + value + ": " + builder);
+                mismatches++;
+            }
+        }
+        System.out.println(String.format(Locale.US, "setInteger,%d values,%d mismatches",
+                RANDOM_VALUES + edges.length, mismatches));
+        return mismatches == 0;
+    }
+}
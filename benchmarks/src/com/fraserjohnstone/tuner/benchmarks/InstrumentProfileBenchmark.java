@@ -0,0 +1,166 @@
+package com.fraserjohnstone.tuner.benchmarks;
+
+import com.fraserjohnstone.tuner.audio.AnalysisSettings;
+import com.fraserjohnstone.tuner.audio.DecimatingProcessor;
+import com.fraserjohnstone.tuner.utils.InstrumentProfile;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+import be.tarsos.dsp.pitch.PitchDetectionHandler;
+import be.tarsos.dsp.pitch.PitchDetectionResult;
+
+/**
+ * Measures the processing time of one frame (one hop of audio) through the tuner's pitch detection
+ * when it is set up for an {@link InstrumentProfile}, against the same audio analysed with the
+ * {@link InstrumentProfile#CHROMATIC} profile, and reports the octave error rate of each when the
+ * trial ends.
+ * <p>
+ * The audio plays each open string of the instrument for a second in turn. Frames whose buffer
+ * holds the end of one string and the start of the next are left out of the accuracy figures.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InstrumentProfileBenchmark {
+
+    private static final float SAMPLE_RATE = AnalysisSettings.SAMPLE_RATE;
+    private static final int HOP = AnalysisSettings.HOP_SIZE;
+    private static final double STRING_SECONDS = 1;
+
+    @Param({"GUITAR_STANDARD", "GUITAR_DROP_D", "BASS_4", "BASS_5", "VIOLIN", "VIOLA", "CELLO", "UKULELE"})
+    public String instrument;
+
+    //true to analyse with the instrument's profile, false to analyse with the chromatic profile
+    @Param({"true", "false"})
+    public boolean limited;
+
+    @Param({"HARMONIC", "NOISY"})
+    public SyntheticSignal signal;
+
+    private double[] mStringHertz;
+    private int mBufferSize;
+    private int mSamplesPerString;
+
+    private DecimatingProcessor mDecimator;
+    private AudioProcessor mPitchProcessor;
+    private AudioEvent mAudioEvent;
+    private float[] mSignal;
+    private float[] mBuffer;
+    private int mPosition;
+
+    //accuracy, accumulated over the whole trial
+    private long mFrames;
+    private long mUnpitchedFrames;
+    private long mOctaveErrors;
+    private double mTotalAbsCents;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        InstrumentProfile instrumentProfile =
+                (InstrumentProfile) InstrumentProfile.class.getField(instrument).get(null);
+        InstrumentProfile profile = limited ? instrumentProfile : InstrumentProfile.CHROMATIC;
+
+        mStringHertz = instrumentProfile.getStringHertz();
+        mBufferSize = AnalysisSettings.getBufferSize(profile, SAMPLE_RATE);
+        mDecimator = AnalysisSettings.createDecimator(SAMPLE_RATE, profile);
+        mPitchProcessor = AnalysisSettings.createPitchProcessor(SAMPLE_RATE, profile,
+                new PitchDetectionHandler() {
+                    @Override
+                    public void handlePitch(PitchDetectionResult _result, AudioEvent _audioEvent) {
+                        record(_result.getPitch());
+                    }
+                });
+
+        //every string in turn, played in a loop
+        mSamplesPerString = (int) (SAMPLE_RATE * STRING_SECONDS);
+        mSignal = new float[mSamplesPerString * mStringHertz.length];
+        float[] note = new float[mSamplesPerString];
+        for (int i = 0; i < mStringHertz.length; i++) {
+            signal.fill(note, SAMPLE_RATE, mStringHertz[i]);
+            System.arraycopy(note, 0, mSignal, i * mSamplesPerString, mSamplesPerString);
+        }
+        mBuffer = new float[mBufferSize];
+        mAudioEvent = new AudioEvent(new TarsosDSPAudioFormat(SAMPLE_RATE, 16, 1, true, false), -1);
+    }
+
+    @Benchmark
+    public float oneFrame() {
+        nextBuffer();
+        mAudioEvent.setFloatBuffer(mBuffer);
+        mDecimator.process(mAudioEvent);
+        mPitchProcessor.process(mAudioEvent);
+        return mAudioEvent.getFloatBuffer()[0];
+    }
+
+    /**
+     * Slides mBuffer along the signal by one hop, starting again with no overlap at the end of the
+     * signal
+     */
+    private void nextBuffer() {
+        if (mPosition == 0 || mPosition + HOP > mSignal.length) {
+            System.arraycopy(mSignal, 0, mBuffer, 0, mBufferSize);
+            mPosition = mBufferSize;
+            mAudioEvent.setOverlap(0);
+            return;
+        }
+        System.arraycopy(mBuffer, HOP, mBuffer, 0, mBufferSize - HOP);
+        System.arraycopy(mSignal, mPosition, mBuffer, mBufferSize - HOP, HOP);
+        mPosition += HOP;
+        mAudioEvent.setOverlap(mBufferSize - HOP);
+    }
+
+    /**
+     * @param _pitch float. The pitch detected in one frame, or -1
+     */
+    private void record(float _pitch) {
+        int string = (mPosition - 1) / mSamplesPerString;
+        if ((mPosition - mBufferSize) / mSamplesPerString != string) {
+            return;
+        }
+
+        mFrames++;
+        if (_pitch <= 0) {
+            mUnpitchedFrames++;
+            return;
+        }
+        double cents = Math.abs(SyntheticSignal.centsError(_pitch, mStringHertz[string]));
+        if (cents > 600) {
+            mOctaveErrors++;
+        } else {
+            mTotalAbsCents += cents;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void reportAccuracy() {
+        long pitched = mFrames - mUnpitchedFrames - mOctaveErrors;
+        System.out.println(String.format(Locale.US,
+                "%n[accuracy] %s %s %s: buffer %d, factor %d, mean |error| %.3f cents, "
+                        + "%.2f%% unpitched, %.2f%% octave errors",
+                instrument, limited ? "profile" : "chromatic", signal, mBufferSize, mDecimator.getFactor(),
+                pitched > 0 ? mTotalAbsCents / pitched : Double.NaN,
+                100.0 * mUnpitchedFrames / Math.max(1, mFrames),
+                100.0 * mOctaveErrors / Math.max(1, mFrames)));
+    }
+}
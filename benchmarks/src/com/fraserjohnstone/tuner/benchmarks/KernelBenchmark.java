@@ -0,0 +1,192 @@
+package com.fraserjohnstone.tuner.benchmarks;
+
+import com.fraserjohnstone.tuner.audio.DspKernels;
+import com.fraserjohnstone.tuner.audio.RealFft;
+import com.fraserjohnstone.tuner.audio.YinPitchDetector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import be.tarsos.dsp.pitch.PitchDetector;
+
+/**
+ * Compares the scalar {@link DspKernels} with the default ones, which are the vector kernels when the
+ * benchmarks are run on Java 16 or later with --add-modules jdk.incubator.vector (the 'jmh' Gradle
+ * task adds it where it can) and otherwise the scalar kernels again. DETECTOR is a whole direct YIN
+ * detector using the kernels.
+ * <p>
+ * When each trial ends the largest difference between the output of the kernels and the output of the
+ * scalar kernels on the same input is printed, in units in the last place and relative to the scalar
+ * value. For DETECTOR it is the difference in cents between the pitches.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KernelBenchmark {
+
+    private static final float SAMPLE_RATE = 44100;
+    private static final double HERTZ = 110.0;
+
+    @Param({"SCALAR", "DEFAULT"})
+    public String kernels;
+
+    @Param({"DIFFERENCE", "NORMALISE", "WINDOW", "MAGNITUDE", "DETECTOR"})
+    public String kernel;
+
+    @Param({"1024", "2048", "4096"})
+    public int bufferSize;
+
+    private DspKernels mKernels;
+    private PitchDetector mDetector;
+
+    private float[] mSignal;
+    //the difference function of mSignal, normalised by NORMALISE
+    private float[] mDifference;
+    //a Hann window
+    private float[] mWindow;
+    //the packed spectrum of mSignal
+    private float[] mSpectrum;
+
+    //the input of the kernel, copied from the arrays above before each in place kernel
+    private float[] mInput;
+    private float[] mOutput;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mKernels = kernels.equals("SCALAR") ? DspKernels.getScalar() : DspKernels.getDefault();
+        mDetector = new YinPitchDetector(SAMPLE_RATE, bufferSize, 0, Float.MAX_VALUE, false,
+                YinPitchDetector.DEFAULT_THRESHOLD, mKernels);
+
+        mSignal = new float[bufferSize];
+        SyntheticSignal.NOISY.fill(mSignal, SAMPLE_RATE, HERTZ);
+        mDifference = new float[bufferSize / 2];
+        DspKernels.getScalar().difference(mSignal, 0, bufferSize / 2, mDifference);
+        mWindow = new float[bufferSize];
+        for (int i = 0; i < bufferSize; i++) {
+            mWindow[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / (bufferSize - 1)));
+        }
+        mSpectrum = mSignal.clone();
+        new RealFft(bufferSize).forward(mSpectrum);
+
+        mInput = new float[bufferSize];
+        mOutput = new float[bufferSize / 2 + 1];
+    }
+
+    /**
+     * Runs the kernel once. The in place kernels are run on a copy of their input, so the copy is
+     * included in their time for both kernels.
+     */
+    @Benchmark
+    public float run() {
+        return run(mKernels);
+    }
+
+    /**
+     * @param _kernels {@link DspKernels}. The kernels to run.
+     * @return float. A value of the output, so the work is not optimised away
+     */
+    private float run(DspKernels _kernels) {
+        if (kernel.equals("DIFFERENCE")) {
+            _kernels.difference(mSignal, 0, bufferSize / 2, mOutput);
+            return mOutput[1];
+        } else if (kernel.equals("NORMALISE")) {
+            System.arraycopy(mDifference, 0, mInput, 0, mDifference.length);
+            _kernels.cumulativeMeanNormalise(mInput);
+            return mInput[1];
+        } else if (kernel.equals("WINDOW")) {
+            System.arraycopy(mSignal, 0, mInput, 0, bufferSize);
+            _kernels.applyWindow(mInput, mWindow, bufferSize);
+            return mInput[1];
+        } else if (kernel.equals("MAGNITUDE")) {
+            _kernels.magnitudeSpectrum(mSpectrum, bufferSize, mOutput);
+            return mOutput[1];
+        }
+        return mDetector.getPitch(mSignal).getPitch();
+    }
+
+    @TearDown(Level.Trial)
+    public void reportAccuracy() {
+        if (kernel.equals("DETECTOR")) {
+            float pitch = mDetector.getPitch(mSignal).getPitch();
+            PitchDetector scalar = new YinPitchDetector(SAMPLE_RATE, bufferSize, 0, Float.MAX_VALUE, false,
+                    YinPitchDetector.DEFAULT_THRESHOLD, DspKernels.getScalar());
+            float scalarPitch = scalar.getPitch(mSignal).getPitch();
+            System.out.println(String.format(Locale.US,
+                    "%n[accuracy] %s %s buffer=%d: %.6f cents from scalar",
+                    mKernels, kernel, bufferSize, SyntheticSignal.centsError(pitch, scalarPitch)));
+            return;
+        }
+
+        run(DspKernels.getScalar());
+        float[] expected = output().clone();
+        run(mKernels);
+        float[] actual = output();
+
+        long maxUlps = 0;
+        double maxRelativeError = 0;
+        for (int i = 0; i < outputLength(); i++) {
+            maxUlps = Math.max(maxUlps, ulps(expected[i], actual[i]));
+            if (expected[i] != 0) {
+                double relativeError = Math.abs((actual[i] - expected[i]) / expected[i]);
+                maxRelativeError = Math.max(maxRelativeError, relativeError);
+            }
+        }
+        System.out.println(String.format(Locale.US,
+                "%n[accuracy] %s %s buffer=%d: max %d ulp, max relative error %.3g from scalar",
+                mKernels, kernel, bufferSize, maxUlps, maxRelativeError));
+    }
+
+    /**
+     * @return float[]. The array the kernel writes its output to
+     */
+    private float[] output() {
+        return kernel.equals("NORMALISE") || kernel.equals("WINDOW") ? mInput : mOutput;
+    }
+
+    /**
+     * @return int. The number of values the kernel writes
+     */
+    private int outputLength() {
+        if (kernel.equals("WINDOW")) {
+            return bufferSize;
+        } else if (kernel.equals("MAGNITUDE")) {
+            return bufferSize / 2 + 1;
+        }
+        return bufferSize / 2;
+    }
+
+    /**
+     * @param _expected float. A value from the scalar kernels.
+     * @param _actual   float. The same value from the kernels being measured.
+     * @return long. The number of floats between the two
+     */
+    private static long ulps(float _expected, float _actual) {
+        return Math.abs(orderedBits(_expected) - orderedBits(_actual));
+    }
+
+    /**
+     * @param _value float. Any float.
+     * @return long. A number which increases by one from each float to the next larger one
+     */
+    private static long orderedBits(float _value) {
+        int bits = Float.floatToIntBits(_value);
+        return bits >= 0 ? bits : (long) Integer.MIN_VALUE - bits;
+    }
+}
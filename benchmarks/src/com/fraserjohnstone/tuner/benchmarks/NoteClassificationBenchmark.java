@@ -0,0 +1,118 @@
+package com.fraserjohnstone.tuner.benchmarks;
+
+import com.fraserjohnstone.tuner.utils.ChromaticScale;
+import com.fraserjohnstone.tuner.utils.Note;
+import com.fraserjohnstone.tuner.utils.NoteQuantizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares finding the closest note and wheel rotation for a detected pitch using
+ * {@link NoteQuantizer} against the scan of every note of every octave that TunerScreen used to
+ * perform, which is reproduced here as the baseline.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NoteClassificationBenchmark {
+
+    private static final int PITCHES = 1024;
+
+    private ChromaticScale mChromaticScale;
+    private NoteQuantizer mNoteQuantizer;
+    private double[] mPitches;
+    private int mIndex;
+
+    @Setup
+    public void setUp() {
+        mChromaticScale = new ChromaticScale();
+        mNoteQuantizer = new NoteQuantizer(mChromaticScale);
+
+        //pitches spread evenly on a log scale from 16Hz to 8kHz
+        Random random = new Random(42);
+        mPitches = new double[PITCHES];
+        for (int i = 0; i < PITCHES; i++) {
+            mPitches[i] = 16 * Math.pow(2, random.nextDouble() * 9);
+        }
+    }
+
+    private double nextPitch() {
+        mIndex = (mIndex + 1) & (PITCHES - 1);
+        return mPitches[mIndex];
+    }
+
+    @Benchmark
+    public double quantizer() {
+        double htz = nextPitch();
+        mNoteQuantizer.quantize(htz);
+        double cents = Math.abs((int) Math.round(-mNoteQuantizer.getCents()));
+        double rotation = mNoteQuantizer.getPitchClass().getWheelRotation();
+        return htz < mNoteQuantizer.getTargetHertz() ? rotation - (0.3 * cents) : rotation + (0.3 * cents);
+    }
+
+    @Benchmark
+    public double legacyScan() {
+        double htz = nextPitch();
+        Note[] noteArray = mChromaticScale.getNoteArray();
+        double diffInHertz = 10000;
+        String targetNote = null;
+        double cents = 0;
+        boolean flat = false;
+
+        for (byte i = 0; i < noteArray.length; i++) {
+            Note currentNote = noteArray[i];
+            for (byte j = 0; j < currentNote.getOctaves().length; j++) {
+                double currentOctave = currentNote.getOctaves()[j];
+                double currentDiff = Math.abs(htz - currentOctave);
+                if (currentDiff < diffInHertz) {
+                    diffInHertz = currentDiff;
+                    targetNote = currentNote.toString();
+                    cents = Math.abs((int) Math.round(1200 * log2(currentOctave / htz)));
+                    flat = htz < currentOctave;
+                }
+            }
+        }
+
+        double rotation = legacyRotation(targetNote);
+        return flat ? rotation - (0.3 * cents) : rotation + (0.3 * cents);
+    }
+
+    private static double log2(double _num) {
+        return (Math.log(_num) / Math.log(2));
+    }
+
+    /**
+     * The string comparisons TunerScreen.updateNoteWheelRotation() used to make.
+     */
+    private static double legacyRotation(String _targetNote) {
+        double targetRotation = 0;
+        if (_targetNote.equals("A")) targetRotation = 0;
+        if (_targetNote.equals("A#")) targetRotation = 30;
+        if (_targetNote.equals("B")) targetRotation = 60;
+        if (_targetNote.equals("C")) targetRotation = 90;
+        if (_targetNote.equals("C#")) targetRotation = 120;
+        if (_targetNote.equals("D")) targetRotation = 150;
+        if (_targetNote.equals("D#")) targetRotation = 180;
+        if (_targetNote.equals("E")) targetRotation = -150;
+        if (_targetNote.equals("F")) targetRotation = -120;
+        if (_targetNote.equals("F#")) targetRotation = -90;
+        if (_targetNote.equals("G")) targetRotation = -60;
+        if (_targetNote.equals("G#")) targetRotation = -30;
+        return targetRotation;
+    }
+}
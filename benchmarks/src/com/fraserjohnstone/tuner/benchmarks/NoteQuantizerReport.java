@@ -0,0 +1,215 @@
+package com.fraserjohnstone.tuner.benchmarks;
+
+import com.fraserjohnstone.tuner.utils.ChromaticScale;
+import com.fraserjohnstone.tuner.utils.Note;
+import com.fraserjohnstone.tuner.utils.NoteQuantizer;
+import com.fraserjohnstone.tuner.utils.PitchClass;
+import com.fraserjohnstone.tuner.utils.Temperament;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Checks that {@link NoteQuantizer} finds the same note and offset as the scan of every note of
+ * every octave that TunerScreen.processHertz() used to perform, which is reproduced here, and exits
+ * with status 1 on any difference, so that it can be run on a build server.
+ * <p>
+ * Every temperament is checked from every tonic, along with a few equal divisions of the octave and
+ * reference pitches. For each scale the pitches are:
+ * <ul>
+ * <li>a sweep from 16Hz to 8kHz in steps of {@link #SWEEP_STEP_CENTS}, each moved by a seeded random
+ * fraction of a step</li>
+ * <li>every note, and the points halfway between neighbouring notes in hertz, where the closest note
+ * changes and the scan's tie breaking decides, and in cents (a quarter tone in twelve tone equal
+ * temperament)</li>
+ * <li>the points around every note where the offset shown rounds to the next whole cent</li>
+ * </ul>
+ * Each boundary is also checked one floating point step either side. A pitch fails if the note
+ * differs, if the offset differs at all, if it is sharp rather than flat, or if the whole number of
+ * cents the tuner shows differs.
+ * <p>
+ * One line of CSV is printed for each scale, and a summary at the end.
+ */
+public class NoteQuantizerReport {
+
+    private static final double MIN_HERTZ = 16;
+    private static final double MAX_HERTZ = 8000;
+    private static final double SWEEP_STEP_CENTS = 0.25;
+    private static final double[] REFERENCE_HERTZ = {440, 415.3, 432, 466.16};
+    private static final int[] EDO_DIVISIONS = {5, 19, 24, 31, 53};
+    private static final long SEED = 42;
+
+    //the result of the last legacy scan
+    private static int sScanIndex;
+    private static double sScanCents;
+    private static int sScanShownCents;
+    private static boolean sScanFlat;
+
+    public static void main(String[] _args) {
+        Random random = new Random(SEED);
+        long pitches = 0;
+        long ties = 0;
+        long failures = 0;
+
+        System.out.println("temperament,reference_hertz,pitches,hertz_ties,failures");
+        Temperament[] temperaments = getTemperaments();
+        for (int i = 0; i < temperaments.length; i++) {
+            //every reference pitch for equal temperament, and A440 for the rest
+            int references = temperaments[i] == Temperament.EQUAL ? REFERENCE_HERTZ.length : 1;
+            for (int j = 0; j < references; j++) {
+                ChromaticScale scale = new ChromaticScale(temperaments[i], REFERENCE_HERTZ[j]);
+                Result result = check(scale, random);
+                System.out.println(String.format(Locale.US, "%s,%.2f,%d,%d,%d", temperaments[i],
+                        REFERENCE_HERTZ[j], result.mPitches, result.mTies, result.mFailures));
+                pitches += result.mPitches;
+                ties += result.mTies;
+                failures += result.mFailures;
+            }
+        }
+
+        //the tie breaking must actually have been exercised
+        boolean passed = failures == 0 && ties > 0;
+        System.out.println(String.format(Locale.US, "# %d pitches, %d ties in hertz, %d failures: %s",
+                pitches, ties, failures, passed ? "passed" : "FAILED"));
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @return {@link Temperament}[]. Every twelve tone temperament from every tonic, and the equal
+     * divisions of {@link #EDO_DIVISIONS}
+     */
+    private static Temperament[] getTemperaments() {
+        PitchClass[] tonics = PitchClass.values();
+        Temperament[] temperaments = new Temperament[1 + 4 * tonics.length + EDO_DIVISIONS.length];
+        int count = 0;
+        temperaments[count++] = Temperament.EQUAL;
+        for (int i = 0; i < tonics.length; i++) {
+            temperaments[count++] = Temperament.just(tonics[i]);
+            temperaments[count++] = Temperament.pythagorean(tonics[i]);
+            temperaments[count++] = Temperament.meantone(tonics[i]);
+            temperaments[count++] = Temperament.werckmeister(tonics[i]);
+        }
+        for (int i = 0; i < EDO_DIVISIONS.length; i++) {
+            temperaments[count++] = Temperament.edo(EDO_DIVISIONS[i]);
+        }
+        return temperaments;
+    }
+
+    /**
+     * The number of pitches checked against one scale and how they went
+     */
+    private static class Result {
+        private long mPitches;
+        private long mTies;
+        private long mFailures;
+    }
+
+    /**
+     * @param _scale  {@link ChromaticScale}. The scale to check.
+     * @param _random Random. Moves the pitches of the sweep.
+     * @return {@link Result}
+     */
+    private static Result check(ChromaticScale _scale, Random _random) {
+        NoteQuantizer quantizer = new NoteQuantizer(_scale);
+        Result result = new Result();
+
+        double steps = 1200 * log2(MAX_HERTZ / MIN_HERTZ) / SWEEP_STEP_CENTS;
+        for (int i = 0; i <= steps; i++) {
+            double cents = (i + _random.nextDouble()) * SWEEP_STEP_CENTS;
+            check(_scale, quantizer, MIN_HERTZ * Math.pow(2, cents / 1200), result);
+        }
+
+        double[] hertz = _scale.getHertzTable();
+        for (int i = 0; i < hertz.length; i++) {
+            checkAround(_scale, quantizer, hertz[i], result);
+            if (i + 1 < hertz.length) {
+                //where the closest note in hertz changes, and a quarter tone
+                checkAround(_scale, quantizer, (hertz[i] + hertz[i + 1]) / 2, result);
+                checkAround(_scale, quantizer, Math.sqrt(hertz[i] * hertz[i + 1]), result);
+            }
+            //where the offset shown changes from one whole cent to the next
+            for (int cents = -50; cents < 50; cents++) {
+                checkAround(_scale, quantizer, hertz[i] * Math.pow(2, (cents + 0.5) / 1200), result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks _hertz and the doubles either side of it
+     */
+    private static void checkAround(ChromaticScale _scale, NoteQuantizer _quantizer, double _hertz,
+                                    Result _result) {
+        check(_scale, _quantizer, Math.nextDown(_hertz), _result);
+        check(_scale, _quantizer, _hertz, _result);
+        check(_scale, _quantizer, Math.nextUp(_hertz), _result);
+    }
+
+    /**
+     * Quantizes _hertz with _quantizer and the legacy scan, and counts a failure if they differ
+     */
+    private static void check(ChromaticScale _scale, NoteQuantizer _quantizer, double _hertz,
+                              Result _result) {
+        _result.mPitches++;
+        if (legacyScan(_scale, _hertz)) {
+            _result.mTies++;
+        }
+
+        int index = _quantizer.quantize(_hertz);
+        double cents = _quantizer.getCents();
+        //as the tuner screen shows it
+        int shownCents = Math.abs((int) Math.round(-cents));
+
+        //a pitch a floating point step from a note can be flat by an offset that rounds to 0
+        boolean flatMismatch = cents != 0 && (cents < 0) != sScanFlat;
+        if (index != sScanIndex || cents != sScanCents || flatMismatch || shownCents != sScanShownCents) {
+            _result.mFailures++;
+            System.out.println(String.format(Locale.US, "# %s at %.17g Hz: quantizer note %d, %.17g cents"
+                    + " (%d shown); scan note %d, %.17g cents (%d shown, %s)", _scale.getTemperament(),
+                    _hertz, index, cents, shownCents, sScanIndex, sScanCents, sScanShownCents,
+                    sScanFlat ? "flat" : "sharp"));
+        }
+    }
+
+    /**
+     * The scan TunerScreen.processHertz() used to make of every note of every octave, keeping the
+     * first of the notes closest in hertz. Sets {@link #sScanIndex}, {@link #sScanCents},
+     * {@link #sScanShownCents} and {@link #sScanFlat}.
+     *
+     * @param _scale {@link ChromaticScale}. The scale to scan.
+     * @param _htz   double. The pitch in hertz.
+     * @return boolean. True if another note was exactly as close in hertz as the one kept
+     */
+    private static boolean legacyScan(ChromaticScale _scale, double _htz) {
+        Note[] noteArray = _scale.getNoteArray();
+        double diffInHertz = 10000;
+        boolean tie = false;
+
+        for (int i = 0; i < noteArray.length; i++) {
+            Note currentNote = noteArray[i];
+            for (int j = 0; j < currentNote.getOctaves().length; j++) {
+                double currentOctave = currentNote.getOctaves()[j];
+                double currentDiff = Math.abs(_htz - currentOctave);
+                if (currentDiff < diffInHertz) {
+                    diffInHertz = currentDiff;
+                    tie = false;
+                    sScanIndex = j * noteArray.length + i;
+                    //the scan kept the magnitude and whether it was flat, which are put back
+                    //together here as the signed offset
+                    sScanCents = -(1200 * log2(currentOctave / _htz));
+                    sScanShownCents = Math.abs((int) Math.round(1200 * log2(currentOctave / _htz)));
+                    sScanFlat = _htz < currentOctave;
+                } else if (currentDiff == diffInHertz) {
+                    tie = true;
+                }
+            }
+        }
+        return tie;
+    }
+
+    private static double log2(double _num) {
+        return (Math.log(_num) / Math.log(2));
+    }
+}
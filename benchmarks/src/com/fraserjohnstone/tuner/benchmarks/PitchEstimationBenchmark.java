@@ -0,0 +1,124 @@
+package com.fraserjohnstone.tuner.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import be.tarsos.dsp.pitch.PitchDetectionResult;
+import be.tarsos.dsp.pitch.PitchDetector;
+import be.tarsos.dsp.pitch.PitchProcessor.PitchEstimationAlgorithm;
+
+/**
+ * Measures the time taken by the TarsosDSP pitch detectors to analyse one buffer (ns/frame), and
+ * reports their accuracy in cents on synthetic tones when each trial ends. Run with the gc profiler
+ * (the default for the 'jmh' Gradle task) to also see the allocation rate per frame.
+ * <p>
+ * Consecutive frames are taken from the signal a hop apart, where the hop is the buffer size minus
+ * the overlap, just as the {@link be.tarsos.dsp.AudioDispatcher} would deliver them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PitchEstimationBenchmark {
+
+    private static final float SAMPLE_RATE = 44100;
+
+    //number of frames the signal is long enough for before frames start to repeat
+    private static final int FRAMES = 64;
+
+    @Param({"YIN", "FFT_YIN", "MPM", "AMDF", "DYNAMIC_WAVELET"})
+    public PitchEstimationAlgorithm algorithm;
+
+    @Param({"1024", "2048", "4096"})
+    public int bufferSize;
+
+    //overlap as a fraction of the buffer size
+    @Param({"0.5", "0.75"})
+    public double overlap;
+
+    @Param({"SINE", "HARMONIC", "NOISY"})
+    public SyntheticSignal signal;
+
+    //E2, A4 and E6: the bottom of a guitar, concert pitch and the top of a violin
+    @Param({"82.41", "440.0", "1318.51"})
+    public double hertz;
+
+    private PitchDetector mDetector;
+    private float[] mSignal;
+    private float[] mFrame;
+    private int mHop;
+    private int mFrameIndex;
+
+    //accuracy, accumulated over the whole trial
+    private long mFrames;
+    private long mUnpitchedFrames;
+    private long mOctaveErrors;
+    private double mTotalAbsCents;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mDetector = algorithm.getDetector(SAMPLE_RATE, bufferSize);
+        mHop = Math.max(1, (int) (bufferSize * (1 - overlap)));
+        mSignal = new float[bufferSize + (mHop * FRAMES)];
+        signal.fill(mSignal, SAMPLE_RATE, hertz);
+        mFrame = new float[bufferSize];
+    }
+
+    @Benchmark
+    public float estimate() {
+        System.arraycopy(mSignal, mFrameIndex * mHop, mFrame, 0, bufferSize);
+        mFrameIndex = (mFrameIndex + 1) % FRAMES;
+
+        PitchDetectionResult result = mDetector.getPitch(mFrame);
+        float pitch = result.getPitch();
+        record(pitch);
+        return pitch;
+    }
+
+    /**
+     * @param _pitch float. The pitch detected in one frame, or -1
+     */
+    private void record(float _pitch) {
+        mFrames++;
+        if (_pitch <= 0) {
+            mUnpitchedFrames++;
+            return;
+        }
+        double cents = Math.abs(SyntheticSignal.centsError(_pitch, hertz));
+        if (cents > 600) {
+            mOctaveErrors++;
+        } else {
+            mTotalAbsCents += cents;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void reportAccuracy() {
+        long pitched = mFrames - mUnpitchedFrames - mOctaveErrors;
+        System.out.println(String.format(Locale.US,
+                "%n[accuracy] %s buffer=%d overlap=%.2f %s %.2fHz: mean |error| %.3f cents, "
+                        + "%.2f%% unpitched, %.2f%% octave errors",
+                algorithm, bufferSize, overlap, signal, hertz,
+                pitched > 0 ? mTotalAbsCents / pitched : Double.NaN,
+                100.0 * mUnpitchedFrames / Math.max(1, mFrames),
+                100.0 * mOctaveErrors / Math.max(1, mFrames)));
+        Arrays.fill(mFrame, 0);
+    }
+}
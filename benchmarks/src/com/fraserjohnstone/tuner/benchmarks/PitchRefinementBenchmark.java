@@ -0,0 +1,126 @@
+package com.fraserjohnstone.tuner.benchmarks;
+
+import com.fraserjohnstone.tuner.audio.PitchRefiner;
+import com.fraserjohnstone.tuner.audio.YinPitchDetector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import be.tarsos.dsp.pitch.PitchDetector;
+
+/**
+ * Compares the precision of the tuner's FFT YIN detector with and without {@link PitchRefiner} for
+ * several buffer sizes, so that a refined short buffer can be set against simply analysing a longer
+ * one. The latency of each is the length of its buffer, as the refiner's two frames fit inside the
+ * buffer the detector analyses.
+ * <p>
+ * Each trial analyses {@link #NOTES} notes from 82Hz (the low E of a guitar) to 1kHz, at random
+ * (seeded) offsets from equal temperament. When it ends the mean, root mean square and largest error
+ * in cents over all the notes are printed, with the latency of the buffer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PitchRefinementBenchmark {
+
+    private static final float SAMPLE_RATE = 44100;
+    private static final int NOTES = 48;
+    private static final double LOWEST_HERTZ = 82.41;
+    private static final long SEED = 42;
+
+    @Param({"YIN", "REFINED"})
+    public String method;
+
+    @Param({"2048", "4096", "8192", "16384"})
+    public int bufferSize;
+
+    @Param({"HARMONIC", "NOISY"})
+    public SyntheticSignal signal;
+
+    private PitchDetector mDetector;
+    private PitchRefiner mRefiner;
+
+    private double[] mHertz;
+    private float[][] mNotes;
+    private int mNote;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mDetector = YinPitchDetector.FFT_YIN.createDetector(SAMPLE_RATE, bufferSize, bufferSize, 0,
+                Float.MAX_VALUE);
+        //the refiner's frames are half the buffer, and both fit in it
+        mRefiner = new PitchRefiner(SAMPLE_RATE, bufferSize, bufferSize / 2, null);
+
+        Random random = new Random(SEED);
+        double octaves = Math.log(1000 / LOWEST_HERTZ) / Math.log(2);
+        mHertz = new double[NOTES];
+        mNotes = new float[NOTES][bufferSize];
+        for (int i = 0; i < NOTES; i++) {
+            double semitone = Math.floor(12 * octaves * i / NOTES);
+            double cents = 100 * semitone + 100 * (random.nextDouble() - 0.5);
+            mHertz[i] = LOWEST_HERTZ * Math.pow(2, cents / 1200);
+            signal.fill(mNotes[i], SAMPLE_RATE, mHertz[i]);
+        }
+    }
+
+    @Benchmark
+    public double estimate() {
+        mNote = (mNote + 1) % NOTES;
+        return estimate(mNotes[mNote]);
+    }
+
+    /**
+     * @param _buffer float[]. The samples of one note.
+     * @return double. The pitch found by the method being measured, or -1 if none was found
+     */
+    private double estimate(float[] _buffer) {
+        double hertz = mDetector.getPitch(_buffer).getPitch();
+        if (hertz > 0 && method.equals("REFINED")) {
+            hertz = mRefiner.refine(_buffer, hertz);
+        }
+        return hertz;
+    }
+
+    @TearDown(Level.Trial)
+    public void reportAccuracy() {
+        double total = 0;
+        double totalSquares = 0;
+        double largest = 0;
+        int unpitched = 0;
+        for (int i = 0; i < NOTES; i++) {
+            double hertz = estimate(mNotes[i]);
+            if (hertz <= 0) {
+                unpitched++;
+                continue;
+            }
+            double cents = Math.abs(SyntheticSignal.centsError(hertz, mHertz[i]));
+            total += cents;
+            totalSquares += cents * cents;
+            largest = Math.max(largest, cents);
+        }
+        int pitched = Math.max(1, NOTES - unpitched);
+        System.out.println(String.format(Locale.US,
+                "%n[accuracy] %s %s buffer=%d: latency %.1f ms, mean |error| %.4f cents, rms %.4f cents, "
+                        + "max %.4f cents, %d of %d unpitched",
+                method, signal, bufferSize, 1000 * bufferSize / SAMPLE_RATE, total / pitched,
+                Math.sqrt(totalSquares / pitched), largest, unpitched, NOTES));
+    }
+}
@@ -0,0 +1,278 @@
+package com.fraserjohnstone.tuner.benchmarks;
+
+import com.fraserjohnstone.tuner.audio.AnalysisSettings;
+import com.fraserjohnstone.tuner.audio.SyntheticAudioSource;
+import com.fraserjohnstone.tuner.audio.ToneGenerator;
+import com.fraserjohnstone.tuner.utils.ChromaticScale;
+import com.fraserjohnstone.tuner.utils.InstrumentProfile;
+import com.fraserjohnstone.tuner.utils.RandomNum;
+import com.fraserjohnstone.tuner.utils.Temperament;
+
+import java.util.Locale;
+
+import be.tarsos.dsp.AudioDispatcher;
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.pitch.PitchDetectionHandler;
+import be.tarsos.dsp.pitch.PitchDetectionResult;
+
+/**
+ * Checks the tuner's analysis against a synthetic note at every note of the equal tempered
+ * {@link ChromaticScale} which the tuner listens for (A0 to C8), for each {@link Tone}, and exits
+ * with status 1 if any note fails, so that it can be run on a build server.
+ * <p>
+ * Each note is played after a short silence through a {@link SyntheticAudioSource} into the chain
+ * of processors the tuner uses, from {@link AnalysisSettings#createPitchChain}. Each note is detuned by a random (seeded) amount. The reading locks on at the end of the
+ * first analysed buffer after which every reading is within the tone's lock tolerance of the note;
+ * a note fails if that takes more than the tone's frames (hops) from the onset, or if the mean
+ * error of the readings from then on is more than the tone's accuracy. For VIBRATO the mean error
+ * is signed, so it measures whether the reading is centred on the note.
+ * <p>
+ * One line of CSV is printed for each note, and a summary at the end.
+ */
+public class RegressionReport {
+
+    private static final int SAMPLE_RATE = AnalysisSettings.SAMPLE_RATE;
+    private static final InstrumentProfile PROFILE = InstrumentProfile.CHROMATIC;
+    private static final double SILENCE_SECONDS = 0.25;
+    private static final double NOTE_SECONDS = 1.5;
+    private static final double MAX_DETUNE_CENTS = 40;
+    private static final long SEED = 42;
+
+    /**
+     * The notes played at every pitch, with how quickly and accurately each must be read
+     */
+    enum Tone {
+        //six harmonics with noise 40 dB below the note
+        STEADY(1, 12, 0.25),
+        //a plucked note, starting 20 cents sharp with a noise burst, and noise 30 dB below it
+        PLUCKED(2, 24, 0.5),
+        //six harmonics with 15 cents of vibrato at 5.5Hz
+        VIBRATO(17, 12, 1);
+
+        //how far every reading from lock on must be from the note
+        private final double mLockCents;
+        //most hops from the onset to lock on
+        private final int mMaxFramesToLock;
+        //largest mean error of the readings from lock on
+        private final double mAccuracyCents;
+
+        Tone(double _lockCents, int _maxFramesToLock, double _accuracyCents) {
+            mLockCents = _lockCents;
+            mMaxFramesToLock = _maxFramesToLock;
+            mAccuracyCents = _accuracyCents;
+        }
+
+        /**
+         * @param _hertz double. The pitch of the note.
+         * @param _seed  long. The seed of the note's phases and noise.
+         * @return {@link ToneGenerator}. A generator of this tone at _hertz.
+         */
+        ToneGenerator createGenerator(double _hertz, long _seed) {
+            ToneGenerator generator = new ToneGenerator(_hertz, _seed);
+            generator.setHarmonics(6);
+            generator.setSilenceSeconds(SILENCE_SECONDS);
+            if (this == PLUCKED) {
+                generator.setAttack(0.05, 20);
+                generator.setNoiseDecibels(-30);
+            } else {
+                generator.setNoiseDecibels(-40);
+            }
+            if (this == VIBRATO) {
+                generator.setVibrato(5.5, 15);
+            }
+            return generator;
+        }
+    }
+
+    public static void main(String[] _args) {
+        ChromaticScale scale = ChromaticScale.get(Temperament.EQUAL, ChromaticScale.DEFAULT_REFERENCE_HERTZ);
+        double[] hertzTable = scale.getHertzTable();
+        int steps = scale.getStepsPerOctave();
+        RandomNum random = new RandomNum(SEED);
+
+        System.out.println("tone,note,hertz,played_hertz,frames_to_lock,lock_ms,mean_cents,max_cents,result");
+        int notes = 0;
+        int failures = 0;
+        for (Tone tone : Tone.values()) {
+            for (int i = 0; i < hertzTable.length; i++) {
+                if (!inRange(hertzTable, i)) {
+                    continue;
+                }
+                ToneGenerator generator = tone.createGenerator(hertzTable[i], SEED + i);
+                double detune = random.randFloatPossNeg(0, (float) MAX_DETUNE_CENTS);
+                //keep the lowest and highest notes, and their vibrato, inside the range the tuner
+                //listens for
+                if (!inRange(hertzTable, i - 1)) {
+                    detune = Math.abs(detune) + generator.getVibratoCents();
+                } else if (!inRange(hertzTable, i + 1)) {
+                    detune = -Math.abs(detune) - generator.getVibratoCents();
+                }
+                generator.setDetuneCents(detune);
+
+                Readings readings = analyse(generator);
+                int framesToLock = readings.framesToLock(generator.getPlayedHertz(), tone.mLockCents);
+                boolean locked = framesToLock >= 0;
+                double mean = locked ? readings.meanCents(generator.getPlayedHertz(), framesToLock,
+                        tone == Tone.VIBRATO) : Double.NaN;
+                double max = locked ? readings.maxCents(generator.getPlayedHertz(), framesToLock)
+                        : Double.NaN;
+                boolean passed = locked && framesToLock <= tone.mMaxFramesToLock
+                        && Math.abs(mean) <= tone.mAccuracyCents;
+
+                notes++;
+                if (!passed) {
+                    failures++;
+                }
+                String lockMillis = locked
+                        ? String.format(Locale.US, "%.1f", readings.lockMillis(framesToLock)) : "never";
+                System.out.println(String.format(Locale.US, "%s,%s%d,%.2f,%.3f,%s,%s,%.4f,%.4f,%s",
+                        tone, scale.getPitchClass(i % steps), i / steps, hertzTable[i],
+                        generator.getPlayedHertz(), locked ? Integer.toString(framesToLock) : "never",
+                        lockMillis, mean, max, passed ? "pass" : "FAIL"));
+            }
+        }
+
+        System.out.println(String.format(Locale.US, "%d of %d notes passed", notes - failures, notes));
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @param _hertzTable double[]. The pitch of every note of the scale.
+     * @param _note       int. The index of a note, which may be outside the table.
+     * @return boolean. True if the note is one the tuner listens for. The range of the profile is
+     * rounded to the nearest note.
+     */
+    private static boolean inRange(double[] _hertzTable, int _note) {
+        return _note >= 0 && _note < _hertzTable.length
+                && _hertzTable[_note] >= PROFILE.getMinHertz() * 0.999
+                && _hertzTable[_note] <= PROFILE.getMaxHertz() * 1.001;
+    }
+
+    /**
+     * Runs the tuner's analysis over the note of _generator, recording the reading after every
+     * analysed buffer
+     */
+    private static Readings analyse(ToneGenerator _generator) {
+        int bufferSize = AnalysisSettings.getBufferSize(PROFILE, SAMPLE_RATE);
+        int overlap = AnalysisSettings.getOverlap(PROFILE, SAMPLE_RATE);
+        final int hop = bufferSize - overlap;
+        final int firstBufferEnd = bufferSize;
+        int samples = (int) ((SILENCE_SECONDS + NOTE_SECONDS) * SAMPLE_RATE);
+        final Readings readings = new Readings(samples / hop + 1, hop);
+
+        AudioDispatcher dispatcher = new SyntheticAudioSource(_generator, NOTE_SECONDS)
+                .createDispatcher(SAMPLE_RATE, bufferSize, overlap);
+        AudioProcessor[] chain = AnalysisSettings.createPitchChain(SAMPLE_RATE, PROFILE,
+                new PitchDetectionHandler() {
+                    @Override
+                    public void handlePitch(PitchDetectionResult _result, AudioEvent _audioEvent) {
+                        long processed = _audioEvent.getSamplesProcessed();
+                        long bufferEnd = processed + (processed == 0 ? firstBufferEnd : hop);
+                        readings.add(bufferEnd, _result.getPitch());
+                    }
+                });
+        for (int i = 0; i < chain.length; i++) {
+            dispatcher.addAudioProcessor(chain[i]);
+        }
+        dispatcher.run();
+        return readings;
+    }
+
+    /**
+     * The readings made after every analysed buffer of one note
+     */
+    private static class Readings {
+
+        private final long[] mBufferEnd;
+        private final double[] mHertz;
+        private final int mHop;
+        private int mSize;
+
+        Readings(int _capacity, int _hop) {
+            mBufferEnd = new long[_capacity];
+            mHertz = new double[_capacity];
+            mHop = _hop;
+        }
+
+        void add(long _bufferEnd, double _hertz) {
+            if (mSize < mBufferEnd.length) {
+                mBufferEnd[mSize] = _bufferEnd;
+                mHertz[mSize] = _hertz;
+                mSize++;
+            }
+        }
+
+        /**
+         * @return int. The first reading after which every reading is within _lockCents of
+         * _playedHertz, or -1 if there is none
+         */
+        private int lockedFrom(double _playedHertz, double _lockCents) {
+            int first = mSize;
+            while (first > 0 && mHertz[first - 1] > 0
+                    && Math.abs(SyntheticSignal.centsError(mHertz[first - 1], _playedHertz)) <= _lockCents) {
+                first--;
+            }
+            return first == mSize ? -1 : first;
+        }
+
+        /**
+         * @return int. The number of hops from the onset to the end of the buffer at which the reading
+         * locks on, or -1 if it never does
+         */
+        int framesToLock(double _playedHertz, double _lockCents) {
+            int first = lockedFrom(_playedHertz, _lockCents);
+            if (first < 0) {
+                return -1;
+            }
+            long onset = (long) (SILENCE_SECONDS * SAMPLE_RATE);
+            return (int) Math.max(0, (mBufferEnd[first] - onset + mHop - 1) / mHop);
+        }
+
+        /**
+         * @return double. The time from the onset to the end of _frames hops
+         */
+        double lockMillis(int _frames) {
+            return 1000.0 * _frames * mHop / SAMPLE_RATE;
+        }
+
+        /**
+         * @return double. The mean error in cents of the readings from lock on, signed or not
+         */
+        double meanCents(double _playedHertz, int _framesToLock, boolean _signed) {
+            double total = 0;
+            int count = 0;
+            for (int i = firstAfter(_framesToLock); i < mSize; i++) {
+                double cents = SyntheticSignal.centsError(mHertz[i], _playedHertz);
+                total += _signed ? cents : Math.abs(cents);
+                count++;
+            }
+            return total / Math.max(1, count);
+        }
+
+        /**
+         * @return double. The largest error in cents of the readings from lock on
+         */
+        double maxCents(double _playedHertz, int _framesToLock) {
+            double max = 0;
+            for (int i = firstAfter(_framesToLock); i < mSize; i++) {
+                max = Math.max(max, Math.abs(SyntheticSignal.centsError(mHertz[i], _playedHertz)));
+            }
+            return max;
+        }
+
+        /**
+         * @return int. The first reading at or after _frames hops from the onset
+         */
+        private int firstAfter(int _frames) {
+            long end = (long) (SILENCE_SECONDS * SAMPLE_RATE) + (long) _frames * mHop;
+            int i = 0;
+            while (i < mSize && mBufferEnd[i] < end) {
+                i++;
+            }
+            return i;
+        }
+    }
+}
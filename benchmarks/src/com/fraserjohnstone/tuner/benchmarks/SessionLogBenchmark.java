@@ -0,0 +1,196 @@
+package com.fraserjohnstone.tuner.benchmarks;
+
+import com.fraserjohnstone.tuner.audio.AnalysisSettings;
+import com.fraserjohnstone.tuner.utils.SessionLogReader;
+import com.fraserjohnstone.tuner.utils.SessionLogWriter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the session log with an hour of pitch frames at the rate the tuner produces them (one
+ * per hop, about 86 a second): the time the audio thread spends adding a frame (append), the time to
+ * write the whole hour to a file through the writer's background thread (writeHour), to scan every
+ * record of it through the memory mapped reader (scanHour), to find a record by time (seek) and to
+ * convert the hour to CSV (csvHour).
+ * <p>
+ * When the trial ends the size of the hour's log is printed, with the size of the same hour as CSV.
+ * append is called far faster than frames arrive, so most of its calls find the buffer full; the
+ * fraction dropped is printed too.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionLogBenchmark {
+
+    private static final double FRAMES_PER_SECOND =
+            (double) AnalysisSettings.SAMPLE_RATE / AnalysisSettings.HOP_SIZE;
+    private static final int HOUR_RECORDS = (int) (3600 * FRAMES_PER_SECOND);
+    //the buffer of the tuner's session log
+    private static final int CAPACITY = 1024;
+    private static final long SEED = 42;
+
+    private File mDirectory;
+    private File mHourLog;
+    private SessionLogReader mReader;
+    private SessionLogWriter mAppendWriter;
+    private long mAppended;
+    private long mDropped;
+
+    private Random mRandom;
+    private long mCsvBytes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mDirectory = File.createTempFile("session-log", "");
+        if (!mDirectory.delete() || !mDirectory.mkdir()) {
+            throw new IOException("Could not create " + mDirectory);
+        }
+        mHourLog = new File(mDirectory, "hour.tlog");
+        writeHour();
+        mReader = new SessionLogReader(mHourLog);
+        mRandom = new Random(SEED);
+        mCsvBytes = csvHour();
+    }
+
+    @Setup(Level.Iteration)
+    public void openAppendWriter() throws IOException {
+        mAppendWriter = new SessionLogWriter(new File(mDirectory, "append.tlog"), CAPACITY);
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeAppendWriter() throws IOException {
+        mAppendWriter.close();
+        mDropped += mAppendWriter.getDroppedRecords();
+        //the next iteration starts with an empty log
+        if (!mAppendWriter.getFile().delete()) {
+            throw new IOException("Could not delete " + mAppendWriter.getFile());
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public boolean append() {
+        mAppended++;
+        return mAppendWriter.append(System.nanoTime(), 440.5f, 0.95f, 1.97f, 57);
+    }
+
+    /**
+     * Writes an hour of frames of a slowly drifting note to the hour's log, waiting whenever the
+     * buffer is full so none are dropped
+     *
+     * @return long. The number of records in the log
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long writeHour() throws IOException {
+        if (mHourLog.exists() && !mHourLog.delete()) {
+            throw new IOException("Could not delete " + mHourLog);
+        }
+        SessionLogWriter writer = new SessionLogWriter(mHourLog, CAPACITY);
+        long start = System.nanoTime();
+        for (int i = 0; i < HOUR_RECORDS; i++) {
+            long timestamp = start + (long) (i * 1e9 / FRAMES_PER_SECOND);
+            float cents = (float) (10 * Math.sin(i * 1e-3));
+            float hertz = (float) (440 * Math.pow(2, cents / 1200));
+            while (!writer.append(timestamp, hertz, 0.9f, cents, 57)) {
+                Thread.yield();
+            }
+        }
+        writer.close();
+        return writer.getRecordsWritten();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public double scanHour() {
+        double totalCents = 0;
+        int count = mReader.getRecordCount();
+        for (int i = 0; i < count; i++) {
+            if (mReader.getNoteIndex(i) >= 0) {
+                totalCents += mReader.getCents(i);
+            }
+        }
+        return totalCents;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public float seek() {
+        long nanos = (long) (mRandom.nextDouble() * 3600e9);
+        int record = Math.min(mReader.findRecord(nanos), mReader.getRecordCount() - 1);
+        return mReader.getHertz(record);
+    }
+
+    /**
+     * @return long. The number of characters in the hour's log as CSV
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long csvHour() throws IOException {
+        CountingWriter writer = new CountingWriter();
+        mReader.writeCsv(writer);
+        return writer.mCount;
+    }
+
+    @TearDown(Level.Trial)
+    public void reportSize() {
+        System.out.println(String.format(Locale.US,
+                "%n[size] one hour at %.1f frames/s: %d records, log %d bytes (%.2f MB), CSV %d bytes "
+                        + "(%.2f MB, %.1f bytes per record); append dropped %.1f%% of %d calls",
+                FRAMES_PER_SECOND, mReader.getRecordCount(), mHourLog.length(), mHourLog.length() / 1e6,
+                mCsvBytes, mCsvBytes / 1e6, (double) mCsvBytes / mReader.getRecordCount(),
+                100.0 * mDropped / Math.max(1, mAppended), mAppended));
+        mHourLog.delete();
+        mDirectory.delete();
+    }
+
+    /**
+     * A {@link Writer} which only counts the characters written to it
+     */
+    private static class CountingWriter extends Writer {
+
+        private long mCount;
+
+        @Override
+        public void write(char[] _buffer, int _offset, int _length) {
+            mCount += _length;
+        }
+
+        @Override
+        public Writer append(CharSequence _chars) {
+            mCount += _chars.length();
+            return this;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
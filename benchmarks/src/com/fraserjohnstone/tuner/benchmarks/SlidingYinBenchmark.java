@@ -0,0 +1,145 @@
+package com.fraserjohnstone.tuner.benchmarks;
+
+import com.fraserjohnstone.tuner.audio.PitchDetectorFactory;
+import com.fraserjohnstone.tuner.audio.SlidingYinPitchDetector;
+import com.fraserjohnstone.tuner.audio.YinPitchDetector;
+import com.fraserjohnstone.tuner.utils.InstrumentProfile;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import be.tarsos.dsp.pitch.PitchDetector;
+
+/**
+ * Measures the CPU time needed to analyse one second of audio (ms per second of audio) with the
+ * sliding YIN detector ({@link SlidingYinPitchDetector}) and with the FFT YIN detector, for several
+ * hops between consecutive buffers. The FFT detector does the same work for every buffer, so its cost
+ * per second grows as the hop shrinks, while the sliding detector only works through the new samples
+ * of each buffer. CHEAPEST_YIN is the choice between the two made by
+ * {@link SlidingYinPitchDetector#CHEAPEST_YIN}, which the tuner uses.
+ * <p>
+ * When each trial ends the largest difference in cents from the pitches of the plain YIN detector on
+ * the same buffers is printed, which should be a small fraction of a cent.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SlidingYinBenchmark {
+
+    private static final float SAMPLE_RATE = 44100;
+    private static final double HERTZ = 110.0;
+
+    @Param({"FFT_YIN", "SLIDING_YIN", "CHEAPEST_YIN"})
+    public String detector;
+
+    @Param({"1024", "2048", "4096"})
+    public int bufferSize;
+
+    @Param({"64", "128", "256", "512"})
+    public int hop;
+
+    //GUITAR searches only the lags for the range of a guitar, which makes the sliding detector cheaper
+    @Param({"FULL", "GUITAR"})
+    public String range;
+
+    private PitchDetector mDetector;
+    private float[] mSignal;
+    private float[] mFrame;
+    private int mFrames;
+    //pitch found by the plain YIN detector in each buffer
+    private float[] mReferencePitches;
+
+    private double mMaxCentsFromReference;
+    private long mMismatchedFrames;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        float minHertz = 0;
+        float maxHertz = Float.MAX_VALUE;
+        if (range.equals("GUITAR")) {
+            minHertz = (float) InstrumentProfile.GUITAR_STANDARD.getMinHertz();
+            maxHertz = (float) InstrumentProfile.GUITAR_STANDARD.getMaxHertz();
+        }
+
+        PitchDetectorFactory factory = YinPitchDetector.FFT_YIN;
+        if (detector.equals("SLIDING_YIN")) {
+            factory = SlidingYinPitchDetector.SLIDING_YIN;
+        } else if (detector.equals("CHEAPEST_YIN")) {
+            factory = SlidingYinPitchDetector.CHEAPEST_YIN;
+        }
+        mDetector = factory.createDetector(SAMPLE_RATE, bufferSize, hop, minHertz, maxHertz);
+
+        mFrames = (int) (SAMPLE_RATE / hop);
+        mSignal = new float[bufferSize + hop * mFrames];
+        SyntheticSignal.NOISY.fill(mSignal, SAMPLE_RATE, HERTZ);
+        mFrame = new float[bufferSize];
+
+        PitchDetector reference = new YinPitchDetector(SAMPLE_RATE, bufferSize, minHertz, maxHertz, false);
+        mReferencePitches = new float[mFrames];
+        for (int i = 0; i < mFrames; i++) {
+            System.arraycopy(mSignal, i * hop, mFrame, 0, bufferSize);
+            mReferencePitches[i] = reference.getPitch(mFrame).getPitch();
+        }
+    }
+
+    /**
+     * Analyses one second of audio, a hop at a time, as the dispatcher would deliver it
+     */
+    @Benchmark
+    public float oneSecond() {
+        float total = 0;
+        for (int i = 0; i < mFrames; i++) {
+            System.arraycopy(mSignal, i * hop, mFrame, 0, bufferSize);
+            float pitch = mDetector.getPitch(mFrame).getPitch();
+            record(i, pitch);
+            total += pitch;
+        }
+        return total;
+    }
+
+    /**
+     * @param _frame int. The index of the buffer
+     * @param _pitch float. The pitch detected in the buffer, or -1
+     */
+    private void record(int _frame, float _pitch) {
+        float reference = mReferencePitches[_frame];
+        if ((_pitch > 0) != (reference > 0)) {
+            mMismatchedFrames++;
+        } else if (_pitch > 0) {
+            double cents = Math.abs(SyntheticSignal.centsError(_pitch, reference));
+            mMaxCentsFromReference = Math.max(mMaxCentsFromReference, cents);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void reportAccuracy() {
+        String updates = "";
+        if (mDetector instanceof SlidingYinPitchDetector) {
+            SlidingYinPitchDetector sliding = (SlidingYinPitchDetector) mDetector;
+            updates = String.format(Locale.US, ", %d blocks, %d sliding and %d full updates",
+                    bufferSize / 2 / sliding.getBlockSize(), sliding.getSlidingUpdates(),
+                    sliding.getFullUpdates());
+        }
+        System.out.println(String.format(Locale.US,
+                "%n[accuracy] %s buffer=%d hop=%d %s: max %.5f cents from YIN, "
+                        + "%d frames pitched differently%s",
+                detector, bufferSize, hop, range, mMaxCentsFromReference, mMismatchedFrames, updates));
+    }
+}
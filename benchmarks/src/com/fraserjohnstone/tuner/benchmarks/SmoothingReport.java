@@ -0,0 +1,182 @@
+package com.fraserjohnstone.tuner.benchmarks;
+
+import com.fraserjohnstone.tuner.audio.AnalysisSettings;
+import com.fraserjohnstone.tuner.audio.PitchSmoother;
+import com.fraserjohnstone.tuner.utils.InstrumentProfile;
+
+import java.util.Locale;
+
+import be.tarsos.dsp.AudioDispatcher;
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.pitch.PitchDetectionHandler;
+import be.tarsos.dsp.pitch.PitchDetectionResult;
+
+/**
+ * Reports how long the tuner's reading takes to settle within {@link #STABLE_CENTS} of a note,
+ * and how much it moves about once it has, for the raw output of the pitch detector and for the
+ * output of {@link PitchSmoother}. Each note is measured at the default overlap and at lower
+ * overlaps, which analyse less often.
+ * <p>
+ * Each note is played after a short silence through a real {@link AudioDispatcher} set up as the
+ * tuner sets it up with {@link InstrumentProfile#CHROMATIC}, and analysed by the chain of processors
+ * from {@link AnalysisSettings#createPitchChain}, so the raw reading is the refined pitch the tuner
+ * gives its smoother. The reading is stable from the end of the first buffer after which every
+ * reading until the end of the note is within {@link #STABLE_CENTS} of the note. Jitter is the
+ * standard deviation in cents of the reading over the last second of the note.
+ */
+public class SmoothingReport {
+
+    private static final int SAMPLE_RATE = AnalysisSettings.SAMPLE_RATE;
+    private static final InstrumentProfile PROFILE = InstrumentProfile.CHROMATIC;
+    private static final int BUFFER_SIZE = AnalysisSettings.getBufferSize(PROFILE, SAMPLE_RATE);
+    private static final double SILENCE_SECONDS = 0.25;
+    private static final double NOTE_SECONDS = 2;
+    private static final double JITTER_SECONDS = 1;
+
+    private static final double STABLE_CENTS = 1;
+
+    //E2 (guitar), A3, A4, E5 (violin)
+    private static final double[] NOTES = new double[]{82.41, 220.0, 440.0, 659.26};
+    private static final String[] NOTE_NAMES = new String[]{"E2", "A3", "A4", "E5"};
+
+    private static final int[] OVERLAPS = new int[]{AnalysisSettings.getOverlap(PROFILE, SAMPLE_RATE),
+            BUFFER_SIZE * 3 / 4, BUFFER_SIZE / 2};
+
+    private static final SyntheticSignal[] SIGNALS = new SyntheticSignal[]{
+            SyntheticSignal.HARMONIC, SyntheticSignal.NOISY};
+
+    public static void main(String[] _args) {
+        System.out.println("signal,note,hertz,overlap,raw_stable_ms,smoothed_stable_ms,"
+                + "raw_jitter_cents,smoothed_jitter_cents");
+        for (SyntheticSignal signal : SIGNALS) {
+            for (int i = 0; i < NOTES.length; i++) {
+                float[] audio = createAudio(signal, NOTES[i]);
+                for (int overlap : OVERLAPS) {
+                    Readings readings = analyse(audio, overlap);
+                    System.out.println(String.format(Locale.US, "%s,%s,%.2f,%d,%s,%s,%.3f,%.3f",
+                            signal, NOTE_NAMES[i], NOTES[i], overlap,
+                            format(readings.timeToStable(readings.mRaw, NOTES[i])),
+                            format(readings.timeToStable(readings.mSmoothed, NOTES[i])),
+                            readings.jitter(readings.mRaw, NOTES[i]),
+                            readings.jitter(readings.mSmoothed, NOTES[i])));
+                }
+            }
+        }
+    }
+
+    private static String format(double _millis) {
+        return _millis < 0 ? "never" : String.format(Locale.US, "%.1f", _millis);
+    }
+
+    /**
+     * @return float[]. Silence followed by _signal at _hertz
+     */
+    private static float[] createAudio(SyntheticSignal _signal, double _hertz) {
+        int silence = (int) (SILENCE_SECONDS * SAMPLE_RATE);
+        float[] note = new float[(int) (NOTE_SECONDS * SAMPLE_RATE)];
+        _signal.fill(note, SAMPLE_RATE, _hertz);
+        float[] audio = new float[silence + note.length];
+        System.arraycopy(note, 0, audio, silence, note.length);
+        return audio;
+    }
+
+    /**
+     * Runs the tuner's analysis over _audio, recording the raw and smoothed reading after every
+     * analysed buffer
+     */
+    private static Readings analyse(float[] _audio, int _overlap) {
+        final int hop = BUFFER_SIZE - _overlap;
+        final Readings readings = new Readings(_audio.length / hop + 1);
+        final PitchSmoother smoother = new PitchSmoother((float) hop / SAMPLE_RATE);
+
+        AudioDispatcher dispatcher = WindowLatencyReport.createDispatcher(_audio, BUFFER_SIZE, _overlap);
+        AudioProcessor[] chain = AnalysisSettings.createPitchChain(SAMPLE_RATE, PROFILE,
+                new PitchDetectionHandler() {
+                    //the raw reading is held through unpitched frames, as the tuner's was
+                    private double mRawHertz = -1;
+
+                    @Override
+                    public void handlePitch(PitchDetectionResult _result, AudioEvent _audioEvent) {
+                        long processed = _audioEvent.getSamplesProcessed();
+                        long bufferEnd = processed + (processed == 0 ? BUFFER_SIZE : hop);
+
+                        float pitch = _result.getPitch();
+                        if (pitch > 0) {
+                            mRawHertz = pitch;
+                        }
+                        smoother.update(pitch, _result.getProbability());
+                        readings.add(bufferEnd, mRawHertz, smoother.hasPitch() ? smoother.getHertz() : -1);
+                    }
+                });
+        for (int i = 0; i < chain.length; i++) {
+            dispatcher.addAudioProcessor(chain[i]);
+        }
+        dispatcher.run();
+        return readings;
+    }
+
+    /**
+     * The readings made after every analysed buffer of one note
+     */
+    private static class Readings {
+
+        private final long[] mBufferEnd;
+        private final double[] mRaw;
+        private final double[] mSmoothed;
+        private int mSize;
+
+        Readings(int _capacity) {
+            mBufferEnd = new long[_capacity];
+            mRaw = new double[_capacity];
+            mSmoothed = new double[_capacity];
+        }
+
+        void add(long _bufferEnd, double _raw, double _smoothed) {
+            mBufferEnd[mSize] = _bufferEnd;
+            mRaw[mSize] = _raw;
+            mSmoothed[mSize] = _smoothed;
+            mSize++;
+        }
+
+        /**
+         * @return double. Milliseconds from the onset until _hertz stays within STABLE_CENTS of
+         * _actualHertz, or -1 if it never does
+         */
+        double timeToStable(double[] _hertz, double _actualHertz) {
+            long onset = (long) (SILENCE_SECONDS * SAMPLE_RATE);
+            int first = mSize;
+            while (first > 0 && _hertz[first - 1] > 0
+                    && Math.abs(SyntheticSignal.centsError(_hertz[first - 1], _actualHertz)) <= STABLE_CENTS) {
+                first--;
+            }
+            if (first == mSize) {
+                return -1;
+            }
+            return Math.max(0, mBufferEnd[first] - onset) * 1000.0 / SAMPLE_RATE;
+        }
+
+        /**
+         * @return double. The standard deviation in cents of _hertz over the last JITTER_SECONDS
+         */
+        double jitter(double[] _hertz, double _actualHertz) {
+            long from = mBufferEnd[mSize - 1] - (long) (JITTER_SECONDS * SAMPLE_RATE);
+            double sum = 0;
+            double sumOfSquares = 0;
+            int count = 0;
+            for (int i = 0; i < mSize; i++) {
+                if (mBufferEnd[i] >= from && _hertz[i] > 0) {
+                    double cents = SyntheticSignal.centsError(_hertz[i], _actualHertz);
+                    sum += cents;
+                    sumOfSquares += cents * cents;
+                    count++;
+                }
+            }
+            if (count == 0) {
+                return Double.NaN;
+            }
+            double mean = sum / count;
+            return Math.sqrt(Math.max(0, sumOfSquares / count - mean * mean));
+        }
+    }
+}
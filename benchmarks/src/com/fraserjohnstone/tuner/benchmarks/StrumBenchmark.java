@@ -0,0 +1,242 @@
+package com.fraserjohnstone.tuner.benchmarks;
+
+import com.fraserjohnstone.tuner.audio.AnalysisSettings;
+import com.fraserjohnstone.tuner.audio.StrumHandler;
+import com.fraserjohnstone.tuner.audio.StrumResult;
+import com.fraserjohnstone.tuner.utils.InstrumentProfile;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+import be.tarsos.dsp.pitch.PitchDetectionHandler;
+import be.tarsos.dsp.pitch.PitchDetectionResult;
+import be.tarsos.dsp.pitch.PitchProcessor;
+
+/**
+ * Measures the processing time of one frame (one hop of audio) of a strummed chord in strum mode,
+ * which finds the pitch of every string, against the time the single pitch paths take for the same
+ * frame: the chain of processors the tuner finds a single pitch with when no instrument is chosen,
+ * from {@link AnalysisSettings#createPitchChain} with {@link InstrumentProfile#CHROMATIC} and so
+ * including the refinement of each pitch (CHROMATIC), and TarsosDSP's FFT_YIN with the buffer of
+ * 2048 samples at 44.1kHz the tuner started with (FFT_YIN). When a STRUM trial ends the error of each
+ * string in cents, the number of partials it was measured from and the fraction of frames it was
+ * found in are printed.
+ * <p>
+ * The chord is every open string of the instrument, strummed 10ms apart. Each string has 12
+ * harmonic partials with amplitudes falling as 1/n, random (seeded) phases, and decays faster the
+ * higher the partial, with white noise 40 dB below the chord. DETUNED moves each string by a
+ * different amount of up to 20 cents. The chord lasts {@link #CHORD_SECONDS} and is then strummed
+ * again.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StrumBenchmark {
+
+    private static final float SAMPLE_RATE = AnalysisSettings.SAMPLE_RATE;
+    private static final int HOP = AnalysisSettings.HOP_SIZE;
+    private static final double CHORD_SECONDS = 3;
+    private static final double STRUM_SECONDS = 0.01;
+    private static final int PARTIALS = 12;
+    private static final long SEED = 42;
+
+    //amount each string is moved by in a DETUNED chord, in string order, in cents
+    private static final double[] DETUNE_CENTS = {-20, 12, -7, 5, -15, 9};
+
+    //buffer of the single pitch FFT_YIN path
+    private static final int FFT_YIN_BUFFER_SIZE = 2048;
+
+    @Param({"GUITAR_STANDARD", "GUITAR_DROP_D", "BASS_4", "VIOLIN", "UKULELE"})
+    public String instrument;
+
+    @Param({"IN_TUNE", "DETUNED"})
+    public String chord;
+
+    @Param({"STRUM", "CHROMATIC", "FFT_YIN"})
+    public String path;
+
+    //the pitch each string is played at
+    private double[] mPlayedHertz;
+    private int mBufferSize;
+
+    //processors run on each frame, in order
+    private AudioProcessor[] mChain;
+    private AudioEvent mAudioEvent;
+    private float[] mSignal;
+    private float[] mBuffer;
+    private int mPosition;
+
+    //accuracy of each string, accumulated over the whole trial
+    private long mFrames;
+    private long[] mDetections;
+    private long[] mPartials;
+    private double[] mTotalAbsCents;
+    private double[] mMaxAbsCents;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        InstrumentProfile profile =
+                (InstrumentProfile) InstrumentProfile.class.getField(instrument).get(null);
+        double[] stringHertz = profile.getStringHertz();
+        mPlayedHertz = new double[stringHertz.length];
+        for (int i = 0; i < stringHertz.length; i++) {
+            double cents = chord.equals("DETUNED") ? DETUNE_CENTS[i % DETUNE_CENTS.length] : 0;
+            mPlayedHertz[i] = stringHertz[i] * Math.pow(2, cents / 1200);
+        }
+        mDetections = new long[stringHertz.length];
+        mPartials = new long[stringHertz.length];
+        mTotalAbsCents = new double[stringHertz.length];
+        mMaxAbsCents = new double[stringHertz.length];
+
+        PitchDetectionHandler pitchHandler = new PitchDetectionHandler() {
+            @Override
+            public void handlePitch(PitchDetectionResult _result, AudioEvent _audioEvent) {
+            }
+        };
+        if (path.equals("STRUM")) {
+            mBufferSize = AnalysisSettings.getStrumBufferSize(profile, SAMPLE_RATE);
+            mChain = new AudioProcessor[]{
+                    AnalysisSettings.createStrumDecimator(SAMPLE_RATE, profile),
+                    AnalysisSettings.createStrumProcessor(SAMPLE_RATE, profile, new StrumHandler() {
+                        @Override
+                        public void handleStrum(StrumResult _result, AudioEvent _audioEvent) {
+                            record(_result);
+                        }
+                    })
+            };
+        } else if (path.equals("CHROMATIC")) {
+            mBufferSize = AnalysisSettings.getBufferSize(InstrumentProfile.CHROMATIC, SAMPLE_RATE);
+            mChain = AnalysisSettings.createPitchChain(SAMPLE_RATE, InstrumentProfile.CHROMATIC,
+                    pitchHandler);
+        } else {
+            mBufferSize = FFT_YIN_BUFFER_SIZE;
+            mChain = new AudioProcessor[]{new PitchProcessor(PitchProcessor.PitchEstimationAlgorithm.FFT_YIN,
+                    SAMPLE_RATE, mBufferSize, pitchHandler)};
+        }
+
+        mSignal = strum(Math.max(mBufferSize, (int) (SAMPLE_RATE * CHORD_SECONDS)));
+        mBuffer = new float[mBufferSize];
+        mAudioEvent = new AudioEvent(new TarsosDSPAudioFormat(SAMPLE_RATE, 16, 1, true, false), -1);
+    }
+
+    /**
+     * @param _length int. The number of samples.
+     * @return float[]. One strum of every string of the chord, see the description of the class
+     */
+    private float[] strum(int _length) {
+        Random random = new Random(SEED);
+        double[] signal = new double[_length];
+        double peak = 0;
+        for (int string = 0; string < mPlayedHertz.length; string++) {
+            int start = (int) (string * STRUM_SECONDS * SAMPLE_RATE);
+            for (int n = 1; n <= PARTIALS; n++) {
+                double hertz = n * mPlayedHertz[string];
+                double phase = 2 * Math.PI * random.nextDouble();
+                if (hertz >= AnalysisSettings.MAX_HERTZ) {
+                    continue;
+                }
+                //higher partials die away sooner, as they do on a real string
+                double decayPerSecond = 0.5 + 0.1 * n;
+                for (int i = start; i < _length; i++) {
+                    double seconds = (i - start) / SAMPLE_RATE;
+                    signal[i] += Math.exp(-decayPerSecond * seconds) / n
+                            * Math.sin(2 * Math.PI * hertz * seconds + phase);
+                }
+            }
+        }
+        for (int i = 0; i < _length; i++) {
+            peak = Math.max(peak, Math.abs(signal[i]));
+        }
+
+        float[] samples = new float[_length];
+        for (int i = 0; i < _length; i++) {
+            double noise = 0.01 * (random.nextDouble() * 2 - 1);
+            samples[i] = (float) (0.5 * signal[i] / peak + noise);
+        }
+        return samples;
+    }
+
+    @Benchmark
+    public float oneFrame() {
+        nextBuffer();
+        mAudioEvent.setFloatBuffer(mBuffer);
+        for (int i = 0; i < mChain.length; i++) {
+            mChain[i].process(mAudioEvent);
+        }
+        return mAudioEvent.getFloatBuffer()[0];
+    }
+
+    /**
+     * Slides mBuffer along the signal by one hop, starting again with no overlap at the end of the
+     * signal
+     */
+    private void nextBuffer() {
+        if (mPosition == 0 || mPosition + HOP > mSignal.length) {
+            System.arraycopy(mSignal, 0, mBuffer, 0, mBufferSize);
+            mPosition = mBufferSize;
+            mAudioEvent.setOverlap(0);
+            return;
+        }
+        System.arraycopy(mBuffer, HOP, mBuffer, 0, mBufferSize - HOP);
+        System.arraycopy(mSignal, mPosition, mBuffer, mBufferSize - HOP, HOP);
+        mPosition += HOP;
+        mAudioEvent.setOverlap(mBufferSize - HOP);
+    }
+
+    /**
+     * @param _result {@link StrumResult}. The pitch of every string in one frame.
+     */
+    private void record(StrumResult _result) {
+        mFrames++;
+        for (int i = 0; i < mPlayedHertz.length; i++) {
+            if (!_result.isDetected(i)) {
+                continue;
+            }
+            double cents = Math.abs(SyntheticSignal.centsError(_result.getHertz(i), mPlayedHertz[i]));
+            mDetections[i]++;
+            mPartials[i] += _result.getPartials(i);
+            mTotalAbsCents[i] += cents;
+            mMaxAbsCents[i] = Math.max(mMaxAbsCents[i], cents);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void reportAccuracy() {
+        if (!path.equals("STRUM")) {
+            return;
+        }
+        StringBuilder strings = new StringBuilder();
+        for (int i = 0; i < mPlayedHertz.length; i++) {
+            strings.append(String.format(Locale.US,
+                    "%n  string %d (%.2fHz): mean |error| %.3f cents, max %.3f cents, %.1f partials,"
+                            + " found in %.1f%%",
+                    i + 1, mPlayedHertz[i],
+                    mDetections[i] > 0 ? mTotalAbsCents[i] / mDetections[i] : Double.NaN,
+                    mMaxAbsCents[i], mDetections[i] > 0 ? (double) mPartials[i] / mDetections[i] : 0,
+                    100.0 * mDetections[i] / Math.max(1, mFrames)));
+        }
+        System.out.println(String.format(Locale.US, "%n[accuracy] %s %s: buffer %d, %d frames%s",
+                instrument, chord, mBufferSize, mFrames, strings));
+    }
+}
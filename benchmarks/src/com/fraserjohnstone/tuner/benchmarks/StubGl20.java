@@ -0,0 +1,710 @@
+package com.fraserjohnstone.tuner.benchmarks;
+
+import com.badlogic.gdx.graphics.GL20;
+
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * A {@link GL20} which draws nothing, for running the app on the libGDX headless backend, which has
+ * no OpenGL. Every shader compiles and links, every object created has a name, and everything else
+ * returns zero, false or an empty string.
+ * <p>
+ * Each method is written out, rather than handled by a {@link java.lang.reflect.Proxy}, so that
+ * calling it allocates nothing: a proxy boxes the arguments of every call into a new array.
+ */
+class StubGl20 implements GL20 {
+
+    @Override
+    public void glActiveTexture(int _texture) {
+    }
+
+    @Override
+    public void glBindTexture(int _target, int _texture) {
+    }
+
+    @Override
+    public void glBlendFunc(int _sfactor, int _dfactor) {
+    }
+
+    @Override
+    public void glClear(int _mask) {
+    }
+
+    @Override
+    public void glClearColor(float _red, float _green, float _blue, float _alpha) {
+    }
+
+    @Override
+    public void glClearDepthf(float _depth) {
+    }
+
+    @Override
+    public void glClearStencil(int _s) {
+    }
+
+    @Override
+    public void glColorMask(boolean _red, boolean _green, boolean _blue, boolean _alpha) {
+    }
+
+    @Override
+    public void glCompressedTexImage2D(int _target, int _level, int _internalformat, int _width, int _height,
+                                       int _border, int _imageSize, Buffer _data) {
+    }
+
+    @Override
+    public void glCompressedTexSubImage2D(int _target, int _level, int _xoffset, int _yoffset, int _width,
+                                          int _height, int _format, int _imageSize, Buffer _data) {
+    }
+
+    @Override
+    public void glCopyTexImage2D(int _target, int _level, int _internalformat, int _x, int _y, int _width,
+                                 int _height, int _border) {
+    }
+
+    @Override
+    public void glCopyTexSubImage2D(int _target, int _level, int _xoffset, int _yoffset, int _x, int _y,
+                                    int _width, int _height) {
+    }
+
+    @Override
+    public void glCullFace(int _mode) {
+    }
+
+    @Override
+    public void glDeleteTextures(int _n, IntBuffer _textures) {
+    }
+
+    @Override
+    public void glDeleteTexture(int _texture) {
+    }
+
+    @Override
+    public void glDepthFunc(int _func) {
+    }
+
+    @Override
+    public void glDepthMask(boolean _flag) {
+    }
+
+    @Override
+    public void glDepthRangef(float _zNear, float _zFar) {
+    }
+
+    @Override
+    public void glDisable(int _cap) {
+    }
+
+    @Override
+    public void glDrawArrays(int _mode, int _first, int _count) {
+    }
+
+    @Override
+    public void glDrawElements(int _mode, int _count, int _type, Buffer _indices) {
+    }
+
+    @Override
+    public void glEnable(int _cap) {
+    }
+
+    @Override
+    public void glFinish() {
+    }
+
+    @Override
+    public void glFlush() {
+    }
+
+    @Override
+    public void glFrontFace(int _mode) {
+    }
+
+    @Override
+    public void glGenTextures(int _n, IntBuffer _textures) {
+    }
+
+    @Override
+    public int glGenTexture() {
+        return 1;
+    }
+
+    @Override
+    public int glGetError() {
+        return 0;
+    }
+
+    @Override
+    public void glGetIntegerv(int _pname, IntBuffer _params) {
+    }
+
+    @Override
+    public String glGetString(int _name) {
+        return "";
+    }
+
+    @Override
+    public void glHint(int _target, int _mode) {
+    }
+
+    @Override
+    public void glLineWidth(float _width) {
+    }
+
+    @Override
+    public void glPixelStorei(int _pname, int _param) {
+    }
+
+    @Override
+    public void glPolygonOffset(float _factor, float _units) {
+    }
+
+    @Override
+    public void glReadPixels(int _x, int _y, int _width, int _height, int _format, int _type,
+                             Buffer _pixels) {
+    }
+
+    @Override
+    public void glScissor(int _x, int _y, int _width, int _height) {
+    }
+
+    @Override
+    public void glStencilFunc(int _func, int _ref, int _mask) {
+    }
+
+    @Override
+    public void glStencilMask(int _mask) {
+    }
+
+    @Override
+    public void glStencilOp(int _fail, int _zfail, int _zpass) {
+    }
+
+    @Override
+    public void glTexImage2D(int _target, int _level, int _internalformat, int _width, int _height,
+                             int _border, int _format, int _type, Buffer _pixels) {
+    }
+
+    @Override
+    public void glTexParameterf(int _target, int _pname, float _param) {
+    }
+
+    @Override
+    public void glTexSubImage2D(int _target, int _level, int _xoffset, int _yoffset, int _width, int _height,
+                                int _format, int _type, Buffer _pixels) {
+    }
+
+    @Override
+    public void glViewport(int _x, int _y, int _width, int _height) {
+    }
+
+    @Override
+    public void glAttachShader(int _program, int _shader) {
+    }
+
+    @Override
+    public void glBindAttribLocation(int _program, int _index, String _name) {
+    }
+
+    @Override
+    public void glBindBuffer(int _target, int _buffer) {
+    }
+
+    @Override
+    public void glBindFramebuffer(int _target, int _framebuffer) {
+    }
+
+    @Override
+    public void glBindRenderbuffer(int _target, int _renderbuffer) {
+    }
+
+    @Override
+    public void glBlendColor(float _red, float _green, float _blue, float _alpha) {
+    }
+
+    @Override
+    public void glBlendEquation(int _mode) {
+    }
+
+    @Override
+    public void glBlendEquationSeparate(int _modeRGB, int _modeAlpha) {
+    }
+
+    @Override
+    public void glBlendFuncSeparate(int _srcRGB, int _dstRGB, int _srcAlpha, int _dstAlpha) {
+    }
+
+    @Override
+    public void glBufferData(int _target, int _size, Buffer _data, int _usage) {
+    }
+
+    @Override
+    public void glBufferSubData(int _target, int _offset, int _size, Buffer _data) {
+    }
+
+    @Override
+    public int glCheckFramebufferStatus(int _target) {
+        return 0;
+    }
+
+    @Override
+    public void glCompileShader(int _shader) {
+    }
+
+    @Override
+    public int glCreateProgram() {
+        return 1;
+    }
+
+    @Override
+    public int glCreateShader(int _type) {
+        return 1;
+    }
+
+    @Override
+    public void glDeleteBuffer(int _buffer) {
+    }
+
+    @Override
+    public void glDeleteBuffers(int _n, IntBuffer _buffers) {
+    }
+
+    @Override
+    public void glDeleteFramebuffer(int _framebuffer) {
+    }
+
+    @Override
+    public void glDeleteFramebuffers(int _n, IntBuffer _framebuffers) {
+    }
+
+    @Override
+    public void glDeleteProgram(int _program) {
+    }
+
+    @Override
+    public void glDeleteRenderbuffer(int _renderbuffer) {
+    }
+
+    @Override
+    public void glDeleteRenderbuffers(int _n, IntBuffer _renderbuffers) {
+    }
+
+    @Override
+    public void glDeleteShader(int _shader) {
+    }
+
+    @Override
+    public void glDetachShader(int _program, int _shader) {
+    }
+
+    @Override
+    public void glDisableVertexAttribArray(int _index) {
+    }
+
+    @Override
+    public void glDrawElements(int _mode, int _count, int _type, int _indices) {
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int _index) {
+    }
+
+    @Override
+    public void glFramebufferRenderbuffer(int _target, int _attachment, int _renderbuffertarget,
+                                          int _renderbuffer) {
+    }
+
+    @Override
+    public void glFramebufferTexture2D(int _target, int _attachment, int _textarget, int _texture,
+                                       int _level) {
+    }
+
+    @Override
+    public int glGenBuffer() {
+        return 1;
+    }
+
+    @Override
+    public void glGenBuffers(int _n, IntBuffer _buffers) {
+    }
+
+    @Override
+    public void glGenerateMipmap(int _target) {
+    }
+
+    @Override
+    public int glGenFramebuffer() {
+        return 1;
+    }
+
+    @Override
+    public void glGenFramebuffers(int _n, IntBuffer _framebuffers) {
+    }
+
+    @Override
+    public int glGenRenderbuffer() {
+        return 1;
+    }
+
+    @Override
+    public void glGenRenderbuffers(int _n, IntBuffer _renderbuffers) {
+    }
+
+    @Override
+    public String glGetActiveAttrib(int _program, int _index, IntBuffer _size, Buffer _type) {
+        return "";
+    }
+
+    @Override
+    public String glGetActiveUniform(int _program, int _index, IntBuffer _size, Buffer _type) {
+        return "";
+    }
+
+    @Override
+    public void glGetAttachedShaders(int _program, int _maxcount, Buffer _count, IntBuffer _shaders) {
+    }
+
+    @Override
+    public int glGetAttribLocation(int _program, String _name) {
+        return 0;
+    }
+
+    @Override
+    public void glGetBooleanv(int _pname, Buffer _params) {
+    }
+
+    @Override
+    public void glGetBufferParameteriv(int _target, int _pname, IntBuffer _params) {
+    }
+
+    @Override
+    public void glGetFloatv(int _pname, FloatBuffer _params) {
+    }
+
+    @Override
+    public void glGetFramebufferAttachmentParameteriv(int _target, int _attachment, int _pname,
+                                                      IntBuffer _params) {
+    }
+
+    @Override
+    public void glGetProgramiv(int _program, int _pname, IntBuffer _params) {
+        //every shader compiles and links
+        boolean succeeded = _pname == GL_COMPILE_STATUS || _pname == GL_LINK_STATUS;
+        _params.put(0, succeeded ? 1 : 0);
+    }
+
+    @Override
+    public String glGetProgramInfoLog(int _program) {
+        return "";
+    }
+
+    @Override
+    public void glGetRenderbufferParameteriv(int _target, int _pname, IntBuffer _params) {
+    }
+
+    @Override
+    public void glGetShaderiv(int _shader, int _pname, IntBuffer _params) {
+        //every shader compiles and links
+        boolean succeeded = _pname == GL_COMPILE_STATUS || _pname == GL_LINK_STATUS;
+        _params.put(0, succeeded ? 1 : 0);
+    }
+
+    @Override
+    public String glGetShaderInfoLog(int _shader) {
+        return "";
+    }
+
+    @Override
+    public void glGetShaderPrecisionFormat(int _shadertype, int _precisiontype, IntBuffer _range,
+                                           IntBuffer _precision) {
+    }
+
+    @Override
+    public void glGetTexParameterfv(int _target, int _pname, FloatBuffer _params) {
+    }
+
+    @Override
+    public void glGetTexParameteriv(int _target, int _pname, IntBuffer _params) {
+    }
+
+    @Override
+    public void glGetUniformfv(int _program, int _location, FloatBuffer _params) {
+    }
+
+    @Override
+    public void glGetUniformiv(int _program, int _location, IntBuffer _params) {
+    }
+
+    @Override
+    public int glGetUniformLocation(int _program, String _name) {
+        return 0;
+    }
+
+    @Override
+    public void glGetVertexAttribfv(int _index, int _pname, FloatBuffer _params) {
+    }
+
+    @Override
+    public void glGetVertexAttribiv(int _index, int _pname, IntBuffer _params) {
+    }
+
+    @Override
+    public void glGetVertexAttribPointerv(int _index, int _pname, Buffer _pointer) {
+    }
+
+    @Override
+    public boolean glIsBuffer(int _buffer) {
+        return false;
+    }
+
+    @Override
+    public boolean glIsEnabled(int _cap) {
+        return false;
+    }
+
+    @Override
+    public boolean glIsFramebuffer(int _framebuffer) {
+        return false;
+    }
+
+    @Override
+    public boolean glIsProgram(int _program) {
+        return false;
+    }
+
+    @Override
+    public boolean glIsRenderbuffer(int _renderbuffer) {
+        return false;
+    }
+
+    @Override
+    public boolean glIsShader(int _shader) {
+        return false;
+    }
+
+    @Override
+    public boolean glIsTexture(int _texture) {
+        return false;
+    }
+
+    @Override
+    public void glLinkProgram(int _program) {
+    }
+
+    @Override
+    public void glReleaseShaderCompiler() {
+    }
+
+    @Override
+    public void glRenderbufferStorage(int _target, int _internalformat, int _width, int _height) {
+    }
+
+    @Override
+    public void glSampleCoverage(float _value, boolean _invert) {
+    }
+
+    @Override
+    public void glShaderBinary(int _n, IntBuffer _shaders, int _binaryformat, Buffer _binary, int _length) {
+    }
+
+    @Override
+    public void glShaderSource(int _shader, String _string) {
+    }
+
+    @Override
+    public void glStencilFuncSeparate(int _face, int _func, int _ref, int _mask) {
+    }
+
+    @Override
+    public void glStencilMaskSeparate(int _face, int _mask) {
+    }
+
+    @Override
+    public void glStencilOpSeparate(int _face, int _fail, int _zfail, int _zpass) {
+    }
+
+    @Override
+    public void glTexParameterfv(int _target, int _pname, FloatBuffer _params) {
+    }
+
+    @Override
+    public void glTexParameteri(int _target, int _pname, int _param) {
+    }
+
+    @Override
+    public void glTexParameteriv(int _target, int _pname, IntBuffer _params) {
+    }
+
+    @Override
+    public void glUniform1f(int _location, float _x) {
+    }
+
+    @Override
+    public void glUniform1fv(int _location, int _count, FloatBuffer _v) {
+    }
+
+    @Override
+    public void glUniform1fv(int _location, int _count, float[] _v, int _offset) {
+    }
+
+    @Override
+    public void glUniform1i(int _location, int _x) {
+    }
+
+    @Override
+    public void glUniform1iv(int _location, int _count, IntBuffer _v) {
+    }
+
+    @Override
+    public void glUniform1iv(int _location, int _count, int[] _v, int _offset) {
+    }
+
+    @Override
+    public void glUniform2f(int _location, float _x, float _y) {
+    }
+
+    @Override
+    public void glUniform2fv(int _location, int _count, FloatBuffer _v) {
+    }
+
+    @Override
+    public void glUniform2fv(int _location, int _count, float[] _v, int _offset) {
+    }
+
+    @Override
+    public void glUniform2i(int _location, int _x, int _y) {
+    }
+
+    @Override
+    public void glUniform2iv(int _location, int _count, IntBuffer _v) {
+    }
+
+    @Override
+    public void glUniform2iv(int _location, int _count, int[] _v, int _offset) {
+    }
+
+    @Override
+    public void glUniform3f(int _location, float _x, float _y, float _z) {
+    }
+
+    @Override
+    public void glUniform3fv(int _location, int _count, FloatBuffer _v) {
+    }
+
+    @Override
+    public void glUniform3fv(int _location, int _count, float[] _v, int _offset) {
+    }
+
+    @Override
+    public void glUniform3i(int _location, int _x, int _y, int _z) {
+    }
+
+    @Override
+    public void glUniform3iv(int _location, int _count, IntBuffer _v) {
+    }
+
+    @Override
+    public void glUniform3iv(int _location, int _count, int[] _v, int _offset) {
+    }
+
+    @Override
+    public void glUniform4f(int _location, float _x, float _y, float _z, float _w) {
+    }
+
+    @Override
+    public void glUniform4fv(int _location, int _count, FloatBuffer _v) {
+    }
+
+    @Override
+    public void glUniform4fv(int _location, int _count, float[] _v, int _offset) {
+    }
+
+    @Override
+    public void glUniform4i(int _location, int _x, int _y, int _z, int _w) {
+    }
+
+    @Override
+    public void glUniform4iv(int _location, int _count, IntBuffer _v) {
+    }
+
+    @Override
+    public void glUniform4iv(int _location, int _count, int[] _v, int _offset) {
+    }
+
+    @Override
+    public void glUniformMatrix2fv(int _location, int _count, boolean _transpose, FloatBuffer _value) {
+    }
+
+    @Override
+    public void glUniformMatrix2fv(int _location, int _count, boolean _transpose, float[] _value,
+                                   int _offset) {
+    }
+
+    @Override
+    public void glUniformMatrix3fv(int _location, int _count, boolean _transpose, FloatBuffer _value) {
+    }
+
+    @Override
+    public void glUniformMatrix3fv(int _location, int _count, boolean _transpose, float[] _value,
+                                   int _offset) {
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int _location, int _count, boolean _transpose, FloatBuffer _value) {
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int _location, int _count, boolean _transpose, float[] _value,
+                                   int _offset) {
+    }
+
+    @Override
+    public void glUseProgram(int _program) {
+    }
+
+    @Override
+    public void glValidateProgram(int _program) {
+    }
+
+    @Override
+    public void glVertexAttrib1f(int _indx, float _x) {
+    }
+
+    @Override
+    public void glVertexAttrib1fv(int _indx, FloatBuffer _values) {
+    }
+
+    @Override
+    public void glVertexAttrib2f(int _indx, float _x, float _y) {
+    }
+
+    @Override
+    public void glVertexAttrib2fv(int _indx, FloatBuffer _values) {
+    }
+
+    @Override
+    public void glVertexAttrib3f(int _indx, float _x, float _y, float _z) {
+    }
+
+    @Override
+    public void glVertexAttrib3fv(int _indx, FloatBuffer _values) {
+    }
+
+    @Override
+    public void glVertexAttrib4f(int _indx, float _x, float _y, float _z, float _w) {
+    }
+
+    @Override
+    public void glVertexAttrib4fv(int _indx, FloatBuffer _values) {
+    }
+
+    @Override
+    public void glVertexAttribPointer(int _index, int _size, int _type, boolean _normalized, int _stride,
+                                      Buffer _ptr) {
+    }
+
+    @Override
+    public void glVertexAttribPointer(int _index, int _size, int _type, boolean _normalized, int _stride,
+                                      int _ptr) {
+    }
+}
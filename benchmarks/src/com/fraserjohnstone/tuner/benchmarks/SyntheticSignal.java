@@ -0,0 +1,55 @@
+package com.fraserjohnstone.tuner.benchmarks;
+
+import java.util.Random;
+
+/**
+ * Test signals used by the benchmarks. Every signal is generated from a fixed seed so that runs
+ * can be compared with each other.
+ */
+public enum SyntheticSignal {
+    //a pure sine wave
+    SINE,
+    //a fundamental with decaying harmonics, closer to a plucked or bowed string
+    HARMONIC,
+    //the harmonic signal with white noise 20 dB below it
+    NOISY;
+
+    private static final long SEED = 42;
+
+    /**
+     * Fills _out with this signal.
+     *
+     * @param _out        float[]. Receives the samples, in the range -1 to 1.
+     * @param _sampleRate float. The sample rate in hertz.
+     * @param _hertz      double. The fundamental frequency in hertz.
+     */
+    public void fill(float[] _out, float _sampleRate, double _hertz) {
+        Random random = new Random(SEED);
+        double phaseStep = 2 * Math.PI * _hertz / _sampleRate;
+        for (int i = 0; i < _out.length; i++) {
+            double sample;
+            if (this == SINE) {
+                sample = 0.5 * Math.sin(phaseStep * i);
+            } else {
+                sample = 0;
+                for (int harmonic = 1; harmonic <= 6; harmonic++) {
+                    sample += (0.5 / harmonic) * Math.sin(phaseStep * harmonic * i);
+                }
+                sample *= 0.5;
+                if (this == NOISY) {
+                    sample += 0.05 * (random.nextDouble() * 2 - 1);
+                }
+            }
+            _out[i] = (float) sample;
+        }
+    }
+
+    /**
+     * @param _detectedHertz double. The detected pitch
+     * @param _actualHertz   double. The pitch of the generated signal
+     * @return double. The error of the detected pitch in cents
+     */
+    public static double centsError(double _detectedHertz, double _actualHertz) {
+        return 1200 * Math.log(_detectedHertz / _actualHertz) / Math.log(2);
+    }
+}
@@ -0,0 +1,303 @@
+package com.fraserjohnstone.tuner.benchmarks;
+
+import com.badlogic.gdx.ApplicationListener;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Graphics;
+import com.badlogic.gdx.Screen;
+import com.badlogic.gdx.backends.headless.HeadlessApplication;
+import com.badlogic.gdx.backends.headless.HeadlessApplicationConfiguration;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.fraserjohnstone.tuner.Tuner;
+import com.fraserjohnstone.tuner.audio.AudioSource;
+import com.fraserjohnstone.tuner.audio.SyntheticAudioSource;
+import com.fraserjohnstone.tuner.audio.ToneGenerator;
+import com.fraserjohnstone.tuner.screens.SplashScreen;
+import com.fraserjohnstone.tuner.screens.TunerScreen;
+import com.fraserjohnstone.tuner.utils.ActionResolver;
+import com.fraserjohnstone.tuner.utils.InstrumentProfile;
+import com.fraserjohnstone.tuner.utils.StartupTimer;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the app on the libGDX headless backend, with a synthetic note in place of the microphone,
+ * and exits with status 1 unless every frame of the tuner screen is drawn with one draw call from
+ * one texture, as counted by {@link com.fraserjohnstone.tuner.utils.InstrumentedSpriteBatch}, and
+ * without allocating anything, so that it can be run on a build server.
+ * <p>
+ * The headless backend has no OpenGL, so Gdx.gl is replaced by a {@link StubGl20}, and the screen is
+ * given the size of a phone. The textures are loaded from android/assets as the app loads them, so
+ * the textures module must have made them first (the Gradle task depends on it).
+ * <p>
+ * The allocations are counted with the allocated bytes of the render thread, as the HotSpot JVM
+ * reports them, over {@link TunerScreen#render(float)}, which runs the screen's update() and
+ * present(): the note finding, the readout text, the sprites and the batch. The frames of every mode
+ * are counted, so the count includes the code before it has been compiled.
+ * <p>
+ * The modes are not started until the pitch detector for the device has been chosen, as choosing it
+ * restarts the tuner. Each {@link Mode} is then shown for {@link #SETTLE_FRAMES} frames, while the
+ * tuner restarts, and checked for {@link #CHECKED_FRAMES} frames. One line of CSV is printed for
+ * each mode.
+ */
+public class TunerScreenBatchReport {
+
+    private static final int SCREEN_WIDTH = 1080;
+    private static final int SCREEN_HEIGHT = 1920;
+    private static final float RENDER_INTERVAL = 1f / 60;
+    private static final int SETTLE_FRAMES = 30;
+    private static final int CHECKED_FRAMES = 120;
+    //longest the app is given to load and show every mode
+    private static final long TIMEOUT_SECONDS = 120;
+
+    //the note played, the G string of a guitar so that strum mode finds it
+    private static final double NOTE_HERTZ = 196.0;
+    private static final double NOTE_SECONDS = 20;
+    private static final long SEED = 42;
+
+    /**
+     * The ways the tuner screen is drawn, each of which is checked
+     */
+    enum Mode {
+        //the note wheel and the how sharp or flat bars
+        NEEDLE,
+        //the strobe bars and the offset to a tenth of a cent
+        STROBE,
+        //every string of a guitar
+        STRUM,
+        //the note wheel with the latency overlay on top
+        LATENCY_OVERLAY
+    }
+
+    public static void main(String[] _args) throws InterruptedException {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            System.out.println("# allocated bytes can not be counted on this JVM");
+            System.out.println("# FAILED");
+            System.exit(1);
+        }
+        ReportListener listener = new ReportListener();
+        HeadlessApplicationConfiguration config = new HeadlessApplicationConfiguration();
+        config.renderInterval = RENDER_INTERVAL;
+        new HeadlessApplication(listener, config);
+
+        boolean finished = listener.mFinished.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        boolean passed = finished && listener.mPassed;
+        if (!finished) {
+            System.out.println("# the tuner screen was not shown in every mode within " + TIMEOUT_SECONDS
+                    + " s");
+        }
+        System.out.println(passed ? "# passed" : "# FAILED");
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * Runs the {@link Tuner}, and once it shows the tuner screen moves through every {@link Mode},
+     * counting the frames whose batch took more than one draw call or texture
+     */
+    private static class ReportListener implements ApplicationListener {
+        private final Tuner mTuner = new Tuner(new ReportActionResolver());
+        private final CountDownLatch mFinished = new CountDownLatch(1);
+        private volatile boolean mPassed = true;
+
+        private com.sun.management.ThreadMXBean mThreads;
+        private long mRenderThread;
+        //what counting the allocated bytes itself allocates, which is not the screen's doing
+        private long mCountingOverhead;
+
+        private int mMode = -1;
+        private int mModeFrames;
+        private int mMaxRenderCalls;
+        private int mMaxTextureSwitches;
+        private long mAllocatedBytes;
+        private int mFailedFrames;
+
+        @Override
+        public void create() {
+            mThreads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            mRenderThread = Thread.currentThread().getId();
+            long before = mThreads.getThreadAllocatedBytes(mRenderThread);
+            mCountingOverhead = mThreads.getThreadAllocatedBytes(mRenderThread) - before;
+
+            Gdx.gl = new StubGl20();
+            Gdx.gl20 = Gdx.gl;
+            Gdx.graphics = (Graphics) Proxy.newProxyInstance(Graphics.class.getClassLoader(),
+                    new Class[]{Graphics.class}, new PhoneGraphics(Gdx.graphics));
+            //the stub reports no uniforms, which is not an error here
+            ShaderProgram.pedantic = false;
+
+            System.out.println("mode,frames,max_render_calls,max_texture_switches,allocated_bytes,"
+                    + "failed_frames,passed");
+            mTuner.create();
+            //as Android does straight after creating the app, which asks for permission to record
+            mTuner.resume();
+        }
+
+        @Override
+        public void render() {
+            Screen screen = mTuner.getScreen();
+            if (!(screen instanceof TunerScreen) || mMode >= Mode.values().length
+                    || (mMode < 0 && StartupTimer.getMillis(StartupTimer.Milestone.DETECTOR_CHOSEN) < 0)) {
+                mTuner.render();
+                return;
+            }
+            TunerScreen tunerScreen = (TunerScreen) screen;
+            if (mMode < 0 || mModeFrames == SETTLE_FRAMES + CHECKED_FRAMES) {
+                if (mMode >= 0) {
+                    finishMode();
+                }
+                mMode++;
+                mModeFrames = 0;
+                if (mMode == Mode.values().length) {
+                    mFinished.countDown();
+                    Gdx.app.exit();
+                    return;
+                }
+                startMode(tunerScreen, Mode.values()[mMode]);
+            }
+
+            //what Game.render() does. The time since the last frame is read before counting, as the
+            //graphics are a proxy which allocates, so that only the screen's own frame is counted
+            float delta = Gdx.graphics.getDeltaTime();
+            long before = mThreads.getThreadAllocatedBytes(mRenderThread);
+            tunerScreen.render(delta);
+            long allocated = mThreads.getThreadAllocatedBytes(mRenderThread) - before - mCountingOverhead;
+
+            if (mModeFrames++ < SETTLE_FRAMES) {
+                return;
+            }
+            int renderCalls = tunerScreen.getRenderCalls();
+            int textureSwitches = tunerScreen.getTextureSwitches();
+            mMaxRenderCalls = Math.max(mMaxRenderCalls, renderCalls);
+            mMaxTextureSwitches = Math.max(mMaxTextureSwitches, textureSwitches);
+            mAllocatedBytes += Math.max(allocated, 0);
+            if (renderCalls != 1 || textureSwitches != 1 || allocated > 0) {
+                mFailedFrames++;
+            }
+        }
+
+        /**
+         * Changes the settings of _screen to those of _mode. The changes are picked up by the next
+         * frame.
+         */
+        private void startMode(TunerScreen _screen, Mode _mode) {
+            mMaxRenderCalls = 0;
+            mMaxTextureSwitches = 0;
+            mAllocatedBytes = 0;
+            mFailedFrames = 0;
+            _screen.setStrobeMode(_mode == Mode.STROBE);
+            _screen.setStrumMode(_mode == Mode.STRUM);
+            _screen.setInstrumentProfile(_mode == Mode.STRUM ? InstrumentProfile.GUITAR_STANDARD
+                    : InstrumentProfile.CHROMATIC);
+            _screen.setLatencyOverlayVisible(_mode == Mode.LATENCY_OVERLAY);
+        }
+
+        private void finishMode() {
+            boolean passed = mFailedFrames == 0 && mMaxRenderCalls == 1 && mMaxTextureSwitches == 1
+                    && mAllocatedBytes == 0;
+            mPassed &= passed;
+            System.out.println(String.format(Locale.US, "%s,%d,%d,%d,%d,%d,%b", Mode.values()[mMode],
+                    CHECKED_FRAMES, mMaxRenderCalls, mMaxTextureSwitches, mAllocatedBytes, mFailedFrames,
+                    passed));
+        }
+
+        @Override
+        public void resize(int _width, int _height) {
+            mTuner.resize(_width, _height);
+        }
+
+        @Override
+        public void pause() {
+            mTuner.pause();
+        }
+
+        @Override
+        public void resume() {
+            mTuner.resume();
+        }
+
+        @Override
+        public void dispose() {
+            mTuner.dispose();
+            if (mMode < Mode.values().length) {
+                //the app was closed before every mode was shown
+                mPassed = false;
+                mFinished.countDown();
+            }
+        }
+    }
+
+    /**
+     * Grants permission to record straight away, and plays a synthetic note in place of the
+     * microphone
+     */
+    private static class ReportActionResolver implements ActionResolver {
+        @Override
+        public void requestPermissions(SplashScreen _splashScreen) {
+            _splashScreen.setScreenChangeAllowed(true);
+        }
+
+        @Override
+        public String getAppVersion() {
+            return TunerScreenBatchReport.class.getSimpleName();
+        }
+
+        @Override
+        public String getDeviceName() {
+            return "headless";
+        }
+
+        @Override
+        public AudioSource createAudioSource() {
+            ToneGenerator generator = new ToneGenerator(NOTE_HERTZ, SEED);
+            generator.setHarmonics(4);
+            return new SyntheticAudioSource(generator, NOTE_SECONDS);
+        }
+    }
+
+    /**
+     * The graphics of the headless backend, with the size of a phone's screen and no texture
+     * compression. Continuous rendering is left on, as nothing else would ask for frames, and requests
+     * for a frame are ignored.
+     */
+    private static class PhoneGraphics implements InvocationHandler {
+        private final Graphics mGraphics;
+
+        PhoneGraphics(Graphics _graphics) {
+            mGraphics = _graphics;
+        }
+
+        @Override
+        public Object invoke(Object _proxy, Method _method, Object[] _args) throws Throwable {
+            String name = _method.getName();
+            if (name.equals("getWidth") || name.equals("getBackBufferWidth")) {
+                return SCREEN_WIDTH;
+            }
+            if (name.equals("getHeight") || name.equals("getBackBufferHeight")) {
+                return SCREEN_HEIGHT;
+            }
+            if (name.equals("getGL20")) {
+                return Gdx.gl20;
+            }
+            if (name.equals("supportsExtension")) {
+                return false;
+            }
+            if (name.equals("setContinuousRendering") || name.equals("requestRendering")) {
+                return null;
+            }
+            if (name.equals("isContinuousRendering")) {
+                return true;
+            }
+            try {
+                return _method.invoke(mGraphics, _args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
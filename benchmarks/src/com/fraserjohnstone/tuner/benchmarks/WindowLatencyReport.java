@@ -0,0 +1,143 @@
+package com.fraserjohnstone.tuner.benchmarks;
+
+import com.fraserjohnstone.tuner.audio.AdaptiveWindowPitchProcessor;
+import com.fraserjohnstone.tuner.audio.AnalysisSettings;
+import com.fraserjohnstone.tuner.audio.DecimatingProcessor;
+import com.fraserjohnstone.tuner.audio.MemoryAudioSource;
+import com.fraserjohnstone.tuner.audio.MultiResolutionPitchProcessor;
+
+import java.util.Locale;
+
+import be.tarsos.dsp.AudioDispatcher;
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.pitch.PitchDetectionHandler;
+import be.tarsos.dsp.pitch.PitchDetectionResult;
+import be.tarsos.dsp.pitch.PitchProcessor;
+import be.tarsos.dsp.pitch.PitchProcessor.PitchEstimationAlgorithm;
+
+/**
+ * Reports the time from the onset of a note to the first stable reading, for notes across the
+ * range of common instruments, comparing the fixed 2048 sample window the tuner used to have with
+ * {@link AdaptiveWindowPitchProcessor}, the same processor after a {@link DecimatingProcessor}, and
+ * {@link MultiResolutionPitchProcessor}.
+ * <p>
+ * Each note is played after a short silence through a real {@link AudioDispatcher}. A reading is
+ * stable once {@link #STABLE_FRAMES} consecutive analyses are within {@link #STABLE_CENTS} of the
+ * note. The time reported is measured in audio, from the onset to the end of the buffer which
+ * completed the stable run, so it does not depend on the speed of the machine.
+ */
+public class WindowLatencyReport {
+
+    private static final int SAMPLE_RATE = 44100;
+    private static final double SILENCE_SECONDS = 0.25;
+    private static final double NOTE_SECONDS = 1.5;
+
+    private static final int STABLE_FRAMES = 3;
+    private static final double STABLE_CENTS = 5;
+
+    //B0 (5 string bass), E1 (4 string bass), E2 (guitar), A3, A4, E5 (violin), E6
+    private static final double[] NOTES = new double[]{30.87, 41.20, 82.41, 220.0, 440.0, 659.26, 1318.51};
+    private static final String[] NOTE_NAMES = new String[]{"B0", "E1", "E2", "A3", "A4", "E5", "E6"};
+
+    private enum Pipeline {
+        FIXED,
+        ADAPTIVE,
+        DECIMATED_ADAPTIVE,
+        MULTI_RESOLUTION
+    }
+
+    public static void main(String[] _args) {
+        System.out.println("note,hertz,fixed_2048_ms,adaptive_ms,decimated_adaptive_ms,multi_resolution_ms");
+        for (int i = 0; i < NOTES.length; i++) {
+            float[] audio = createAudio(NOTES[i]);
+            double fixed = timeToStable(audio, NOTES[i], 2048, 1536, Pipeline.FIXED);
+            double adaptive = timeToStable(audio, NOTES[i], 4096, 3584, Pipeline.ADAPTIVE);
+            double decimated = timeToStable(audio, NOTES[i], 4096, 3584, Pipeline.DECIMATED_ADAPTIVE);
+            double multiResolution = timeToStable(audio, NOTES[i], 4096, 3584, Pipeline.MULTI_RESOLUTION);
+            System.out.println(String.format(Locale.US, "%s,%.2f,%s,%s,%s,%s",
+                    NOTE_NAMES[i], NOTES[i], format(fixed), format(adaptive), format(decimated),
+                    format(multiResolution)));
+        }
+    }
+
+    private static String format(double _millis) {
+        return _millis < 0 ? "never" : String.format(Locale.US, "%.1f", _millis);
+    }
+
+    /**
+     * @param _hertz double. The pitch of the note
+     * @return float[]. Silence followed by a harmonic tone at _hertz
+     */
+    private static float[] createAudio(double _hertz) {
+        int silence = (int) (SILENCE_SECONDS * SAMPLE_RATE);
+        float[] note = new float[(int) (NOTE_SECONDS * SAMPLE_RATE)];
+        SyntheticSignal.HARMONIC.fill(note, SAMPLE_RATE, _hertz);
+        float[] audio = new float[silence + note.length];
+        System.arraycopy(note, 0, audio, silence, note.length);
+        return audio;
+    }
+
+    /**
+     * @return double. The milliseconds from the onset to a stable reading, or -1 if the reading
+     * never became stable
+     */
+    private static double timeToStable(float[] _audio, final double _hertz, final int _bufferSize,
+                                       int _overlap, Pipeline _pipeline) {
+        AudioDispatcher dispatcher = createDispatcher(_audio, _bufferSize, _overlap);
+
+        final int hop = _bufferSize - _overlap;
+        final long onset = (long) (SILENCE_SECONDS * SAMPLE_RATE);
+        final long[] stableAt = new long[]{-1};
+        final int[] stableRun = new int[1];
+
+        PitchDetectionHandler handler = new PitchDetectionHandler() {
+            @Override
+            public void handlePitch(PitchDetectionResult _result, AudioEvent _audioEvent) {
+                long processed = _audioEvent.getSamplesProcessed();
+                long bufferEnd = processed + (processed == 0 ? _bufferSize : hop);
+                if (stableAt[0] >= 0 || bufferEnd <= onset) {
+                    return;
+                }
+                boolean close = _result.getPitch() > 0
+                        && Math.abs(SyntheticSignal.centsError(_result.getPitch(), _hertz)) <= STABLE_CENTS;
+                stableRun[0] = close ? stableRun[0] + 1 : 0;
+                if (stableRun[0] >= STABLE_FRAMES) {
+                    stableAt[0] = bufferEnd;
+                }
+            }
+        };
+
+        AudioProcessor processor;
+        if (_pipeline == Pipeline.ADAPTIVE) {
+            processor = new AdaptiveWindowPitchProcessor(
+                    PitchEstimationAlgorithm.FFT_YIN, SAMPLE_RATE, _bufferSize, handler);
+        } else if (_pipeline == Pipeline.DECIMATED_ADAPTIVE) {
+            DecimatingProcessor decimator = new DecimatingProcessor(
+                    DecimatingProcessor.factorFor(SAMPLE_RATE, AnalysisSettings.MAX_HERTZ), _bufferSize);
+            dispatcher.addAudioProcessor(decimator);
+            processor = new AdaptiveWindowPitchProcessor(PitchEstimationAlgorithm.FFT_YIN,
+                    decimator.getOutputSampleRate(SAMPLE_RATE), decimator.getOutputBufferSize(_bufferSize),
+                    handler);
+        } else if (_pipeline == Pipeline.MULTI_RESOLUTION) {
+            processor = new MultiResolutionPitchProcessor(
+                    PitchEstimationAlgorithm.FFT_YIN, SAMPLE_RATE, _bufferSize, handler);
+        } else {
+            processor = new PitchProcessor(PitchEstimationAlgorithm.FFT_YIN, SAMPLE_RATE, _bufferSize, handler);
+        }
+        dispatcher.addAudioProcessor(processor);
+        dispatcher.run();
+
+        return stableAt[0] < 0 ? -1 : (stableAt[0] - onset) * 1000.0 / SAMPLE_RATE;
+    }
+
+    /**
+     * @param _audio      float[]. Samples at {@link #SAMPLE_RATE}, in the range -1 to 1
+     * @param _bufferSize int. The buffer size of the dispatcher
+     * @param _overlap    int. The overlap of the dispatcher
+     * @return {@link AudioDispatcher}. A dispatcher which plays _audio as 16 bit PCM
+     */
+    static AudioDispatcher createDispatcher(float[] _audio, int _bufferSize, int _overlap) {
+        return new MemoryAudioSource(_audio, SAMPLE_RATE).createDispatcher(SAMPLE_RATE, _bufferSize, _overlap);
+    }
+}
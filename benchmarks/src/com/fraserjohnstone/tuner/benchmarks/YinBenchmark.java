@@ -0,0 +1,152 @@
+package com.fraserjohnstone.tuner.benchmarks;
+
+import com.fraserjohnstone.tuner.audio.PitchDetectorFactory;
+import com.fraserjohnstone.tuner.audio.SlidingYinPitchDetector;
+import com.fraserjohnstone.tuner.audio.TarsosPitchDetectorFactory;
+import com.fraserjohnstone.tuner.audio.YinPitchDetector;
+import com.fraserjohnstone.tuner.utils.InstrumentProfile;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import be.tarsos.dsp.pitch.PitchDetectionResult;
+import be.tarsos.dsp.pitch.PitchDetector;
+import be.tarsos.dsp.pitch.PitchProcessor.PitchEstimationAlgorithm;
+
+/**
+ * Compares the tuner's own YIN detectors ({@link YinPitchDetector}) with TarsosDSP's YIN and FastYin:
+ * the time taken to analyse one buffer (ns/frame) and, when each trial ends, the accuracy in cents on
+ * synthetic tones. Run with the gc profiler (the default for the 'jmh' Gradle task) to compare the
+ * allocation rate per frame, which should be zero for the tuner's detectors. See
+ * {@link SlidingYinBenchmark} for the effect of the hop on the sliding detector.
+ * <p>
+ * With the GUITAR range the detectors only report pitches a guitar can play. The tuner's detectors
+ * only search the lags for that range, while the TarsosDSP detectors search every lag and have the
+ * pitches outside the range thrown away afterwards.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class YinBenchmark {
+
+    private static final float SAMPLE_RATE = 44100;
+    //hop between consecutive frames, as delivered by the dispatcher
+    private static final int HOP = 512;
+    //number of frames the signal is long enough for before frames start to repeat
+    private static final int FRAMES = 64;
+
+    @Param({"TARSOS_YIN", "TARSOS_FFT_YIN", "YIN", "FFT_YIN", "SLIDING_YIN"})
+    public String detector;
+
+    @Param({"1024", "2048", "4096"})
+    public int bufferSize;
+
+    @Param({"FULL", "GUITAR"})
+    public String range;
+
+    @Param({"SINE", "HARMONIC", "NOISY"})
+    public SyntheticSignal signal;
+
+    //E2, A2 and E4: the range of the open strings of a guitar
+    @Param({"82.41", "110.0", "329.63"})
+    public double hertz;
+
+    private PitchDetector mDetector;
+    private float[] mSignal;
+    private float[] mFrame;
+    private int mFrameIndex;
+
+    //accuracy, accumulated over the whole trial
+    private long mFrames;
+    private long mUnpitchedFrames;
+    private long mOctaveErrors;
+    private double mTotalAbsCents;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        float minHertz = 0;
+        float maxHertz = Float.MAX_VALUE;
+        if (range.equals("GUITAR")) {
+            minHertz = (float) InstrumentProfile.GUITAR_STANDARD.getMinHertz();
+            maxHertz = (float) InstrumentProfile.GUITAR_STANDARD.getMaxHertz();
+        }
+        mDetector = factory().createDetector(SAMPLE_RATE, bufferSize, HOP, minHertz, maxHertz);
+
+        mSignal = new float[bufferSize + (HOP * FRAMES)];
+        signal.fill(mSignal, SAMPLE_RATE, hertz);
+        mFrame = new float[bufferSize];
+    }
+
+    /**
+     * @return {@link PitchDetectorFactory}. The factory for {@link #detector}
+     */
+    private PitchDetectorFactory factory() {
+        if (detector.equals("TARSOS_YIN")) {
+            return new TarsosPitchDetectorFactory(PitchEstimationAlgorithm.YIN);
+        } else if (detector.equals("TARSOS_FFT_YIN")) {
+            return new TarsosPitchDetectorFactory(PitchEstimationAlgorithm.FFT_YIN);
+        } else if (detector.equals("YIN")) {
+            return YinPitchDetector.YIN;
+        } else if (detector.equals("SLIDING_YIN")) {
+            return SlidingYinPitchDetector.SLIDING_YIN;
+        }
+        return YinPitchDetector.FFT_YIN;
+    }
+
+    @Benchmark
+    public float estimate() {
+        System.arraycopy(mSignal, mFrameIndex * HOP, mFrame, 0, bufferSize);
+        mFrameIndex = (mFrameIndex + 1) % FRAMES;
+
+        PitchDetectionResult result = mDetector.getPitch(mFrame);
+        float pitch = result.getPitch();
+        record(pitch);
+        return pitch;
+    }
+
+    /**
+     * @param _pitch float. The pitch detected in one frame, or -1
+     */
+    private void record(float _pitch) {
+        mFrames++;
+        if (_pitch <= 0) {
+            mUnpitchedFrames++;
+            return;
+        }
+        double cents = Math.abs(SyntheticSignal.centsError(_pitch, hertz));
+        if (cents > 600) {
+            mOctaveErrors++;
+        } else {
+            mTotalAbsCents += cents;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void reportAccuracy() {
+        long pitched = mFrames - mUnpitchedFrames - mOctaveErrors;
+        System.out.println(String.format(Locale.US,
+                "%n[accuracy] %s buffer=%d %s %s %.2fHz: mean |error| %.3f cents, "
+                        + "%.2f%% unpitched, %.2f%% octave errors",
+                detector, bufferSize, range, signal, hertz,
+                pitched > 0 ? mTotalAbsCents / pitched : Double.NaN,
+                100.0 * mUnpitchedFrames / Math.max(1, mFrames),
+                100.0 * mOctaveErrors / Math.max(1, mFrames)));
+    }
+}
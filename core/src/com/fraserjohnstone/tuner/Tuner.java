@@ -2,32 +2,57 @@ package com.fraserjohnstone.tuner;
 
 import com.badlogic.gdx.Game;
 import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Preferences;
 import com.badlogic.gdx.assets.AssetManager;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
-import com.badlogic.gdx.assets.loaders.TextureLoader.TextureParameter;
-import com.badlogic.gdx.graphics.Texture;
-import com.badlogic.gdx.graphics.Texture.TextureFilter;
+import com.badlogic.gdx.assets.loaders.BitmapFontLoader.BitmapFontParameter;
 import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas.AtlasRegion;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.fraserjohnstone.tuner.assets.LoadableAssets;
+import com.fraserjohnstone.tuner.audio.AnalysisSettings;
+import com.fraserjohnstone.tuner.audio.PitchDetectorCalibration;
+import com.fraserjohnstone.tuner.audio.PitchDetectorFactory;
 import com.fraserjohnstone.tuner.utils.ActionResolver;
+import com.fraserjohnstone.tuner.utils.InstrumentedSpriteBatch;
+import com.fraserjohnstone.tuner.utils.StartupTimer;
+import com.fraserjohnstone.tuner.utils.StartupTimer.Milestone;
 
 /**
  * This is the main {@link Game} class and entry point for the application. It will create
  * and initialise the {@link SpriteBatch} and {@link AssetManager} used throughout, and then set
  * the screen to an instance of {@link com.fraserjohnstone.tuner.screens.SplashScreen} to be displayed
  * while the application assets load into {@link #mAssetManager}.
+ * <p>
+ * This class also chooses the pitch detector for the device, see {@link #chooseDetector()}. The
+ * choice is saved for each version of the app and device, so the calibration only runs the first
+ * time a version is started on a device, and it never holds up start up: the tuner runs with
+ * {@link AnalysisSettings#DEFAULT_DETECTORS} until the calibration has finished.
  */
 public class Tuner extends Game {
 
+    private static final String LOG_TAG = "Tuner";
+
+    //preferences holding the pitch detector chosen for each version of the app and device
+    private static final String DETECTOR_PREFERENCES = "com.fraserjohnstone.tuner.detector";
+
     private int mScreenHeightPixels;
     private int mScreenWidthPixels;
-    private SpriteBatch mBatch;
+    private InstrumentedSpriteBatch mBatch;
     private AssetManager mAssetManager;
     private ActionResolver mActionResolver;
 
+    //key of the detector chosen for this version of the app and device in the preferences, set
+    //once the detector is being chosen
+    private String mDetectorKey;
+
     /**
      * Class constructor
+     *
+     * @param _actionResolver {@link ActionResolver}. Reaches the platform the app is running on.
      */
-    Tuner(ActionResolver _actionResolver) {
+    public Tuner(ActionResolver _actionResolver) {
         mActionResolver = _actionResolver;
     }
 
@@ -37,38 +62,91 @@ public class Tuner extends Game {
      */
     @Override
     public void create() {
+        //time how long it takes to get to the splash screen and the tuner screen
+        StartupTimer.start();
+
         //get screen dimensions
         mScreenHeightPixels = Gdx.graphics.getHeight();
         mScreenWidthPixels = Gdx.graphics.getWidth();
 
         loadAssets();
 
-        mBatch = new SpriteBatch();
+        mBatch = new InstrumentedSpriteBatch();
 
         setScreen(new com.fraserjohnstone.tuner.screens.SplashScreen(this));
     }
 
     /**
-     * Loads all of the assets into {@link #mAssetManager}.
+     * Loads all of the assets into {@link #mAssetManager}. The images are packed into a single
+     * texture atlas (the filtering and mipmaps are set when the atlas is packed) and the fonts take
+     * their pages from the same atlas, so the tuner screen is drawn from one texture.
      */
     private void loadAssets() {
-        //create the parameters for image assets
-        TextureParameter param = new TextureParameter();
-        param.genMipMaps = true;
-        param.minFilter = TextureFilter.MipMapLinearNearest;
-        param.magFilter = TextureFilter.Nearest;
-
         mAssetManager = new AssetManager();
 
         //images
-        for (int i = 0; i < com.fraserjohnstone.tuner.assets.LoadableAssets.assetArray.length; i++) {
-            mAssetManager.load(com.fraserjohnstone.tuner.assets.LoadableAssets.assetArray[i], Texture.class, param);
-        }
+        mAssetManager.load(LoadableAssets.tunerAtlas, TextureAtlas.class);
 
         //bitmap fonts
-        for (int i = 0; i < com.fraserjohnstone.tuner.assets.LoadableAssets.bitmapFontAssetArray.length; i++) {
-            mAssetManager.load(com.fraserjohnstone.tuner.assets.LoadableAssets.bitmapFontAssetArray[i], BitmapFont.class);
+        BitmapFontParameter fontParam = new BitmapFontParameter();
+        fontParam.atlasName = LoadableAssets.tunerAtlas;
+        for (int i = 0; i < LoadableAssets.bitmapFontAssetArray.length; i++) {
+            mAssetManager.load(LoadableAssets.bitmapFontAssetArray[i], BitmapFont.class, fontParam);
+        }
+    }
+
+    /**
+     * Uses the pitch detector saved for this version of the app and device, or if there is none
+     * starts a {@link PitchDetectorCalibration} on a background thread, whose choice is used and
+     * saved on the render thread once it has finished. Should be called once the first frames have
+     * been drawn, so that the calibration does not slow them.
+     */
+    public void chooseDetector() {
+        if (mDetectorKey != null) {
+            return;
         }
+        mDetectorKey = mActionResolver.getAppVersion() + " " + mActionResolver.getDeviceName();
+
+        String saved = Gdx.app.getPreferences(DETECTOR_PREFERENCES).getString(mDetectorKey, null);
+        PitchDetectorFactory[] candidates = PitchDetectorCalibration.getDefaultCandidates();
+        for (int i = 0; i < candidates.length; i++) {
+            if (candidates[i].toString().equals(saved)) {
+                AnalysisSettings.setDetectors(candidates[i]);
+                StartupTimer.mark(Milestone.DETECTOR_CHOSEN);
+                Gdx.app.log(LOG_TAG, saved + " was chosen for " + mDetectorKey + " before");
+                return;
+            }
+        }
+
+        final PitchDetectorCalibration calibration =
+                AnalysisSettings.createDetectorCalibration(AnalysisSettings.SAMPLE_RATE);
+        calibration.start(new Runnable() {
+            @Override
+            public void run() {
+                //posting also asks for a frame, so the tuner screen picks up the new detector even
+                //while it is only drawing when there is something new to show
+                Gdx.app.postRunnable(new Runnable() {
+                    @Override
+                    public void run() {
+                        detectorChosen(calibration);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Uses and saves the pitch detector chosen by _calibration. Called on the render thread.
+     *
+     * @param _calibration {@link PitchDetectorCalibration}. A finished calibration.
+     */
+    private void detectorChosen(PitchDetectorCalibration _calibration) {
+        AnalysisSettings.setDetectors(_calibration);
+        Preferences preferences = Gdx.app.getPreferences(DETECTOR_PREFERENCES);
+        preferences.putString(mDetectorKey, _calibration.getSelected().toString());
+        preferences.flush();
+        StartupTimer.mark(Milestone.DETECTOR_CHOSEN);
+        Gdx.app.log(LOG_TAG, _calibration.getReason());
     }
 
     /**
@@ -95,10 +173,23 @@ public class Tuner extends Game {
         return mScreenWidthPixels;
     }
 
-    public SpriteBatch getSpriteBatch(){
+    public InstrumentedSpriteBatch getSpriteBatch(){
         return mBatch;
     }
 
+    /**
+     * @param _regionName String. The name of an image in raw-assets/tuner, without its extension.
+     * @return {@link AtlasRegion}. The image from the tuner's texture atlas. The atlas must have
+     * finished loading.
+     */
+    public AtlasRegion getRegion(String _regionName){
+        AtlasRegion region = mAssetManager.get(LoadableAssets.tunerAtlas, TextureAtlas.class).findRegion(_regionName);
+        if (region == null) {
+            throw new GdxRuntimeException("No region called " + _regionName + " in " + LoadableAssets.tunerAtlas);
+        }
+        return region;
+    }
+
     public ActionResolver getActionResolver(){
         return mActionResolver;
     }
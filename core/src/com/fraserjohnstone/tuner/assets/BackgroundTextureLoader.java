@@ -0,0 +1,124 @@
+package com.fraserjohnstone.tuner.assets;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.Texture.TextureFilter;
+import com.badlogic.gdx.graphics.TextureData;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.async.AsyncExecutor;
+import com.badlogic.gdx.utils.async.AsyncResult;
+import com.badlogic.gdx.utils.async.AsyncTask;
+
+/**
+ * Loads textures with the slow part of the work, reading and decoding the files, done on
+ * background threads in parallel, and only the upload to the GPU done on the GL thread in
+ * {@link #update()}.
+ * <p>
+ * This is meant for the few textures needed before the {@link com.badlogic.gdx.assets.AssetManager}
+ * has had a chance to load anything, such as those of the splash screen, and works best with
+ * textures produced by the 'compressTextures' Gradle task: these are KTX containers which already
+ * hold every mipmap level, so nothing is generated at runtime either.
+ * <p>
+ * The loader owns the textures it loads and disposes of them in {@link #dispose()}.
+ */
+public class BackgroundTextureLoader implements Disposable {
+
+    private final AsyncExecutor mExecutor;
+
+    private final Array<String> mPaths = new Array<String>();
+    private final Array<AsyncResult<TextureData>> mPending = new Array<AsyncResult<TextureData>>();
+    private final Array<TextureFilter[]> mFilters = new Array<TextureFilter[]>();
+    private final Array<Texture> mTextures = new Array<Texture>();
+
+    private int mUploaded;
+
+    /**
+     * Class constructor
+     *
+     * @param _threads int. The number of files decoded at the same time.
+     */
+    public BackgroundTextureLoader(int _threads) {
+        mExecutor = new AsyncExecutor(_threads);
+    }
+
+    /**
+     * Starts decoding a texture on a background thread.
+     *
+     * @param _path       String. The internal path of the texture file.
+     * @param _useMipMaps boolean. Whether the texture uses mipmaps. They are taken from the file
+     *                    if it has them and generated when the texture is uploaded if not.
+     * @param _minFilter  {@link TextureFilter}. The minification filter.
+     * @param _magFilter  {@link TextureFilter}. The magnification filter.
+     */
+    public void load(final String _path, final boolean _useMipMaps, TextureFilter _minFilter,
+                     TextureFilter _magFilter) {
+        mPaths.add(_path);
+        mFilters.add(new TextureFilter[]{_minFilter, _magFilter});
+        mTextures.add(null);
+        mPending.add(mExecutor.submit(new AsyncTask<TextureData>() {
+            @Override
+            public TextureData call() {
+                TextureData data = TextureData.Factory.loadFromFile(Gdx.files.internal(_path), _useMipMaps);
+                if (!data.isPrepared()) {
+                    data.prepare();
+                }
+                return data;
+            }
+        }));
+    }
+
+    /**
+     * Uploads every texture that has finished decoding. Must be called on the GL thread.
+     *
+     * @return boolean. True once every texture has been uploaded.
+     */
+    public boolean update() {
+        for (int i = 0; i < mPending.size; i++) {
+            AsyncResult<TextureData> pending = mPending.get(i);
+            if (pending != null && pending.isDone()) {
+                Texture texture = new Texture(pending.get());
+                TextureFilter[] filters = mFilters.get(i);
+                texture.setFilter(filters[0], filters[1]);
+                mTextures.set(i, texture);
+                mPending.set(i, null);
+                mUploaded++;
+            }
+        }
+        return isFinished();
+    }
+
+    /**
+     * @return boolean. True once every texture has been uploaded.
+     */
+    public boolean isFinished() {
+        return mUploaded == mPaths.size;
+    }
+
+    /**
+     * @param _path String. The path the texture was loaded with.
+     * @return {@link Texture}. The texture, once it has been uploaded.
+     */
+    public Texture get(String _path) {
+        int index = mPaths.indexOf(_path, false);
+        if (index < 0 || mTextures.get(index) == null) {
+            throw new GdxRuntimeException("Texture not loaded: " + _path);
+        }
+        return mTextures.get(index);
+    }
+
+    /**
+     * Waits for any decoding still in progress and disposes of every texture that was uploaded
+     */
+    @Override
+    public void dispose() {
+        mExecutor.dispose();
+        for (int i = 0; i < mTextures.size; i++) {
+            if (mTextures.get(i) != null) {
+                mTextures.get(i).dispose();
+            }
+        }
+        mTextures.clear();
+    }
+}
@@ -0,0 +1,253 @@
+package com.fraserjohnstone.tuner.audio;
+
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.pitch.PitchDetectionHandler;
+import be.tarsos.dsp.pitch.PitchDetectionResult;
+import be.tarsos.dsp.pitch.PitchDetector;
+import be.tarsos.dsp.pitch.PitchProcessor.PitchEstimationAlgorithm;
+
+/**
+ * An {@link AudioProcessor} which detects pitch using an analysis window that adapts to the pitch
+ * currently being tracked: short windows for high notes, which react quickly, and long windows for
+ * low notes, which need more periods of the waveform to be detected reliably.
+ * <p>
+ * The {@link be.tarsos.dsp.AudioDispatcher} is run with a buffer as large as the largest window and
+ * a short hop, so every buffer holds the most recent audio for any of the windows. Each analysis
+ * copies the newest samples of the buffer into the current window and runs the detector for that
+ * window size. Long windows are analysed less often, so their cost per second stays close to that
+ * of the shorter windows. Because the dispatcher is never reconfigured, switching window is glitch
+ * free.
+ * <p>
+ * While no note is being tracked the 2048 sample window is analysed on every buffer, as the fixed
+ * window used to be, and the largest window is analysed less often to pick up notes that are too
+ * low for it. The first note found selects the window straight away. After that a switch to a
+ * different window only happens once several consecutive pitches agree, with some hysteresis around
+ * the switching frequencies.
+ */
+public class AdaptiveWindowPitchProcessor implements AudioProcessor {
+
+    //analysis window sizes as a fraction of the dispatcher buffer size, from shortest to longest.
+    //With the 4096 sample buffer used at 44.1kHz these are 1024, 2048 and 4096 samples.
+    private static final int[] WINDOW_DIVISORS = new int[]{4, 2, 1};
+    //number of dispatcher buffers between analyses for each window size
+    private static final int[] BUFFERS_PER_ANALYSIS = new int[]{1, 1, 2};
+    //lowest tracked pitch in hertz each window is used for, with the 4096 sample buffer at 44.1kHz.
+    //These are scaled to the length in seconds of the buffer actually used.
+    private static final float[] MIN_HERTZ = new float[]{250, 60, 0};
+    private static final double REFERENCE_BUFFER_SECONDS = 4096 / 44100.0;
+    //index of the window used while looking for a new note
+    private static final int ACQUISITION_WINDOW = 1;
+    //index of the largest window
+    private static final int LARGEST_WINDOW = WINDOW_DIVISORS.length - 1;
+
+    //fraction by which a pitch must pass a switching frequency before the window changes
+    private static final float HYSTERESIS = 0.1f;
+    //number of consecutive pitches that must agree before the window changes
+    private static final int FRAMES_BEFORE_SWITCH = 3;
+    //number of consecutive unpitched analyses before returning to the acquisition window
+    private static final int UNPITCHED_FRAMES_BEFORE_RESET = 8;
+
+    private final PitchDetectionHandler mHandler;
+    private final PitchDetector[] mDetectors;
+    private final float[][] mWindowBuffers;
+    //MIN_HERTZ scaled to the buffer length
+    private final float[] mMinHertz;
+
+    //index into WINDOW_DIVISORS of the window currently in use. Read by other threads for diagnostics.
+    private volatile int mWindowIndex;
+    private volatile long mWindowSwitches;
+
+    private int mBuffersSinceAnalysis;
+    private int mCandidateIndex = -1;
+    private int mCandidateFrames;
+    private int mUnpitchedFrames;
+
+    /**
+     * Class constructor
+     *
+     * @param _algorithm  {@link PitchEstimationAlgorithm}. The algorithm used for every window.
+     * @param _sampleRate float. The sample rate of the audio.
+     * @param _bufferSize int. The buffer size of the dispatcher, which is also the largest window.
+     * @param _handler    {@link PitchDetectionHandler}. Receives the result of each analysis.
+     */
+    public AdaptiveWindowPitchProcessor(PitchEstimationAlgorithm _algorithm, float _sampleRate,
+                                        int _bufferSize, PitchDetectionHandler _handler) {
+        this(new TarsosPitchDetectorFactory(_algorithm), _sampleRate, _bufferSize, _bufferSize, 0,
+                Float.MAX_VALUE, _handler);
+    }
+
+    /**
+     * Class constructor for an instrument with a limited range
+     *
+     * @param _detectors  {@link PitchDetectorFactory}. Creates the detector for every window.
+     * @param _sampleRate float. The sample rate of the audio.
+     * @param _bufferSize int. The buffer size of the dispatcher, which is also the largest window.
+     * @param _hopSize    int. The number of new samples in each buffer from the dispatcher.
+     * @param _minHertz   float. The lowest pitch reported. Lower pitches are reported as unpitched.
+     * @param _maxHertz   float. The highest pitch reported. Higher pitches are reported as unpitched.
+     * @param _handler    {@link PitchDetectionHandler}. Receives the result of each analysis.
+     */
+    public AdaptiveWindowPitchProcessor(PitchDetectorFactory _detectors, float _sampleRate,
+                                        int _bufferSize, int _hopSize, float _minHertz, float _maxHertz,
+                                        PitchDetectionHandler _handler) {
+        mHandler = _handler;
+
+        mDetectors = new PitchDetector[WINDOW_DIVISORS.length];
+        mWindowBuffers = new float[WINDOW_DIVISORS.length][];
+        mMinHertz = new float[WINDOW_DIVISORS.length];
+        double scale = REFERENCE_BUFFER_SECONDS / (_bufferSize / _sampleRate);
+        for (int i = 0; i < WINDOW_DIVISORS.length; i++) {
+            int windowSize = _bufferSize / WINDOW_DIVISORS[i];
+            //a window analysed every few buffers moves on by that many hops between analyses
+            int hopSize = Math.min(windowSize, _hopSize * BUFFERS_PER_ANALYSIS[i]);
+            mDetectors[i] = _detectors.createDetector(_sampleRate, windowSize, hopSize, _minHertz, _maxHertz);
+            mWindowBuffers[i] = new float[windowSize];
+            mMinHertz[i] = (float) (MIN_HERTZ[i] * scale);
+        }
+
+        mWindowIndex = ACQUISITION_WINDOW;
+        mUnpitchedFrames = UNPITCHED_FRAMES_BEFORE_RESET;
+    }
+
+    @Override
+    public boolean process(AudioEvent _audioEvent) {
+        float[] buffer = _audioEvent.getFloatBuffer();
+        PitchDetectionResult result;
+        if (isAcquiring()) {
+            result = acquire(buffer);
+        } else {
+            mBuffersSinceAnalysis++;
+            if (mBuffersSinceAnalysis < BUFFERS_PER_ANALYSIS[mWindowIndex]) {
+                return true;
+            }
+            mBuffersSinceAnalysis = 0;
+            result = analyse(mWindowIndex, buffer);
+        }
+
+        mHandler.handlePitch(result, _audioEvent);
+        track(result);
+        return true;
+    }
+
+    /**
+     * Looks for a new note while no pitch is being tracked. The acquisition window is analysed on
+     * every buffer, as the fixed window used to be, and the largest window is analysed at its own
+     * rate to catch notes too low for the acquisition window.
+     *
+     * @param _buffer float[]. The latest buffer from the dispatcher.
+     * @return {@link PitchDetectionResult}. The result of the acquisition window, or of the largest
+     * window if it found a note below the range of the acquisition window
+     */
+    private PitchDetectionResult acquire(float[] _buffer) {
+        PitchDetectionResult result = analyse(ACQUISITION_WINDOW, _buffer);
+
+        mBuffersSinceAnalysis++;
+        if (mBuffersSinceAnalysis >= BUFFERS_PER_ANALYSIS[LARGEST_WINDOW]) {
+            mBuffersSinceAnalysis = 0;
+            PitchDetectionResult low = analyse(LARGEST_WINDOW, _buffer);
+            if (low.isPitched() && low.getPitch() > 0 && low.getPitch() < mMinHertz[ACQUISITION_WINDOW]) {
+                result = low;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Runs the detector of one window over the newest samples in _buffer.
+     *
+     * @param _windowIndex int. The index of the window to analyse.
+     * @param _buffer      float[]. The latest buffer from the dispatcher.
+     * @return {@link PitchDetectionResult}. The result of the detector.
+     */
+    private PitchDetectionResult analyse(int _windowIndex, float[] _buffer) {
+        float[] window = mWindowBuffers[_windowIndex];
+        System.arraycopy(_buffer, _buffer.length - window.length, window, 0, window.length);
+        return mDetectors[_windowIndex].getPitch(window);
+    }
+
+    /**
+     * Chooses the window for the next analysis from the latest result.
+     *
+     * @param _result {@link PitchDetectionResult}. The result of the latest analysis.
+     */
+    private void track(PitchDetectionResult _result) {
+        float pitch = _result.getPitch();
+        if (!_result.isPitched() || pitch <= 0) {
+            mCandidateIndex = -1;
+            mUnpitchedFrames++;
+            if (mUnpitchedFrames == UNPITCHED_FRAMES_BEFORE_RESET) {
+                switchWindow(ACQUISITION_WINDOW);
+            }
+            return;
+        }
+        boolean acquiring = isAcquiring();
+        mUnpitchedFrames = 0;
+
+        int desired = windowFor(pitch);
+        if (acquiring) {
+            switchWindow(desired);
+        } else if (desired == mWindowIndex) {
+            mCandidateIndex = -1;
+        } else if (desired == mCandidateIndex) {
+            if (++mCandidateFrames >= FRAMES_BEFORE_SWITCH) {
+                switchWindow(desired);
+            }
+        } else {
+            mCandidateIndex = desired;
+            mCandidateFrames = 1;
+        }
+    }
+
+    /**
+     * @return boolean. True while no pitch is being tracked
+     */
+    private boolean isAcquiring() {
+        return mUnpitchedFrames >= UNPITCHED_FRAMES_BEFORE_RESET;
+    }
+
+    /**
+     * @param _pitch float. The tracked pitch in hertz
+     * @return int. The index of the shortest window suitable for _pitch, taking hysteresis into
+     * account so that the current window is kept for pitches close to a switching frequency
+     */
+    private int windowFor(float _pitch) {
+        for (int i = 0; i < LARGEST_WINDOW; i++) {
+            float threshold = mMinHertz[i] * (i >= mWindowIndex ? 1 - HYSTERESIS : 1 + HYSTERESIS);
+            if (_pitch >= threshold) {
+                return i;
+            }
+        }
+        return LARGEST_WINDOW;
+    }
+
+    /**
+     * @param _windowIndex int. The index of the window to use from the next buffer onwards
+     */
+    private void switchWindow(int _windowIndex) {
+        mCandidateIndex = -1;
+        mCandidateFrames = 0;
+        if (_windowIndex != mWindowIndex) {
+            mWindowIndex = _windowIndex;
+            mWindowSwitches++;
+            //analyse the next buffer straight away rather than waiting for a full analysis hop
+            mBuffersSinceAnalysis = BUFFERS_PER_ANALYSIS[_windowIndex];
+        }
+    }
+
+    @Override
+    public void processingFinished() {
+    }
+
+    /**
+     * Getters and Setters
+     */
+
+    public int getWindowSize() {
+        return mWindowBuffers[mWindowIndex].length;
+    }
+
+    public long getWindowSwitches() {
+        return mWindowSwitches;
+    }
+}
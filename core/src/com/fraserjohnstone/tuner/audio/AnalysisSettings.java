@@ -0,0 +1,376 @@
+package com.fraserjohnstone.tuner.audio;
+
+import com.fraserjohnstone.tuner.utils.InstrumentProfile;
+
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.pitch.PitchDetectionHandler;
+
+/**
+ * This class holds the settings used to analyse audio, so that the tuner and any offline tools
+ * which analyse recorded audio detect pitch in exactly the same way.
+ * <p>
+ * The pitch chain is built for an {@link InstrumentProfile}, which sizes the buffer, the decimation
+ * and the range of reported pitches to the instrument, so that less audio is analysed for each
+ * reading, and refines each reading to a fraction of a cent with a {@link PitchRefiner}. The strum
+ * settings measure every string of a profile at once, see {@link StrumDetector}.
+ */
+public class AnalysisSettings {
+
+    /**
+     * The ways in which pitch can be detected
+     */
+    public enum Mode {
+        //one estimator whose window adapts to the tracked pitch, see AdaptiveWindowPitchProcessor
+        ADAPTIVE_WINDOW,
+        //fast and precise estimators on their own threads, see MultiResolutionPitchProcessor
+        MULTI_RESOLUTION
+    }
+
+    //pitch detection mode until another is chosen. Multi resolution runs two detectors on their own
+    //threads, so it is left for devices with the cores to spare.
+    public static final Mode DEFAULT_MODE = Mode.ADAPTIVE_WINDOW;
+
+    //pitch detection algorithm until a PitchDetectorCalibration has chosen one for the device. The
+    //tuner's own YIN works like TarsosDSP's FFT_YIN, but does not allocate for every buffer and only
+    //searches the lags for the range of an instrument. Each window uses the FFT or, where the hop is
+    //short enough for it to cost less, the sliding form.
+    public static final PitchDetectorFactory DEFAULT_DETECTORS = SlidingYinPitchDetector.CHEAPEST_YIN;
+    //fraction of the hop the pitch detector may take for one buffer, see PitchDetectorCalibration
+    public static final double DETECTOR_BUDGET_FRACTION = 0.25;
+
+    //pitch detection mode used by the pitch processors
+    private static volatile Mode sMode = DEFAULT_MODE;
+    //pitch detection algorithm used by the pitch processors
+    private static volatile PitchDetectorFactory sDetectors = DEFAULT_DETECTORS;
+    //the calibration which chose sDetectors, or null if it was not chosen by one
+    private static volatile PitchDetectorCalibration sDetectorCalibration;
+
+    //sample rate in hertz used when recording from the microphone
+    public static final int SAMPLE_RATE = 44100;
+
+    //number of samples in the buffer of the widest profile (InstrumentProfile.CHROMATIC at 44.1kHz)
+    //and the number shared by consecutive buffers. The hop (512 samples) is the shortest interval
+    //between two analyses, and every profile uses it.
+    public static final int BUFFER_SIZE = 4096;
+    public static final int OVERLAP = 3584;
+    public static final int HOP_SIZE = BUFFER_SIZE - OVERLAP;
+
+    //number of periods of the lowest pitch of an InstrumentProfile that the buffer must hold. With
+    //the lowest note of a piano at 44.1kHz this gives BUFFER_SIZE.
+    private static final double PERIODS_IN_BUFFER = 2.25;
+    //smallest decimated buffer, so that the shortest window of AdaptiveWindowPitchProcessor still
+    //holds enough samples to interpolate the pitch precisely
+    private static final int MIN_DECIMATED_BUFFER_SIZE = 512;
+
+    //highest pitch the tuner needs to detect (C8, the top note of a piano)
+    public static final float MAX_HERTZ = 4186.01f;
+    //fewest samples in a period of the highest pitch left by decimation. YIN looks for the dip of
+    //the difference function at whole lags, and with fewer samples than this it can miss the dip of
+    //the highest notes and report the octave below, or nothing.
+    private static final double MIN_SAMPLES_PER_PERIOD = 8;
+
+    //smallest frame PitchRefiner uses, in samples before decimation
+    private static final int REFINEMENT_FRAME_SIZE = 2048;
+
+    //highest partial of the highest string of a profile that strum mode keeps when decimating
+    private static final int STRUM_HARMONICS = 4;
+    //number of bins of the strum spectrum below the lowest string of a profile. With the low E of a
+    //guitar this gives bins 2.7Hz apart, so the partials of different strings are resolved.
+    private static final int STRUM_BINS_BELOW_LOWEST_STRING = 24;
+
+    //buffers quieter than this (in dB) are treated as silence
+    public static final int SILENCE_THRESHOLD = -70;
+    //buffer length the silence threshold was chosen for. The threshold is applied as if every
+    //buffer had this length so that it does not change with the buffer size or decimation factor
+    private static final int SILENCE_REFERENCE_LENGTH = 2048;
+
+    /**
+     * @param _sampleRate float. The sample rate of the audio.
+     * @return {@link PitchDetectorCalibration}. Chooses from the default candidates the detector
+     * which fits {@link #DETECTOR_BUDGET_FRACTION} with the widest profile, which has the most
+     * expensive analysis. Once it is done, pass it to {@link #setDetectors(PitchDetectorCalibration)}.
+     */
+    public static PitchDetectorCalibration createDetectorCalibration(float _sampleRate) {
+        return new PitchDetectorCalibration(PitchDetectorCalibration.getDefaultCandidates(), _sampleRate,
+                InstrumentProfile.CHROMATIC, DETECTOR_BUDGET_FRACTION);
+    }
+
+    /**
+     * @param _sampleRate      float. The sample rate of the audio.
+     * @param _maxHertz        double. The highest pitch that needs to be detected.
+     * @param _bufferSize      int. The buffer size of the dispatcher.
+     * @param _minOutputBuffer int. The smallest decimated buffer the pitch detector can work with.
+     * @return int. The largest factor {@link DecimatingProcessor#factorFor(float, float, int, int)}
+     * allows which leaves {@link #MIN_SAMPLES_PER_PERIOD} in each period of _maxHertz
+     */
+    private static int decimationFactor(float _sampleRate, double _maxHertz, int _bufferSize,
+                                        int _minOutputBuffer) {
+        int factor = DecimatingProcessor.factorFor(_sampleRate, (float) _maxHertz, _bufferSize,
+                _minOutputBuffer);
+        //the factors are powers of two, so a smaller one still divides the buffer
+        while (factor > 1 && _sampleRate / factor < MIN_SAMPLES_PER_PERIOD * _maxHertz) {
+            factor /= 2;
+        }
+        return factor;
+    }
+
+
+    /**
+     * @param _profile    {@link InstrumentProfile}. The instrument being tuned.
+     * @param _sampleRate float. The sample rate of the audio.
+     * @return int. The smallest power of two, of at least twice {@link #HOP_SIZE}, which holds
+     * enough periods of the lowest pitch of _profile
+     */
+    public static int getBufferSize(InstrumentProfile _profile, float _sampleRate) {
+        double samples = PERIODS_IN_BUFFER * _sampleRate / _profile.getMinHertz();
+        int bufferSize = 2 * HOP_SIZE;
+        while (bufferSize < samples) {
+            bufferSize <<= 1;
+        }
+        return bufferSize;
+    }
+
+    /**
+     * @param _profile    {@link InstrumentProfile}. The instrument being tuned.
+     * @param _sampleRate float. The sample rate of the audio.
+     * @return int. The overlap which gives a hop of {@link #HOP_SIZE} with {@link #getBufferSize}
+     */
+    public static int getOverlap(InstrumentProfile _profile, float _sampleRate) {
+        return getBufferSize(_profile, _sampleRate) - HOP_SIZE;
+    }
+
+    /**
+     * @param _profile    {@link InstrumentProfile}. The instrument being tuned.
+     * @param _sampleRate float. The sample rate of the audio.
+     * @return int. The largest decimation factor the highest pitch of _profile allows
+     */
+    public static int getDecimationFactor(InstrumentProfile _profile, float _sampleRate) {
+        return decimationFactor(_sampleRate, _profile.getMaxHertz(), getBufferSize(_profile, _sampleRate),
+                MIN_DECIMATED_BUFFER_SIZE);
+    }
+
+    /**
+     * @param _sampleRate float. The sample rate of the audio being analysed
+     * @param _profile    {@link InstrumentProfile}. The instrument being tuned.
+     * @return {@link DecimatingProcessor}. Lowers the sample rate as far as the range of _profile
+     * allows, for buffers of {@link #getBufferSize} samples. Must be added before the processor from
+     * {@link #createPitchProcessor(float, InstrumentProfile, PitchDetectionHandler)}.
+     */
+    public static DecimatingProcessor createDecimator(float _sampleRate, InstrumentProfile _profile) {
+        return new DecimatingProcessor(getDecimationFactor(_profile, _sampleRate),
+                getBufferSize(_profile, _sampleRate));
+    }
+
+    /**
+     * @param _sampleRate float. The sample rate of the audio being analysed, before decimation
+     * @param _profile    {@link InstrumentProfile}. The instrument being tuned.
+     * @param _handler    {@link PitchDetectionHandler}. Receives the result for each buffer
+     * @return {@link AudioProcessor}. A pitch processor for {@link #getMode()} for buffers of
+     * {@link #getBufferSize} samples which have been through
+     * {@link #createDecimator(float, InstrumentProfile)}, reporting only pitches in the range of
+     * _profile
+     */
+    public static AudioProcessor createPitchProcessor(float _sampleRate, InstrumentProfile _profile,
+                                                      PitchDetectionHandler _handler) {
+        return createPitchProcessor(sMode, _sampleRate, _profile, _handler);
+    }
+
+    /**
+     * @param _mode       {@link Mode}. How pitch is detected
+     * @param _sampleRate float. The sample rate of the audio being analysed, before decimation
+     * @param _profile    {@link InstrumentProfile}. The instrument being tuned.
+     * @param _handler    {@link PitchDetectionHandler}. Receives the result for each buffer
+     * @return {@link AudioProcessor}. A pitch processor for _mode, see
+     * {@link #createPitchProcessor(float, InstrumentProfile, PitchDetectionHandler)}
+     */
+    public static AudioProcessor createPitchProcessor(Mode _mode, float _sampleRate,
+                                                      InstrumentProfile _profile,
+                                                      PitchDetectionHandler _handler) {
+        int factor = getDecimationFactor(_profile, _sampleRate);
+        float sampleRate = _sampleRate / factor;
+        int bufferSize = getBufferSize(_profile, _sampleRate) / factor;
+        int hopSize = HOP_SIZE / factor;
+        float minHertz = (float) _profile.getMinHertz();
+        float maxHertz = (float) _profile.getMaxHertz();
+        if (_mode == Mode.MULTI_RESOLUTION) {
+            return new MultiResolutionPitchProcessor(sDetectors, sampleRate, bufferSize, hopSize, minHertz,
+                    maxHertz, _handler);
+        }
+        return new AdaptiveWindowPitchProcessor(sDetectors, sampleRate, bufferSize, hopSize, minHertz,
+                maxHertz, _handler);
+    }
+
+    /**
+     * @param _sampleRate float. The sample rate of the audio being analysed, before decimation
+     * @param _profile    {@link InstrumentProfile}. The instrument being tuned.
+     * @param _handler    {@link PitchDetectionHandler}. Receives the refined result for each buffer
+     * @return {@link PitchRefiner}. Refines the results of the processor from
+     * {@link #createPitchProcessor(float, InstrumentProfile, PitchDetectionHandler)} to a fraction of
+     * a cent, and passes them on to _handler. Must be given to that processor as its handler.
+     */
+    public static PitchRefiner createPitchRefiner(float _sampleRate, InstrumentProfile _profile,
+                                                  PitchDetectionHandler _handler) {
+        int factor = getDecimationFactor(_profile, _sampleRate);
+        return new PitchRefiner(_sampleRate / factor, getBufferSize(_profile, _sampleRate) / factor,
+                REFINEMENT_FRAME_SIZE / factor, _handler);
+    }
+
+    /**
+     * @param _sampleRate float. The sample rate of the audio being analysed
+     * @param _profile    {@link InstrumentProfile}. The instrument being tuned.
+     * @param _handler    {@link PitchDetectionHandler}. Receives the refined result for each buffer
+     * @return {@link AudioProcessor}[]. The processors the tuner finds each pitch with, to be added in
+     * order to a dispatcher of {@link #getBufferSize} samples overlapping by {@link #getOverlap}: the
+     * decimator, and the pitch processor with a {@link PitchRefiner} as its handler
+     */
+    public static AudioProcessor[] createPitchChain(float _sampleRate, InstrumentProfile _profile,
+                                                    PitchDetectionHandler _handler) {
+        PitchRefiner refiner = createPitchRefiner(_sampleRate, _profile, _handler);
+        return new AudioProcessor[]{
+                createDecimator(_sampleRate, _profile),
+                createPitchProcessor(_sampleRate, _profile, refiner)
+        };
+    }
+
+    /**
+     * @param _profile    {@link InstrumentProfile}. The instrument being tuned.
+     * @param _sampleRate float. The sample rate of the audio.
+     * @return int. The largest decimation factor which keeps the first {@link #STRUM_HARMONICS}
+     * partials of every string of _profile
+     */
+    public static int getStrumDecimationFactor(InstrumentProfile _profile, float _sampleRate) {
+        double highest = 0;
+        double[] strings = _profile.getStringHertz();
+        for (int i = 0; i < strings.length; i++) {
+            highest = Math.max(highest, strings[i]);
+        }
+        return DecimatingProcessor.factorFor(_sampleRate, (float) (STRUM_HARMONICS * highest));
+    }
+
+    /**
+     * @param _profile    {@link InstrumentProfile}. The instrument being tuned.
+     * @param _sampleRate float. The sample rate of the audio.
+     * @return int. The buffer size of the dispatcher in strum mode: the smallest power of two which,
+     * once decimated, gives {@link #STRUM_BINS_BELOW_LOWEST_STRING} bins below the lowest string
+     */
+    public static int getStrumBufferSize(InstrumentProfile _profile, float _sampleRate) {
+        double lowest = Double.MAX_VALUE;
+        double[] strings = _profile.getStringHertz();
+        for (int i = 0; i < strings.length; i++) {
+            lowest = Math.min(lowest, strings[i]);
+        }
+        double samples = STRUM_BINS_BELOW_LOWEST_STRING * _sampleRate / lowest;
+        int bufferSize = 2 * HOP_SIZE;
+        while (bufferSize < samples) {
+            bufferSize <<= 1;
+        }
+        return bufferSize;
+    }
+
+    /**
+     * @param _profile    {@link InstrumentProfile}. The instrument being tuned.
+     * @param _sampleRate float. The sample rate of the audio.
+     * @return int. The overlap which gives a hop of {@link #HOP_SIZE} with {@link #getStrumBufferSize}
+     */
+    public static int getStrumOverlap(InstrumentProfile _profile, float _sampleRate) {
+        return getStrumBufferSize(_profile, _sampleRate) - HOP_SIZE;
+    }
+
+    /**
+     * @param _sampleRate float. The sample rate of the audio being analysed
+     * @param _profile    {@link InstrumentProfile}. The instrument being tuned.
+     * @return {@link DecimatingProcessor}. Lowers the sample rate for strum mode, for buffers of
+     * {@link #getStrumBufferSize} samples. Must be added before the processor from
+     * {@link #createStrumProcessor}.
+     */
+    public static DecimatingProcessor createStrumDecimator(float _sampleRate, InstrumentProfile _profile) {
+        return new DecimatingProcessor(getStrumDecimationFactor(_profile, _sampleRate),
+                getStrumBufferSize(_profile, _sampleRate));
+    }
+
+    /**
+     * @param _sampleRate float. The sample rate of the audio being analysed, before decimation
+     * @param _profile    {@link InstrumentProfile}. The instrument being tuned. Must have strings.
+     * @param _handler    {@link StrumHandler}. Receives the pitch of every string for each buffer
+     * @return {@link StrumProcessor}. Measures every string of _profile in buffers of
+     * {@link #getStrumBufferSize} samples which have been through {@link #createStrumDecimator}
+     */
+    public static StrumProcessor createStrumProcessor(float _sampleRate, InstrumentProfile _profile,
+                                                      StrumHandler _handler) {
+        if (_profile.getStringHertz().length == 0) {
+            throw new IllegalArgumentException("Strum mode needs a profile with strings: " + _profile);
+        }
+        int factor = getStrumDecimationFactor(_profile, _sampleRate);
+        StrumDetector detector = new StrumDetector(_sampleRate / factor,
+                getStrumBufferSize(_profile, _sampleRate) / factor, _profile.getStringHertz());
+        return new StrumProcessor(detector, _handler);
+    }
+
+    /**
+     * Equivalent to {@link be.tarsos.dsp.AudioEvent#isSilence(double)} with {@link #SILENCE_THRESHOLD}
+     * for a buffer of 2048 samples, whatever the length of the buffer, but uses an rms value that has
+     * already been calculated rather than going through the buffer again.
+     *
+     * @param _rms double. The root mean square of the buffer
+     * @return boolean. True if the buffer is quieter than {@link #SILENCE_THRESHOLD}
+     */
+    public static boolean isSilence(double _rms) {
+        double soundPressureLevel = 20.0 * Math.log10(_rms / Math.sqrt(SILENCE_REFERENCE_LENGTH));
+        return soundPressureLevel < SILENCE_THRESHOLD;
+    }
+
+    /**
+     * Getters and Setters
+     */
+
+    /**
+     * @return {@link Mode}. The mode of the pitch processors created from now on
+     */
+    public static Mode getMode() {
+        return sMode;
+    }
+
+    /**
+     * @param _mode {@link Mode}. The mode of the pitch processors created from now on.
+     */
+    public static void setMode(Mode _mode) {
+        sMode = _mode;
+    }
+
+    /**
+     * @return {@link PitchDetectorFactory}. The detectors used by the pitch processors created from
+     * now on
+     */
+    public static PitchDetectorFactory getDetectors() {
+        return sDetectors;
+    }
+
+    /**
+     * @param _detectors {@link PitchDetectorFactory}. The detectors used by the pitch processors
+     *                   created from now on.
+     */
+    public static void setDetectors(PitchDetectorFactory _detectors) {
+        sDetectorCalibration = null;
+        sDetectors = _detectors;
+    }
+
+    /**
+     * @param _calibration {@link PitchDetectorCalibration}. A finished calibration, whose chosen
+     *                     detector is used by the pitch processors created from now on.
+     */
+    public static void setDetectors(PitchDetectorCalibration _calibration) {
+        if (!_calibration.isDone()) {
+            throw new IllegalStateException("The pitch detector calibration has not finished");
+        }
+        sDetectors = _calibration.getSelected();
+        sDetectorCalibration = _calibration;
+    }
+
+    /**
+     * @return {@link PitchDetectorCalibration}. The calibration which chose {@link #getDetectors()},
+     * with the reason for its choice, or null if the detectors were not chosen by one
+     */
+    public static PitchDetectorCalibration getDetectorCalibration() {
+        return sDetectorCalibration;
+    }
+}
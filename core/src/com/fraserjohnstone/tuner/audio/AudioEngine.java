@@ -0,0 +1,418 @@
+package com.fraserjohnstone.tuner.audio;
+
+import com.fraserjohnstone.tuner.utils.LatencyMetrics;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import be.tarsos.dsp.AudioDispatcher;
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+
+/**
+ * This class owns the thread which captures and analyses audio. At most one capture thread is
+ * running for each instance at any time: {@link #start()} does nothing if the engine is already
+ * running, and {@link #stop()} waits for the capture thread to finish. If the capture thread is stuck
+ * (for example in a read that ignores the closed stream) the engine stays {@link State#STOPPING}
+ * until the thread does finish, and until then {@link #start()} waits for it and then refuses.
+ * <p>
+ * The engine moves through the states {@link State#STOPPED}, {@link State#STARTING},
+ * {@link State#RUNNING} and {@link State#STOPPING}. A new {@link AudioDispatcher} is requested from
+ * the {@link AudioSource} every time the engine starts and the {@link AudioProcessor}s added to the
+ * engine are run, in order, on every buffer.
+ * <p>
+ * An optional {@link NoiseGateProcessor} runs before the other processors. While the gate is idle
+ * the engine reads audio with no overlap between buffers, so buffers arrive {@link #getBufferSize()}
+ * samples apart rather than a hop apart and far less work is done, and it returns to the full
+ * overlap as soon as the gate opens.
+ * <p>
+ * For diagnostics the engine counts the capture threads it has started, the number of capture
+ * threads alive across all engines and the time spent running the audio processors. If it is given
+ * {@link LatencyMetrics} it also marks when each buffer is delivered and counts the buffers which
+ * took longer to process than the audio between buffers lasts.
+ */
+public class AudioEngine {
+
+    public enum State {
+        STOPPED,
+        STARTING,
+        RUNNING,
+        STOPPING
+    }
+
+    //name given to the capture thread
+    public static final String THREAD_NAME = "Audio Dispatcher";
+
+    //longest time stop() will wait for the capture thread to finish, and start() for a stopping one
+    private static final long STOP_TIMEOUT_MILLIS = 2000;
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    //number of capture threads that are currently alive across all engines
+    private static final AtomicInteger sLiveThreads = new AtomicInteger();
+
+    private final Object mLock = new Object();
+
+    private final AudioSource mAudioSource;
+    private final int mSampleRate;
+    private final int mBufferSize;
+    private final int mOverlap;
+    private final ArrayList<AudioProcessor> mAudioProcessors = new ArrayList<AudioProcessor>();
+    private NoiseGateProcessor mNoiseGate;
+    private LatencyMetrics mLatencyMetrics;
+
+    //guarded by mLock
+    private State mState = State.STOPPED;
+    private AudioDispatcher mAudioDispatcher;
+    private Thread mThread;
+
+    //counters
+    private final AtomicLong mThreadsStarted = new AtomicLong();
+    private final AtomicLong mBuffersProcessed = new AtomicLong();
+    private final AtomicLong mProcessingNanos = new AtomicLong();
+    private final AtomicLong mIdleBuffers = new AtomicLong();
+
+    /**
+     * Class constructor
+     *
+     * @param _audioSource {@link AudioSource}. Where the audio is read from.
+     * @param _sampleRate  int. The sample rate in hertz.
+     * @param _bufferSize  int. The number of samples in each analysed buffer.
+     * @param _overlap     int. The number of samples shared by consecutive buffers.
+     */
+    public AudioEngine(AudioSource _audioSource, int _sampleRate, int _bufferSize, int _overlap) {
+        mAudioSource = _audioSource;
+        mSampleRate = _sampleRate;
+        mBufferSize = _bufferSize;
+        mOverlap = _overlap;
+    }
+
+    /**
+     * Adds an {@link AudioProcessor} to the end of the chain run on every buffer. Processors can
+     * only be added while the engine is stopped.
+     *
+     * @param _audioProcessor {@link AudioProcessor}
+     */
+    public void addAudioProcessor(AudioProcessor _audioProcessor) {
+        synchronized (mLock) {
+            if (mState != State.STOPPED) {
+                throw new IllegalStateException("Audio processors can only be added while stopped");
+            }
+            mAudioProcessors.add(_audioProcessor);
+        }
+    }
+
+    /**
+     * Sets the {@link NoiseGateProcessor} run before the other processors, which also decides when
+     * the engine reads audio in larger steps. The gate can only be set while the engine is stopped.
+     *
+     * @param _noiseGate {@link NoiseGateProcessor}. The gate, or null for none.
+     */
+    public void setNoiseGate(NoiseGateProcessor _noiseGate) {
+        synchronized (mLock) {
+            if (mState != State.STOPPED) {
+                throw new IllegalStateException("The noise gate can only be set while stopped");
+            }
+            mNoiseGate = _noiseGate;
+        }
+    }
+
+    /**
+     * Sets the {@link LatencyMetrics} told when each buffer is delivered and finished with. The
+     * metrics can only be set while the engine is stopped.
+     *
+     * @param _latencyMetrics {@link LatencyMetrics}. The metrics, or null for none.
+     */
+    public void setLatencyMetrics(LatencyMetrics _latencyMetrics) {
+        synchronized (mLock) {
+            if (mState != State.STOPPED) {
+                throw new IllegalStateException("Latency metrics can only be set while stopped");
+            }
+            mLatencyMetrics = _latencyMetrics;
+        }
+    }
+
+    /**
+     * Opens the {@link AudioSource} and starts the capture thread. If the engine is still stopping,
+     * waits for the old capture thread to finish first.
+     *
+     * @return boolean. True if a new capture thread was started, false if the engine was running,
+     * if the old capture thread did not finish in time or if the audio source could not be opened
+     */
+    public boolean start() {
+        synchronized (mLock) {
+            awaitStopped();
+            if (mState != State.STOPPED) {
+                return false;
+            }
+            mState = State.STARTING;
+
+            AudioDispatcher dispatcher = mAudioSource.createDispatcher(mSampleRate, mBufferSize, mOverlap);
+            if (dispatcher == null) {
+                mState = State.STOPPED;
+                return false;
+            }
+            dispatcher.addAudioProcessor(new ProcessorChain(dispatcher));
+
+            mAudioDispatcher = dispatcher;
+            mThread = new Thread(new CaptureRunnable(dispatcher), THREAD_NAME);
+            mThread.setPriority(Thread.MAX_PRIORITY);
+            mThreadsStarted.incrementAndGet();
+            mThread.start();
+            return true;
+        }
+    }
+
+    /**
+     * Stops the capture thread and waits for it to finish. If it does not finish in time the engine
+     * is left {@link State#STOPPING}, and the capture thread stops it when it does finish. Does
+     * nothing but wait if the engine is already stopping.
+     *
+     * @return boolean. True if the engine is stopped, false if the capture thread is still running
+     */
+    public boolean stop() {
+        Thread thread;
+        AudioDispatcher dispatcher;
+        synchronized (mLock) {
+            if (mState == State.STOPPING) {
+                awaitStopped();
+            }
+            if (mState == State.STOPPED || mState == State.STOPPING) {
+                return mState == State.STOPPED;
+            }
+            mState = State.STOPPING;
+            thread = mThread;
+            dispatcher = mAudioDispatcher;
+        }
+
+        dispatcher.stop();
+        try {
+            thread.join(STOP_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (mLock) {
+            //the capture thread stops the engine as it finishes, so if it is stuck the engine stays
+            //stopping and no second capture thread can be started
+            return mThread != thread;
+        }
+    }
+
+    /**
+     * Waits up to {@link #STOP_TIMEOUT_MILLIS} for a stopping engine to stop. Must be called while
+     * holding mLock.
+     */
+    private void awaitStopped() {
+        long remaining = STOP_TIMEOUT_MILLIS * NANOS_PER_MILLI;
+        long deadline = System.nanoTime() + remaining;
+        while (mState == State.STOPPING && remaining > 0) {
+            try {
+                mLock.wait(remaining / NANOS_PER_MILLI + 1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            remaining = deadline - System.nanoTime();
+        }
+    }
+
+    /**
+     * Returns the engine to the stopped state. Must be called while holding mLock.
+     */
+    private void finished() {
+        mThread = null;
+        mAudioDispatcher = null;
+        mState = State.STOPPED;
+        mLock.notifyAll();
+    }
+
+    /**
+     * Runs the dispatcher on the capture thread and keeps the state and counters up to date.
+     */
+    private class CaptureRunnable implements Runnable {
+        private final AudioDispatcher mDispatcher;
+
+        CaptureRunnable(AudioDispatcher _dispatcher) {
+            mDispatcher = _dispatcher;
+        }
+
+        @Override
+        public void run() {
+            sLiveThreads.incrementAndGet();
+            try {
+                synchronized (mLock) {
+                    if (mState == State.STARTING) {
+                        mState = State.RUNNING;
+                    }
+                }
+                mDispatcher.run();
+            } finally {
+                synchronized (mLock) {
+                    //the stream ended by itself, or stop() asked it to, possibly after giving up
+                    //waiting for it
+                    sLiveThreads.decrementAndGet();
+                    if (mThread == Thread.currentThread()) {
+                        finished();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the noise gate and the engine's audio processors in order and measures the time they
+     * take. Unlike {@link AudioDispatcher}, a processor which returns false only skips the
+     * processors after it for that buffer; the dispatcher carries on until it is stopped or the
+     * stream ends.
+     * <p>
+     * After each buffer the chain asks the noise gate whether it is idle and changes the overlap of
+     * the dispatcher to match. When the overlap grows again the new buffer of the dispatcher starts
+     * out empty, so the end of the last buffer is copied into it before it is used.
+     */
+    private class ProcessorChain implements AudioProcessor {
+        private final AudioDispatcher mDispatcher;
+        private final float[] mLastBuffer;
+        private int mCurrentOverlap;
+        private boolean mRestoreOverlap;
+
+        ProcessorChain(AudioDispatcher _dispatcher) {
+            mDispatcher = _dispatcher;
+            mLastBuffer = mNoiseGate == null ? null : new float[mBufferSize];
+            mCurrentOverlap = mOverlap;
+        }
+
+        @Override
+        public boolean process(AudioEvent _audioEvent) {
+            long start = System.nanoTime();
+            if (mLatencyMetrics != null) {
+                mLatencyMetrics.bufferDelivered(start);
+            }
+            //the dispatcher's own buffer, before any processor swaps in another
+            float[] buffer = _audioEvent.getFloatBuffer();
+
+            if (mRestoreOverlap) {
+                //the dispatcher has read only the new samples into its new buffer
+                System.arraycopy(mLastBuffer, mBufferSize - mCurrentOverlap, buffer, 0, mCurrentOverlap);
+                mRestoreOverlap = false;
+            }
+
+            boolean carryOn = mNoiseGate == null || mNoiseGate.process(_audioEvent);
+            for (int i = 0; i < mAudioProcessors.size() && carryOn; i++) {
+                carryOn = mAudioProcessors.get(i).process(_audioEvent);
+            }
+
+            //the hop of this buffer, before the overlap is changed for the next one
+            long hopNanos = (mBufferSize - mCurrentOverlap) * NANOS_PER_SECOND / mSampleRate;
+            if (mNoiseGate != null) {
+                updateOverlap(buffer);
+            }
+
+            long end = System.nanoTime();
+            if (mLatencyMetrics != null) {
+                mLatencyMetrics.bufferFinished(end, hopNanos);
+            }
+            mProcessingNanos.addAndGet(end - start);
+            mBuffersProcessed.incrementAndGet();
+            return true;
+        }
+
+        /**
+         * Reads audio with no overlap while the noise gate is idle and with the full overlap
+         * otherwise. Called once every processor has finished with the buffer.
+         *
+         * @param _buffer float[]. The buffer of the dispatcher which has just been processed.
+         */
+        private void updateOverlap(float[] _buffer) {
+            boolean idle = mNoiseGate.isIdle();
+            if (idle) {
+                mIdleBuffers.incrementAndGet();
+            }
+
+            int overlap = idle ? 0 : mOverlap;
+            if (overlap == mCurrentOverlap) {
+                return;
+            }
+            if (overlap > mCurrentOverlap) {
+                System.arraycopy(_buffer, 0, mLastBuffer, 0, mBufferSize);
+                mRestoreOverlap = true;
+            }
+            mDispatcher.setStepSizeAndOverlap(mBufferSize, overlap);
+            mCurrentOverlap = overlap;
+        }
+
+        @Override
+        public void processingFinished() {
+            if (mNoiseGate != null) {
+                mNoiseGate.processingFinished();
+            }
+            for (int i = 0; i < mAudioProcessors.size(); i++) {
+                mAudioProcessors.get(i).processingFinished();
+            }
+        }
+    }
+
+    /**
+     * Getters and Setters
+     */
+
+    public State getState() {
+        synchronized (mLock) {
+            return mState;
+        }
+    }
+
+    public boolean isRunning() {
+        return getState() == State.RUNNING;
+    }
+
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    public int getBufferSize() {
+        return mBufferSize;
+    }
+
+    public int getOverlap() {
+        return mOverlap;
+    }
+
+    /**
+     * @return int. The number of capture threads currently alive across all engines
+     */
+    public static int getLiveThreadCount() {
+        return sLiveThreads.get();
+    }
+
+    /**
+     * @return long. The number of capture threads started by this engine
+     */
+    public long getThreadsStarted() {
+        return mThreadsStarted.get();
+    }
+
+    /**
+     * @return long. The number of buffers run through the audio processors
+     */
+    public long getBuffersProcessed() {
+        return mBuffersProcessed.get();
+    }
+
+    /**
+     * @return long. The number of buffers after which the noise gate was idle
+     */
+    public long getIdleBuffers() {
+        return mIdleBuffers.get();
+    }
+
+    /**
+     * @return long. The total time in nanoseconds spent running the audio processors on the
+     * capture thread. This is used as a portable stand in for the CPU time of the thread.
+     */
+    public long getProcessingNanos() {
+        return mProcessingNanos.get();
+    }
+}
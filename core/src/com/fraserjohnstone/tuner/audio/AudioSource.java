@@ -0,0 +1,19 @@
+package com.fraserjohnstone.tuner.audio;
+
+import be.tarsos.dsp.AudioDispatcher;
+
+/**
+ * Implementations of this interface provide the audio analysed by an {@link AudioEngine}. Each
+ * call to {@link #createDispatcher(int, int, int)} must return a new {@link AudioDispatcher} that
+ * reads from a freshly opened stream, as a dispatcher can not be restarted once it has been stopped.
+ */
+public interface AudioSource {
+
+    /**
+     * @param _sampleRate int. The sample rate of the audio in hertz
+     * @param _bufferSize int. The number of samples in each buffer passed to the audio processors
+     * @param _overlap    int. The number of samples shared by consecutive buffers
+     * @return {@link AudioDispatcher}. A new dispatcher, or null if the audio could not be opened
+     */
+    AudioDispatcher createDispatcher(int _sampleRate, int _bufferSize, int _overlap);
+}
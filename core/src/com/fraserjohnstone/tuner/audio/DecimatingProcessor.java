@@ -0,0 +1,208 @@
+package com.fraserjohnstone.tuner.audio;
+
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+
+/**
+ * An {@link AudioProcessor} which reduces the sample rate of the audio by a factor of 2 to 16 before
+ * it reaches the pitch detector, so that the detector has fewer samples to work through. This is
+ * worthwhile whenever the notes being tuned are far below the Nyquist frequency, which for most
+ * instruments they are.
+ * <p>
+ * The audio is low pass filtered with a windowed sinc filter to stop frequencies above the new
+ * Nyquist frequency from aliasing. Only every factor'th output of the filter is calculated, which is
+ * what a polyphase decimator does, so the cost is the number of filter taps divided by the factor
+ * per input sample. Only the samples that are new in each buffer are filtered: the filter history and
+ * the decimated buffer are carried over from one buffer to the next, just as the
+ * {@link be.tarsos.dsp.AudioDispatcher} slides its own buffer.
+ * <p>
+ * The decimated buffer replaces the float buffer of the {@link AudioEvent}, so every processor after
+ * this one sees audio at the lower sample rate and must be created for
+ * {@link #getOutputSampleRate(float)} and {@link #getOutputBufferSize(int)}.
+ */
+public class DecimatingProcessor implements AudioProcessor {
+
+    //decimation factors that may be chosen, from largest to smallest
+    private static final int[] FACTORS = new int[]{16, 8, 4, 2};
+
+    //fraction of the new Nyquist frequency at which the filter starts to cut off
+    private static final double CUTOFF = 0.8;
+    //usable fraction of the new Nyquist frequency, below the transition band of the filter
+    private static final double PASSBAND = 0.7;
+    //number of filter taps for each unit of the decimation factor
+    private static final int TAPS_PER_FACTOR = 32;
+
+    private final int mFactor;
+    private final float[] mCoefficients;
+
+    //filter input: the last (taps - 1) samples of the previous buffer followed by the new samples
+    private final float[] mInput;
+    //decimated buffer passed on to the next processors
+    private final float[] mOutput;
+    //index of the next input sample which produces an output
+    private int mPhase;
+
+    /**
+     * Class constructor
+     *
+     * @param _factor     int. The decimation factor. A factor of 1 passes the audio through untouched.
+     * @param _bufferSize int. The buffer size of the dispatcher. Must be a multiple of _factor.
+     */
+    public DecimatingProcessor(int _factor, int _bufferSize) {
+        if (_factor < 1 || _bufferSize % _factor != 0) {
+            throw new IllegalArgumentException("Buffer size must be a multiple of the decimation factor");
+        }
+        mFactor = _factor;
+
+        if (_factor == 1) {
+            mCoefficients = new float[0];
+            mInput = new float[0];
+            mOutput = new float[0];
+            return;
+        }
+
+        mCoefficients = createLowPassFilter(TAPS_PER_FACTOR * _factor + 1, CUTOFF * 0.5 / _factor);
+        mInput = new float[mCoefficients.length - 1 + _bufferSize];
+        mOutput = new float[_bufferSize / _factor];
+    }
+
+    /**
+     * @param _sampleRate float. The sample rate of the audio.
+     * @param _maxHertz   float. The highest pitch that needs to be detected.
+     * @return int. The largest decimation factor that keeps _maxHertz well inside the pass band of
+     * the filter, or 1 if the audio should not be decimated
+     */
+    public static int factorFor(float _sampleRate, float _maxHertz) {
+        //any multiple of the largest factor, so the buffer size rules nothing out
+        return factorFor(_sampleRate, _maxHertz, FACTORS[0], 1);
+    }
+
+    /**
+     * @param _sampleRate        float. The sample rate of the audio.
+     * @param _maxHertz          float. The highest pitch that needs to be detected.
+     * @param _bufferSize        int. The buffer size of the dispatcher.
+     * @param _minOutputBuffer   int. The smallest decimated buffer the pitch detector can work with.
+     * @return int. The largest decimation factor that keeps _maxHertz well inside the pass band of
+     * the filter and leaves at least _minOutputBuffer samples in each buffer, or 1 if the audio
+     * should not be decimated
+     */
+    public static int factorFor(float _sampleRate, float _maxHertz, int _bufferSize, int _minOutputBuffer) {
+        for (int i = 0; i < FACTORS.length; i++) {
+            double usableHertz = PASSBAND * (_sampleRate / 2) / FACTORS[i];
+            if (_maxHertz <= usableHertz && _bufferSize / FACTORS[i] >= _minOutputBuffer
+                    && _bufferSize % FACTORS[i] == 0) {
+                return FACTORS[i];
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Creates the coefficients of a low pass windowed sinc filter with a Blackman window, scaled to
+     * a gain of 1 at 0Hz.
+     *
+     * @param _taps   int. The number of coefficients. Should be odd.
+     * @param _cutoff double. The cutoff frequency as a fraction of the sample rate.
+     * @return float[]. The filter coefficients.
+     */
+    private static float[] createLowPassFilter(int _taps, double _cutoff) {
+        double[] coefficients = new double[_taps];
+        double sum = 0;
+        int middle = (_taps - 1) / 2;
+        for (int i = 0; i < _taps; i++) {
+            int n = i - middle;
+            double sinc = n == 0
+                    ? 2 * _cutoff
+                    : Math.sin(2 * Math.PI * _cutoff * n) / (Math.PI * n);
+            double window = 0.42
+                    - 0.5 * Math.cos(2 * Math.PI * i / (_taps - 1))
+                    + 0.08 * Math.cos(4 * Math.PI * i / (_taps - 1));
+            coefficients[i] = sinc * window;
+            sum += coefficients[i];
+        }
+
+        float[] normalised = new float[_taps];
+        for (int i = 0; i < _taps; i++) {
+            normalised[i] = (float) (coefficients[i] / sum);
+        }
+        return normalised;
+    }
+
+    @Override
+    public boolean process(AudioEvent _audioEvent) {
+        if (mFactor == 1) {
+            return true;
+        }
+
+        float[] buffer = _audioEvent.getFloatBuffer();
+        int overlap = _audioEvent.getOverlap();
+        int history = mCoefficients.length - 1;
+
+        //the first buffer of a stream has no overlap, so start again from silence
+        if (overlap == 0) {
+            java.util.Arrays.fill(mInput, 0, history, 0);
+            java.util.Arrays.fill(mOutput, 0);
+            mPhase = 0;
+        }
+
+        //append the new samples to the filter history
+        int newSamples = buffer.length - overlap;
+        System.arraycopy(buffer, overlap, mInput, history, newSamples);
+
+        //work out how many outputs the new samples produce and make room for them
+        int newOutputs = 0;
+        for (int i = mPhase; i < newSamples; i += mFactor) {
+            newOutputs++;
+        }
+        newOutputs = Math.min(newOutputs, mOutput.length);
+        System.arraycopy(mOutput, newOutputs, mOutput, 0, mOutput.length - newOutputs);
+
+        //filter, calculating only the samples that are kept
+        int outputIndex = mOutput.length - newOutputs;
+        int sample = mPhase;
+        for (int i = 0; i < newOutputs; i++, sample += mFactor) {
+            //mInput[history + sample] is the newest sample in the filter
+            int start = sample;
+            float sum = 0;
+            for (int k = 0; k < mCoefficients.length; k++) {
+                sum += mCoefficients[k] * mInput[start + k];
+            }
+            mOutput[outputIndex++] = sum;
+        }
+        mPhase = sample - newSamples;
+
+        //keep the end of the input as history for the next buffer
+        System.arraycopy(mInput, newSamples, mInput, 0, history);
+
+        _audioEvent.setFloatBuffer(mOutput);
+        return true;
+    }
+
+    @Override
+    public void processingFinished() {
+    }
+
+    /**
+     * Getters and Setters
+     */
+
+    public int getFactor() {
+        return mFactor;
+    }
+
+    /**
+     * @param _sampleRate float. The sample rate of the dispatcher
+     * @return float. The sample rate of the audio passed to the next processors
+     */
+    public float getOutputSampleRate(float _sampleRate) {
+        return _sampleRate / mFactor;
+    }
+
+    /**
+     * @param _bufferSize int. The buffer size of the dispatcher
+     * @return int. The size of the buffer passed to the next processors
+     */
+    public int getOutputBufferSize(int _bufferSize) {
+        return _bufferSize / mFactor;
+    }
+}
@@ -0,0 +1,164 @@
+package com.fraserjohnstone.tuner.audio;
+
+/**
+ * The inner loops of pitch estimation: the YIN difference function and its cumulative mean
+ * normalisation, applying a window function, and the magnitude spectrum of a {@link RealFft}.
+ * <p>
+ * This class is the scalar implementation used on Android. On a desktop JVM with the
+ * jdk.incubator.vector module (Java 16 or later, started with --add-modules jdk.incubator.vector)
+ * and the 'vector' module on the class path, {@link #getDefault()} returns a subclass which uses SIMD
+ * instructions instead. The vector implementation adds and multiplies in a different order, so its
+ * results can differ from these in the last few bits; 'KernelBenchmark' reports by how much.
+ * <p>
+ * Instances hold no state and are thread safe.
+ */
+public class DspKernels {
+
+    //set to "scalar" to use this implementation even where the vector one is available
+    public static final String KERNELS_PROPERTY = "tuner.kernels";
+
+    private static final String VECTOR_KERNELS_CLASS = "com.fraserjohnstone.tuner.vector.VectorDspKernels";
+
+    private static final DspKernels sScalar = new DspKernels();
+    private static DspKernels sDefault;
+
+    /**
+     * Class constructor
+     */
+    protected DspKernels() {
+    }
+
+    /**
+     * @return {@link DspKernels}. The scalar implementation
+     */
+    public static DspKernels getScalar() {
+        return sScalar;
+    }
+
+    /**
+     * @return {@link DspKernels}. The vector implementation if it can be loaded, otherwise the scalar
+     * implementation
+     */
+    public static synchronized DspKernels getDefault() {
+        if (sDefault == null) {
+            sDefault = loadDefault();
+        }
+        return sDefault;
+    }
+
+    /**
+     * @return {@link DspKernels}. The vector implementation, or the scalar implementation if the
+     * vector one is not on the class path, the JVM has no jdk.incubator.vector module or it was
+     * turned off with {@link #KERNELS_PROPERTY}
+     */
+    private static DspKernels loadDefault() {
+        if ("scalar".equals(System.getProperty(KERNELS_PROPERTY))) {
+            return sScalar;
+        }
+        try {
+            return (DspKernels) Class.forName(VECTOR_KERNELS_CLASS).newInstance();
+        } catch (Exception e) {
+            //not on the class path (as on Android), or no SIMD support worth using
+            return sScalar;
+        } catch (LinkageError e) {
+            //on the class path, but the JVM has no jdk.incubator.vector module
+            return sScalar;
+        }
+    }
+
+    /**
+     * Calculates the part of the difference function contributed by one block of samples, the sum of
+     * (x[j] - x[j + tau])^2 for j from _start to _start + _length - 1.
+     *
+     * @param _audioBuffer float[]. The samples.
+     * @param _start       int. The first sample of the block.
+     * @param _length      int. The number of samples in the block.
+     * @param _difference  float[]. Receives the sum for every lag from 0 to _difference.length - 1.
+     */
+    public void difference(float[] _audioBuffer, int _start, int _length, float[] _difference) {
+        int end = _start + _length;
+        int unrolledEnd = _start + (_length & ~3);
+        _difference[0] = 0;
+        for (int tau = 1; tau < _difference.length; tau++) {
+            //four sums, so that each addition does not have to wait for the one before it
+            float sum0 = 0;
+            float sum1 = 0;
+            float sum2 = 0;
+            float sum3 = 0;
+            int j = _start;
+            for (; j < unrolledEnd; j += 4) {
+                float delta0 = _audioBuffer[j] - _audioBuffer[j + tau];
+                float delta1 = _audioBuffer[j + 1] - _audioBuffer[j + 1 + tau];
+                float delta2 = _audioBuffer[j + 2] - _audioBuffer[j + 2 + tau];
+                float delta3 = _audioBuffer[j + 3] - _audioBuffer[j + 3 + tau];
+                sum0 += delta0 * delta0;
+                sum1 += delta1 * delta1;
+                sum2 += delta2 * delta2;
+                sum3 += delta3 * delta3;
+            }
+            for (; j < end; j++) {
+                float delta = _audioBuffer[j] - _audioBuffer[j + tau];
+                sum0 += delta * delta;
+            }
+            _difference[tau] = (sum0 + sum1) + (sum2 + sum3);
+        }
+    }
+
+    /**
+     * Replaces d(tau) with d(tau) divided by its mean over lags 1 to tau, which is 1 at lag 0 and
+     * wherever the sum so far is 0.
+     *
+     * @param _difference float[]. The difference function, replaced by its normalised form.
+     */
+    public void cumulativeMeanNormalise(float[] _difference) {
+        _difference[0] = 1;
+        float runningSum = 0;
+        for (int tau = 1; tau < _difference.length; tau++) {
+            runningSum += _difference[tau];
+            _difference[tau] = runningSum > 0 ? _difference[tau] * tau / runningSum : 1;
+        }
+    }
+
+    /**
+     * Multiplies each sample by the window function
+     *
+     * @param _samples float[]. The samples, replaced by the windowed samples.
+     * @param _window  float[]. The window function.
+     * @param _length  int. The number of samples to window.
+     */
+    public void applyWindow(float[] _samples, float[] _window, int _length) {
+        for (int i = 0; i < _length; i++) {
+            _samples[i] *= _window[i];
+        }
+    }
+
+    /**
+     * Calculates the magnitude of each bin of a spectrum packed by {@link RealFft#forward(float[])}
+     *
+     * @param _spectrum   float[]. The packed spectrum of n samples.
+     * @param _size       int. n, the size of the transform.
+     * @param _magnitudes float[]. Receives the magnitudes of bins 0 to n/2, so needs n/2 + 1 elements.
+     */
+    public void magnitudeSpectrum(float[] _spectrum, int _size, float[] _magnitudes) {
+        int bins = _size / 2;
+        _magnitudes[0] = Math.abs(_spectrum[0]);
+        _magnitudes[bins] = Math.abs(_spectrum[1]);
+        for (int k = 1; k < bins; k++) {
+            float re = _spectrum[2 * k];
+            float im = _spectrum[2 * k + 1];
+            _magnitudes[k] = (float) Math.sqrt(re * re + im * im);
+        }
+    }
+
+    /**
+     * @return String. A short description of the implementation, for reports and logs
+     */
+    public String getName() {
+        return "scalar";
+    }
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+}
@@ -0,0 +1,54 @@
+package com.fraserjohnstone.tuner.audio;
+
+import java.io.ByteArrayInputStream;
+
+import be.tarsos.dsp.AudioDispatcher;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+import be.tarsos.dsp.io.UniversalAudioInputStream;
+
+/**
+ * An {@link AudioSource} which plays samples held in memory, as fast as they can be analysed. The
+ * samples are converted to 16 bit PCM once, when the source is created, so every dispatcher reads
+ * exactly the same audio as a recording of it would give.
+ */
+public class MemoryAudioSource implements AudioSource {
+
+    private final byte[] mPcm;
+    private final int mSampleRate;
+
+    /**
+     * Class constructor
+     *
+     * @param _samples    float[]. The samples, in the range -1 to 1.
+     * @param _sampleRate int. The sample rate of the samples in hertz.
+     */
+    public MemoryAudioSource(float[] _samples, int _sampleRate) {
+        mSampleRate = _sampleRate;
+        mPcm = new byte[_samples.length * 2];
+        for (int i = 0; i < _samples.length; i++) {
+            float sample = Math.max(-1, Math.min(1, _samples[i]));
+            int value = (int) (sample * 32767);
+            mPcm[i * 2] = (byte) value;
+            mPcm[i * 2 + 1] = (byte) (value >> 8);
+        }
+    }
+
+    /**
+     * @param _sampleRate int. Ignored, the audio is always played at the sample rate it was
+     *                    created with.
+     */
+    @Override
+    public AudioDispatcher createDispatcher(int _sampleRate, int _bufferSize, int _overlap) {
+        TarsosDSPAudioFormat format = new TarsosDSPAudioFormat(mSampleRate, 16, 1, true, false);
+        return new AudioDispatcher(
+                new UniversalAudioInputStream(new ByteArrayInputStream(mPcm), format), _bufferSize, _overlap);
+    }
+
+    /**
+     * Getters and Setters
+     */
+
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+}
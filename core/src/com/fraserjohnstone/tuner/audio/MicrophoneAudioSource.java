@@ -0,0 +1,15 @@
+package com.fraserjohnstone.tuner.audio;
+
+import be.tarsos.dsp.AudioDispatcher;
+import be.tarsos.dsp.io.android.AudioDispatcherFactory;
+
+/**
+ * An {@link AudioSource} which records from the default microphone of the device.
+ */
+public class MicrophoneAudioSource implements AudioSource {
+
+    @Override
+    public AudioDispatcher createDispatcher(int _sampleRate, int _bufferSize, int _overlap) {
+        return AudioDispatcherFactory.fromDefaultMicrophone(_sampleRate, _bufferSize, _overlap);
+    }
+}
@@ -0,0 +1,375 @@
+package com.fraserjohnstone.tuner.audio;
+
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.pitch.PitchDetectionHandler;
+import be.tarsos.dsp.pitch.PitchDetectionResult;
+import be.tarsos.dsp.pitch.PitchDetector;
+import be.tarsos.dsp.pitch.PitchProcessor.PitchEstimationAlgorithm;
+
+/**
+ * An {@link AudioProcessor} which analyses the same audio at two resolutions at once, each on its
+ * own worker thread, and fuses the two results into a single reading with a confidence score.
+ * <p>
+ * The fast path analyses a short window and reacts quickly to the attack of a new note. The precise
+ * path analyses a long window, which takes longer to compute and to fill with a new note but
+ * converges to a more accurate and stable reading while the note is sustained.
+ * <p>
+ * For every buffer the dispatcher thread copies the newest samples to both workers, waits briefly
+ * for the fast path to finish and combines its result with the latest result of the precise path,
+ * which is not waited for. If the precise path is still busy with an earlier buffer, it simply picks
+ * up the newest samples when it is done. The fused reading is passed to the
+ * {@link PitchDetectionHandler} on the dispatcher thread, with the confidence as its probability.
+ * <p>
+ * The worker threads are started by the first buffer processed and stopped by
+ * {@link #processingFinished()}, so the processor can be reused when an {@link AudioEngine}
+ * restarts.
+ */
+public class MultiResolutionPitchProcessor implements AudioProcessor {
+
+    //window sizes of the fast and precise paths as a fraction of the dispatcher buffer size. With
+    //the 4096 sample buffer used at 44.1kHz these are 1024 and 4096 samples.
+    private static final int FAST_WINDOW_DIVISOR = 4;
+    private static final int PRECISE_WINDOW_DIVISOR = 1;
+
+    //the paths are taken to agree on the note if they are within this many cents
+    private static final double AGREEMENT_CENTS = 50;
+    //a precise result older than this many buffers is ignored
+    private static final int MAX_PRECISE_AGE = 4;
+    //longest time the dispatcher thread waits for the fast path
+    private static final long FAST_PATH_TIMEOUT_NANOS = 20000000L;
+
+    //highest harmonic of the precise pitch that the fast path is taken to have locked on to
+    private static final int MAX_HARMONIC = 4;
+
+    private final PitchDetectionHandler mHandler;
+    //lowest pitch the fast path can detect reliably
+    private final float mFastPathMinHertz;
+    private final ResolutionWorker mFastWorker;
+    private final ResolutionWorker mPreciseWorker;
+
+    //fused result, reused for every buffer
+    private final PitchDetectionResult mFusedResult = new PitchDetectionResult();
+
+    private long mSequence;
+    private volatile long mFastTimeouts;
+
+    /**
+     * Class constructor
+     *
+     * @param _algorithm  {@link PitchEstimationAlgorithm}. The algorithm used by both paths.
+     * @param _sampleRate float. The sample rate of the audio.
+     * @param _bufferSize int. The buffer size of the dispatcher.
+     * @param _handler    {@link PitchDetectionHandler}. Receives the fused result of each buffer.
+     */
+    public MultiResolutionPitchProcessor(PitchEstimationAlgorithm _algorithm, float _sampleRate,
+                                         int _bufferSize, PitchDetectionHandler _handler) {
+        this(new TarsosPitchDetectorFactory(_algorithm), _sampleRate, _bufferSize, _bufferSize, 0,
+                Float.MAX_VALUE, _handler);
+    }
+
+    /**
+     * Class constructor for an instrument with a limited range
+     *
+     * @param _detectors  {@link PitchDetectorFactory}. Creates the detectors of both paths.
+     * @param _sampleRate float. The sample rate of the audio.
+     * @param _bufferSize int. The buffer size of the dispatcher.
+     * @param _hopSize    int. The number of new samples in each buffer from the dispatcher.
+     * @param _minHertz   float. The lowest pitch reported by either path.
+     * @param _maxHertz   float. The highest pitch reported by either path.
+     * @param _handler    {@link PitchDetectionHandler}. Receives the fused result of each buffer.
+     */
+    public MultiResolutionPitchProcessor(PitchDetectorFactory _detectors, float _sampleRate,
+                                         int _bufferSize, int _hopSize, float _minHertz, float _maxHertz,
+                                         PitchDetectionHandler _handler) {
+        mHandler = _handler;
+
+        int fastWindowSize = _bufferSize / FAST_WINDOW_DIVISOR;
+        int preciseWindowSize = _bufferSize / PRECISE_WINDOW_DIVISOR;
+        //the detectors search lags of up to half the window, with a margin to avoid the edge
+        mFastPathMinHertz = 1.2f * _sampleRate / (fastWindowSize / 2);
+        int fastHopSize = Math.min(fastWindowSize, _hopSize);
+        int preciseHopSize = Math.min(preciseWindowSize, _hopSize);
+        mFastWorker = new ResolutionWorker("Pitch Fast Path",
+                _detectors.createDetector(_sampleRate, fastWindowSize, fastHopSize, _minHertz, _maxHertz),
+                fastWindowSize);
+        mPreciseWorker = new ResolutionWorker("Pitch Precise Path",
+                _detectors.createDetector(_sampleRate, preciseWindowSize, preciseHopSize, _minHertz,
+                        _maxHertz),
+                preciseWindowSize);
+    }
+
+    @Override
+    public boolean process(AudioEvent _audioEvent) {
+        mFastWorker.start();
+        mPreciseWorker.start();
+
+        long sequence = ++mSequence;
+        float[] buffer = _audioEvent.getFloatBuffer();
+        mPreciseWorker.submit(buffer, sequence);
+        mFastWorker.submit(buffer, sequence);
+
+        if (!mFastWorker.awaitResult(sequence, FAST_PATH_TIMEOUT_NANOS)) {
+            mFastTimeouts++;
+        }
+
+        fuse(sequence);
+        mHandler.handlePitch(mFusedResult, _audioEvent);
+        return true;
+    }
+
+    /**
+     * Combines the latest results of the two paths into mFusedResult.
+     * <ul>
+     * <li>If both paths agree on the note, the precise pitch is used with a high confidence. The
+     * paths also agree if the fast pitch is a harmonic of the precise pitch, or if the precise
+     * pitch is too low for the fast path to detect.</li>
+     * <li>If they disagree, the note has most likely just changed and the precise path has not
+     * caught up yet, so the fast pitch is used with a lower confidence.</li>
+     * <li>If only one path has a pitch, its pitch is used with a reduced confidence.</li>
+     * </ul>
+     *
+     * @param _sequence long. The sequence number of the current buffer
+     */
+    private void fuse(long _sequence) {
+        boolean fastPitched;
+        float fastHertz;
+        float fastProbability;
+        synchronized (mFastWorker.mResultLock) {
+            fastPitched = mFastWorker.mResultPitched && mFastWorker.mResultSequence == _sequence;
+            fastHertz = mFastWorker.mResultHertz;
+            fastProbability = mFastWorker.mResultProbability;
+        }
+
+        boolean precisePitched;
+        float preciseHertz;
+        float preciseProbability;
+        synchronized (mPreciseWorker.mResultLock) {
+            precisePitched = mPreciseWorker.mResultPitched
+                    && _sequence - mPreciseWorker.mResultSequence <= MAX_PRECISE_AGE;
+            preciseHertz = mPreciseWorker.mResultHertz;
+            preciseProbability = mPreciseWorker.mResultProbability;
+        }
+
+        float hertz = -1;
+        float confidence = 0;
+        if (precisePitched && fastPitched) {
+            if (preciseHertz < mFastPathMinHertz || isHarmonic(fastHertz, preciseHertz)) {
+                hertz = preciseHertz;
+                confidence = 1 - ((1 - fastProbability) * (1 - preciseProbability));
+            } else {
+                hertz = fastHertz;
+                confidence = fastProbability * 0.5f;
+            }
+        } else if (precisePitched) {
+            hertz = preciseHertz;
+            confidence = preciseProbability * 0.75f;
+        } else if (fastPitched) {
+            hertz = fastHertz;
+            confidence = fastProbability * 0.5f;
+        }
+
+        mFusedResult.setPitch(hertz);
+        mFusedResult.setProbability(confidence);
+        mFusedResult.setPitched(hertz > 0);
+    }
+
+    /**
+     * @param _hertz       float. The pitch to check
+     * @param _fundamental float. The fundamental pitch
+     * @return boolean. True if _hertz is within {@link #AGREEMENT_CENTS} of the fundamental or one of
+     * its first {@link #MAX_HARMONIC} harmonics
+     */
+    private static boolean isHarmonic(float _hertz, float _fundamental) {
+        for (int harmonic = 1; harmonic <= MAX_HARMONIC; harmonic++) {
+            double cents = 1200 * Math.log(_hertz / (_fundamental * harmonic)) / Math.log(2);
+            if (Math.abs(cents) <= AGREEMENT_CENTS) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stops the worker threads and waits for them to finish.
+     */
+    @Override
+    public void processingFinished() {
+        mFastWorker.stop();
+        mPreciseWorker.stop();
+    }
+
+    /**
+     * Getters and Setters
+     */
+
+    /**
+     * @return long. The number of buffers for which the fast path did not finish in time
+     */
+    public long getFastPathTimeouts() {
+        return mFastTimeouts;
+    }
+
+    /**
+     * @return long. The number of buffers the precise path skipped because it was still busy
+     */
+    public long getPrecisePathSkips() {
+        return mPreciseWorker.getSkipped();
+    }
+
+    /**
+     * Runs one pitch detector on its own thread. The newest samples are handed over with
+     * {@link #submit(float[], long)}. If the worker is still busy, the samples waiting for it are
+     * replaced with the newer ones.
+     */
+    private static class ResolutionWorker implements Runnable {
+        private final String mName;
+        private final PitchDetector mDetector;
+
+        //samples waiting to be analysed and the samples being analysed
+        private final float[] mPending;
+        private final float[] mWorking;
+
+        private final Object mInputLock = new Object();
+        private long mPendingSequence;
+        private long mTakenSequence;
+        private boolean mRunning;
+        private Thread mThread;
+        private volatile long mSkipped;
+
+        //latest result, guarded by mResultLock
+        final Object mResultLock = new Object();
+        long mResultSequence;
+        float mResultHertz;
+        float mResultProbability;
+        boolean mResultPitched;
+
+        ResolutionWorker(String _name, PitchDetector _detector, int _windowSize) {
+            mName = _name;
+            mDetector = _detector;
+            mPending = new float[_windowSize];
+            mWorking = new float[_windowSize];
+        }
+
+        /**
+         * Starts the worker thread if it is not already running.
+         */
+        void start() {
+            synchronized (mInputLock) {
+                if (mRunning) {
+                    return;
+                }
+                synchronized (mResultLock) {
+                    mResultSequence = 0;
+                    mResultPitched = false;
+                }
+                mRunning = true;
+                mPendingSequence = 0;
+                mTakenSequence = 0;
+                mThread = new Thread(this, mName);
+                mThread.setPriority(Thread.MAX_PRIORITY);
+                mThread.start();
+            }
+        }
+
+        /**
+         * Stops the worker thread and waits for it to finish.
+         */
+        void stop() {
+            Thread thread;
+            synchronized (mInputLock) {
+                if (!mRunning) {
+                    return;
+                }
+                mRunning = false;
+                thread = mThread;
+                mThread = null;
+                mInputLock.notifyAll();
+            }
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Hands the newest samples of _buffer to the worker.
+         *
+         * @param _buffer   float[]. The latest buffer from the dispatcher.
+         * @param _sequence long. The sequence number of the buffer.
+         */
+        void submit(float[] _buffer, long _sequence) {
+            synchronized (mInputLock) {
+                if (mPendingSequence != mTakenSequence) {
+                    mSkipped++;
+                }
+                System.arraycopy(_buffer, _buffer.length - mPending.length, mPending, 0, mPending.length);
+                mPendingSequence = _sequence;
+                mInputLock.notifyAll();
+            }
+        }
+
+        /**
+         * Waits until the result for _sequence has been published.
+         *
+         * @param _sequence     long. The sequence number to wait for.
+         * @param _timeoutNanos long. The longest time to wait.
+         * @return boolean. False if the result was not published in time
+         */
+        boolean awaitResult(long _sequence, long _timeoutNanos) {
+            long deadline = System.nanoTime() + _timeoutNanos;
+            synchronized (mResultLock) {
+                while (mResultSequence < _sequence) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    try {
+                        mResultLock.wait(remaining / 1000000L, (int) (remaining % 1000000L));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                long sequence;
+                synchronized (mInputLock) {
+                    while (mRunning && mPendingSequence == mTakenSequence) {
+                        try {
+                            mInputLock.wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    if (!mRunning) {
+                        return;
+                    }
+                    System.arraycopy(mPending, 0, mWorking, 0, mWorking.length);
+                    mTakenSequence = mPendingSequence;
+                    sequence = mTakenSequence;
+                }
+
+                PitchDetectionResult result = mDetector.getPitch(mWorking);
+
+                synchronized (mResultLock) {
+                    mResultSequence = sequence;
+                    mResultHertz = result.getPitch();
+                    mResultProbability = result.getProbability();
+                    mResultPitched = result.isPitched() && result.getPitch() > 0;
+                    mResultLock.notifyAll();
+                }
+            }
+        }
+
+        long getSkipped() {
+            return mSkipped;
+        }
+    }
+}
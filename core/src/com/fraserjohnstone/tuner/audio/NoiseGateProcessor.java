@@ -0,0 +1,180 @@
+package com.fraserjohnstone.tuner.audio;
+
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.pitch.PitchDetectionHandler;
+import be.tarsos.dsp.pitch.PitchDetectionResult;
+
+/**
+ * An {@link AudioProcessor} which stops quiet buffers before they reach the pitch detector, so
+ * that no time is spent estimating the pitch of room noise. It should be the first processor in
+ * the chain, see {@link AudioEngine#setNoiseGate(NoiseGateProcessor)}.
+ * <p>
+ * The level of each buffer is measured over the samples that are new in it. The gate keeps track
+ * of the level of the ambient noise, falling quickly to quieter levels and rising slowly to louder
+ * ones, and opens when a buffer is both louder than {@link AnalysisSettings#SILENCE_THRESHOLD} and
+ * clearly louder than the ambient noise. It stays open for a short time after the level drops so
+ * that the decay of a note is not cut off.
+ * <p>
+ * A closed gate returns false from {@link #process(AudioEvent)}, which skips the processors after
+ * it, and passes an unpitched result to its {@link PitchDetectionHandler} so that whatever shows
+ * the pitch still hears about the silence. The first buffer let through after the gate has been
+ * closed is marked as having no overlap, so processors which carry state from one buffer to the
+ * next start again rather than joining up audio they never saw.
+ * <p>
+ * Once the gate has been closed for {@link #IDLE_AFTER_SECONDS} it reports that it is idle, which
+ * {@link AudioEngine} uses to read audio in larger steps until the gate opens again.
+ */
+public class NoiseGateProcessor implements AudioProcessor {
+
+    //how far in dB a buffer must be above the ambient noise for the gate to open
+    private static final double OPEN_MARGIN_DB = 10;
+
+    //how quickly, in dB per second, the ambient noise level rises while the gate is closed and
+    //while it is open. It falls to a quieter level straight away.
+    private static final double FLOOR_RISE_CLOSED_DB_PER_SECOND = 3;
+    private static final double FLOOR_RISE_OPEN_DB_PER_SECOND = 0.5;
+
+    //lowest level the ambient noise is assumed to have
+    private static final double MIN_FLOOR_DB = -100;
+
+    //how long the gate stays open after the level drops
+    private static final double HOLD_SECONDS = 0.2;
+
+    //how long the gate must be closed before it becomes idle
+    public static final double IDLE_AFTER_SECONDS = 3;
+
+    private final PitchDetectionHandler mHandler;
+    private final PitchDetectionResult mUnpitchedResult = new PitchDetectionResult();
+
+    //ambient noise level in dB relative to full scale
+    private double mFloorDecibels = MIN_FLOOR_DB;
+    private double mLevelDecibels = MIN_FLOOR_DB;
+
+    private boolean mOpen;
+    private double mSecondsSinceLoud;
+    private double mSecondsClosed;
+    //set when the previous buffer was not let through
+    private boolean mSkippedPrevious = true;
+
+    //counters
+    private long mBuffersGated;
+    private long mBuffersPassed;
+
+    /**
+     * Class constructor
+     *
+     * @param _handler {@link PitchDetectionHandler}. Receives an unpitched result for every buffer
+     *                 the gate stops. May be null.
+     */
+    public NoiseGateProcessor(PitchDetectionHandler _handler) {
+        mHandler = _handler;
+        mUnpitchedResult.setPitch(-1);
+        mUnpitchedResult.setProbability(0);
+        mUnpitchedResult.setPitched(false);
+    }
+
+    @Override
+    public boolean process(AudioEvent _audioEvent) {
+        float[] buffer = _audioEvent.getFloatBuffer();
+        int overlap = _audioEvent.getOverlap();
+        int newSamples = buffer.length - overlap;
+        double seconds = newSamples / _audioEvent.getSampleRate();
+
+        //level of the new samples
+        double sumOfSquares = 0;
+        for (int i = overlap; i < buffer.length; i++) {
+            sumOfSquares += buffer[i] * buffer[i];
+        }
+        double rms = Math.sqrt(sumOfSquares / newSamples);
+        mLevelDecibels = Math.max(20 * Math.log10(rms), MIN_FLOOR_DB);
+
+        boolean loud = !AnalysisSettings.isSilence(rms)
+                && mLevelDecibels > mFloorDecibels + OPEN_MARGIN_DB;
+        updateFloor(seconds);
+
+        if (loud) {
+            mSecondsSinceLoud = 0;
+        } else {
+            mSecondsSinceLoud += seconds;
+        }
+        mOpen = loud || (mOpen && mSecondsSinceLoud < HOLD_SECONDS);
+
+        if (!mOpen) {
+            mSecondsClosed += seconds;
+            mSkippedPrevious = true;
+            mBuffersGated++;
+            if (mHandler != null) {
+                mHandler.handlePitch(mUnpitchedResult, _audioEvent);
+            }
+            return false;
+        }
+
+        mSecondsClosed = 0;
+        if (mSkippedPrevious) {
+            _audioEvent.setOverlap(0);
+            mSkippedPrevious = false;
+        }
+        mBuffersPassed++;
+        return true;
+    }
+
+    /**
+     * Moves the ambient noise level towards the level of the current buffer
+     *
+     * @param _seconds double. The length of audio that is new in the current buffer
+     */
+    private void updateFloor(double _seconds) {
+        if (mLevelDecibels < mFloorDecibels) {
+            mFloorDecibels = mLevelDecibels;
+        } else {
+            double rise = (mOpen ? FLOOR_RISE_OPEN_DB_PER_SECOND : FLOOR_RISE_CLOSED_DB_PER_SECOND) * _seconds;
+            mFloorDecibels = Math.min(mLevelDecibels, mFloorDecibels + rise);
+        }
+    }
+
+    @Override
+    public void processingFinished() {
+        //the next stream starts with the gate closed, without forgetting the ambient noise level
+        mOpen = false;
+        mSkippedPrevious = true;
+        mSecondsClosed = 0;
+    }
+
+    /**
+     * Getters and Setters
+     */
+
+    public boolean isOpen() {
+        return mOpen;
+    }
+
+    /**
+     * @return boolean. True once the gate has been closed for {@link #IDLE_AFTER_SECONDS}
+     */
+    public boolean isIdle() {
+        return !mOpen && mSecondsClosed >= IDLE_AFTER_SECONDS;
+    }
+
+    /**
+     * @return double. The level of the ambient noise in dB relative to full scale
+     */
+    public double getFloorDecibels() {
+        return mFloorDecibels;
+    }
+
+    /**
+     * @return double. The level of the last buffer in dB relative to full scale
+     */
+    public double getLevelDecibels() {
+        return mLevelDecibels;
+    }
+
+    public long getBuffersGated() {
+        return mBuffersGated;
+    }
+
+    public long getBuffersPassed() {
+        return mBuffersPassed;
+    }
+}
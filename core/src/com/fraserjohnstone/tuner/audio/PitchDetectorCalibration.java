@@ -0,0 +1,453 @@
+package com.fraserjohnstone.tuner.audio;
+
+import com.fraserjohnstone.tuner.utils.InstrumentProfile;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import be.tarsos.dsp.pitch.PitchDetectionResult;
+import be.tarsos.dsp.pitch.PitchDetector;
+import be.tarsos.dsp.pitch.PitchProcessor.PitchEstimationAlgorithm;
+
+/**
+ * Chooses the pitch detector the tuner uses on the device it is running on, by timing each
+ * candidate {@link PitchDetectorFactory} on synthetic buffers and checking how accurately it reads
+ * a few synthetic notes.
+ * <p>
+ * The budget is a fraction of the time between two analyses (the hop). Of the candidates whose
+ * median time per buffer fits the budget, the most accurate is chosen; candidates within
+ * {@link #ACCURACY_TOLERANCE_CENTS} of it count as just as accurate, and the fastest of those is
+ * chosen. If none fits the budget the fastest candidate is chosen, so the tuner drops as few buffers
+ * as it can. A candidate which reads none of the notes is never chosen. Which detector was chosen
+ * and why is given by {@link #getSelected()} and {@link #getReason()}, and every candidate's
+ * measurements by {@link #getMeasurements()}.
+ * <p>
+ * The detectors are timed with the largest window of the profile's analysis, which is the most
+ * expensive the tuner runs, on buffers a hop apart so that detectors which reuse the work of the
+ * previous buffer are timed as the tuner runs them. Each candidate is given at most
+ * {@link #MAX_CANDIDATE_NANOS}, and is stopped as soon as it is clearly over the budget, so a slow
+ * one cannot hold up start up. The accuracy of a candidate over the budget is only checked if no
+ * candidate within it can be used.
+ */
+public class PitchDetectorCalibration {
+
+    //buffers analysed before timing starts, so the detector's code has been compiled
+    private static final int WARMUP_BUFFERS = 10;
+    //buffers timed for each candidate
+    private static final int MEASURED_BUFFERS = 30;
+    //fewest buffers timed before a candidate is stopped for being slow, unless it is far over the
+    //budget
+    private static final int MIN_MEASURED_BUFFERS = 3;
+    //longest time spent timing one candidate, after which it is judged on the buffers timed so far
+    private static final long MAX_CANDIDATE_NANOS = 100000000L;
+    //candidates are timed again if the first time was within this multiple of the budget
+    private static final int RETIME_WITHIN_BUDGETS = 2;
+    //a candidate whose first timed buffer takes more than this multiple of the budget is not timed
+    //any further
+    private static final int FAR_OVER_BUDGETS = 4;
+
+    //number of notes, spread evenly in pitch across the profile, whose readings give the accuracy
+    private static final int ACCURACY_NOTES = 5;
+    //error given to a note that was not read, or was read more than this far out (an octave error)
+    private static final double MAX_ERROR_CENTS = 100;
+    //candidates whose mean error is within this of the most accurate count as just as accurate
+    public static final double ACCURACY_TOLERANCE_CENTS = 0.1;
+    //detuning of the synthetic notes, so that they are not exactly on a lag
+    private static final double DETUNE_CENTS = 13;
+    private static final int HARMONICS = 6;
+    private static final double NOISE_DECIBELS = -40;
+    private static final long SEED = 42;
+
+    /**
+     * How one candidate did
+     */
+    public static class Measurement {
+
+        private final PitchDetectorFactory mFactory;
+        private final long mNanosPerBuffer;
+        private final double mErrorCents;
+        private final boolean mWithinBudget;
+
+        Measurement(PitchDetectorFactory _factory, long _nanosPerBuffer, double _errorCents,
+                    boolean _withinBudget) {
+            mFactory = _factory;
+            mNanosPerBuffer = _nanosPerBuffer;
+            mErrorCents = _errorCents;
+            mWithinBudget = _withinBudget;
+        }
+
+        /**
+         * Getters and Setters
+         */
+
+        public PitchDetectorFactory getFactory() {
+            return mFactory;
+        }
+
+        /**
+         * @return long. The median time the detector took for one buffer, or {@link Long#MAX_VALUE}
+         * if it failed
+         */
+        public long getNanosPerBuffer() {
+            return mNanosPerBuffer;
+        }
+
+        /**
+         * @return double. The mean error of the readings of the synthetic notes, with each note that
+         * was not read counted as {@link #MAX_ERROR_CENTS}, or NaN if the accuracy was not checked
+         * because the candidate is over the budget and another could be used
+         */
+        public double getErrorCents() {
+            return mErrorCents;
+        }
+
+        /**
+         * @return boolean. True if the detector read at least one of the synthetic notes
+         */
+        public boolean isUsable() {
+            return mErrorCents < MAX_ERROR_CENTS;
+        }
+
+        public boolean isWithinBudget() {
+            return mWithinBudget;
+        }
+    }
+
+    private final PitchDetectorFactory[] mCandidates;
+    private final float mSampleRate;
+    private final int mBufferSize;
+    private final int mHopSize;
+    private final float mMinHertz;
+    private final float mMaxHertz;
+    private final double mBudgetFraction;
+    private final long mBudgetNanos;
+
+    private volatile boolean mDone = false;
+    private Measurement[] mMeasurements;
+    private PitchDetectorFactory mSelected;
+    private String mReason;
+
+    /**
+     * Class constructor. Nothing is measured until {@link #run()} or {@link #start()} is called.
+     *
+     * @param _candidates     {@link PitchDetectorFactory}[]. The detectors to choose from.
+     * @param _sampleRate     float. The sample rate of the audio, before decimation.
+     * @param _profile        {@link InstrumentProfile}. The profile whose analysis the detectors are
+     *                        timed with.
+     * @param _budgetFraction double. The fraction of the hop a detector may take for one buffer.
+     */
+    public PitchDetectorCalibration(PitchDetectorFactory[] _candidates, float _sampleRate,
+                                    InstrumentProfile _profile, double _budgetFraction) {
+        if (_candidates.length == 0) {
+            throw new IllegalArgumentException("No pitch detectors to choose from");
+        }
+        mCandidates = _candidates.clone();
+        int factor = AnalysisSettings.getDecimationFactor(_profile, _sampleRate);
+        mSampleRate = _sampleRate / factor;
+        mBufferSize = AnalysisSettings.getBufferSize(_profile, _sampleRate) / factor;
+        mHopSize = AnalysisSettings.HOP_SIZE / factor;
+        mMinHertz = (float) _profile.getMinHertz();
+        mMaxHertz = (float) _profile.getMaxHertz();
+        mBudgetFraction = _budgetFraction;
+        mBudgetNanos = (long) (_budgetFraction * AnalysisSettings.HOP_SIZE * 1e9 / _sampleRate);
+    }
+
+    /**
+     * The direct YIN and the detectors which come with TarsosDSP are left out: none of them is as
+     * fast as the FFT or sliding YIN for the same accuracy, so timing them would only make the
+     * calibration longer. See {@link #getAllCandidates()}.
+     *
+     * @return {@link PitchDetectorFactory}[]. The detectors the tuner chooses from, the FFT and
+     * sliding YIN and whichever of the two costs less for the buffer size
+     */
+    public static PitchDetectorFactory[] getDefaultCandidates() {
+        return new PitchDetectorFactory[] {
+                SlidingYinPitchDetector.CHEAPEST_YIN,
+                YinPitchDetector.FFT_YIN,
+                SlidingYinPitchDetector.SLIDING_YIN
+        };
+    }
+
+    /**
+     * @return {@link PitchDetectorFactory}[]. The default candidates, the tuner's direct YIN and
+     * every detector which comes with TarsosDSP, for comparing them all
+     */
+    public static PitchDetectorFactory[] getAllCandidates() {
+        PitchDetectorFactory[] defaults = getDefaultCandidates();
+        PitchEstimationAlgorithm[] algorithms = PitchEstimationAlgorithm.values();
+        PitchDetectorFactory[] candidates = new PitchDetectorFactory[defaults.length + 1 + algorithms.length];
+        System.arraycopy(defaults, 0, candidates, 0, defaults.length);
+        candidates[defaults.length] = YinPitchDetector.YIN;
+        for (int i = 0; i < algorithms.length; i++) {
+            candidates[defaults.length + 1 + i] = new TarsosPitchDetectorFactory(algorithms[i]);
+        }
+        return candidates;
+    }
+
+    /**
+     * Runs {@link #run()} on a new background thread. {@link #isDone()} is true once it has finished.
+     */
+    public void start() {
+        start(null);
+    }
+
+    /**
+     * Runs {@link #run()} on a new background thread, then _onDone on the same thread.
+     *
+     * @param _onDone Runnable. Told when the detector has been chosen, or null.
+     */
+    public void start(final Runnable _onDone) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                PitchDetectorCalibration.this.run();
+                if (_onDone != null) {
+                    _onDone.run();
+                }
+            }
+        }, "Pitch Detector Calibration");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Measures every candidate and chooses one. Takes up to twice {@link #MAX_CANDIDATE_NANOS} for
+     * each candidate, so should not be called on the render thread.
+     */
+    public void run() {
+        float[] timingSignal = createNote(Math.sqrt(mMinHertz * mMaxHertz),
+                mBufferSize + (WARMUP_BUFFERS + MEASURED_BUFFERS) * mHopSize, SEED);
+        float[][] accuracyNotes = new float[ACCURACY_NOTES][];
+        double[] accuracyHertz = new double[ACCURACY_NOTES];
+        for (int i = 0; i < ACCURACY_NOTES; i++) {
+            double hertz = mMinHertz * Math.pow(mMaxHertz / mMinHertz, (i + 0.5) / ACCURACY_NOTES);
+            accuracyHertz[i] = hertz * Math.pow(2, DETUNE_CENTS / 1200);
+            accuracyNotes[i] = createNote(hertz, mBufferSize, SEED + 1 + i);
+        }
+
+        //candidates which might fit the budget are timed twice, in turn, and the faster time kept,
+        //so that one is not slowed by compiling code it shares with the candidates after it
+        long[] nanos = new long[mCandidates.length];
+        for (int i = 0; i < mCandidates.length; i++) {
+            nanos[i] = time(mCandidates[i], timingSignal);
+        }
+        for (int i = 0; i < mCandidates.length; i++) {
+            if (nanos[i] <= RETIME_WITHIN_BUDGETS * mBudgetNanos) {
+                nanos[i] = Math.min(nanos[i], time(mCandidates[i], timingSignal));
+            }
+        }
+
+        double[] errors = new double[mCandidates.length];
+        boolean usableWithinBudget = false;
+        for (int i = 0; i < mCandidates.length; i++) {
+            errors[i] = Double.NaN;
+            //the accuracy of a slow candidate is only needed if nothing else can be used
+            if (nanos[i] <= mBudgetNanos) {
+                errors[i] = checkAccuracy(mCandidates[i], accuracyNotes, accuracyHertz);
+                usableWithinBudget |= errors[i] < MAX_ERROR_CENTS;
+            }
+        }
+        if (!usableWithinBudget) {
+            for (int i = 0; i < mCandidates.length; i++) {
+                if (Double.isNaN(errors[i]) && nanos[i] != Long.MAX_VALUE) {
+                    errors[i] = checkAccuracy(mCandidates[i], accuracyNotes, accuracyHertz);
+                }
+            }
+        }
+
+        Measurement[] measurements = new Measurement[mCandidates.length];
+        for (int i = 0; i < mCandidates.length; i++) {
+            measurements[i] = new Measurement(mCandidates[i], nanos[i], errors[i], nanos[i] <= mBudgetNanos);
+        }
+        select(measurements);
+        mMeasurements = measurements;
+        mDone = true;
+    }
+
+    /**
+     * @param _hertz   double. The pitch of the note before it is detuned.
+     * @param _samples int. The number of samples.
+     * @param _seed    long. The seed of the note's phases and noise.
+     * @return float[]. A synthetic note, detuned by {@link #DETUNE_CENTS}, at the analysis sample rate
+     */
+    private float[] createNote(double _hertz, int _samples, long _seed) {
+        ToneGenerator generator = new ToneGenerator(_hertz, _seed);
+        generator.setHarmonics(HARMONICS);
+        generator.setNoiseDecibels(NOISE_DECIBELS);
+        generator.setDetuneCents(DETUNE_CENTS);
+        int sampleRate = Math.round(mSampleRate);
+        float[] note = generator.generate(sampleRate, (_samples + 1.0) / sampleRate);
+        float[] samples = new float[_samples];
+        System.arraycopy(note, 0, samples, 0, _samples);
+        return samples;
+    }
+
+    /**
+     * @param _factory      {@link PitchDetectorFactory}. The candidate.
+     * @param _timingSignal float[]. A note long enough for every buffer timed, a hop apart.
+     * @return long. The median time _factory's detector takes for one buffer, or
+     * {@link Long#MAX_VALUE} if it cannot be used with these settings
+     */
+    private long time(PitchDetectorFactory _factory, float[] _timingSignal) {
+        long[] nanos = new long[MEASURED_BUFFERS];
+        int measured = 0;
+        int overBudget = 0;
+        try {
+            PitchDetector detector = _factory.createDetector(mSampleRate, mBufferSize, mHopSize, mMinHertz,
+                    mMaxHertz);
+            float[] buffer = new float[mBufferSize];
+            int position = 0;
+            long start = System.nanoTime();
+            //warm up for at most a quarter of the time allowed
+            while (position < WARMUP_BUFFERS && System.nanoTime() - start < MAX_CANDIDATE_NANOS / 4) {
+                System.arraycopy(_timingSignal, position++ * mHopSize, buffer, 0, mBufferSize);
+                detector.getPitch(buffer);
+            }
+            while (measured < MEASURED_BUFFERS) {
+                System.arraycopy(_timingSignal, position++ * mHopSize, buffer, 0, mBufferSize);
+                long before = System.nanoTime();
+                detector.getPitch(buffer);
+                nanos[measured] = System.nanoTime() - before;
+                if (nanos[measured++] > mBudgetNanos) {
+                    overBudget++;
+                }
+                //stop once the first buffer is far over the budget, once the median is sure to be
+                //over it, or once the time runs out
+                if (measured == 1 && nanos[0] > FAR_OVER_BUDGETS * mBudgetNanos
+                        || overBudget > MEASURED_BUFFERS / 2
+                        || measured >= MIN_MEASURED_BUFFERS && (overBudget == measured
+                        || System.nanoTime() - start > MAX_CANDIDATE_NANOS)) {
+                    break;
+                }
+            }
+        } catch (RuntimeException e) {
+            //a detector which cannot be used with these settings is never chosen
+            return Long.MAX_VALUE;
+        }
+        return median(nanos, measured);
+    }
+
+    /**
+     * @param _factory       {@link PitchDetectorFactory}. The candidate.
+     * @param _accuracyNotes float[][]. One buffer of each note.
+     * @param _accuracyHertz double[]. The pitch of each note.
+     * @return double. The mean error of a new detector's reading of each note, see
+     * {@link Measurement#getErrorCents()}
+     */
+    private double checkAccuracy(PitchDetectorFactory _factory, float[][] _accuracyNotes,
+                                 double[] _accuracyHertz) {
+        double totalError = 0;
+        try {
+            PitchDetector detector = _factory.createDetector(mSampleRate, mBufferSize, mHopSize, mMinHertz,
+                    mMaxHertz);
+            for (int i = 0; i < _accuracyNotes.length; i++) {
+                PitchDetectionResult result = detector.getPitch(_accuracyNotes[i]);
+                double error = MAX_ERROR_CENTS;
+                if (result.isPitched() && result.getPitch() > 0) {
+                    error = Math.min(MAX_ERROR_CENTS,
+                            Math.abs(1200 * Math.log(result.getPitch() / _accuracyHertz[i]) / Math.log(2)));
+                }
+                totalError += error;
+            }
+        } catch (RuntimeException e) {
+            return MAX_ERROR_CENTS;
+        }
+        return totalError / _accuracyNotes.length;
+    }
+
+    /**
+     * @return long. The median of the first _count values of _values, which are sorted
+     */
+    private static long median(long[] _values, int _count) {
+        Arrays.sort(_values, 0, _count);
+        return _count % 2 == 1 ? _values[_count / 2] : (_values[_count / 2 - 1] + _values[_count / 2]) / 2;
+    }
+
+    /**
+     * Chooses the detector and sets the reason for the choice
+     */
+    private void select(Measurement[] _measurements) {
+        //the most accurate usable candidate within the budget
+        double bestError = MAX_ERROR_CENTS;
+        for (int i = 0; i < _measurements.length; i++) {
+            if (_measurements[i].isWithinBudget() && _measurements[i].isUsable()) {
+                bestError = Math.min(bestError, _measurements[i].getErrorCents());
+            }
+        }
+        boolean withinBudget = bestError < MAX_ERROR_CENTS;
+
+        //the fastest of those as accurate as it or, if there are none, the fastest usable candidate
+        Measurement selected = null;
+        for (int i = 0; i < _measurements.length; i++) {
+            Measurement measurement = _measurements[i];
+            if (!measurement.isUsable() || withinBudget && (!measurement.isWithinBudget()
+                    || measurement.getErrorCents() > bestError + ACCURACY_TOLERANCE_CENTS)) {
+                continue;
+            }
+            if (selected == null || measurement.getNanosPerBuffer() < selected.getNanosPerBuffer()) {
+                selected = measurement;
+            }
+        }
+
+        String budget = String.format(Locale.US, "the budget of %.3f ms (%.0f%% of the hop)",
+                mBudgetNanos / 1e6, mBudgetFraction * 100);
+        if (selected == null) {
+            mSelected = mCandidates[0];
+            mReason = mSelected + " is the first candidate, as no detector read the test notes";
+        } else if (!withinBudget) {
+            mSelected = selected.getFactory();
+            mReason = String.format(Locale.US, "%s is the fastest detector, as none fits %s: "
+                    + "%.3f ms per buffer, %.2f cents mean error", mSelected, budget,
+                    selected.getNanosPerBuffer() / 1e6, selected.getErrorCents());
+        } else {
+            mSelected = selected.getFactory();
+            mReason = String.format(Locale.US, "%s is the fastest of the most accurate detectors "
+                    + "within %s: %.3f ms per buffer, %.2f cents mean error", mSelected, budget,
+                    selected.getNanosPerBuffer() / 1e6, selected.getErrorCents());
+        }
+    }
+
+    /**
+     * Getters and Setters
+     */
+
+    /**
+     * @return boolean. True once every candidate has been measured and one chosen
+     */
+    public boolean isDone() {
+        return mDone;
+    }
+
+    /**
+     * @return {@link PitchDetectorFactory}. The chosen detector, or null until {@link #isDone()}
+     */
+    public PitchDetectorFactory getSelected() {
+        return mDone ? mSelected : null;
+    }
+
+    /**
+     * @return String. Why the detector was chosen, or null until {@link #isDone()}
+     */
+    public String getReason() {
+        return mDone ? mReason : null;
+    }
+
+    /**
+     * @return {@link Measurement}[]. The measurements of every candidate, in the order they were
+     * given, or null until {@link #isDone()}
+     */
+    public Measurement[] getMeasurements() {
+        return mDone ? mMeasurements.clone() : null;
+    }
+
+    /**
+     * @return long. The most time a detector may take for one buffer to be within the budget
+     */
+    public long getBudgetNanos() {
+        return mBudgetNanos;
+    }
+
+    public double getBudgetFraction() {
+        return mBudgetFraction;
+    }
+}
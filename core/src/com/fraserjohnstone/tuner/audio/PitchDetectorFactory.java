@@ -0,0 +1,25 @@
+package com.fraserjohnstone.tuner.audio;
+
+import be.tarsos.dsp.pitch.PitchDetector;
+
+/**
+ * Creates the {@link PitchDetector} for each analysis window of a pitch processor, so that
+ * {@link AdaptiveWindowPitchProcessor} and {@link MultiResolutionPitchProcessor} can run either the
+ * TarsosDSP detectors (see {@link TarsosPitchDetectorFactory}) or the tuner's own
+ * (see {@link YinPitchDetector#FFT_YIN} and {@link SlidingYinPitchDetector#SLIDING_YIN}).
+ */
+public interface PitchDetectorFactory {
+
+    /**
+     * @param _sampleRate float. The sample rate of the audio.
+     * @param _windowSize int. The number of samples in each buffer given to the detector.
+     * @param _hopSize    int. The number of new samples in each buffer given to the detector, when
+     *                    consecutive buffers overlap, or _windowSize if they do not.
+     * @param _minHertz   float. The lowest pitch to report, or 0 for no limit.
+     * @param _maxHertz   float. The highest pitch to report, or {@link Float#MAX_VALUE} for no limit.
+     * @return {@link PitchDetector}. A new detector, which reports pitches outside the range as
+     * unpitched
+     */
+    PitchDetector createDetector(float _sampleRate, int _windowSize, int _hopSize, float _minHertz,
+                                 float _maxHertz);
+}
@@ -0,0 +1,188 @@
+package com.fraserjohnstone.tuner.audio;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed size, lock free ring buffer used to pass pitch frames from the audio thread (the single
+ * producer) to the render thread (the single consumer).
+ * <p>
+ * Each frame is made up of primitive values (hertz, probability, rms, timestamps and sequence
+ * number) which are held in parallel arrays, so nothing is allocated once the buffer has been
+ * created. If the render thread falls behind and the buffer fills up, new frames are dropped and
+ * counted rather than blocking the audio thread.
+ * <p>
+ * The consumer reads frames with {@link #poll()}, which copies the oldest frame into the "current
+ * frame" fields returned by {@link #getHertz()}, {@link #getProbability()} etc.
+ */
+public class PitchFrameBuffer {
+
+    //value written as the hertz of a frame in which no pitch was detected
+    public static final float NO_PITCH = -1;
+
+    private final int mCapacity;
+    private final int mMask;
+
+    //frame storage
+    private final float[] mHertz;
+    private final float[] mProbability;
+    private final float[] mRms;
+    private final long[] mTimestamp;
+    private final long[] mDeliveredTimestamp;
+    private final long[] mSequence;
+
+    //index of the next slot to be written. Only written by the producer.
+    private final AtomicLong mHead = new AtomicLong();
+    //index of the next slot to be read. Only written by the consumer.
+    private final AtomicLong mTail = new AtomicLong();
+    //number of frames that were dropped because the buffer was full. Only written by the producer.
+    private final AtomicLong mDroppedFrames = new AtomicLong();
+
+    //producer side state
+    private long mCachedTail;
+    private long mNextSequence;
+
+    //consumer side state
+    private long mCachedHead;
+    private float mCurrentHertz = NO_PITCH;
+    private float mCurrentProbability;
+    private float mCurrentRms;
+    private long mCurrentTimestamp;
+    private long mCurrentDeliveredTimestamp;
+    private long mCurrentSequence = -1;
+
+    /**
+     * Class constructor
+     *
+     * @param _capacity int. The maximum number of frames held. Rounded up to a power of two.
+     */
+    public PitchFrameBuffer(int _capacity) {
+        int capacity = 1;
+        while (capacity < _capacity) {
+            capacity <<= 1;
+        }
+        mCapacity = capacity;
+        mMask = capacity - 1;
+
+        mHertz = new float[capacity];
+        mProbability = new float[capacity];
+        mRms = new float[capacity];
+        mTimestamp = new long[capacity];
+        mDeliveredTimestamp = new long[capacity];
+        mSequence = new long[capacity];
+    }
+
+    /**
+     * Adds a frame to the buffer. Must only be called from the producer thread.
+     *
+     * @param _hertz           float. The detected pitch, or {@link #NO_PITCH}
+     * @param _probability     float. The probability reported by the pitch detector
+     * @param _rms             float. The root mean square of the analysed buffer
+     * @param _timestampNanos  long. The time at which the frame was produced, see {@link System#nanoTime()}
+     * @return boolean. False if the buffer was full and the frame was dropped
+     */
+    public boolean offer(float _hertz, float _probability, float _rms, long _timestampNanos) {
+        return offer(_hertz, _probability, _rms, _timestampNanos, _timestampNanos);
+    }
+
+    /**
+     * Adds a frame to the buffer. Must only be called from the producer thread.
+     *
+     * @param _hertz          float. The detected pitch, or {@link #NO_PITCH}
+     * @param _probability    float. The probability reported by the pitch detector
+     * @param _rms            float. The root mean square of the analysed buffer
+     * @param _timestampNanos long. The time at which the frame was produced, see {@link System#nanoTime()}
+     * @param _deliveredNanos long. The time at which the analysed buffer was delivered by the audio
+     *                        dispatcher
+     * @return boolean. False if the buffer was full and the frame was dropped
+     */
+    public boolean offer(float _hertz, float _probability, float _rms, long _timestampNanos,
+                         long _deliveredNanos) {
+        long sequence = mNextSequence++;
+        long head = mHead.get();
+
+        if (head - mCachedTail >= mCapacity) {
+            mCachedTail = mTail.get();
+            if (head - mCachedTail >= mCapacity) {
+                mDroppedFrames.lazySet(mDroppedFrames.get() + 1);
+                return false;
+            }
+        }
+
+        int slot = (int) (head & mMask);
+        mHertz[slot] = _hertz;
+        mProbability[slot] = _probability;
+        mRms[slot] = _rms;
+        mTimestamp[slot] = _timestampNanos;
+        mDeliveredTimestamp[slot] = _deliveredNanos;
+        mSequence[slot] = sequence;
+
+        //publish the frame to the consumer
+        mHead.lazySet(head + 1);
+        return true;
+    }
+
+    /**
+     * Moves the oldest unread frame into the current frame fields. Must only be called from the
+     * consumer thread.
+     *
+     * @return boolean. False if there was no new frame to read
+     */
+    public boolean poll() {
+        long tail = mTail.get();
+
+        if (tail >= mCachedHead) {
+            mCachedHead = mHead.get();
+            if (tail >= mCachedHead) {
+                return false;
+            }
+        }
+
+        int slot = (int) (tail & mMask);
+        mCurrentHertz = mHertz[slot];
+        mCurrentProbability = mProbability[slot];
+        mCurrentRms = mRms[slot];
+        mCurrentTimestamp = mTimestamp[slot];
+        mCurrentDeliveredTimestamp = mDeliveredTimestamp[slot];
+        mCurrentSequence = mSequence[slot];
+
+        //release the slot back to the producer
+        mTail.lazySet(tail + 1);
+        return true;
+    }
+
+    /**
+     * Getters and Setters
+     */
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    public long getDroppedFrames() {
+        return mDroppedFrames.get();
+    }
+
+    public float getHertz() {
+        return mCurrentHertz;
+    }
+
+    public float getProbability() {
+        return mCurrentProbability;
+    }
+
+    public float getRms() {
+        return mCurrentRms;
+    }
+
+    public long getTimestamp() {
+        return mCurrentTimestamp;
+    }
+
+    public long getDeliveredTimestamp() {
+        return mCurrentDeliveredTimestamp;
+    }
+
+    public long getSequence() {
+        return mCurrentSequence;
+    }
+}
@@ -0,0 +1,293 @@
+package com.fraserjohnstone.tuner.audio;
+
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.pitch.PitchDetectionHandler;
+import be.tarsos.dsp.pitch.PitchDetectionResult;
+
+/**
+ * Refines the pitch found by a pitch detector to a small fraction of a cent, and passes the result
+ * on to another {@link PitchDetectionHandler}. It sits between the pitch processor and the handler
+ * which would otherwise receive its results, see {@link AnalysisSettings#createPitchRefiner}.
+ * <p>
+ * Two overlapping frames are taken from the newest samples of the buffer, the second starting half
+ * a frame after the first, and both are windowed and transformed. The partials of the detected pitch
+ * are found in the spectrum of the newer frame, and the frequency of each is first interpolated from
+ * the log magnitudes of its bin and the bins either side (a parabola through the log of a Gaussian
+ * shaped peak). That is then corrected by how far the phase of the bin has moved between the two
+ * frames: a partial of frequency f advances by 2 pi f times the hop over the sample rate, so the
+ * difference between the advance measured and the one the interpolated frequency predicts gives the
+ * error of the interpolation. For a steady note this is exact whatever the window and the position
+ * of the partial between bins, so unlike the interpolation of the detector it has no bias, and a
+ * short buffer refined measures pitch better than a far longer one which is not. The pitch is the
+ * least squares fit of n times the pitch to the frequency of partial n, weighted by the square of
+ * the amplitude of each partial, as the error of each partial grows as its amplitude falls.
+ * <p>
+ * The frame is the shortest power of two, of at least the minimum frame size, which puts the pitch
+ * at least {@link #MIN_BINS_PER_PARTIAL} bins from 0Hz, so neighbouring partials do not share a peak.
+ * It is never longer than two thirds of the buffer, as both frames must fit in it. Unpitched results,
+ * pitches too low for the longest frame, and pitches which cannot be refined or would move by more
+ * than {@link #MAX_CORRECTION_CENTS}, are passed on unchanged.
+ * <p>
+ * Nothing is allocated once the refiner has been created. Instances are not thread safe.
+ */
+public class PitchRefiner implements PitchDetectionHandler {
+
+    //highest partial used
+    private static final int MAX_PARTIALS = 8;
+    //how far each partial is looked for from where the pitch measured so far puts it, in cents
+    private static final double SEARCH_CENTS = 40;
+    //narrowest search either side of a partial, in bins
+    private static final double MIN_SEARCH_BINS = 1;
+    //fewest bins between the partials of the pitch
+    private static final double MIN_BINS_PER_PARTIAL = 4;
+    //highest frequency used as a fraction of the sample rate, which keeps inside the pass band of
+    //DecimatingProcessor
+    private static final double MAX_FREQUENCY_FRACTION = 0.35;
+    //partials quieter than this relative to the loudest bin are not used
+    private static final double PARTIAL_FLOOR_DB = -40;
+    //largest change made to the detected pitch, in cents. A bigger change means the frames did not
+    //hold a steady note.
+    public static final double MAX_CORRECTION_CENTS = 30;
+
+    private final PitchDetectionHandler mHandler;
+    private final float mSampleRate;
+    private final DspKernels mKernels;
+
+    //one transform and window for each frame size, from smallest to largest
+    private final int[] mFrameSizes;
+    private final RealFft[] mFfts;
+    private final float[][] mWindows;
+
+    //the spectra of the older and newer frame, and the magnitudes of the newer one
+    private final float[] mOlderSpectrum;
+    private final float[] mNewerSpectrum;
+    private final float[] mMagnitudes;
+
+    //frame size of the last refinement, or 0 if the last pitch was not refined
+    private int mLastFrameSize;
+    private int mLastPartials;
+
+    /**
+     * Class constructor
+     *
+     * @param _sampleRate   float. The sample rate of the audio.
+     * @param _bufferSize   int. The number of samples in each buffer passed to {@link #handlePitch}.
+     * @param _minFrameSize int. The smallest frame size used. Must be a power of two.
+     * @param _handler      {@link PitchDetectionHandler}. Receives each result once it is refined.
+     */
+    public PitchRefiner(float _sampleRate, int _bufferSize, int _minFrameSize,
+                        PitchDetectionHandler _handler) {
+        this(_sampleRate, _bufferSize, _minFrameSize, _handler, DspKernels.getDefault());
+    }
+
+    /**
+     * Class constructor
+     *
+     * @param _sampleRate   float. The sample rate of the audio.
+     * @param _bufferSize   int. The number of samples in each buffer passed to {@link #handlePitch}.
+     * @param _minFrameSize int. The smallest frame size used. Must be a power of two.
+     * @param _handler      {@link PitchDetectionHandler}. Receives each result once it is refined.
+     * @param _kernels      {@link DspKernels}. The implementation of the inner loops.
+     */
+    public PitchRefiner(float _sampleRate, int _bufferSize, int _minFrameSize,
+                        PitchDetectionHandler _handler, DspKernels _kernels) {
+        mHandler = _handler;
+        mSampleRate = _sampleRate;
+        mKernels = _kernels;
+
+        //the largest frame whose two frames, half a frame apart, fit in the buffer
+        int maxFrameSize = Integer.highestOneBit(2 * _bufferSize / 3);
+        int minFrameSize = Math.min(_minFrameSize, maxFrameSize);
+        int sizes = Integer.numberOfTrailingZeros(maxFrameSize / minFrameSize) + 1;
+        mFrameSizes = new int[sizes];
+        mFfts = new RealFft[sizes];
+        mWindows = new float[sizes][];
+        for (int i = 0; i < sizes; i++) {
+            int size = minFrameSize << i;
+            mFrameSizes[i] = size;
+            mFfts[i] = new RealFft(size);
+            mWindows[i] = new float[size];
+            for (int j = 0; j < size; j++) {
+                mWindows[i][j] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * j / size));
+            }
+        }
+
+        mOlderSpectrum = new float[maxFrameSize];
+        mNewerSpectrum = new float[maxFrameSize];
+        mMagnitudes = new float[maxFrameSize / 2 + 1];
+    }
+
+    @Override
+    public void handlePitch(PitchDetectionResult _result, AudioEvent _audioEvent) {
+        float pitch = _result.getPitch();
+        if (_result.isPitched() && pitch > 0) {
+            _result.setPitch((float) refine(_audioEvent.getFloatBuffer(), pitch));
+        } else {
+            mLastFrameSize = 0;
+        }
+        mHandler.handlePitch(_result, _audioEvent);
+    }
+
+    /**
+     * Refines a pitch found in the newest samples of _buffer, see the description of the class
+     *
+     * @param _buffer float[]. The samples, newest last. Must hold two frames of the size
+     *                {@link #getFrameSize(double)} gives for _hertz, half a frame apart.
+     * @param _hertz  double. The pitch found by the detector.
+     * @return double. The refined pitch, or _hertz if it could not be refined
+     */
+    public double refine(float[] _buffer, double _hertz) {
+        int index = frameIndex(_hertz);
+        int size = mFrameSizes[index];
+        int hop = size / 2;
+        mLastFrameSize = 0;
+        mLastPartials = 0;
+        if (_buffer.length < size + hop || size < MIN_BINS_PER_PARTIAL * mSampleRate / _hertz) {
+            return _hertz;
+        }
+
+        int newerStart = _buffer.length - size;
+        System.arraycopy(_buffer, newerStart - hop, mOlderSpectrum, 0, size);
+        System.arraycopy(_buffer, newerStart, mNewerSpectrum, 0, size);
+        mKernels.applyWindow(mOlderSpectrum, mWindows[index], size);
+        mKernels.applyWindow(mNewerSpectrum, mWindows[index], size);
+        mFfts[index].forward(mOlderSpectrum);
+        mFfts[index].forward(mNewerSpectrum);
+        mKernels.magnitudeSpectrum(mNewerSpectrum, size, mMagnitudes);
+
+        double binHertz = mSampleRate / size;
+        int maxBin = Math.min(size / 2 - 1, (int) (MAX_FREQUENCY_FRACTION * size));
+        float loudest = 0;
+        for (int k = 1; k <= maxBin; k++) {
+            loudest = Math.max(loudest, mMagnitudes[k]);
+        }
+        float floor = (float) (loudest * Math.pow(10, PARTIAL_FLOOR_DB / 20));
+        //phase advance of a frequency of one bin over the hop, in radians
+        double binAdvance = 2 * Math.PI * hop / size;
+
+        double pitch = _hertz;
+        double searchRatio = Math.pow(2, SEARCH_CENTS / 1200) - 1;
+        //sums of the weighted least squares fit
+        double weightedHertz = 0;
+        double weightedPartials = 0;
+        int partials = 0;
+        for (int n = 1; n <= MAX_PARTIALS; n++) {
+            double expectedBin = n * pitch / binHertz;
+            double halfWidth = Math.max(expectedBin * searchRatio, MIN_SEARCH_BINS);
+            if (expectedBin + halfWidth > maxBin) {
+                break;
+            }
+            int k = loudestBin((int) Math.ceil(expectedBin - halfWidth), (int) (expectedBin + halfWidth));
+            if (k < 0 || mMagnitudes[k] < floor) {
+                continue;
+            }
+
+            //the peak interpolated from the log magnitudes
+            double left = Math.log(Math.max(mMagnitudes[k - 1], Float.MIN_NORMAL));
+            double centre = Math.log(mMagnitudes[k]);
+            double right = Math.log(Math.max(mMagnitudes[k + 1], Float.MIN_NORMAL));
+            double curvature = left - 2 * centre + right;
+            double offset = curvature < 0 ? 0.5 * (left - right) / curvature : 0;
+            double amplitude = Math.exp(centre - 0.25 * (left - right) * offset);
+
+            //corrected by the phase advance between the frames. The interpolated frequency is well
+            //within the bin either side that the advance can tell apart.
+            double advance = phase(mNewerSpectrum, k) - phase(mOlderSpectrum, k);
+            double deviation = wrap(advance - (k + offset) * binAdvance);
+            double bin = k + offset + deviation / binAdvance;
+
+            weightedHertz += amplitude * amplitude * n * bin * binHertz;
+            weightedPartials += amplitude * amplitude * n * n;
+            partials++;
+            pitch = weightedHertz / weightedPartials;
+        }
+
+        double cents = 1200 * Math.log(pitch / _hertz) / Math.log(2);
+        if (partials == 0 || Math.abs(cents) > MAX_CORRECTION_CENTS) {
+            return _hertz;
+        }
+        mLastFrameSize = size;
+        mLastPartials = partials;
+        return pitch;
+    }
+
+    /**
+     * @param _hertz double. A pitch.
+     * @return int. The index of the frame size used to refine _hertz
+     */
+    private int frameIndex(double _hertz) {
+        double samples = MIN_BINS_PER_PARTIAL * mSampleRate / _hertz;
+        for (int i = 0; i < mFrameSizes.length; i++) {
+            if (mFrameSizes[i] >= samples) {
+                return i;
+            }
+        }
+        return mFrameSizes.length - 1;
+    }
+
+    /**
+     * @param _lowBin  int. The lowest bin searched.
+     * @param _highBin int. The highest bin searched.
+     * @return int. The loudest local maximum of the magnitudes between the two bins, or -1 if there
+     * is none
+     */
+    private int loudestBin(int _lowBin, int _highBin) {
+        int loudest = -1;
+        for (int k = Math.max(_lowBin, 1); k <= _highBin; k++) {
+            float magnitude = mMagnitudes[k];
+            if (magnitude > mMagnitudes[k - 1] && magnitude >= mMagnitudes[k + 1]
+                    && (loudest < 0 || magnitude > mMagnitudes[loudest])) {
+                loudest = k;
+            }
+        }
+        return loudest;
+    }
+
+    /**
+     * @param _spectrum float[]. A spectrum packed by {@link RealFft#forward(float[])}.
+     * @param _bin      int. A bin from 1 to n/2 - 1.
+     * @return double. The phase of the bin in radians
+     */
+    private static double phase(float[] _spectrum, int _bin) {
+        return Math.atan2(_spectrum[2 * _bin + 1], _spectrum[2 * _bin]);
+    }
+
+    /**
+     * @param _radians double. Any angle.
+     * @return double. The same angle between -pi and pi
+     */
+    private static double wrap(double _radians) {
+        return _radians - 2 * Math.PI * Math.floor((_radians + Math.PI) / (2 * Math.PI));
+    }
+
+    /**
+     * Getters and Setters
+     */
+
+    /**
+     * @param _hertz double. A pitch.
+     * @return int. The size of each of the two frames used to refine _hertz. The frames cover one
+     * and a half times this many samples.
+     */
+    public int getFrameSize(double _hertz) {
+        return mFrameSizes[frameIndex(_hertz)];
+    }
+
+    /**
+     * @return int. The frame size of the last pitch refined, or 0 if it was passed on unchanged
+     */
+    public int getLastFrameSize() {
+        return mLastFrameSize;
+    }
+
+    /**
+     * @return int. The number of partials the last refined pitch was measured from
+     */
+    public int getLastPartials() {
+        return mLastPartials;
+    }
+
+    public float getSampleRate() {
+        return mSampleRate;
+    }
+}
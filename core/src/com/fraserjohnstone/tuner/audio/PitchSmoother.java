@@ -0,0 +1,195 @@
+package com.fraserjohnstone.tuner.audio;
+
+/**
+ * Smooths the stream of pitch frames produced by the pitch detector so that the tuner's readout
+ * settles quickly and then stays still, rather than jumping to every raw estimate.
+ * <p>
+ * Each pitched frame is converted to cents and passes through two stages:
+ * <ul>
+ * <li>a median of the last {@link #MEDIAN_LENGTH} frames, which removes single frame outliers
+ * such as octave errors</li>
+ * <li>a one dimensional Kalman filter which models the pitch as a slowly drifting value. The
+ * measurement noise of each frame is divided by the probability reported by the pitch detector,
+ * so confident frames move the estimate further than doubtful ones</li>
+ * </ul>
+ * When the median moves more than {@link #NOTE_CHANGE_CENTS} away from the estimate, a new note is
+ * being played and the filter starts again from that note instead of gliding towards it. A few
+ * unpitched frames in a row mean the note has ended, which also starts the filter again.
+ * <p>
+ * Every update takes the same, small amount of work and nothing is allocated once the smoother
+ * has been created. The smoother is not thread safe and should be used by one thread only.
+ */
+public class PitchSmoother {
+
+    //number of frames the median is taken over. Must be odd.
+    private static final int MEDIAN_LENGTH = 3;
+
+    //distance in cents between the median and the estimate beyond which a new note is assumed
+    private static final double NOTE_CHANGE_CENTS = 50;
+
+    //number of consecutive unpitched frames after which the note is treated as having ended
+    private static final int UNPITCHED_FRAMES_BEFORE_RESET = 4;
+
+    //how far in cents squared the true pitch may be expected to drift in one second, e.g. while a
+    //string is being turned
+    private static final double PROCESS_NOISE_PER_SECOND = 40;
+
+    //variance in cents squared of a frame whose probability is 1
+    private static final double MEASUREMENT_NOISE = 4;
+
+    //frames with a lower probability than this are weighted as if they had this probability
+    private static final double MIN_PROBABILITY = 0.05;
+
+    //the estimate is stable once its standard deviation is within this many cents
+    private static final double STABLE_CENTS = 1;
+
+    //reference for the cents scale (A4)
+    private static final double REFERENCE_HERTZ = 440;
+
+    private final double mProcessNoise;
+
+    //most recent pitched frames in cents, oldest first once full
+    private final double[] mHistory = new double[MEDIAN_LENGTH];
+    private final double[] mSorted = new double[MEDIAN_LENGTH];
+    private int mHistorySize;
+    private int mHistoryIndex;
+
+    //Kalman filter state: the estimate in cents and its variance
+    private double mEstimate;
+    private double mVariance;
+    private boolean mHasEstimate;
+
+    private int mUnpitchedFrames;
+    private long mNoteChanges;
+
+    /**
+     * Class constructor
+     *
+     * @param _frameSeconds float. The time between two frames in seconds (the hop of the
+     *                      dispatcher divided by its sample rate)
+     */
+    public PitchSmoother(float _frameSeconds) {
+        mProcessNoise = PROCESS_NOISE_PER_SECOND * _frameSeconds;
+    }
+
+    /**
+     * Adds a frame to the smoother.
+     *
+     * @param _hertz       float. The detected pitch, or a value of 0 or less if no pitch was
+     *                     detected
+     * @param _probability float. The probability reported by the pitch detector
+     */
+    public void update(float _hertz, float _probability) {
+        if (_hertz <= 0) {
+            mUnpitchedFrames++;
+            if (mUnpitchedFrames >= UNPITCHED_FRAMES_BEFORE_RESET) {
+                reset();
+            }
+            return;
+        }
+        mUnpitchedFrames = 0;
+
+        double cents = 1200 * Math.log(_hertz / REFERENCE_HERTZ) / Math.log(2);
+        double measurementNoise = MEASUREMENT_NOISE / Math.max(_probability, MIN_PROBABILITY);
+
+        addToHistory(cents);
+        double median = median();
+
+        //start again on the first frame of a note or when a different note is being played
+        if (!mHasEstimate || Math.abs(median - mEstimate) > NOTE_CHANGE_CENTS) {
+            if (mHasEstimate) {
+                mNoteChanges++;
+                //forget the frames of the previous note, keeping only this one
+                mHistorySize = 0;
+                mHistoryIndex = 0;
+                addToHistory(cents);
+                median = cents;
+            }
+            mEstimate = median;
+            mVariance = measurementNoise;
+            mHasEstimate = true;
+            return;
+        }
+
+        //predict, then correct with the median
+        double predictedVariance = mVariance + mProcessNoise;
+        double gain = predictedVariance / (predictedVariance + measurementNoise);
+        mEstimate += gain * (median - mEstimate);
+        mVariance = (1 - gain) * predictedVariance;
+    }
+
+    /**
+     * Forgets the current note, for example when audio capture is restarted
+     */
+    public void reset() {
+        mHistorySize = 0;
+        mHistoryIndex = 0;
+        mHasEstimate = false;
+    }
+
+    /**
+     * @param _cents double. The pitch of a frame in cents
+     */
+    private void addToHistory(double _cents) {
+        mHistory[mHistoryIndex] = _cents;
+        mHistoryIndex = (mHistoryIndex + 1) % MEDIAN_LENGTH;
+        if (mHistorySize < MEDIAN_LENGTH) {
+            mHistorySize++;
+        }
+    }
+
+    /**
+     * @return double. The median of the frames in the history. With an even number of frames the
+     * lower of the middle two is used so that the result is always a frame that was detected.
+     */
+    private double median() {
+        //insertion sort, which is as quick as anything for so few values
+        for (int i = 0; i < mHistorySize; i++) {
+            double value = mHistory[i];
+            int j = i - 1;
+            while (j >= 0 && mSorted[j] > value) {
+                mSorted[j + 1] = mSorted[j];
+                j--;
+            }
+            mSorted[j + 1] = value;
+        }
+        return mSorted[(mHistorySize - 1) / 2];
+    }
+
+    /**
+     * Getters and Setters
+     */
+
+    /**
+     * @return boolean. True while a note is being tracked. Stays true through short gaps in the
+     * detected pitch.
+     */
+    public boolean hasPitch() {
+        return mHasEstimate;
+    }
+
+    /**
+     * @return double. The smoothed pitch in hertz. Only meaningful while {@link #hasPitch()}
+     */
+    public double getHertz() {
+        return REFERENCE_HERTZ * Math.pow(2, mEstimate / 1200);
+    }
+
+    /**
+     * @return double. The standard deviation of the smoothed pitch in cents
+     */
+    public double getUncertaintyCents() {
+        return Math.sqrt(mVariance);
+    }
+
+    /**
+     * @return boolean. True once the smoothed pitch is known to within {@link #STABLE_CENTS}
+     */
+    public boolean isStable() {
+        return mHasEstimate && mHistorySize == MEDIAN_LENGTH && getUncertaintyCents() <= STABLE_CENTS;
+    }
+
+    public long getNoteChanges() {
+        return mNoteChanges;
+    }
+}
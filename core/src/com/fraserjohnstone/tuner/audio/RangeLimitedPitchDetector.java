@@ -0,0 +1,54 @@
+package com.fraserjohnstone.tuner.audio;
+
+import be.tarsos.dsp.pitch.PitchDetectionResult;
+import be.tarsos.dsp.pitch.PitchDetector;
+
+/**
+ * A {@link PitchDetector} which passes each buffer on to another detector and reports pitches
+ * outside a given range as unpitched. For an instrument with a known range nearly every pitch found
+ * outside it is an octave error or a stray harmonic, which is better shown as no reading at all.
+ * <p>
+ * The result of the wrapped detector is changed in place, so nothing is allocated.
+ */
+public class RangeLimitedPitchDetector implements PitchDetector {
+
+    private final PitchDetector mDetector;
+    private final float mMinHertz;
+    private final float mMaxHertz;
+
+    //number of pitched results that were outside the range. Read by other threads for diagnostics.
+    private volatile long mRejectedPitches;
+
+    /**
+     * Class constructor
+     *
+     * @param _detector {@link PitchDetector}. The detector that does the work.
+     * @param _minHertz float. The lowest pitch reported.
+     * @param _maxHertz float. The highest pitch reported.
+     */
+    public RangeLimitedPitchDetector(PitchDetector _detector, float _minHertz, float _maxHertz) {
+        mDetector = _detector;
+        mMinHertz = _minHertz;
+        mMaxHertz = _maxHertz;
+    }
+
+    @Override
+    public PitchDetectionResult getPitch(float[] _audioBuffer) {
+        PitchDetectionResult result = mDetector.getPitch(_audioBuffer);
+        float pitch = result.getPitch();
+        if (pitch > 0 && (pitch < mMinHertz || pitch > mMaxHertz)) {
+            result.setPitch(-1);
+            result.setPitched(false);
+            mRejectedPitches++;
+        }
+        return result;
+    }
+
+    /**
+     * Getters and Setters
+     */
+
+    public long getRejectedPitches() {
+        return mRejectedPitches;
+    }
+}
@@ -0,0 +1,287 @@
+package com.fraserjohnstone.tuner.audio;
+
+/**
+ * An in place fast Fourier transform of real valued data whose length is a power of two.
+ * <p>
+ * The n real samples are treated as n/2 complex samples (even samples as the real parts and odd
+ * samples as the imaginary parts), transformed with a radix 2 complex FFT of half the length and then
+ * separated into the spectrum of the real signal. The twiddle factors and the bit reversal
+ * permutation are calculated once when the transform is created, so {@link #forward(float[])} and
+ * {@link #inverse(float[])} allocate nothing.
+ * <p>
+ * The spectrum is packed into the same n floats as the signal: element 0 holds the (real) 0Hz bin,
+ * element 1 the (real) Nyquist bin, and elements 2k and 2k + 1 the real and imaginary parts of bin k
+ * for k from 1 to n/2 - 1.
+ * <p>
+ * Instances are not thread safe.
+ */
+public class RealFft {
+
+    private final int mSize;
+    private final int mHalfSize;
+
+    //twiddle factors of the complex transform of half the length. The factors of the pass with
+    //butterflies h apart, cos and sin of pi k / h for k from 0 to h - 1, start at index h.
+    private final float[] mCos;
+    private final float[] mSin;
+    //cos and sin of 2 pi k / n used to separate the spectrum of the real signal
+    private final float[] mRealCos;
+    private final float[] mRealSin;
+    //the index each complex sample is swapped with before the butterflies
+    private final int[] mBitReversed;
+
+    /**
+     * Class constructor
+     *
+     * @param _size int. The number of real samples. Must be a power of two, at least 4.
+     */
+    public RealFft(int _size) {
+        if (_size < 4 || (_size & (_size - 1)) != 0) {
+            throw new IllegalArgumentException("FFT size must be a power of two of at least 4: " + _size);
+        }
+        mSize = _size;
+        mHalfSize = _size / 2;
+
+        mCos = new float[Math.max(1, mHalfSize)];
+        mSin = new float[mCos.length];
+        for (int half = 1; half < mHalfSize; half <<= 1) {
+            for (int k = 0; k < half; k++) {
+                double angle = Math.PI * k / half;
+                mCos[half + k] = (float) Math.cos(angle);
+                mSin[half + k] = (float) Math.sin(angle);
+            }
+        }
+
+        mRealCos = new float[mHalfSize / 2 + 1];
+        mRealSin = new float[mHalfSize / 2 + 1];
+        for (int k = 0; k < mRealCos.length; k++) {
+            double angle = 2 * Math.PI * k / _size;
+            mRealCos[k] = (float) Math.cos(angle);
+            mRealSin[k] = (float) Math.sin(angle);
+        }
+
+        mBitReversed = new int[mHalfSize];
+        int bits = Integer.numberOfTrailingZeros(mHalfSize);
+        for (int i = 0; i < mHalfSize; i++) {
+            mBitReversed[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+        }
+    }
+
+    /**
+     * Replaces _data, a real signal, with its packed spectrum. The transform is not scaled.
+     *
+     * @param _data float[]. At least {@link #getSize()} samples.
+     */
+    public void forward(float[] _data) {
+        complexTransform(_data, false);
+
+        //separate the spectra of the even and odd samples and combine them into the spectrum of
+        //the real signal
+        float re0 = _data[0];
+        float im0 = _data[1];
+        _data[0] = re0 + im0;
+        _data[1] = re0 - im0;
+
+        for (int k = 1; k <= mHalfSize / 2; k++) {
+            int a = 2 * k;
+            int b = 2 * (mHalfSize - k);
+            float ar = _data[a];
+            float ai = _data[a + 1];
+            float br = _data[b];
+            float bi = _data[b + 1];
+
+            //spectrum of the even samples and of the odd samples at bin k
+            float evenRe = 0.5f * (ar + br);
+            float evenIm = 0.5f * (ai - bi);
+            float oddRe = 0.5f * (ai + bi);
+            float oddIm = 0.5f * (br - ar);
+
+            //the odd spectrum times e^(-2 pi i k / n)
+            float c = mRealCos[k];
+            float s = mRealSin[k];
+            float tRe = oddRe * c + oddIm * s;
+            float tIm = oddIm * c - oddRe * s;
+
+            _data[a] = evenRe + tRe;
+            _data[a + 1] = evenIm + tIm;
+            if (a != b) {
+                _data[b] = evenRe - tRe;
+                _data[b + 1] = tIm - evenIm;
+            }
+        }
+    }
+
+    /**
+     * Replaces _data, a packed spectrum, with the real signal it is the spectrum of. This undoes
+     * {@link #forward(float[])}, including the scaling.
+     *
+     * @param _data float[]. At least {@link #getSize()} values.
+     */
+    public void inverse(float[] _data) {
+        float x0 = _data[0];
+        float xh = _data[1];
+        _data[0] = 0.5f * (x0 + xh);
+        _data[1] = 0.5f * (x0 - xh);
+
+        for (int k = 1; k <= mHalfSize / 2; k++) {
+            int a = 2 * k;
+            int b = 2 * (mHalfSize - k);
+            float ar = _data[a];
+            float ai = _data[a + 1];
+            float br = _data[b];
+            float bi = _data[b + 1];
+
+            //spectrum of the even samples, and the odd spectrum still multiplied by the twiddle
+            float evenRe = 0.5f * (ar + br);
+            float evenIm = 0.5f * (ai - bi);
+            float tRe = 0.5f * (ar - br);
+            float tIm = 0.5f * (ai + bi);
+
+            //undo the twiddle by multiplying with e^(2 pi i k / n)
+            float c = mRealCos[k];
+            float s = mRealSin[k];
+            float oddRe = tRe * c - tIm * s;
+            float oddIm = tIm * c + tRe * s;
+
+            //recombine into the spectrum of the complex signal
+            _data[a] = evenRe - oddIm;
+            _data[a + 1] = evenIm + oddRe;
+            if (a != b) {
+                _data[b] = evenRe + oddIm;
+                _data[b + 1] = oddRe - evenIm;
+            }
+        }
+
+        complexTransform(_data, true);
+        float scale = 1f / mHalfSize;
+        for (int i = 0; i < mSize; i++) {
+            _data[i] *= scale;
+        }
+    }
+
+    /**
+     * An unscaled radix 2 decimation in time FFT of n/2 interleaved complex values
+     *
+     * @param _data    float[]. The interleaved real and imaginary parts.
+     * @param _inverse boolean. True for the inverse transform.
+     */
+    private void complexTransform(float[] _data, boolean _inverse) {
+        for (int i = 0; i < mHalfSize; i++) {
+            int j = mBitReversed[i];
+            if (j > i) {
+                float re = _data[2 * i];
+                float im = _data[2 * i + 1];
+                _data[2 * i] = _data[2 * j];
+                _data[2 * i + 1] = _data[2 * j + 1];
+                _data[2 * j] = re;
+                _data[2 * j + 1] = im;
+            }
+        }
+
+        //the first two passes have no twiddle factors other than 1 and -i (or i for the inverse), so
+        //they are combined into one pass of radix 4 butterflies without any multiplications
+        float sign = _inverse ? 1 : -1;
+        if (mHalfSize >= 4) {
+            for (int p = 0; p < 2 * mHalfSize; p += 8) {
+                float ar = _data[p] + _data[p + 2];
+                float ai = _data[p + 1] + _data[p + 3];
+                float br = _data[p] - _data[p + 2];
+                float bi = _data[p + 1] - _data[p + 3];
+                float cr = _data[p + 4] + _data[p + 6];
+                float ci = _data[p + 5] + _data[p + 7];
+                //the difference of the last two values, times -i for the forward transform
+                float dr = -sign * (_data[p + 5] - _data[p + 7]);
+                float di = sign * (_data[p + 4] - _data[p + 6]);
+                _data[p] = ar + cr;
+                _data[p + 1] = ai + ci;
+                _data[p + 4] = ar - cr;
+                _data[p + 5] = ai - ci;
+                _data[p + 2] = br + dr;
+                _data[p + 3] = bi + di;
+                _data[p + 6] = br - dr;
+                _data[p + 7] = bi - di;
+            }
+        } else {
+            float re = _data[0];
+            float im = _data[1];
+            _data[0] = re + _data[2];
+            _data[1] = im + _data[3];
+            _data[2] = re - _data[2];
+            _data[3] = im - _data[3];
+        }
+
+        //the remaining passes are also taken two at a time, as radix 4 butterflies. Each reads and
+        //writes the data once rather than twice, and needs three complex multiplications for four
+        //values rather than four.
+        int half = 4;
+        for (; 2 * half < mHalfSize; half <<= 2) {
+            for (int start = 0; start < 2 * mHalfSize; start += 8 * half) {
+                for (int k = 0; k < half; k++) {
+                    int p0 = start + 2 * k;
+                    int p1 = p0 + 2 * half;
+                    int p2 = p1 + 2 * half;
+                    int p3 = p2 + 2 * half;
+
+                    //first pass: butterflies half apart
+                    float c = mCos[half + k];
+                    float s = sign * mSin[half + k];
+                    float tr = _data[p1] * c - _data[p1 + 1] * s;
+                    float ti = _data[p1] * s + _data[p1 + 1] * c;
+                    float ar = _data[p0] + tr;
+                    float ai = _data[p0 + 1] + ti;
+                    float br = _data[p0] - tr;
+                    float bi = _data[p0 + 1] - ti;
+                    tr = _data[p3] * c - _data[p3 + 1] * s;
+                    ti = _data[p3] * s + _data[p3 + 1] * c;
+                    float cr = _data[p2] + tr;
+                    float ci = _data[p2 + 1] + ti;
+                    float dr = _data[p2] - tr;
+                    float di = _data[p2 + 1] - ti;
+
+                    //second pass: butterflies twice as far apart. The twiddle factor of the second
+                    //pair is a quarter turn on from the first.
+                    c = mCos[2 * half + k];
+                    s = sign * mSin[2 * half + k];
+                    tr = cr * c - ci * s;
+                    ti = cr * s + ci * c;
+                    _data[p0] = ar + tr;
+                    _data[p0 + 1] = ai + ti;
+                    _data[p2] = ar - tr;
+                    _data[p2 + 1] = ai - ti;
+                    float ur = dr * c - di * s;
+                    float ui = dr * s + di * c;
+                    tr = -sign * ui;
+                    ti = sign * ur;
+                    _data[p1] = br + tr;
+                    _data[p1 + 1] = bi + ti;
+                    _data[p3] = br - tr;
+                    _data[p3 + 1] = bi - ti;
+                }
+            }
+        }
+
+        //a last radix 2 pass if the number of passes left was odd
+        if (half < mHalfSize) {
+            for (int k = 0; k < half; k++) {
+                float c = mCos[half + k];
+                float s = sign * mSin[half + k];
+                int p = 2 * k;
+                int q = p + 2 * half;
+                float qr = _data[q] * c - _data[q + 1] * s;
+                float qi = _data[q] * s + _data[q + 1] * c;
+                _data[q] = _data[p] - qr;
+                _data[q + 1] = _data[p + 1] - qi;
+                _data[p] += qr;
+                _data[p + 1] += qi;
+            }
+        }
+    }
+
+    /**
+     * Getters and Setters
+     */
+
+    public int getSize() {
+        return mSize;
+    }
+}
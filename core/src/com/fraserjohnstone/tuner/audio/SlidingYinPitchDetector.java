@@ -0,0 +1,226 @@
+package com.fraserjohnstone.tuner.audio;
+
+import be.tarsos.dsp.pitch.PitchDetector;
+
+/**
+ * A {@link YinPitchDetector} for overlapping buffers, which updates the difference function with the
+ * new samples of each buffer rather than calculating it again from the whole buffer.
+ * <p>
+ * The difference function is a sum over the first half of the buffer. That half is split into blocks
+ * one hop long and the sum of each block is kept. When the next buffer is the previous one moved on
+ * by a hop, every block but the newest is still valid: the oldest block has slid out of the window,
+ * so its sum is dropped, and only the sum of the one new block is calculated. The cost per buffer is
+ * then proportional to the hop rather than to the buffer, so the overlap can be raised for lower
+ * latency without using more CPU.
+ * <p>
+ * Each buffer is compared with the previous one before the kept sums are used. If it is not the
+ * previous buffer moved on by exactly one hop (the first buffer, a buffer that was skipped, or a
+ * different hop) every block is calculated again, so the results are always those of
+ * {@link YinPitchDetector} without the FFT, give or take rounding. The pitch range is searched in the
+ * same way.
+ * <p>
+ * Instances are not thread safe.
+ */
+public class SlidingYinPitchDetector extends YinPitchDetector {
+
+    //cost of one multiply and add of the sliding difference function, relative to one unit of
+    //n log2(n) of the FFT difference function for n samples. Measured on x86-64 and checked with
+    //SlidingYinBenchmark.
+    private static final double COST_RELATIVE_TO_FFT = 0.3;
+
+    /**
+     * Creates sliding detectors for buffers the given hop apart. Buffers whose window does not hold a
+     * whole number of hops get a detector which calculates the whole difference function directly.
+     */
+    public static final PitchDetectorFactory SLIDING_YIN = new PitchDetectorFactory() {
+        @Override
+        public PitchDetector createDetector(float _sampleRate, int _windowSize, int _hopSize,
+                                            float _minHertz, float _maxHertz) {
+            return new SlidingYinPitchDetector(_sampleRate, _windowSize, _hopSize, _minHertz, _maxHertz);
+        }
+
+        @Override
+        public String toString() {
+            return "SLIDING_YIN";
+        }
+    };
+
+    /**
+     * Creates sliding detectors where they are expected to cost less per buffer than the FFT, which is
+     * for short hops and narrow pitch ranges, and FFT detectors everywhere else. See
+     * {@link #isCheaperThanFft(float, int, int, float, float)}.
+     */
+    public static final PitchDetectorFactory CHEAPEST_YIN = new PitchDetectorFactory() {
+        @Override
+        public PitchDetector createDetector(float _sampleRate, int _windowSize, int _hopSize,
+                                            float _minHertz, float _maxHertz) {
+            if (isCheaperThanFft(_sampleRate, _windowSize, _hopSize, _minHertz, _maxHertz)) {
+                return new SlidingYinPitchDetector(_sampleRate, _windowSize, _hopSize, _minHertz, _maxHertz);
+            }
+            return new YinPitchDetector(_sampleRate, _windowSize, _minHertz, _maxHertz, true);
+        }
+
+        @Override
+        public String toString() {
+            return "CHEAPEST_YIN";
+        }
+    };
+
+    //number of samples in each block. The hop, or the whole window if it does not hold a whole
+    //number of hops.
+    private final int mBlockSize;
+    //the difference function of each block, for lags 0 to getMaxLag() + 1
+    private final float[][] mBlocks;
+    //index into mBlocks of the block furthest back in time
+    private int mOldestBlock;
+    //sum of the blocks for each lag, kept as a running total between full sums
+    private final double[] mTotal;
+    //number of sliding updates since the total was last summed from the blocks
+    private int mUpdatesSinceSum;
+
+    //copy of the previous buffer, to check the next one follows on from it
+    private final float[] mPreviousBuffer;
+    private boolean mHasPrevious;
+
+    //read by other threads for diagnostics
+    private volatile long mSlidingUpdates;
+    private volatile long mFullUpdates;
+
+    /**
+     * Class constructor
+     *
+     * @param _sampleRate float. The sample rate of the audio.
+     * @param _bufferSize int. The number of samples in each buffer.
+     * @param _hopSize    int. The number of new samples in each buffer.
+     * @param _minHertz   float. The lowest pitch to report, or 0 for no limit.
+     * @param _maxHertz   float. The highest pitch to report, or {@link Float#MAX_VALUE} for no limit.
+     */
+    public SlidingYinPitchDetector(float _sampleRate, int _bufferSize, int _hopSize, float _minHertz,
+                                   float _maxHertz) {
+        super(_sampleRate, _bufferSize, _minHertz, _maxHertz, false);
+        if (_hopSize <= 0) {
+            throw new IllegalArgumentException("Hop size must be positive: " + _hopSize);
+        }
+        int window = getWindow();
+        mBlockSize = _hopSize < window && window % _hopSize == 0 ? _hopSize : window;
+        mBlocks = new float[window / mBlockSize][getMaxLag() + 2];
+        mTotal = new double[getMaxLag() + 2];
+        mPreviousBuffer = new float[_bufferSize];
+    }
+
+    @Override
+    protected void difference(float[] _audioBuffer, float[] _difference) {
+        if (followsPrevious(_audioBuffer)) {
+            //the oldest block has slid out of the window. Its slot holds the newest block instead.
+            float[] block = mBlocks[mOldestBlock];
+            for (int tau = 0; tau < mTotal.length; tau++) {
+                mTotal[tau] -= block[tau];
+            }
+            getKernels().difference(_audioBuffer, getWindow() - mBlockSize, mBlockSize, block);
+            for (int tau = 0; tau < mTotal.length; tau++) {
+                mTotal[tau] += block[tau];
+            }
+            mOldestBlock = (mOldestBlock + 1) % mBlocks.length;
+            mSlidingUpdates++;
+
+            //sum the blocks again once they have all been replaced, so that rounding errors in the
+            //running total do not build up
+            if (++mUpdatesSinceSum == mBlocks.length) {
+                sumBlocks();
+            }
+        } else {
+            for (int block = 0; block < mBlocks.length; block++) {
+                getKernels().difference(_audioBuffer, block * mBlockSize, mBlockSize, mBlocks[block]);
+            }
+            mOldestBlock = 0;
+            sumBlocks();
+            mFullUpdates++;
+        }
+        System.arraycopy(_audioBuffer, 0, mPreviousBuffer, 0, mPreviousBuffer.length);
+        mHasPrevious = true;
+
+        for (int tau = 0; tau < _difference.length; tau++) {
+            _difference[tau] = (float) mTotal[tau];
+        }
+    }
+
+    /**
+     * Sets the running total to the sum of the blocks
+     */
+    private void sumBlocks() {
+        for (int tau = 0; tau < mTotal.length; tau++) {
+            double sum = 0;
+            for (int block = 0; block < mBlocks.length; block++) {
+                sum += mBlocks[block][tau];
+            }
+            mTotal[tau] = sum;
+        }
+        mUpdatesSinceSum = 0;
+    }
+
+    /**
+     * Estimates whether a sliding detector costs less per buffer than an FFT detector, when the
+     * buffers follow on from each other. The sliding detector does a multiply and add for every new
+     * sample and every lag searched, while the FFT detector works through n log2(n) for the whole
+     * buffer.
+     *
+     * @param _sampleRate float. The sample rate of the audio.
+     * @param _bufferSize int. The number of samples in each buffer.
+     * @param _hopSize    int. The number of new samples in each buffer.
+     * @param _minHertz   float. The lowest pitch to report, or 0 for no limit.
+     * @param _maxHertz   float. The highest pitch to report, or {@link Float#MAX_VALUE} for no limit.
+     * @return boolean. True if the sliding detector is expected to be cheaper
+     */
+    public static boolean isCheaperThanFft(float _sampleRate, int _bufferSize, int _hopSize, float _minHertz,
+                                           float _maxHertz) {
+        int window = _bufferSize / 2;
+        if (_hopSize >= window || window % _hopSize != 0) {
+            return false;
+        }
+        int fftSize = Integer.highestOneBit(_bufferSize - 1) << 1;
+        double fftCost = fftSize * (double) Integer.numberOfTrailingZeros(fftSize);
+        double slidingCost = _hopSize * (double) (maxLag(_sampleRate, _bufferSize, _minHertz, _maxHertz) + 2);
+        return slidingCost * COST_RELATIVE_TO_FFT < fftCost;
+    }
+
+    /**
+     * @param _audioBuffer float[]. The latest buffer.
+     * @return boolean. True if the samples the kept blocks were calculated from are where they would
+     * be if _audioBuffer were the previous buffer moved on by one hop
+     */
+    private boolean followsPrevious(float[] _audioBuffer) {
+        if (!mHasPrevious || mBlocks.length == 1) {
+            return false;
+        }
+        //the kept blocks use the samples of their own block and up to getMaxLag() + 1 after it
+        int checked = getWindow() - mBlockSize + getMaxLag() + 1;
+        for (int i = 0; i < checked; i++) {
+            if (_audioBuffer[i] != mPreviousBuffer[i + mBlockSize]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Getters and Setters
+     */
+
+    public int getBlockSize() {
+        return mBlockSize;
+    }
+
+    /**
+     * @return long. The number of buffers for which only the newest block was calculated
+     */
+    public long getSlidingUpdates() {
+        return mSlidingUpdates;
+    }
+
+    /**
+     * @return long. The number of buffers for which every block was calculated
+     */
+    public long getFullUpdates() {
+        return mFullUpdates;
+    }
+}
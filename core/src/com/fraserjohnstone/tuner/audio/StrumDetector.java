@@ -0,0 +1,346 @@
+package com.fraserjohnstone.tuner.audio;
+
+/**
+ * Finds the pitch of every string of an instrument in one buffer of a strummed chord, so all the
+ * strings can be tuned at once rather than one note at a time.
+ * <p>
+ * Each buffer is windowed and transformed once with a {@link RealFft}. The peaks of its magnitude
+ * spectrum are picked out and their frequencies interpolated from the log magnitudes of the bins
+ * either side (which for a Hann window is accurate to a small fraction of a bin). Each string is then
+ * measured from the peaks found near the multiples of the pitch it should have: the first partial
+ * found must be within {@link #SEARCH_CENTS} of where it should be, and the pitch measured from it
+ * decides where the next partial is looked for. The pitch of the string is the least squares fit of
+ * n times the pitch to the frequency of partial n, weighted by the amplitude of each partial, so the
+ * higher partials, whose frequencies are known to more cents, count for more.
+ * <p>
+ * The partials of different strings often land close together (the third partial of a guitar's low
+ * E is two cents from the B string), and a peak made from two partials is pulled away from both, so
+ * the strings are measured twice. The first time every partial is used, which places each string
+ * found to within a fraction of a bin. The second time the partials which, at those pitches, are
+ * within a few bins of a partial of another string found in the buffer are left out, so a string
+ * loses only the partials which really do overlap in this buffer. A string all of whose partials
+ * overlap, such as a string tuned an octave from another, is measured from the peaks it shares with
+ * other strings which are so close to its partials that they make a single peak, as such a peak is
+ * within a fraction of a bin of both. A string whose loudest partial is far quieter than the loudest
+ * peak is reported as not found.
+ * <p>
+ * Nothing is allocated once the detector has been created. Instances are not thread safe, and the
+ * result returned by {@link #analyse(float[])} is reused by the next call.
+ */
+public class StrumDetector {
+
+    //highest partial of each string looked for
+    private static final int MAX_HARMONICS = 8;
+    //how far out of tune a string can be and still be found, in cents
+    public static final double SEARCH_CENTS = 30;
+    //how far each partial after the first can be from where the pitch measured so far puts it
+    private static final double LOCKED_SEARCH_CENTS = 8;
+    //narrowest search either side of a partial, in bins, so the interpolation error is allowed for
+    private static final double MIN_SEARCH_BINS = 0.75;
+    //partials of two strings closer than this many bins at the pitches measured are not used, as
+    //the main lobes of their peaks overlap
+    private static final double SEPARATION_BINS = 3;
+    //partials of two strings closer than this many bins make a single peak, which a string none of
+    //whose partials are clear of the other strings is measured from
+    private static final double SHARED_BINS = 0.5;
+
+    //which partials measureString() uses: all of them, those clear of the other strings or sharing
+    //a single peak with them, or only those clear of the other strings
+    private static final int OVERLAP_ANY = 0;
+    private static final int OVERLAP_SHARED = 1;
+    private static final int OVERLAP_NONE = 2;
+    //highest frequency used as a fraction of the sample rate, which keeps inside the pass band of
+    //DecimatingProcessor
+    private static final double MAX_FREQUENCY_FRACTION = 0.35;
+
+    //peaks quieter than this relative to the loudest peak are ignored
+    private static final double PEAK_FLOOR_DB = -60;
+    //strings whose loudest partial is quieter than this relative to the loudest peak are not found
+    public static final double STRING_FLOOR_DB = -35;
+
+    private final float mSampleRate;
+    private final int mBufferSize;
+    private final double mBinHertz;
+    private final double[] mStringHertz;
+    //harmonic numbers of the partials of each string which are looked for, lowest first
+    private final int[][] mHarmonics;
+    //highest frequency used
+    private final double mMaxHertz;
+
+    private final DspKernels mKernels;
+    private final RealFft mFft;
+    private final float[] mWindow;
+    private final float[] mSpectrum;
+    private final float[] mMagnitudes;
+    //highest bin searched for peaks
+    private final int mMaxBin;
+
+    //the peaks of the current buffer, in order of frequency
+    private final double[] mPeakHertz;
+    private final double[] mPeakAmplitude;
+    private int mPeakCount;
+    private double mLoudestPeak;
+
+    //pitch of each string measured from all of its partials in the current buffer, or 0 if it was
+    //not found
+    private final double[] mFirstHertz;
+
+    private final StrumResult mResult;
+
+    /**
+     * Class constructor
+     *
+     * @param _sampleRate  float. The sample rate of the audio.
+     * @param _bufferSize  int. The number of samples in each buffer. Must be a power of two.
+     * @param _stringHertz double[]. The pitch each string should have, in string order.
+     */
+    public StrumDetector(float _sampleRate, int _bufferSize, double[] _stringHertz) {
+        this(_sampleRate, _bufferSize, _stringHertz, DspKernels.getDefault());
+    }
+
+    /**
+     * Class constructor
+     *
+     * @param _sampleRate  float. The sample rate of the audio.
+     * @param _bufferSize  int. The number of samples in each buffer. Must be a power of two.
+     * @param _stringHertz double[]. The pitch each string should have, in string order.
+     * @param _kernels     {@link DspKernels}. The implementation of the inner loops.
+     */
+    public StrumDetector(float _sampleRate, int _bufferSize, double[] _stringHertz, DspKernels _kernels) {
+        if (_stringHertz.length == 0) {
+            throw new IllegalArgumentException("Strum detection needs at least one string");
+        }
+        mSampleRate = _sampleRate;
+        mBufferSize = _bufferSize;
+        mBinHertz = _sampleRate / _bufferSize;
+        mStringHertz = _stringHertz.clone();
+        mKernels = _kernels;
+
+        mFft = new RealFft(_bufferSize);
+        mWindow = new float[_bufferSize];
+        for (int i = 0; i < _bufferSize; i++) {
+            mWindow[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / _bufferSize));
+        }
+        mSpectrum = new float[_bufferSize];
+        mMagnitudes = new float[_bufferSize / 2 + 1];
+        mMaxBin = Math.min(_bufferSize / 2 - 1, (int) (MAX_FREQUENCY_FRACTION * _bufferSize));
+        mMaxHertz = mMaxBin * mBinHertz;
+
+        //a peak needs a bin either side of it, so there are at most half as many peaks as bins
+        mPeakHertz = new double[mMaxBin / 2 + 1];
+        mPeakAmplitude = new double[mPeakHertz.length];
+
+        mHarmonics = new int[_stringHertz.length][];
+        for (int i = 0; i < _stringHertz.length; i++) {
+            mHarmonics[i] = harmonicsInRange(i);
+        }
+        mFirstHertz = new double[_stringHertz.length];
+        mResult = new StrumResult(_stringHertz);
+    }
+
+    /**
+     * @param _string int. The index of a string.
+     * @return int[]. The harmonic numbers of the partials of _string which are below the highest
+     * frequency used, however far out of tune the string is
+     */
+    private int[] harmonicsInRange(int _string) {
+        double spread = Math.pow(2, SEARCH_CENTS / 1200);
+        int count = 0;
+        while (count < MAX_HARMONICS && (count + 1) * mStringHertz[_string] * spread <= mMaxHertz) {
+            count++;
+        }
+        int[] harmonics = new int[count];
+        for (int i = 0; i < count; i++) {
+            harmonics[i] = i + 1;
+        }
+        return harmonics;
+    }
+
+    /**
+     * Measures the pitch of every string in one buffer
+     *
+     * @param _audioBuffer float[]. At least {@link #getBufferSize()} samples.
+     * @return {@link StrumResult}. The pitch of every string. Reused by the next call.
+     */
+    public StrumResult analyse(float[] _audioBuffer) {
+        System.arraycopy(_audioBuffer, 0, mSpectrum, 0, mBufferSize);
+        mKernels.applyWindow(mSpectrum, mWindow, mBufferSize);
+        mFft.forward(mSpectrum);
+        mKernels.magnitudeSpectrum(mSpectrum, mBufferSize, mMagnitudes);
+
+        findPeaks();
+        //from every partial, to place the partials of every string
+        for (int i = 0; i < mStringHertz.length; i++) {
+            mFirstHertz[i] = measureString(i, OVERLAP_ANY);
+        }
+        //from the partials clear of the other strings, or the shared peaks if there are none
+        for (int i = 0; i < mStringHertz.length; i++) {
+            measureString(i, OVERLAP_NONE);
+            if (mFirstHertz[i] > 0 && mResult.getPartials(i) == 0) {
+                measureString(i, OVERLAP_SHARED);
+            }
+        }
+        return mResult;
+    }
+
+    /**
+     * Finds every local maximum of the magnitude spectrum within {@link #PEAK_FLOOR_DB} of the
+     * loudest, and interpolates its frequency and amplitude from the parabola through the log
+     * magnitudes of it and the bins either side
+     */
+    private void findPeaks() {
+        float loudest = 0;
+        for (int k = 1; k <= mMaxBin; k++) {
+            loudest = Math.max(loudest, mMagnitudes[k]);
+        }
+        mPeakCount = 0;
+        mLoudestPeak = loudest;
+        if (loudest <= 0) {
+            return;
+        }
+
+        float floor = (float) (loudest * Math.pow(10, PEAK_FLOOR_DB / 20));
+        for (int k = 2; k < mMaxBin; k++) {
+            float magnitude = mMagnitudes[k];
+            if (magnitude < floor || magnitude <= mMagnitudes[k - 1] || magnitude < mMagnitudes[k + 1]) {
+                continue;
+            }
+            double left = Math.log(Math.max(mMagnitudes[k - 1], Float.MIN_NORMAL));
+            double centre = Math.log(magnitude);
+            double right = Math.log(Math.max(mMagnitudes[k + 1], Float.MIN_NORMAL));
+            double curvature = left - 2 * centre + right;
+            double offset = curvature < 0 ? 0.5 * (left - right) / curvature : 0;
+            mPeakHertz[mPeakCount] = (k + offset) * mBinHertz;
+            mPeakAmplitude[mPeakCount] = Math.exp(centre - 0.25 * (left - right) * offset);
+            mPeakCount++;
+        }
+    }
+
+    /**
+     * Measures the pitch of one string from its partials, see the description of the class
+     *
+     * @param _string   int. The index of the string.
+     * @param _overlaps int. Which partials are used: {@link #OVERLAP_ANY}, {@link #OVERLAP_SHARED}
+     *                  or {@link #OVERLAP_NONE}.
+     * @return double. The pitch of the string, or 0 if it was not found
+     */
+    private double measureString(int _string, int _overlaps) {
+        int[] harmonics = mHarmonics[_string];
+        double pitch = mStringHertz[_string];
+        double searchCents = SEARCH_CENTS;
+        //sums of the weighted least squares fit
+        double weightedHertz = 0;
+        double weightedHarmonics = 0;
+        double loudest = 0;
+        int partials = 0;
+
+        for (int i = 0; i < harmonics.length; i++) {
+            int n = harmonics[i];
+            if (_overlaps != OVERLAP_ANY
+                    && overlapsAnotherString(_string, n, _overlaps == OVERLAP_SHARED)) {
+                continue;
+            }
+            double expected = n * pitch;
+            double halfWidth = Math.max(expected * (Math.pow(2, searchCents / 1200) - 1),
+                    MIN_SEARCH_BINS * mBinHertz);
+            int peak = loudestPeak(expected - halfWidth, expected + halfWidth);
+            if (peak < 0) {
+                continue;
+            }
+
+            double amplitude = mPeakAmplitude[peak];
+            weightedHertz += amplitude * n * mPeakHertz[peak];
+            weightedHarmonics += amplitude * n * n;
+            loudest = Math.max(loudest, amplitude);
+            partials++;
+            pitch = weightedHertz / weightedHarmonics;
+            searchCents = LOCKED_SEARCH_CENTS;
+        }
+
+        double levelDecibels = partials == 0 ? Double.NEGATIVE_INFINITY
+                : 20 * Math.log10(loudest / mLoudestPeak);
+        if (levelDecibels < STRING_FLOOR_DB) {
+            mResult.setNotDetected(_string);
+            return 0;
+        }
+        mResult.setDetected(_string, pitch, levelDecibels, partials);
+        return pitch;
+    }
+
+    /**
+     * @param _string   int. The index of a string.
+     * @param _harmonic int. The harmonic number of one of its partials.
+     * @param _shared   boolean. True if a partial which makes a single peak with a partial of
+     *                  another string does not count as overlapping it.
+     * @return boolean. True if, at the pitches the first measurement found, the partial is within
+     * {@link #SEPARATION_BINS} of a partial of another string found in the buffer
+     */
+    private boolean overlapsAnotherString(int _string, int _harmonic, boolean _shared) {
+        double pitch = mFirstHertz[_string] > 0 ? mFirstHertz[_string] : mStringHertz[_string];
+        double hertz = _harmonic * pitch;
+        for (int other = 0; other < mStringHertz.length; other++) {
+            double otherPitch = mFirstHertz[other];
+            if (other == _string || otherPitch <= 0) {
+                continue;
+            }
+            //nearest partial of the other string
+            double otherHarmonic = Math.max(1, Math.rint(hertz / otherPitch));
+            if (otherHarmonic * otherPitch > mMaxHertz) {
+                continue;
+            }
+            double bins = Math.abs(hertz - otherHarmonic * otherPitch) / mBinHertz;
+            if (bins < SEPARATION_BINS && !(_shared && bins < SHARED_BINS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param _lowHertz  double. The lowest frequency of the search.
+     * @param _highHertz double. The highest frequency of the search.
+     * @return int. The index of the loudest peak between the two frequencies, or -1 if there is none
+     */
+    private int loudestPeak(double _lowHertz, double _highHertz) {
+        //first peak at or above _lowHertz
+        int low = 0;
+        int high = mPeakCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (mPeakHertz[middle] < _lowHertz) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        int loudest = -1;
+        for (int i = low; i < mPeakCount && mPeakHertz[i] <= _highHertz; i++) {
+            if (loudest < 0 || mPeakAmplitude[i] > mPeakAmplitude[loudest]) {
+                loudest = i;
+            }
+        }
+        return loudest;
+    }
+
+    /**
+     * Getters and Setters
+     */
+
+    public float getSampleRate() {
+        return mSampleRate;
+    }
+
+    public int getBufferSize() {
+        return mBufferSize;
+    }
+
+    /**
+     * @param _string int. The index of a string.
+     * @return int. The number of partials of the string which are looked for. Those whose peaks
+     * overlap another string's are left out of each buffer, see {@link StrumResult#getPartials(int)}
+     */
+    public int getUsablePartials(int _string) {
+        return mHarmonics[_string].length;
+    }
+}
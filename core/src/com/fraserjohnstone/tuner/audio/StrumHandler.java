@@ -0,0 +1,18 @@
+package com.fraserjohnstone.tuner.audio;
+
+import be.tarsos.dsp.AudioEvent;
+
+/**
+ * Receives the pitch of every string found by a {@link StrumProcessor}
+ */
+public interface StrumHandler {
+
+    /**
+     * Called on the audio thread for every buffer analysed.
+     *
+     * @param _result     {@link StrumResult}. The pitch of every string. Reused for the next buffer, so
+     *                    copy it with {@link StrumResult#copyFrom(StrumResult)} to keep it.
+     * @param _audioEvent {@link AudioEvent}. The buffer analysed.
+     */
+    void handleStrum(StrumResult _result, AudioEvent _audioEvent);
+}
@@ -0,0 +1,45 @@
+package com.fraserjohnstone.tuner.audio;
+
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+
+/**
+ * An {@link AudioProcessor} which finds the pitch of every string of an instrument in each buffer
+ * with a {@link StrumDetector} and passes the result to a {@link StrumHandler}. It takes the place of
+ * the pitch processor in strum mode, see {@link AnalysisSettings#createStrumProcessor}.
+ */
+public class StrumProcessor implements AudioProcessor {
+
+    private final StrumDetector mDetector;
+    private final StrumHandler mHandler;
+
+    /**
+     * Class constructor
+     *
+     * @param _detector {@link StrumDetector}. Measures the strings, for buffers of its buffer size.
+     * @param _handler  {@link StrumHandler}. Receives the result for each buffer.
+     */
+    public StrumProcessor(StrumDetector _detector, StrumHandler _handler) {
+        mDetector = _detector;
+        mHandler = _handler;
+    }
+
+    @Override
+    public boolean process(AudioEvent _audioEvent) {
+        StrumResult result = mDetector.analyse(_audioEvent.getFloatBuffer());
+        mHandler.handleStrum(result, _audioEvent);
+        return true;
+    }
+
+    @Override
+    public void processingFinished() {
+    }
+
+    /**
+     * Getters and Setters
+     */
+
+    public StrumDetector getDetector() {
+        return mDetector;
+    }
+}
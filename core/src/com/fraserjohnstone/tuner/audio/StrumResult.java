@@ -0,0 +1,129 @@
+package com.fraserjohnstone.tuner.audio;
+
+/**
+ * The pitch of every string of an instrument, found by {@link StrumDetector} in one buffer of a
+ * strummed chord.
+ * <p>
+ * The values of each string are held in parallel arrays, so a result can be reused for every buffer
+ * and copied from one thread to another with {@link #copyFrom(StrumResult)} without allocating.
+ */
+public class StrumResult {
+
+    //value written as the hertz of a string which was not found
+    public static final float NO_PITCH = -1;
+
+    //pitch each string should have
+    private final double[] mTargetHertz;
+
+    private final boolean[] mDetected;
+    private final float[] mHertz;
+    private final float[] mCents;
+    //level of the loudest partial of each string, in dB relative to the loudest peak of the buffer
+    private final float[] mLevelDecibels;
+    //number of partials the pitch of each string was measured from
+    private final int[] mPartials;
+
+    /**
+     * Class constructor
+     *
+     * @param _targetHertz double[]. The pitch each string should have, in string order.
+     */
+    public StrumResult(double[] _targetHertz) {
+        mTargetHertz = _targetHertz.clone();
+        int strings = _targetHertz.length;
+        mDetected = new boolean[strings];
+        mHertz = new float[strings];
+        mCents = new float[strings];
+        mLevelDecibels = new float[strings];
+        mPartials = new int[strings];
+        clear();
+    }
+
+    /**
+     * Marks every string as not found
+     */
+    public void clear() {
+        for (int i = 0; i < mDetected.length; i++) {
+            setNotDetected(i);
+        }
+    }
+
+    /**
+     * @param _string int. The index of the string.
+     */
+    void setNotDetected(int _string) {
+        mDetected[_string] = false;
+        mHertz[_string] = NO_PITCH;
+        mCents[_string] = 0;
+        mLevelDecibels[_string] = Float.NEGATIVE_INFINITY;
+        mPartials[_string] = 0;
+    }
+
+    /**
+     * @param _string        int. The index of the string.
+     * @param _hertz         double. The pitch of the string.
+     * @param _levelDecibels double. The level of its loudest partial relative to the loudest peak.
+     * @param _partials      int. The number of partials the pitch was measured from.
+     */
+    void setDetected(int _string, double _hertz, double _levelDecibels, int _partials) {
+        mDetected[_string] = true;
+        mHertz[_string] = (float) _hertz;
+        mCents[_string] = (float) (1200 * Math.log(_hertz / mTargetHertz[_string]) / Math.log(2));
+        mLevelDecibels[_string] = (float) _levelDecibels;
+        mPartials[_string] = _partials;
+    }
+
+    /**
+     * Copies every value of _other, which must be for the same strings
+     *
+     * @param _other {@link StrumResult}. The result to copy.
+     */
+    public void copyFrom(StrumResult _other) {
+        int strings = mDetected.length;
+        System.arraycopy(_other.mDetected, 0, mDetected, 0, strings);
+        System.arraycopy(_other.mHertz, 0, mHertz, 0, strings);
+        System.arraycopy(_other.mCents, 0, mCents, 0, strings);
+        System.arraycopy(_other.mLevelDecibels, 0, mLevelDecibels, 0, strings);
+        System.arraycopy(_other.mPartials, 0, mPartials, 0, strings);
+    }
+
+    /**
+     * Getters and Setters
+     */
+
+    public int getStringCount() {
+        return mDetected.length;
+    }
+
+    public double getTargetHertz(int _string) {
+        return mTargetHertz[_string];
+    }
+
+    public boolean isDetected(int _string) {
+        return mDetected[_string];
+    }
+
+    /**
+     * @param _string int. The index of the string.
+     * @return float. The pitch of the string, or {@link #NO_PITCH} if it was not found
+     */
+    public float getHertz(int _string) {
+        return mHertz[_string];
+    }
+
+    /**
+     * @param _string int. The index of the string.
+     * @return float. How far the string is from its target pitch in cents, positive when sharp
+     */
+    public float getCents(int _string) {
+        return mCents[_string];
+    }
+
+    public float getLevelDecibels(int _string) {
+        return mLevelDecibels[_string];
+    }
+
+    public int getPartials(int _string) {
+        return mPartials[_string];
+    }
+}
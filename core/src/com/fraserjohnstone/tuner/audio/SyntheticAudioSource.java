@@ -0,0 +1,44 @@
+package com.fraserjohnstone.tuner.audio;
+
+import be.tarsos.dsp.AudioDispatcher;
+
+/**
+ * An {@link AudioSource} which plays a note made by a {@link ToneGenerator}, as fast as it can be
+ * analysed. The note is generated at the sample rate asked for each time a dispatcher is created,
+ * and is exactly the same every time.
+ */
+public class SyntheticAudioSource implements AudioSource {
+
+    private final ToneGenerator mGenerator;
+    private final double mSeconds;
+
+    /**
+     * Class constructor
+     *
+     * @param _generator {@link ToneGenerator}. Makes the note. Changes to its settings are heard
+     *                   from the next dispatcher created.
+     * @param _seconds   double. The length of the note, not counting any silence before it.
+     */
+    public SyntheticAudioSource(ToneGenerator _generator, double _seconds) {
+        mGenerator = _generator;
+        mSeconds = _seconds;
+    }
+
+    @Override
+    public AudioDispatcher createDispatcher(int _sampleRate, int _bufferSize, int _overlap) {
+        return new MemoryAudioSource(mGenerator.generate(_sampleRate, mSeconds), _sampleRate)
+                .createDispatcher(_sampleRate, _bufferSize, _overlap);
+    }
+
+    /**
+     * Getters and Setters
+     */
+
+    public ToneGenerator getGenerator() {
+        return mGenerator;
+    }
+
+    public double getSeconds() {
+        return mSeconds;
+    }
+}
@@ -0,0 +1,46 @@
+package com.fraserjohnstone.tuner.audio;
+
+import be.tarsos.dsp.pitch.PitchDetector;
+import be.tarsos.dsp.pitch.PitchProcessor.PitchEstimationAlgorithm;
+
+/**
+ * A {@link PitchDetectorFactory} for the detectors which come with TarsosDSP. They search every lag
+ * whatever the range, so a limited range is applied afterwards with a
+ * {@link RangeLimitedPitchDetector}.
+ */
+public class TarsosPitchDetectorFactory implements PitchDetectorFactory {
+
+    private final PitchEstimationAlgorithm mAlgorithm;
+
+    /**
+     * Class constructor
+     *
+     * @param _algorithm {@link PitchEstimationAlgorithm}. The TarsosDSP algorithm to use.
+     */
+    public TarsosPitchDetectorFactory(PitchEstimationAlgorithm _algorithm) {
+        mAlgorithm = _algorithm;
+    }
+
+    @Override
+    public PitchDetector createDetector(float _sampleRate, int _windowSize, int _hopSize, float _minHertz,
+                                        float _maxHertz) {
+        PitchDetector detector = mAlgorithm.getDetector(_sampleRate, _windowSize);
+        if (_minHertz <= 0 && _maxHertz == Float.MAX_VALUE) {
+            return detector;
+        }
+        return new RangeLimitedPitchDetector(detector, _minHertz, _maxHertz);
+    }
+
+    @Override
+    public String toString() {
+        return "TarsosDSP " + mAlgorithm;
+    }
+
+    /**
+     * Getters and Setters
+     */
+
+    public PitchEstimationAlgorithm getAlgorithm() {
+        return mAlgorithm;
+    }
+}
@@ -0,0 +1,198 @@
+package com.fraserjohnstone.tuner.audio;
+
+import com.fraserjohnstone.tuner.utils.RandomNum;
+
+/**
+ * Generates the samples of a synthetic note, so the tuner's analysis can be run and checked without
+ * a microphone. Starting from a sine at the pitch of the note it can add:
+ * <ul>
+ * <li>harmonics, with amplitudes falling as 1/n and random phases</li>
+ * <li>a fixed detuning in cents</li>
+ * <li>vibrato, a sinusoidal change of pitch</li>
+ * <li>an attack, over which the note fades in with a burst of noise and starts sharp, settling onto
+ * its pitch as a plucked string does</li>
+ * <li>white noise throughout</li>
+ * <li>silence before the note starts</li>
+ * </ul>
+ * Every random value (the phases and the noise) is drawn from a {@link RandomNum} with the seed the
+ * generator was created with, so the same settings always give exactly the same samples.
+ * <p>
+ * Times given to and returned by the generator are in seconds from the start of the note, after any
+ * silence.
+ */
+public class ToneGenerator {
+
+    //peak of the note, before the noise is added
+    private static final double PEAK = 0.5;
+    //peak of the noise burst of the attack relative to the largest the harmonics can add up to
+    private static final double ATTACK_NOISE = 0.5;
+
+    private final double mHertz;
+    private final long mSeed;
+
+    private int mHarmonics = 1;
+    private double mDetuneCents = 0;
+    private double mVibratoHertz = 0;
+    private double mVibratoCents = 0;
+    private double mAttackSeconds = 0;
+    private double mAttackCents = 0;
+    private double mNoiseDecibels = Double.NEGATIVE_INFINITY;
+    private double mSilenceSeconds = 0;
+
+    /**
+     * Class constructor. The note is a pure sine at _hertz until the other settings are changed.
+     *
+     * @param _hertz double. The pitch of the note before it is detuned.
+     * @param _seed  long. The seed of the phases and noise.
+     */
+    public ToneGenerator(double _hertz, long _seed) {
+        mHertz = _hertz;
+        mSeed = _seed;
+    }
+
+    /**
+     * @param _seconds double. A time from the start of the note.
+     * @return double. The pitch of the note at _seconds, with the detuning, vibrato and the pitch
+     * of the attack
+     */
+    public double getHertzAt(double _seconds) {
+        double cents = mDetuneCents;
+        if (_seconds > 0) {
+            cents += mVibratoCents * Math.sin(2 * Math.PI * mVibratoHertz * _seconds);
+            if (mAttackSeconds > 0) {
+                cents += mAttackCents * Math.exp(-_seconds / mAttackSeconds);
+            }
+        }
+        return mHertz * Math.pow(2, cents / 1200);
+    }
+
+    /**
+     * @param _sampleRate int. The sample rate in hertz.
+     * @param _seconds    double. The length of the note, not counting the silence before it.
+     * @return float[]. The samples of the silence and the note, in the range -1 to 1
+     */
+    public float[] generate(int _sampleRate, double _seconds) {
+        RandomNum random = new RandomNum(mSeed);
+        double[] phases = new double[mHarmonics];
+        //largest the harmonics can add up to
+        double level = 0;
+        for (int n = 0; n < mHarmonics; n++) {
+            phases[n] = random.randFloat(0, (float) (2 * Math.PI));
+            level += 1.0 / (n + 1);
+        }
+
+        int silence = (int) (mSilenceSeconds * _sampleRate);
+        double[] note = new double[(int) (_seconds * _sampleRate)];
+        double phase = 0;
+        double peak = 0;
+        for (int i = 0; i < note.length; i++) {
+            double seconds = (double) i / _sampleRate;
+            double hertz = getHertzAt(seconds);
+            double sample = 0;
+            //harmonics above half the sample rate would alias
+            for (int n = 1; n <= mHarmonics && n * hertz < _sampleRate / 2; n++) {
+                sample += Math.sin(n * phase + phases[n - 1]) / n;
+            }
+            if (mAttackSeconds > 0 && seconds < mAttackSeconds) {
+                double rise = seconds / mAttackSeconds;
+                sample = sample * rise
+                        + ATTACK_NOISE * level * (1 - rise) * random.randFloatPossNeg(0, 1);
+            }
+            note[i] = sample;
+            peak = Math.max(peak, Math.abs(sample));
+            phase = (phase + 2 * Math.PI * hertz / _sampleRate) % (2 * Math.PI);
+        }
+
+        float noise = (float) (PEAK * Math.pow(10, mNoiseDecibels / 20));
+        float[] samples = new float[silence + note.length];
+        for (int i = 0; i < samples.length; i++) {
+            double sample = i < silence || peak == 0 ? 0 : PEAK * note[i - silence] / peak;
+            if (noise > 0) {
+                sample += random.randFloatPossNeg(0, noise);
+            }
+            samples[i] = (float) sample;
+        }
+        return samples;
+    }
+
+    /**
+     * Getters and Setters
+     */
+
+    /**
+     * @return double. The pitch of the note once any attack has died away, without vibrato
+     */
+    public double getPlayedHertz() {
+        return mHertz * Math.pow(2, mDetuneCents / 1200);
+    }
+
+    public double getHertz() {
+        return mHertz;
+    }
+
+    public long getSeed() {
+        return mSeed;
+    }
+
+    public int getHarmonics() {
+        return mHarmonics;
+    }
+
+    /**
+     * @param _harmonics int. The number of partials, including the fundamental.
+     */
+    public void setHarmonics(int _harmonics) {
+        mHarmonics = Math.max(1, _harmonics);
+    }
+
+    public double getDetuneCents() {
+        return mDetuneCents;
+    }
+
+    public void setDetuneCents(double _detuneCents) {
+        mDetuneCents = _detuneCents;
+    }
+
+    public double getVibratoHertz() {
+        return mVibratoHertz;
+    }
+
+    public double getVibratoCents() {
+        return mVibratoCents;
+    }
+
+    /**
+     * @param _hertz double. The rate of the vibrato.
+     * @param _cents double. How far the pitch moves either side of the note.
+     */
+    public void setVibrato(double _hertz, double _cents) {
+        mVibratoHertz = _hertz;
+        mVibratoCents = _cents;
+    }
+
+    /**
+     * @param _seconds    double. How long the note takes to fade in, over which the noise burst dies
+     *                    away. Also the time the pitch takes to fall 63% of the way to the note.
+     * @param _sharpCents double. How far sharp the note starts.
+     */
+    public void setAttack(double _seconds, double _sharpCents) {
+        mAttackSeconds = _seconds;
+        mAttackCents = _sharpCents;
+    }
+
+    /**
+     * @param _decibels double. The peak of the noise relative to the peak of the note, or
+     *                  {@link Double#NEGATIVE_INFINITY} for none.
+     */
+    public void setNoiseDecibels(double _decibels) {
+        mNoiseDecibels = _decibels;
+    }
+
+    public double getSilenceSeconds() {
+        return mSilenceSeconds;
+    }
+
+    public void setSilenceSeconds(double _silenceSeconds) {
+        mSilenceSeconds = _silenceSeconds;
+    }
+}
@@ -0,0 +1,358 @@
+package com.fraserjohnstone.tuner.audio;
+
+import be.tarsos.dsp.pitch.PitchDetectionResult;
+import be.tarsos.dsp.pitch.PitchDetector;
+
+/**
+ * The YIN pitch detector (de Cheveigne and Kawahara, 2002), written so that detecting the pitch of a
+ * buffer allocates nothing and only does the work the tuner needs.
+ * <p>
+ * It follows the same steps as TarsosDSP's FastYin: the difference function, its cumulative mean
+ * normalised form, the first dip below an absolute threshold followed down to its minimum, and
+ * parabolic interpolation around that minimum. The differences are:
+ * <ul>
+ * <li>Every array, the FFT tables and the result are created once in the constructor and reused.</li>
+ * <li>The autocorrelation term of the difference function is calculated with a real FFT the size of
+ * the buffer (rounded up to a power of two), rather than a complex FFT of twice its size.</li>
+ * <li>Only the lags for the range of pitches asked for are searched. The difference function is
+ * still calculated from the shortest lag, as the normalisation needs it, but nothing past the
+ * longest lag is calculated or searched. Without the FFT, where the cost grows with the longest lag,
+ * a limited range makes the detector much faster.</li>
+ * <li>The energy terms are accumulated in double precision, so they do not drift over the lags of a
+ * long buffer.</li>
+ * <li>The difference function without the FFT and the normalisation are done by {@link DspKernels},
+ * which use SIMD instructions where the JVM supports them.</li>
+ * </ul>
+ * <p>
+ * Instances are not thread safe. The result returned by {@link #getPitch(float[])} is reused by the
+ * next call.
+ */
+public class YinPitchDetector implements PitchDetector {
+
+    //the threshold used by TarsosDSP's YIN and FastYin
+    public static final double DEFAULT_THRESHOLD = 0.20;
+
+    /**
+     * Creates detectors which calculate the difference function directly, in time proportional to the
+     * buffer size times the longest lag searched
+     */
+    public static final PitchDetectorFactory YIN = new PitchDetectorFactory() {
+        @Override
+        public PitchDetector createDetector(float _sampleRate, int _windowSize, int _hopSize,
+                                            float _minHertz, float _maxHertz) {
+            return new YinPitchDetector(_sampleRate, _windowSize, _minHertz, _maxHertz, false);
+        }
+
+        @Override
+        public String toString() {
+            return "YIN";
+        }
+    };
+
+    /**
+     * Creates detectors which calculate the difference function with a real FFT, in time proportional
+     * to n log n for a buffer of n samples
+     */
+    public static final PitchDetectorFactory FFT_YIN = new PitchDetectorFactory() {
+        @Override
+        public PitchDetector createDetector(float _sampleRate, int _windowSize, int _hopSize,
+                                            float _minHertz, float _maxHertz) {
+            return new YinPitchDetector(_sampleRate, _windowSize, _minHertz, _maxHertz, true);
+        }
+
+        @Override
+        public String toString() {
+            return "FFT_YIN";
+        }
+    };
+
+    private final float mSampleRate;
+    private final int mBufferSize;
+    private final double mThreshold;
+    private final float mMinHertz;
+    private final float mMaxHertz;
+
+    //number of samples compared at each lag, half the buffer
+    private final int mWindow;
+    //shortest and longest lags searched
+    private final int mMinLag;
+    private final int mMaxLag;
+
+    //the difference function, then its cumulative mean normalised form, for lags 0 to mMaxLag + 1
+    private final float[] mDifference;
+
+    //null when the difference function is calculated directly
+    private final RealFft mFft;
+    //spectrum of the buffer, which becomes the autocorrelation term
+    private final float[] mSpectrum;
+    //spectrum of the first mWindow samples of the buffer
+    private final float[] mKernel;
+
+    private final DspKernels mKernels;
+
+    private final PitchDetectionResult mResult = new PitchDetectionResult();
+
+    /**
+     * Class constructor. Searches every pitch the buffer can hold with the FFT.
+     *
+     * @param _sampleRate float. The sample rate of the audio.
+     * @param _bufferSize int. The number of samples in each buffer.
+     */
+    public YinPitchDetector(float _sampleRate, int _bufferSize) {
+        this(_sampleRate, _bufferSize, 0, Float.MAX_VALUE, true);
+    }
+
+    /**
+     * Class constructor
+     *
+     * @param _sampleRate float. The sample rate of the audio.
+     * @param _bufferSize int. The number of samples in each buffer.
+     * @param _minHertz   float. The lowest pitch to report, or 0 for no limit.
+     * @param _maxHertz   float. The highest pitch to report, or {@link Float#MAX_VALUE} for no limit.
+     * @param _useFft     boolean. True to calculate the difference function with an FFT.
+     */
+    public YinPitchDetector(float _sampleRate, int _bufferSize, float _minHertz, float _maxHertz,
+                            boolean _useFft) {
+        this(_sampleRate, _bufferSize, _minHertz, _maxHertz, _useFft, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Class constructor
+     *
+     * @param _sampleRate float. The sample rate of the audio.
+     * @param _bufferSize int. The number of samples in each buffer.
+     * @param _minHertz   float. The lowest pitch to report, or 0 for no limit.
+     * @param _maxHertz   float. The highest pitch to report, or {@link Float#MAX_VALUE} for no limit.
+     * @param _useFft     boolean. True to calculate the difference function with an FFT.
+     * @param _threshold  double. The largest normalised difference accepted as periodic.
+     */
+    public YinPitchDetector(float _sampleRate, int _bufferSize, float _minHertz, float _maxHertz,
+                            boolean _useFft, double _threshold) {
+        this(_sampleRate, _bufferSize, _minHertz, _maxHertz, _useFft, _threshold, DspKernels.getDefault());
+    }
+
+    /**
+     * Class constructor
+     *
+     * @param _sampleRate float. The sample rate of the audio.
+     * @param _bufferSize int. The number of samples in each buffer.
+     * @param _minHertz   float. The lowest pitch to report, or 0 for no limit.
+     * @param _maxHertz   float. The highest pitch to report, or {@link Float#MAX_VALUE} for no limit.
+     * @param _useFft     boolean. True to calculate the difference function with an FFT.
+     * @param _threshold  double. The largest normalised difference accepted as periodic.
+     * @param _kernels    {@link DspKernels}. The implementation of the inner loops.
+     */
+    public YinPitchDetector(float _sampleRate, int _bufferSize, float _minHertz, float _maxHertz,
+                            boolean _useFft, double _threshold, DspKernels _kernels) {
+        if (_bufferSize < 8) {
+            throw new IllegalArgumentException("Buffer too small for pitch detection: " + _bufferSize);
+        }
+        mSampleRate = _sampleRate;
+        mBufferSize = _bufferSize;
+        mThreshold = _threshold;
+        mMinHertz = _minHertz;
+        mMaxHertz = _maxHertz;
+        mKernels = _kernels;
+        mWindow = _bufferSize / 2;
+
+        mMinLag = minLag(_sampleRate, _bufferSize, _maxHertz);
+        mMaxLag = maxLag(_sampleRate, _bufferSize, _minHertz, _maxHertz);
+        mDifference = new float[mMaxLag + 2];
+
+        if (_useFft) {
+            int fftSize = Integer.highestOneBit(_bufferSize - 1) << 1;
+            mFft = new RealFft(fftSize);
+            mSpectrum = new float[fftSize];
+            mKernel = new float[fftSize];
+        } else {
+            mFft = null;
+            mSpectrum = null;
+            mKernel = null;
+        }
+    }
+
+    /**
+     * @param _sampleRate float. The sample rate of the audio.
+     * @param _bufferSize int. The number of samples in each buffer.
+     * @param _maxHertz   float. The highest pitch to report.
+     * @return int. The shortest lag searched. Lags of 0 and 1 are never searched.
+     */
+    static int minLag(float _sampleRate, int _bufferSize, float _maxHertz) {
+        return Math.min(_bufferSize / 2 - 2, Math.max(2, (int) Math.floor(_sampleRate / _maxHertz)));
+    }
+
+    /**
+     * @param _sampleRate float. The sample rate of the audio.
+     * @param _bufferSize int. The number of samples in each buffer.
+     * @param _minHertz   float. The lowest pitch to report, or 0 for no limit.
+     * @param _maxHertz   float. The highest pitch to report.
+     * @return int. The longest lag searched. It leaves room in the first half of the buffer for the
+     * walk to the minimum and the interpolation on either side of it.
+     */
+    static int maxLag(float _sampleRate, int _bufferSize, float _minHertz, float _maxHertz) {
+        int longestLag = _bufferSize / 2 - 2;
+        if (_minHertz <= 0) {
+            return longestLag;
+        }
+        int maxLag = Math.min(longestLag, (int) Math.ceil(_sampleRate / _minHertz));
+        return Math.max(minLag(_sampleRate, _bufferSize, _maxHertz), maxLag);
+    }
+
+    @Override
+    public PitchDetectionResult getPitch(float[] _audioBuffer) {
+        difference(_audioBuffer, mDifference);
+        mKernels.cumulativeMeanNormalise(mDifference);
+
+        int tau = absoluteThreshold();
+        float pitch = -1;
+        if (tau != -1) {
+            pitch = mSampleRate / parabolicInterpolation(tau);
+            if (pitch < mMinHertz || pitch > mMaxHertz) {
+                pitch = -1;
+            }
+        }
+
+        if (pitch > 0) {
+            mResult.setProbability(1 - mDifference[tau]);
+            mResult.setPitched(true);
+        } else {
+            mResult.setProbability(0);
+            mResult.setPitched(false);
+        }
+        mResult.setPitch(pitch);
+        return mResult;
+    }
+
+    /**
+     * Calculates d(tau), the sum of (x[j] - x[j + tau])^2 over the first half of the buffer, for every
+     * lag from 0 to _difference.length - 1.
+     *
+     * @param _audioBuffer float[]. The samples.
+     * @param _difference  float[]. Receives the difference function.
+     */
+    protected void difference(float[] _audioBuffer, float[] _difference) {
+        if (mFft != null) {
+            fftDifference(_audioBuffer, _difference);
+        } else {
+            mKernels.difference(_audioBuffer, 0, mWindow, _difference);
+        }
+    }
+
+    /**
+     * Calculates d(tau) for every lag as e(0) + e(tau) - 2 r(tau), where e(tau) is the energy of the
+     * window starting at tau and r(tau) the correlation between the first window and the window
+     * starting at tau. r is found for every lag at once by multiplying the spectrum of the buffer by
+     * the conjugate spectrum of the first window. The first window is zero padded to the size of the
+     * FFT, so r does not wrap around for any lag up to the window length.
+     *
+     * @param _audioBuffer float[]. The samples.
+     * @param _difference  float[]. Receives the difference function.
+     */
+    private void fftDifference(float[] _audioBuffer, float[] _difference) {
+        int fftSize = mSpectrum.length;
+        System.arraycopy(_audioBuffer, 0, mSpectrum, 0, mBufferSize);
+        for (int i = mBufferSize; i < fftSize; i++) {
+            mSpectrum[i] = 0;
+        }
+        System.arraycopy(_audioBuffer, 0, mKernel, 0, mWindow);
+        for (int i = mWindow; i < fftSize; i++) {
+            mKernel[i] = 0;
+        }
+        mFft.forward(mSpectrum);
+        mFft.forward(mKernel);
+
+        //the 0Hz and Nyquist bins are real
+        mSpectrum[0] *= mKernel[0];
+        mSpectrum[1] *= mKernel[1];
+        for (int i = 2; i < fftSize; i += 2) {
+            float re = mSpectrum[i];
+            float im = mSpectrum[i + 1];
+            float kernelRe = mKernel[i];
+            float kernelIm = mKernel[i + 1];
+            mSpectrum[i] = re * kernelRe + im * kernelIm;
+            mSpectrum[i + 1] = im * kernelRe - re * kernelIm;
+        }
+        mFft.inverse(mSpectrum);
+
+        double energy = 0;
+        for (int j = 0; j < mWindow; j++) {
+            energy += _audioBuffer[j] * _audioBuffer[j];
+        }
+        double firstEnergy = energy;
+        _difference[0] = 0;
+        for (int tau = 1; tau < _difference.length; tau++) {
+            float leaving = _audioBuffer[tau - 1];
+            float entering = _audioBuffer[tau + mWindow - 1];
+            energy += entering * entering - leaving * leaving;
+            _difference[tau] = (float) (firstEnergy + energy - 2 * mSpectrum[tau]);
+        }
+    }
+
+    /**
+     * @return int. The lag of the first dip below the threshold, followed down to its minimum, or -1
+     * if there is none in the range searched
+     */
+    private int absoluteThreshold() {
+        for (int tau = mMinLag; tau <= mMaxLag; tau++) {
+            if (mDifference[tau] < mThreshold) {
+                while (tau + 1 < mDifference.length && mDifference[tau + 1] < mDifference[tau]) {
+                    tau++;
+                }
+                return tau;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param _tau int. The lag of a minimum of the normalised difference.
+     * @return float. The lag of the vertex of the parabola through the minimum and its neighbours
+     */
+    private float parabolicInterpolation(int _tau) {
+        if (_tau + 1 >= mDifference.length) {
+            return _tau;
+        }
+        float s0 = mDifference[_tau - 1];
+        float s1 = mDifference[_tau];
+        float s2 = mDifference[_tau + 1];
+        float denominator = 2 * (2 * s1 - s2 - s0);
+        if (denominator == 0) {
+            return _tau;
+        }
+        return _tau + (s2 - s0) / denominator;
+    }
+
+    /**
+     * Getters and Setters
+     */
+
+    public int getBufferSize() {
+        return mBufferSize;
+    }
+
+    /**
+     * @return int. The number of samples compared at each lag, half the buffer size
+     */
+    public int getWindow() {
+        return mWindow;
+    }
+
+    public int getMinLag() {
+        return mMinLag;
+    }
+
+    public int getMaxLag() {
+        return mMaxLag;
+    }
+
+    public DspKernels getKernels() {
+        return mKernels;
+    }
+
+    /**
+     * @return boolean. True if the difference function is calculated with an FFT
+     */
+    public boolean usesFft() {
+        return mFft != null;
+    }
+}
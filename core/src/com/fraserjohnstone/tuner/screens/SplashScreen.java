@@ -9,6 +9,9 @@ import com.badlogic.gdx.scenes.scene2d.Stage;
 import com.badlogic.gdx.scenes.scene2d.ui.Image;
 import com.badlogic.gdx.utils.Scaling;
 import com.fraserjohnstone.tuner.Tuner;
+import com.fraserjohnstone.tuner.assets.BackgroundTextureLoader;
+import com.fraserjohnstone.tuner.utils.StartupTimer;
+import com.fraserjohnstone.tuner.utils.StartupTimer.Milestone;
 
 /**
  * This screen is displayed whilst the {@link Tuner#mAssetManager} is loading and the user is
@@ -18,6 +21,13 @@ import com.fraserjohnstone.tuner.Tuner;
  * has finished loading and the user has granted the application appropriate runtime permissions.
  * The permissions will be requested in the resume() method and the member variable
  * {@link #mScreenChangeAllowed} will only be true once the user has granted permission.
+ * <p>
+ * The textures of this screen are decoded on background threads by a
+ * {@link BackgroundTextureLoader}, so the first frames are drawn straight away and the images
+ * appear as soon as they have been uploaded.
+ * <p>
+ * Once the images are drawn the pitch detector for the device is chosen, see
+ * {@link Tuner#chooseDetector()}. The tuner screen does not wait for it.
  */
 public class SplashScreen implements Screen {
 
@@ -28,22 +38,30 @@ public class SplashScreen implements Screen {
     //any requested runtime permissions.
     private boolean mScreenChangeAllowed = false;
 
+    //paths of the textures of this screen, made by the 'compressTextures' Gradle task
+    private static final String BG_TEXTURE = "textures/splash_bg.zktx";
+    private static final String SPINNER_TEXTURE = "textures/splash_spinner.zktx";
+
+    //decodes the textures of this screen away from the GL thread
+    private BackgroundTextureLoader mTextureLoader;
+
     //UI
     //stage
     private Stage mStage;
+    //true once the textures have been uploaded and the ui elements have been created
+    private boolean mUiCreated = false;
 
     //bg
-    private Texture mBgTexture;
     private Image mBgImage;
 
     //spinner
-    private Texture mSpinnerTexture;
     private Image mSpinnerImage;
 
     /**
      * Class constructor.
      * <p>
-     * Creates all of the elements for the user interface and adds them to a stage.
+     * Creates the stage and starts decoding the textures for the user interface, which is created
+     * once they are ready.
      *
      * @param _tuner {@link Tuner}. Gives this class access to the main {@link com.badlogic.gdx.Game}
      *               class.
@@ -51,29 +69,30 @@ public class SplashScreen implements Screen {
     public SplashScreen(Tuner _tuner) {
         //reference the main Tuner class
         mTuner = _tuner;
-        addUiElements();
+
+        //create the stage
+        mStage = new Stage();
+
+        //decode the textures, one thread each
+        mTextureLoader = new BackgroundTextureLoader(2);
+        mTextureLoader.load(BG_TEXTURE, true, TextureFilter.MipMapLinearLinear, TextureFilter.Linear);
+        mTextureLoader.load(SPINNER_TEXTURE, true, TextureFilter.MipMapLinearLinear, TextureFilter.Linear);
     }
 
     /**
-     * Creates the user interface objects and adds them to the stage.
+     * Creates the user interface objects and adds them to the stage. Must only be called once the
+     * textures have been uploaded.
      */
     private void addUiElements() {
-        //create the stage
-        mStage = new Stage();
-
         //create the bg
-        mBgTexture = new Texture(Gdx.files.internal("images/splash/bg.png"), true);
-        mBgTexture.setFilter(TextureFilter.MipMapLinearLinear, TextureFilter.Linear);
-        mBgImage = new Image(mBgTexture);
+        Texture bgTexture = mTextureLoader.get(BG_TEXTURE);
+        mBgImage = new Image(bgTexture);
         mBgImage.setScaling(Scaling.stretch);
         mBgImage.setPosition(0, 0);
         mBgImage.setSize(mTuner.getScreenWidthPix(), mTuner.getScreenHeightPix());
 
         //create the loader icons
-        mSpinnerTexture = new Texture(Gdx.files.internal("images/splash/spinner.png"), true);
-        mSpinnerTexture.setFilter(TextureFilter.MipMapLinearLinear, TextureFilter.Linear);
-
-        mSpinnerImage = new Image(mSpinnerTexture);
+        mSpinnerImage = new Image(mTextureLoader.get(SPINNER_TEXTURE));
         mSpinnerImage.setSize(mTuner.getScreenWidthPix() * 0.2f, mTuner.getScreenWidthPix() * 0.2f);
         mSpinnerImage.setPosition(mTuner.getScreenWidthPix() * 0.5f - mSpinnerImage.getWidth() * 0.5f,
                 mTuner.getScreenHeightPix() * 0.5f - mSpinnerImage.getHeight() * 0.5f);
@@ -83,34 +102,53 @@ public class SplashScreen implements Screen {
         //add ui elements to the stage
         mStage.addActor(mBgImage);
         mStage.addActor(mSpinnerImage);
+        mUiCreated = true;
     }
 
     /**
      * Draws the elements of the UI that have been added to the stage. The rotation of the spinner will
      * be set based on the loading progress of the {@link Tuner#mAssetManager}.
      * <p>
-     * {@link #goToTunerScreen()} will only be called if the user has given permission to this
-     * application to record audio, and the asset manager has finished loading.
+     * The asset manager is updated every frame, so the tuner's assets load while the user is
+     * deciding whether to grant permission. {@link #goToTunerScreen()} will only be called if the
+     * user has given permission to this application to record audio, and the asset manager has
+     * finished loading.
      *
      * @param _delta float. The time taken to render the previous frame.
      */
     @Override
     public void render(float _delta) {
+        StartupTimer.mark(Milestone.FIRST_FRAME);
+
         //clear the screen and draw a black background
         Gdx.gl.glClearColor(0, 0, 0, 1); //black bg
         Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT);
 
+        //upload the textures of this screen once they have been decoded
+        if (!mUiCreated && mTextureLoader.update()) {
+            addUiElements();
+            //after the textures have been decoded, so that choosing the detector does not slow them
+            mTuner.chooseDetector();
+        }
+
         //check if the AssetManager instance has loaded and that the record audio permission
         //has been granted
-        if (mScreenChangeAllowed && mTuner.getAssetManager().update()) {
+        boolean assetsLoaded = mTuner.getAssetManager().update();
+        if (assetsLoaded) {
+            StartupTimer.mark(Milestone.ASSETS_LOADED);
+        }
+        if (mScreenChangeAllowed && assetsLoaded) {
             goToTunerScreen();
         }
 
-        //update the spinner rotation
-        mSpinnerImage.setRotation((360 / 100) * mTuner.getAssetManager().getProgress());
+        if (mUiCreated) {
+            //update the spinner rotation
+            mSpinnerImage.setRotation((360 / 100) * mTuner.getAssetManager().getProgress());
 
-        //draw the stage
-        mStage.draw();
+            //draw the stage
+            mStage.draw();
+            StartupTimer.mark(Milestone.SPLASH_DRAWN);
+        }
     }
 
     /**
@@ -149,8 +187,7 @@ public class SplashScreen implements Screen {
      */
     @Override
     public void dispose() {
-        mBgTexture.dispose();
-        mSpinnerTexture.dispose();
+        mTextureLoader.dispose();
         mStage.dispose();
     }
 
@@ -1,27 +1,46 @@
 package com.fraserjohnstone.tuner.screens;
 
+import com.badlogic.gdx.Application;
 import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.InputAdapter;
 import com.badlogic.gdx.Screen;
+import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.graphics.GL20;
-import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.BitmapFont;
 import com.badlogic.gdx.graphics.g2d.GlyphLayout;
 import com.badlogic.gdx.graphics.g2d.Sprite;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
 
 import com.fraserjohnstone.tuner.Tuner;
+import com.fraserjohnstone.tuner.audio.AnalysisSettings;
+import com.fraserjohnstone.tuner.audio.AudioEngine;
+import com.fraserjohnstone.tuner.audio.AudioSource;
+import com.fraserjohnstone.tuner.audio.NoiseGateProcessor;
+import com.fraserjohnstone.tuner.audio.PitchDetectorFactory;
+import com.fraserjohnstone.tuner.audio.PitchFrameBuffer;
+import com.fraserjohnstone.tuner.audio.PitchSmoother;
+import com.fraserjohnstone.tuner.audio.StrumHandler;
+import com.fraserjohnstone.tuner.audio.StrumResult;
 import com.fraserjohnstone.tuner.utils.ChromaticScale;
-import com.fraserjohnstone.tuner.utils.Note;
+import com.fraserjohnstone.tuner.utils.FixedPointFormat;
+import com.fraserjohnstone.tuner.utils.InstrumentProfile;
+import com.fraserjohnstone.tuner.utils.LatencyHistogram;
+import com.fraserjohnstone.tuner.utils.LatencyMetrics;
+import com.fraserjohnstone.tuner.utils.NoteQuantizer;
+import com.fraserjohnstone.tuner.utils.PitchClass;
+import com.fraserjohnstone.tuner.utils.RenderScheduler;
+import com.fraserjohnstone.tuner.utils.SessionLogWriter;
+import com.fraserjohnstone.tuner.utils.StartupTimer;
+import com.fraserjohnstone.tuner.utils.Temperament;
 
-import java.text.DecimalFormat;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 
 import be.tarsos.dsp.AudioEvent;
-import be.tarsos.dsp.AudioDispatcher;
-import be.tarsos.dsp.io.android.AudioDispatcherFactory;
+import be.tarsos.dsp.AudioProcessor;
 import be.tarsos.dsp.pitch.PitchDetectionHandler;
 import be.tarsos.dsp.pitch.PitchDetectionResult;
-import be.tarsos.dsp.pitch.PitchProcessor;
-import be.tarsos.dsp.pitch.PitchProcessor.PitchEstimationAlgorithm;
 
 /**
  * This class is the main {@link Screen} where the Tuner is displayed. The tuner algorithm will
@@ -30,15 +49,67 @@ import be.tarsos.dsp.pitch.PitchProcessor.PitchEstimationAlgorithm;
  */
 public class TunerScreen implements Screen {
 
-    //loop limiter. This value restricts the updating of certain values through the life of the
-    //application
-    private int mLoopCount = 0;
-    private int mLoopSize = 8;
+    //file the latency metrics are written to when the screen is paused with the log level set to
+    //debug
+    private static final String LATENCY_METRICS_FILE = "latency_metrics.csv";
+    //shortest time between two updates of the latency overlay text
+    private static final long LATENCY_OVERLAY_INTERVAL_NANOS = 500000000L;
+    //cached copy of LatencyMetrics.Stage.values() so that drawing the overlay does not allocate a new
+    //array each frame
+    private static final LatencyMetrics.Stage[] STAGES = LatencyMetrics.Stage.values();
+    //number of bars across the screen in strobe mode
+    private static final int STROBE_BARS = 12;
+    //speed of the strobe bars for each cent sharp, in bar spacings per second
+    private static final float STROBE_SPACINGS_PER_CENT_SECOND = 0.5f;
+    //pitch frames held before they are written to the session log, about 12 seconds of frames
+    private static final int SESSION_LOG_CAPACITY = 1024;
+    //file the session log is written to when it is turned on from the menu, in the app's local
+    //storage
+    private static final String SESSION_LOG_FILE = "session_log.bin";
+    //items of the menu along the top of the screen, from left to right
+    private static final int MENU_STROBE = 0;
+    private static final int MENU_STRUM = 1;
+    private static final int MENU_INSTRUMENT = 2;
+    private static final int MENU_MULTI_RESOLUTION = 3;
+    private static final int MENU_SESSION_LOG = 4;
+    private static final int MENU_ITEMS = 5;
+    //alpha of the text of a menu item whose setting is off
+    private static final float MENU_OFF_ALPHA = 0.4f;
+    //largest scale of the menu font, and the part of an item's width its text may take
+    private static final float MENU_MAX_FONT_SCALE = 0.4f;
+    private static final float MENU_TEXT_WIDTH = 0.9f;
 
     //Tuner settings - further settings that do not require member scope are defined in initTuner()
 
-    //chops up sound stream and feeds data to pitch
-    private AudioDispatcher mAudioDispatcher;
+    //owns the thread which chops up the sound stream and feeds data to pitch
+    private AudioEngine mAudioEngine;
+    //where the audio is read from, the microphone unless another source has been set
+    private AudioSource mAudioSource;
+    //pitch frames passed from the audio dispatcher thread to the render thread
+    private PitchFrameBuffer mPitchFrames = new PitchFrameBuffer(32);
+    //number of pitch frames that were combined with others because more than one frame arrived
+    //between two renders
+    private long mCoalescedFrames = 0;
+    //steadies the pitch frames before they are shown
+    private PitchSmoother mPitchSmoother = new PitchSmoother(
+            (float) AnalysisSettings.HOP_SIZE / AnalysisSettings.SAMPLE_RATE);
+    //the instrument being tuned, which decides the range of pitches analysed
+    private InstrumentProfile mInstrumentProfile = InstrumentProfile.CHROMATIC;
+    //a profile set from another thread, picked up by the next update()
+    private volatile InstrumentProfile mPendingInstrumentProfile;
+    //true to measure every string of the instrument at once, see StrumDetector. Only used while the
+    //instrument has strings.
+    private boolean mStrumMode = false;
+    //a strum mode set from another thread, picked up by the next update()
+    private volatile Boolean mPendingStrumMode;
+    //the pitch detectors and mode the running pitch processor was created with. The tuner is
+    //restarted when AnalysisSettings.getDetectors() changes, as it does once the detector for the
+    //device is chosen, or when AnalysisSettings.getMode() changes.
+    private PitchDetectorFactory mEngineDetectors;
+    private AnalysisSettings.Mode mEngineMode;
+    //true to show a strobe whose bars move at a speed set by how far sharp or flat the note is, and
+    //the offset to a tenth of a cent
+    private volatile boolean mStrobeMode = false;
     //hertz value returned from the pitch detection algorithm
     private double mCurrentHertz;
     //how far away the detected pitch is from the desired pitch - (uses 'cents = 1200 * log2(f2/f1)'
@@ -47,12 +118,23 @@ public class TunerScreen implements Screen {
     //keeps track of whether the note is sharp of flat. Will be either 'flat' or 'sharp'
     private String mSharpOrFlat;
     //the note currently being targeted by the Tuner (used for note wheel rotation)
-    private String mTargetNote;
+    private PitchClass mTargetNote;
     //will hold the target rotation value for each note on the note wheel
     private double mTargetRotation;
-    //mAudioDetected will be false for any sound detected below this volume
-    private int mSilenceThreshold = -70;
-    private boolean mAudioDetected = false;
+    //mAudioDetected will be false for any sound detected below the silence threshold (see
+    //AnalysisSettings). Also read by the audio thread to decide whether a frame needs drawing.
+    private volatile boolean mAudioDetected = false;
+
+    //draws a frame only when there is something new to show
+    private RenderScheduler mRenderScheduler = new RenderScheduler();
+
+    //time taken by each stage from a buffer of audio to the screen
+    private LatencyMetrics mLatencyMetrics = new LatencyMetrics();
+    //when the last drained pitch frames were taken, and when the newest of them was delivered to
+    //the audio processors. Only valid while mFramePresentPending is true.
+    private long mFramesConsumedNanos;
+    private long mNewestFrameDeliveredNanos;
+    private boolean mFramePresentPending = false;
 
     //UI
     //fonts
@@ -70,29 +152,81 @@ public class TunerScreen implements Screen {
     private Sprite mHertzReadoutBg;
     private double mNoteWheelRotation = 0;
 
+    //menu along the top of the screen, see updateMenu(). Each item is a fifth of the width of the
+    //screen and is tapped to turn its setting on or off, or to move on to the next instrument.
+    private StringBuilder[] mMenuItems = new StringBuilder[MENU_ITEMS];
+    private boolean[] mMenuItemOn = new boolean[MENU_ITEMS];
+    private InstrumentProfile mMenuInstrumentProfile;
+    private float mMenuFontScale;
+    private float mMenuHeight;
+    //taps on the menu, set as the input processor while the screen is shown
+    private InputAdapter mMenuInput = new InputAdapter() {
+        @Override
+        public boolean touchUp(int _screenX, int _screenY, int _pointer, int _button) {
+            return tapMenu(_screenX, _screenY);
+        }
+    };
+
+    //latency overlay, one line for each stage and one for the counters
+    private boolean mLatencyOverlayVisible = false;
+    private StringBuilder[] mLatencyOverlayLines;
+    private StringBuilder mLatencyOverlayNumber = new StringBuilder();
+    private long mLatencyOverlayUpdatedNanos;
+
     //string fields
     //hertz readout
-    private String mHertzReadout = "-";
+    private StringBuilder mHertzReadout = new StringBuilder("-");
     private float mHertzReadoutXPos;
     private float mHertzReadoutYPos;
 
     //how flat or sharp
-    private String mHowSharpOrFlatText = "-";
+    private StringBuilder mHowSharpOrFlatText = new StringBuilder("-");
     private float mHowSharpOrFlatTextXPos;
     private float mHowSharpOrFlatTextYPos;
 
+    //strum mode. The audio thread copies each result into mLatestStrum under mStrumLock, and the
+    //render thread copies it out into mDisplayedStrum, so neither allocates.
+    private final Object mStrumLock = new Object();
+    private StrumResult mLatestStrum;
+    private boolean mStrumPending = false;
+    private StrumResult mDisplayedStrum;
+    //one line for each string: its note and how far it is from it in cents
+    private StringBuilder[] mStrumLines = new StringBuilder[0];
+    private StringBuilder mStrumNumber = new StringBuilder();
+
+    //strobe mode. The bars are moved by mStrobeOffset, a fraction of the space between them.
+    private ArrayList<Sprite> mStrobeBars = new ArrayList<Sprite>();
+    private float mStrobeSpacing;
+    private float mStrobeOffset = 0;
+    private double mStrobeCents = 0;
+    private StringBuilder mStrobeNumber = new StringBuilder();
+
     //how sharp or flat in cents visualization
     private Sprite mHowSharpOrFlatCenter;
     private Sprite mHowSharp;
     private Sprite mHowFlat;
     private Sprite mSharpOrFlatSymbol;
 
+    //regions swapped in and out by updateHowFlatOrSharp(). These are looked up once in
+    //addUiElements() rather than every frame.
+    private TextureRegion mFlatSymbolRegion;
+    private TextureRegion mSharpSymbolRegion;
+    private TextureRegion mCenterRegion;
+    private TextureRegion mCenterInTuneRegion;
+
     //update allowed flag - nothing in this activity will update if this is false. will be set to
     //true once the UI has been created.
     private boolean mUpdateAllowed = false;
 
-    //note definitions
-    private ChromaticScale mChromaticScale;
+    //note definitions. Read by the audio thread for the session log.
+    private volatile ChromaticScale mChromaticScale = ChromaticScale.get(Temperament.EQUAL,
+            ChromaticScale.DEFAULT_REFERENCE_HERTZ);
+    //a scale set from another thread, picked up by the next update()
+    private volatile ChromaticScale mPendingChromaticScale;
+    //finds the closest note in mChromaticScale to the detected pitch
+    private NoteQuantizer mNoteQuantizer;
+    //every pitch frame is added to this log while it is set, see startSessionLog()
+    private volatile SessionLogWriter mSessionLog;
 
     //reference to main Tuner class
     private Tuner mTuner;
@@ -105,17 +239,25 @@ public class TunerScreen implements Screen {
      */
     TunerScreen(Tuner _tuner) {
         mTuner = _tuner;
+        mAudioSource = _tuner.getActionResolver().createAudioSource();
     }
 
     /**
      * sets the tuner running in its own thread in {@link #initTuner()}, creates note definitions
-     * and creates the user interface.
+     * and creates the user interface. From here on frames are only drawn when there is something
+     * new to show, see {@link RenderScheduler}.
      */
     @Override
     public void show() {
         initTuner();
-        mChromaticScale = new ChromaticScale();
+        mNoteQuantizer = new NoteQuantizer(mChromaticScale);
+        mNoteQuantizer.setRange(mInstrumentProfile.getMinHertz(), mInstrumentProfile.getMaxHertz());
         addUiElements();
+        Gdx.input.setInputProcessor(mMenuInput);
+        mLatencyOverlayVisible = mLatencyOverlayVisible
+                || Gdx.app.getLogLevel() >= Application.LOG_DEBUG;
+        mRenderScheduler.enable();
+        StartupTimer.mark(StartupTimer.Milestone.TUNER_SHOWN);
     }
 
     /**
@@ -126,14 +268,30 @@ public class TunerScreen implements Screen {
      */
     @Override
     public void render(float _delta) {
+        mRenderScheduler.frameStarted();
         update(_delta);
         present(_delta);
+        recordPresented();
+    }
+
+    /**
+     * Records how long the pitch frames taken by this frame's update took to reach the screen.
+     * The frame counts as presented once it has been drawn; the buffer swap which follows is left
+     * to libGDX and is not included.
+     */
+    private void recordPresented() {
+        if (!mFramePresentPending) {
+            return;
+        }
+        long now = System.nanoTime();
+        mLatencyMetrics.record(LatencyMetrics.Stage.UPDATE_TO_PRESENT, now - mFramesConsumedNanos);
+        mLatencyMetrics.record(LatencyMetrics.Stage.DELIVERY_TO_PRESENT, now - mNewestFrameDeliveredNanos);
+        mFramePresentPending = false;
     }
 
     /**
      * If mUpdateAllowed flag is true then the Hertz value returned from the tuner algorithm will be
-     * processed, and the UI will be updated accordingly. We also increment the value of mLoopCount
-     * here.
+     * processed, and the UI will be updated accordingly.
      *
      * @param _delta float. The time taken to render the previous frame.
      */
@@ -141,14 +299,46 @@ public class TunerScreen implements Screen {
         //check that the ui has been created and that we are allowed to start processing from the
         //audio detected by the Tuner
         if (mUpdateAllowed) {
+            //switch to a new temperament or reference pitch if one has been set
+            ChromaticScale pendingScale = mPendingChromaticScale;
+            if (pendingScale != null) {
+                mPendingChromaticScale = null;
+                mChromaticScale = pendingScale;
+                mNoteQuantizer.setChromaticScale(pendingScale);
+            }
+
+            //restart the tuner for a new instrument or mode if one has been set
+            InstrumentProfile pendingProfile = mPendingInstrumentProfile;
+            if (pendingProfile != null) {
+                mPendingInstrumentProfile = null;
+                applyInstrumentProfile(pendingProfile);
+            }
+            Boolean pendingStrumMode = mPendingStrumMode;
+            if (pendingStrumMode != null) {
+                mPendingStrumMode = null;
+                applyStrumMode(pendingStrumMode.booleanValue());
+            }
+            if (mEngineDetectors != null && (mEngineDetectors != AnalysisSettings.getDetectors()
+                    || mEngineMode != AnalysisSettings.getMode())) {
+                applyPitchSettings();
+            }
+            updateMenu();
+
+            if (isStrumming()) {
+                //the strings are shown instead of a single note
+                drainStrum();
+                return;
+            }
+
+            //collect any pitch frames produced by the tuner since the last render
+            drainPitchFrames();
+
             //get the current Hertz value of the sound being detected and process.
             if (mAudioDetected) {
                 processHertz(mCurrentHertz);
             }
             //update the hertz string.
-            DecimalFormat twoDecPlacesFormat = new DecimalFormat("#.00");
-            String currentHertzTwoDecimalPlaces = twoDecPlacesFormat.format(mCurrentHertz);
-            mHertzReadout = String.valueOf(currentHertzTwoDecimalPlaces);
+            FixedPointFormat.setFixed(mHertzReadout, mCurrentHertz, 2);
 
             //update Sprites
             //note wheel
@@ -156,15 +346,167 @@ public class TunerScreen implements Screen {
             mNoteWheel.setRotation((float) mNoteWheelRotation);
 
             //update the how flat or sharp visualisation
-            updateHowFlatOrSharp();
+            if (mStrobeMode) {
+                updateStrobe(_delta);
+            } else {
+                updateHowFlatOrSharp();
+            }
+        }
+    }
+
+    /**
+     * Moves the strobe bars on by _delta seconds at a speed set by how far sharp or flat the note is:
+     * to the right when sharp, to the left when flat, and not at all when the note is in tune or no
+     * note is being played.
+     *
+     * @param _delta float. The time taken to render the previous frame.
+     */
+    private void updateStrobe(float _delta) {
+        if (!mAudioDetected) {
+            mStrobeCents = 0;
+            FixedPointFormat.setInteger(mHowSharpOrFlatText, '\0', 0);
+            setRegionIfChanged(mHowSharpOrFlatCenter, mCenterRegion);
+            return;
+        }
+
+        //a long frame would make the bars jump, so the step is limited to a tenth of a second
+        float seconds = Math.min(_delta, 0.1f);
+        mStrobeOffset += (float) mStrobeCents * STROBE_SPACINGS_PER_CENT_SECOND * seconds;
+        mStrobeOffset -= (float) Math.floor(mStrobeOffset);
+        for (int i = 0; i < mStrobeBars.size(); i++) {
+            mStrobeBars.get(i).setX((i - 1 + mStrobeOffset) * mStrobeSpacing);
+        }
+        setRegionIfChanged(mHowSharpOrFlatCenter,
+                Math.abs(mStrobeCents) < 0.5 ? mCenterInTuneRegion : mCenterRegion);
+    }
+
+    /**
+     * Stops the tuner and starts it again with the buffer size, decimation and pitch range of
+     * _profile, and limits the notes shown to the range of _profile
+     *
+     * @param _profile {@link InstrumentProfile}. The instrument being tuned.
+     */
+    private void applyInstrumentProfile(InstrumentProfile _profile) {
+        mInstrumentProfile = _profile;
+        mNoteQuantizer.setRange(_profile.getMinHertz(), _profile.getMaxHertz());
+        releaseAudioEngine();
+        initTuner();
+    }
+
+    /**
+     * Stops the {@link AudioEngine} so that {@link #initTuner()} creates a new one. An engine whose
+     * capture thread is stuck is kept, so that its start() refuses rather than a second engine
+     * starting a second capture thread, and the tuner carries on with its old settings.
+     */
+    private void releaseAudioEngine() {
+        if (mAudioEngine == null) {
+            return;
+        }
+        if (mAudioEngine.stop()) {
+            mAudioEngine = null;
+        } else {
+            Gdx.app.error("TunerScreen", "The capture thread did not stop, keeping the old audio engine");
+        }
+    }
 
-            //increment mLoopCount
-            if (mLoopCount < mLoopSize) {
-                mLoopCount++;
+    /**
+     * Stops the tuner and starts it again with the pitch detectors from
+     * {@link AnalysisSettings#getDetectors()} and the mode from {@link AnalysisSettings#getMode()}
+     */
+    private void applyPitchSettings() {
+        mEngineDetectors = null;
+        mEngineMode = null;
+        //the latency overlay names the detector and mode in use
+        mLatencyOverlayLines = null;
+        releaseAudioEngine();
+        initTuner();
+    }
+
+    /**
+     * Stops the tuner and starts it again in or out of strum mode
+     *
+     * @param _strumMode boolean. True to measure every string of the instrument at once.
+     */
+    private void applyStrumMode(boolean _strumMode) {
+        mStrumMode = _strumMode;
+        releaseAudioEngine();
+        initTuner();
+    }
+
+    /**
+     * @return boolean. True if the tuner is measuring every string of the instrument at once, which
+     * needs an instrument with strings
+     */
+    private boolean isStrumming() {
+        return mStrumMode && mInstrumentProfile.getStringHertz().length > 0;
+    }
+
+    /**
+     * Takes the newest strum result from the tuner, if there is one, and rebuilds the line shown for
+     * each string. Strings which were not found show their note and a dash.
+     */
+    private void drainStrum() {
+        synchronized (mStrumLock) {
+            if (!mStrumPending) {
+                return;
+            }
+            mDisplayedStrum.copyFrom(mLatestStrum);
+            mStrumPending = false;
+        }
+
+        boolean detected = false;
+        for (int i = 0; i < mStrumLines.length; i++) {
+            StringBuilder line = mStrumLines[i];
+            line.setLength(0);
+            if (mNoteQuantizer.quantize(mDisplayedStrum.getTargetHertz(i)) >= 0) {
+                line.append(mNoteQuantizer.getPitchClass().toString());
+                FixedPointFormat.setInteger(mStrumNumber, '\0', mNoteQuantizer.getOctave());
+                line.append(mStrumNumber);
+            }
+            line.append("   ");
+            if (mDisplayedStrum.isDetected(i)) {
+                int cents = Math.round(mDisplayedStrum.getCents(i));
+                FixedPointFormat.setInteger(mStrumNumber, cents > 0 ? '+' : '\0', cents);
+                line.append(mStrumNumber);
+                detected = true;
             } else {
-                mLoopCount = 0;
+                line.append('-');
             }
         }
+        mAudioDetected = detected;
+    }
+
+    /**
+     * Reads every pitch frame that the tuner has produced since the previous render and passes
+     * them through {@link PitchSmoother}, which weights each frame by the probability reported by
+     * the pitch detector and decides whether a note is currently being played. If no new frames
+     * have arrived the previous reading is kept.
+     */
+    private void drainPitchFrames() {
+        int framesDrained = 0;
+        long now = System.nanoTime();
+
+        while (mPitchFrames.poll()) {
+            framesDrained++;
+            mPitchSmoother.update(mPitchFrames.getHertz(), mPitchFrames.getProbability());
+            mLatencyMetrics.record(LatencyMetrics.Stage.PITCH_TO_UPDATE, now - mPitchFrames.getTimestamp());
+        }
+
+        if (framesDrained == 0) {
+            return;
+        }
+        mCoalescedFrames += framesDrained - 1;
+        mFramesConsumedNanos = now;
+        mNewestFrameDeliveredNanos = mPitchFrames.getDeliveredTimestamp();
+        mFramePresentPending = true;
+
+        if (mPitchSmoother.hasPitch()) {
+            mAudioDetected = true;
+            mCurrentHertz = mPitchSmoother.getHertz();
+        } else {
+            mAudioDetected = false;
+            mOffsetInCents = 0.00;
+        }
     }
 
     /**
@@ -187,17 +529,34 @@ public class TunerScreen implements Screen {
                 mBgLineArray.get(i).draw(mTuner.getSpriteBatch());
             }
 
+            if (isStrumming()) {
+                drawStrumLines();
+                drawMenu();
+                if (mLatencyOverlayVisible) {
+                    drawLatencyOverlay();
+                }
+                mTuner.getSpriteBatch().end();
+                return;
+            }
+
             //note wheel
             mNoteWheel.draw(mTuner.getSpriteBatch());
             mHertzReadoutBg.draw(mTuner.getSpriteBatch());
 
             //how sharp or flat
-            mHowSharpOrFlatCenter.draw(mTuner.getSpriteBatch());
-            mHowSharp.draw(mTuner.getSpriteBatch());
-            mHowFlat.draw(mTuner.getSpriteBatch());
-            mSharpOrFlatSymbol.draw(mTuner.getSpriteBatch());
+            if (mStrobeMode) {
+                for (int i = 0; i < mStrobeBars.size(); i++) {
+                    mStrobeBars.get(i).draw(mTuner.getSpriteBatch());
+                }
+                mHowSharpOrFlatCenter.draw(mTuner.getSpriteBatch());
+            } else {
+                mHowSharpOrFlatCenter.draw(mTuner.getSpriteBatch());
+                mHowSharp.draw(mTuner.getSpriteBatch());
+                mHowFlat.draw(mTuner.getSpriteBatch());
+                mSharpOrFlatSymbol.draw(mTuner.getSpriteBatch());
+            }
 
-            //any text (drawn after everything else with the exception of the menu)
+            //any text (drawn after everything else with the exception of the menu and overlay)
             //hertz text
             mCandaraWhiteFont.getData().setScale(0.75f);
             glyphLayout.setText(mCandaraWhiteFont, mHertzReadout);
@@ -216,69 +575,365 @@ public class TunerScreen implements Screen {
                     mHowSharpOrFlatTextXPos - (glyphLayout.width / 2),
                     mHowSharpOrFlatTextYPos);
 
+            drawMenu();
+            if (mLatencyOverlayVisible) {
+                drawLatencyOverlay();
+            }
+
             mTuner.getSpriteBatch().end();
         }
     }
 
+    /**
+     * Draws the line of each string built by {@link #drainStrum()}, lowest string first, down the
+     * middle of the screen. Must be called between begin() and end() of the sprite batch.
+     */
+    private void drawStrumLines() {
+        mCandaraWhiteFont.getData().setScale(0.75f);
+        float lineHeight = mCandaraWhiteFont.getLineHeight() * 1.2f;
+        float top = (mTuner.getScreenHeightPix() + lineHeight * (mStrumLines.length - 1)) / 2;
+        for (int i = 0; i < mStrumLines.length; i++) {
+            glyphLayout.setText(mCandaraWhiteFont, mStrumLines[i]);
+            mCandaraWhiteFont.draw(
+                    mTuner.getSpriteBatch(),
+                    mStrumLines[i],
+                    (mTuner.getScreenWidthPix() - glyphLayout.width) / 2,
+                    top - lineHeight * i);
+        }
+    }
+
+    /**
+     * Draws each item of the menu centred in its share of the top of the screen, faded if its
+     * setting is off. Must be called between begin() and end() of the sprite batch.
+     */
+    private void drawMenu() {
+        mCandaraWhiteFont.getData().setScale(mMenuFontScale);
+        float itemWidth = (float) mTuner.getScreenWidthPix() / MENU_ITEMS;
+        float y = mTuner.getScreenHeightPix() - (mMenuHeight - mCandaraWhiteFont.getCapHeight()) / 2;
+        for (int i = 0; i < MENU_ITEMS; i++) {
+            mCandaraWhiteFont.setColor(1, 1, 1, mMenuItemOn[i] ? 1 : MENU_OFF_ALPHA);
+            glyphLayout.setText(mCandaraWhiteFont, mMenuItems[i]);
+            mCandaraWhiteFont.draw(mTuner.getSpriteBatch(), mMenuItems[i],
+                    itemWidth * i + (itemWidth - glyphLayout.width) / 2, y);
+        }
+        mCandaraWhiteFont.setColor(1, 1, 1, 1);
+    }
+
+    /**
+     * Brings the menu up to date with the settings, without allocating unless the instrument has
+     * changed
+     */
+    private void updateMenu() {
+        mMenuItemOn[MENU_STROBE] = mStrobeMode;
+        mMenuItemOn[MENU_STRUM] = isStrumming();
+        mMenuItemOn[MENU_INSTRUMENT] = true;
+        mMenuItemOn[MENU_MULTI_RESOLUTION] =
+                AnalysisSettings.getMode() == AnalysisSettings.Mode.MULTI_RESOLUTION;
+        mMenuItemOn[MENU_SESSION_LOG] = mSessionLog != null;
+        if (mMenuInstrumentProfile != mInstrumentProfile) {
+            mMenuInstrumentProfile = mInstrumentProfile;
+            mMenuItems[MENU_INSTRUMENT].setLength(0);
+            mMenuItems[MENU_INSTRUMENT].append(mInstrumentProfile.getName());
+        }
+    }
+
+    /**
+     * Changes the setting of the menu item at a point which has been tapped: strobe mode, strum
+     * mode, the next instrument of {@link InstrumentProfile#getPresets()}, the multi resolution
+     * {@link AnalysisSettings.Mode}, or the session log, which is written to {@link #SESSION_LOG_FILE}.
+     *
+     * @param _screenX int. The distance of the tap from the left of the screen in pixels.
+     * @param _screenY int. The distance of the tap from the top of the screen in pixels.
+     * @return boolean. True if the tap was on the menu
+     */
+    private boolean tapMenu(int _screenX, int _screenY) {
+        if (!mUpdateAllowed || _screenY > mMenuHeight) {
+            return false;
+        }
+        int item = Math.min(MENU_ITEMS - 1, _screenX * MENU_ITEMS / Math.max(1, mTuner.getScreenWidthPix()));
+        if (item == MENU_STROBE) {
+            setStrobeMode(!mStrobeMode);
+        } else if (item == MENU_STRUM) {
+            //strum mode needs strings, so the instrument is chosen first
+            if (mInstrumentProfile.getStringHertz().length > 0) {
+                setStrumMode(!mStrumMode);
+            }
+        } else if (item == MENU_INSTRUMENT) {
+            InstrumentProfile[] presets = InstrumentProfile.getPresets();
+            int next = 0;
+            for (int i = 0; i < presets.length; i++) {
+                if (presets[i] == mInstrumentProfile) {
+                    next = (i + 1) % presets.length;
+                }
+            }
+            setInstrumentProfile(presets[next]);
+        } else if (item == MENU_MULTI_RESOLUTION) {
+            //picked up by the next update(), which restarts the tuner
+            AnalysisSettings.setMode(AnalysisSettings.getMode() == AnalysisSettings.Mode.MULTI_RESOLUTION
+                    ? AnalysisSettings.Mode.ADAPTIVE_WINDOW : AnalysisSettings.Mode.MULTI_RESOLUTION);
+        } else if (mSessionLog == null) {
+            startSessionLog(Gdx.files.local(SESSION_LOG_FILE));
+        } else {
+            stopSessionLog();
+        }
+        mRenderScheduler.requestFrame();
+        return true;
+    }
+
+    /**
+     * Draws the p50, p99 and maximum of every latency stage, the overrun and dropped frame counts
+     * and the pitch detector in use, in the top left corner of the screen below the menu. The text is
+     * rebuilt at most twice a second and without allocating. Must be called between begin() and end()
+     * of the sprite batch.
+     */
+    private void drawLatencyOverlay() {
+        if (mLatencyOverlayLines == null) {
+            mLatencyOverlayLines = new StringBuilder[STAGES.length + 2];
+            for (int i = 0; i < mLatencyOverlayLines.length; i++) {
+                mLatencyOverlayLines[i] = new StringBuilder();
+            }
+            //the detector calibration runs in the background, so the tuner starts on
+            //AnalysisSettings.DEFAULT_DETECTORS and this line changes once the calibration has chosen
+            mLatencyOverlayLines[STAGES.length + 1].append("detector ")
+                    .append(AnalysisSettings.getDetectors()).append(' ').append(AnalysisSettings.getMode());
+        }
+
+        long now = System.nanoTime();
+        if (now - mLatencyOverlayUpdatedNanos >= LATENCY_OVERLAY_INTERVAL_NANOS) {
+            mLatencyOverlayUpdatedNanos = now;
+            for (int i = 0; i < STAGES.length; i++) {
+                LatencyHistogram histogram = mLatencyMetrics.getHistogram(STAGES[i]);
+                StringBuilder line = mLatencyOverlayLines[i];
+                line.setLength(0);
+                line.append(STAGES[i].name()).append(" p50 ");
+                appendMillis(line, histogram.getPercentileNanos(0.5));
+                line.append(" p99 ");
+                appendMillis(line, histogram.getPercentileNanos(0.99));
+                line.append(" max ");
+                appendMillis(line, histogram.getMaxNanos());
+                line.append(" ms");
+            }
+            StringBuilder counters = mLatencyOverlayLines[STAGES.length];
+            counters.setLength(0);
+            counters.append("overruns ");
+            FixedPointFormat.setInteger(mLatencyOverlayNumber, '\0', (int) mLatencyMetrics.getBufferOverruns());
+            counters.append(mLatencyOverlayNumber).append(" dropped ");
+            FixedPointFormat.setInteger(mLatencyOverlayNumber, '\0', (int) mLatencyMetrics.getDroppedFrames());
+            counters.append(mLatencyOverlayNumber);
+        }
+
+        mCandaraWhiteFont.getData().setScale(0.3f);
+        float lineHeight = mCandaraWhiteFont.getLineHeight();
+        for (int i = 0; i < mLatencyOverlayLines.length; i++) {
+            mCandaraWhiteFont.draw(mTuner.getSpriteBatch(), mLatencyOverlayLines[i],
+                    lineHeight, mTuner.getScreenHeightPix() - mMenuHeight - lineHeight * (i + 1));
+        }
+    }
+
+    /**
+     * Appends _nanos to _line in milliseconds to two decimal places
+     */
+    private void appendMillis(StringBuilder _line, long _nanos) {
+        FixedPointFormat.setFixed(mLatencyOverlayNumber, _nanos / 1e6, 2);
+        //setFixed leaves out a zero integer part
+        if (mLatencyOverlayNumber.charAt(0) == '.') {
+            _line.append('0');
+        }
+        _line.append(mLatencyOverlayNumber);
+    }
+
     /**
      * Initiates the Tuner and starts it in a new thread. This method utilises the TarsosDSP
      * library and uses the Fast Fourier Transform included to detect the most prominent pitch of
-     * any detected sound.
+     * any detected sound. The {@link AudioEngine} is only created the first time this is called,
+     * after which it is simply restarted.
      */
     private void initTuner() {
-        if (mAudioDispatcher == null) {
-            //set initial Tuner values
-            PitchEstimationAlgorithm algo = PitchEstimationAlgorithm.FFT_YIN;
+        if (mAudioEngine == null) {
+            //set initial Tuner values. The analysis settings are shared with any offline tools
+            //through AnalysisSettings.
             mCurrentHertz = 440.00;
-            int sampleRate = 44100;
-            int bufferSize = 2048;
-            int sampleOverlap = 1536;
             mOffsetInCents = 0;
             mSharpOrFlat = "";
-            mTargetNote = "A";
+            mTargetNote = PitchClass.A;
             mTargetRotation = 0;
 
-            //Get an audio stream from the microphone
-            AudioDispatcher dispatcher =
-                    AudioDispatcherFactory.fromDefaultMicrophone(sampleRate, bufferSize, sampleOverlap);
-            dispatcher.addAudioProcessor(new PitchProcessor(algo,
-                    sampleRate,
-                    bufferSize,
-                    new PitchDetectionHandler() {
-                        @Override
-                        public void handlePitch(
-                                PitchDetectionResult pitchDetectionResult,
-                                AudioEvent audioEvent) {
-
-                            //set the current pitch to the hertz value
-                            double pitch = pitchDetectionResult.getPitch();
-                            if (pitch != -1 && !audioEvent.isSilence(mSilenceThreshold)) {
-                                mAudioDetected = true;
-                                mCurrentHertz = pitch;
-                            } else {
-                                mAudioDetected = false;
-                                mOffsetInCents = 0.00;
-                            }
-                        }
-                    }));
+            if (isStrumming()) {
+                initStrumTuner();
+            } else {
+                initPitchTuner();
+            }
+        }
+
+        //start the audio Audio Dispatcher in a new thread, forgetting any note from before it was
+        //stopped
+        mPitchSmoother.reset();
+        mAudioEngine.start();
+    }
+
+    /**
+     * Creates the {@link AudioEngine} which finds the pitch of the loudest note in each buffer, and
+     * passes each pitch to the render thread through {@link PitchFrameBuffer}
+     */
+    private void initPitchTuner() {
+        //Get an audio stream from the microphone
+        mAudioEngine = new AudioEngine(mAudioSource,
+                AnalysisSettings.SAMPLE_RATE,
+                AnalysisSettings.getBufferSize(mInstrumentProfile, AnalysisSettings.SAMPLE_RATE),
+                AnalysisSettings.getOverlap(mInstrumentProfile, AnalysisSettings.SAMPLE_RATE));
+        //finds the note of each pitch for the session log. Only used by the audio thread.
+        final NoteQuantizer sessionQuantizer = new NoteQuantizer(mChromaticScale);
+        sessionQuantizer.setRange(mInstrumentProfile.getMinHertz(), mInstrumentProfile.getMaxHertz());
+        //pass the detected pitch on to the render thread. Silent buffers are passed on as
+        //unpitched frames.
+        PitchDetectionHandler handler = new PitchDetectionHandler() {
+            @Override
+            public void handlePitch(
+                    PitchDetectionResult pitchDetectionResult,
+                    AudioEvent audioEvent) {
+
+                double rms = AudioEvent.calculateRMS(audioEvent.getFloatBuffer());
+                float pitch = pitchDetectionResult.getPitch();
+                if (pitch == -1 || AnalysisSettings.isSilence(rms)) {
+                    pitch = PitchFrameBuffer.NO_PITCH;
+                }
+                long now = System.nanoTime();
+                long delivered = mLatencyMetrics.getBufferDeliveredNanos();
+                mLatencyMetrics.record(LatencyMetrics.Stage.DELIVERY_TO_PITCH, now - delivered);
+                if (!mPitchFrames.offer(pitch,
+                        pitchDetectionResult.getProbability(),
+                        (float) rms,
+                        now,
+                        delivered)) {
+                    mLatencyMetrics.recordDroppedFrame();
+                }
+                SessionLogWriter sessionLog = mSessionLog;
+                if (sessionLog != null) {
+                    logPitch(sessionLog, sessionQuantizer, pitch,
+                            pitchDetectionResult.getProbability(), now);
+                }
+
+                //wake the renderer for a pitch, and for silence until the display has
+                //caught up with it
+                if (pitch != PitchFrameBuffer.NO_PITCH || mAudioDetected) {
+                    mRenderScheduler.requestFrame();
+                }
+            }
+        };
+
+        //skip pitch detection on quiet buffers, and read audio less often after a few seconds
+        //of quiet
+        mAudioEngine.setNoiseGate(new NoiseGateProcessor(handler));
+        //mark when each buffer is delivered, for the latency metrics
+        mAudioEngine.setLatencyMetrics(mLatencyMetrics);
+        //lower the sample rate before pitch detection so there is less audio to analyse, only look
+        //for pitches the instrument can play, and refine each pitch to a fraction of a cent before
+        //it is passed on. The offline tools build the same chain.
+        mEngineDetectors = AnalysisSettings.getDetectors();
+        mEngineMode = AnalysisSettings.getMode();
+        AudioProcessor[] chain = AnalysisSettings.createPitchChain(AnalysisSettings.SAMPLE_RATE,
+                mInstrumentProfile, handler);
+        for (int i = 0; i < chain.length; i++) {
+            mAudioEngine.addAudioProcessor(chain[i]);
+        }
+    }
 
-            //start the audio Audio Dispatcher in a new thread
-            new Thread(dispatcher, "Audio Dispatcher").start();
+    /**
+     * Adds a pitch frame to the session log, with the closest note of the current scale. Must only
+     * be called from the audio thread.
+     *
+     * @param _sessionLog   {@link SessionLogWriter}. The log to add to.
+     * @param _quantizer    {@link NoteQuantizer}. Finds the closest note, only used by the audio thread.
+     * @param _hertz        float. The detected pitch, or {@link PitchFrameBuffer#NO_PITCH}.
+     * @param _probability  float. The probability reported by the pitch detector.
+     * @param _nanos        long. The time of the frame, see {@link System#nanoTime()}.
+     */
+    private void logPitch(SessionLogWriter _sessionLog, NoteQuantizer _quantizer, float _hertz,
+                          float _probability, long _nanos) {
+        //follow a scale set since the tuner was started
+        ChromaticScale scale = mChromaticScale;
+        if (_quantizer.getChromaticScale() != scale) {
+            _quantizer.setChromaticScale(scale);
+        }
+        int noteIndex = _hertz == PitchFrameBuffer.NO_PITCH ? -1 : _quantizer.quantize(_hertz);
+        if (noteIndex < 0) {
+            _sessionLog.append(_nanos, SessionLogWriter.NO_PITCH, _probability, 0, -1);
+        } else {
+            _sessionLog.append(_nanos, _hertz, _probability, (float) _quantizer.getCents(), noteIndex);
         }
     }
 
+    /**
+     * Creates the {@link AudioEngine} for strum mode, which measures every string of the instrument in
+     * each buffer with the strum settings of {@link AnalysisSettings}, and the results it passes to
+     * the render thread
+     */
+    private void initStrumTuner() {
+        //the strum detector does not use the pitch detectors
+        mEngineDetectors = null;
+        mEngineMode = null;
+        double[] stringHertz = mInstrumentProfile.getStringHertz();
+        mLatestStrum = new StrumResult(stringHertz);
+        mDisplayedStrum = new StrumResult(stringHertz);
+        mStrumPending = true;
+        mStrumLines = new StringBuilder[stringHertz.length];
+        for (int i = 0; i < mStrumLines.length; i++) {
+            mStrumLines[i] = new StringBuilder();
+        }
+
+        mAudioEngine = new AudioEngine(mAudioSource,
+                AnalysisSettings.SAMPLE_RATE,
+                AnalysisSettings.getStrumBufferSize(mInstrumentProfile, AnalysisSettings.SAMPLE_RATE),
+                AnalysisSettings.getStrumOverlap(mInstrumentProfile, AnalysisSettings.SAMPLE_RATE));
+
+        //quiet buffers clear every string
+        mAudioEngine.setNoiseGate(new NoiseGateProcessor(new PitchDetectionHandler() {
+            @Override
+            public void handlePitch(PitchDetectionResult _result, AudioEvent _audioEvent) {
+                synchronized (mStrumLock) {
+                    mLatestStrum.clear();
+                    mStrumPending = true;
+                }
+                if (mAudioDetected) {
+                    mRenderScheduler.requestFrame();
+                }
+            }
+        }));
+        mAudioEngine.setLatencyMetrics(mLatencyMetrics);
+        mAudioEngine.addAudioProcessor(AnalysisSettings.createStrumDecimator(
+                AnalysisSettings.SAMPLE_RATE, mInstrumentProfile));
+        mAudioEngine.addAudioProcessor(AnalysisSettings.createStrumProcessor(
+                AnalysisSettings.SAMPLE_RATE, mInstrumentProfile, new StrumHandler() {
+                    @Override
+                    public void handleStrum(StrumResult _result, AudioEvent _audioEvent) {
+                        synchronized (mStrumLock) {
+                            mLatestStrum.copyFrom(_result);
+                            mStrumPending = true;
+                        }
+                        mRenderScheduler.requestFrame();
+                    }
+                }));
+    }
+
     /**
      * Creates all of the UI elements and then sets mUpdateAllowed flag to true so that the UI can
      * be drawn to the screen.
      */
     private void addUiElements() {
+        //regions used by updateHowFlatOrSharp()
+        mFlatSymbolRegion = mTuner.getRegion("flat_symbol");
+        mSharpSymbolRegion = mTuner.getRegion("sharp_symbol");
+        mCenterRegion = mTuner.getRegion("cents_sharp_or_flat_center");
+        mCenterInTuneRegion = mTuner.getRegion("cents_sharp_or_flat_center_green");
+
         //initialise fonts
         mCandaraBlackFont = mTuner.getAssetManager().get("ui/fonts/candara_black.fnt");
         mCandaraWhiteFont = mTuner.getAssetManager().get("ui/fonts/candara_white.fnt");
 
         //background lines
+        TextureRegion whitePixel = mTuner.getRegion("white_pixel");
         for (int i = 0; i < mTuner.getScreenWidthPix() / mNumberOfBgLines; i++) {
-            mBgLine = new Sprite((Texture) mTuner.getAssetManager().get("images/bg/white_pixel.png"));
+            mBgLine = new Sprite(whitePixel);
             mBgLineArray.add(mBgLine);
             mBgLine.setSize(1, mTuner.getScreenHeightPix());
             mBgLine.setAlpha(0.15f);
@@ -286,7 +941,7 @@ public class TunerScreen implements Screen {
         }
 
         //note wheel
-        mNoteWheel = new Sprite((Texture) mTuner.getAssetManager().get("images/note_wheel_sharps.png"));
+        mNoteWheel = new Sprite(mTuner.getRegion("note_wheel_sharps"));
         mNoteWheel.setSize(mTuner.getScreenWidthPix() + (mTuner.getScreenWidthPix() * 0.4f),
                 mTuner.getScreenWidthPix() + (mTuner.getScreenWidthPix() * 0.4f));
         mNoteWheel.setOriginCenter();
@@ -295,7 +950,7 @@ public class TunerScreen implements Screen {
 
         //hertz readout (positioned relative to the note wheel)
         //bg
-        mHertzReadoutBg = new Sprite((Texture) mTuner.getAssetManager().get("images/hertz_readout_bg.png"));
+        mHertzReadoutBg = new Sprite(mTuner.getRegion("hertz_readout_bg"));
         mHertzReadoutBg.setSize(mTuner.getScreenWidthPix() * 0.5f, mTuner.getScreenWidthPix() * 0.5f);
         mHertzReadoutBg.setPosition(mTuner.getScreenWidthPix() / 2 - (mHertzReadoutBg.getWidth() / 2),
                 mNoteWheel.getY() + mNoteWheel.getHeight() * 0.55f);
@@ -305,13 +960,13 @@ public class TunerScreen implements Screen {
 
         //How sharp or flat indication
         //center image
-        mHowSharpOrFlatCenter = new Sprite((Texture) mTuner.getAssetManager().get("images/cents_sharp_or_flat_center.png"));
+        mHowSharpOrFlatCenter = new Sprite(mCenterRegion);
         mHowSharpOrFlatCenter.setSize(mTuner.getScreenWidthPix() * 0.35f, mTuner.getScreenWidthPix() * 0.35f);
         mHowSharpOrFlatCenter.setPosition((mTuner.getScreenWidthPix() / 2) - (mHowSharpOrFlatCenter.getWidth() / 2),
                 (mTuner.getScreenHeightPix() * .785f) - (mHowSharpOrFlatCenter.getHeight() / 2));
 
         //how far flat
-        mHowFlat = new Sprite((Texture) mTuner.getAssetManager().get("images/how_flat_cents.png"));
+        mHowFlat = new Sprite(mTuner.getRegion("how_flat_cents"));
         float howFlatWidth = (mTuner.getScreenWidthPix() / 2) - (mHowSharpOrFlatCenter.getWidth() / 2);
         mHowFlat.setSize(howFlatWidth, howFlatWidth / 4);
         mHowFlat.setOrigin(mHowFlat.getWidth(), mHowFlat.getHeight() / 2);
@@ -321,7 +976,7 @@ public class TunerScreen implements Screen {
         mHowFlat.setScale(0f);
 
         //how far sharp
-        mHowSharp = new Sprite((Texture) mTuner.getAssetManager().get("images/how_sharp_cents.png"));
+        mHowSharp = new Sprite(mTuner.getRegion("how_sharp_cents"));
         float howSharpWidth = (mTuner.getScreenWidthPix() / 2) - (mHowSharpOrFlatCenter.getWidth() / 2);
         mHowSharp.setSize(howSharpWidth, howSharpWidth / 4);
         mHowSharp.setOrigin(0, mHowSharp.getHeight() / 2);
@@ -331,7 +986,7 @@ public class TunerScreen implements Screen {
         mHowSharp.setScale(0f);
 
         //sharp or flat symbol
-        mSharpOrFlatSymbol = new Sprite((Texture) mTuner.getAssetManager().get("images/flat_symbol.png"));
+        mSharpOrFlatSymbol = new Sprite(mFlatSymbolRegion);
         mSharpOrFlatSymbol.setSize(mTuner.getScreenWidthPix() * .23f, mTuner.getScreenWidthPix() * .23f);
         mSharpOrFlatSymbol.setOriginCenter();
         mSharpOrFlatSymbol.setPosition(mTuner.getScreenWidthPix() / 2 - (mSharpOrFlatSymbol.getWidth() / 2),
@@ -340,6 +995,37 @@ public class TunerScreen implements Screen {
         mHowSharpOrFlatTextXPos = mTuner.getScreenWidthPix() / 2;
         mHowSharpOrFlatTextYPos = mHowSharpOrFlatCenter.getY() + (mHowSharpOrFlatCenter.getHeight() * 0.69f);
 
+        //strobe bars, in a band behind the centre image. One more bar than fits on the screen is
+        //needed while they move.
+        mStrobeSpacing = (float) mTuner.getScreenWidthPix() / STROBE_BARS;
+        for (int i = 0; i <= STROBE_BARS; i++) {
+            Sprite bar = new Sprite(whitePixel);
+            bar.setSize(mStrobeSpacing / 2, mHowFlat.getHeight());
+            bar.setPosition((i - 1) * mStrobeSpacing, mHowFlat.getY());
+            bar.setAlpha(0.5f);
+            mStrobeBars.add(bar);
+        }
+
+        //menu, with its font scaled so that the longest instrument name fits its item
+        mMenuItems[MENU_STROBE] = new StringBuilder("Strobe");
+        mMenuItems[MENU_STRUM] = new StringBuilder("Strum");
+        mMenuItems[MENU_INSTRUMENT] = new StringBuilder();
+        mMenuItems[MENU_MULTI_RESOLUTION] = new StringBuilder("Multi");
+        mMenuItems[MENU_SESSION_LOG] = new StringBuilder("Log");
+        mCandaraWhiteFont.getData().setScale(1);
+        float widestText = 0;
+        InstrumentProfile[] presets = InstrumentProfile.getPresets();
+        for (int i = 0; i < presets.length; i++) {
+            glyphLayout.setText(mCandaraWhiteFont, presets[i].getName());
+            widestText = Math.max(widestText, glyphLayout.width);
+        }
+        mMenuFontScale = Math.min(MENU_MAX_FONT_SCALE,
+                MENU_TEXT_WIDTH * mTuner.getScreenWidthPix() / MENU_ITEMS / widestText);
+        mCandaraWhiteFont.getData().setScale(mMenuFontScale);
+        mMenuHeight = mCandaraWhiteFont.getLineHeight() * 2;
+        mMenuInstrumentProfile = null;
+        updateMenu();
+
         //allow updates now that all of the ui is created
         mUpdateAllowed = true;
     }
@@ -347,45 +1033,54 @@ public class TunerScreen implements Screen {
     /**
      * Processes the current pitch being detected by the Tuner.
      * <p>
-     * This method calculates the closest musical note to the detected sound.
+     * This method uses {@link NoteQuantizer} to find the closest musical note to the detected sound.
      *
      * @param _htz double. The pitch detected by the device microphone in hertz
      */
     private void processHertz(double _htz) {
-        Note[] noteArray = mChromaticScale.getNoteArray();
-        double diffInHertz = 10000;
-
-        //for each octave
-        for (byte i = 0; i < noteArray.length; i++) {
-            Note currentNote = noteArray[i];
-
-            //for each octave representation of this note
-            for (byte j = 0; j < currentNote.getOctaves().length; j++) {
-                double currentOctave = currentNote.getOctaves()[j];
-                double currentDiff = Math.abs(_htz - currentOctave);
-                if ((currentDiff < diffInHertz)) {                        //if the current difference is smaller than the previous smallest difference update it
-                    diffInHertz = currentDiff;
-                    mTargetNote = currentNote.toString();
-                    if (_htz < currentOctave) {
-                        mOffsetInCents = Math.abs((int) Math.round(1200 * log2(currentOctave / _htz)));
-                        mSharpOrFlat = "flat";
-                        if (mLoopCount == 0) {
-                            mHowSharpOrFlatText = "-" + String.valueOf((int) mOffsetInCents);
-                        }
-                    } else if (_htz > currentOctave) {
-                        mOffsetInCents = Math.abs((int) Math.round(1200 * log2(currentOctave / _htz)));
-                        mSharpOrFlat = "sharp";
-                        if (mLoopCount == 0) {
-                            mHowSharpOrFlatText = "+" + String.valueOf((int) mOffsetInCents);
-                        }
-                    } else if (_htz == currentOctave) {
-                        mOffsetInCents = 0.00;
-                        mHowSharpOrFlatText = "0";
-                        mSharpOrFlat = "sharp";
-                    }
-                }
-            }
+        if (mNoteQuantizer.quantize(_htz) < 0) {
+            return;
+        }
+
+        mTargetNote = mNoteQuantizer.getPitchClass();
+        double targetHertz = mNoteQuantizer.getTargetHertz();
+        if (_htz < targetHertz) {
+            mOffsetInCents = Math.abs((int) Math.round(-mNoteQuantizer.getCents()));
+            mSharpOrFlat = "flat";
+            FixedPointFormat.setInteger(mHowSharpOrFlatText, '-', (int) mOffsetInCents);
+        } else if (_htz > targetHertz) {
+            mOffsetInCents = Math.abs((int) Math.round(-mNoteQuantizer.getCents()));
+            mSharpOrFlat = "sharp";
+            FixedPointFormat.setInteger(mHowSharpOrFlatText, '+', (int) mOffsetInCents);
+        } else {
+            mOffsetInCents = 0.00;
+            FixedPointFormat.setInteger(mHowSharpOrFlatText, '\0', 0);
+            mSharpOrFlat = "sharp";
+        }
+
+        if (mStrobeMode) {
+            setStrobeText(mNoteQuantizer.getCents());
+        }
+    }
+
+    /**
+     * Writes the offset shown in strobe mode, signed and to a tenth of a cent, into
+     * mHowSharpOrFlatText without allocating
+     *
+     * @param _cents double. The signed offset from the closest note in cents.
+     */
+    private void setStrobeText(double _cents) {
+        mStrobeCents = _cents;
+        FixedPointFormat.setFixed(mStrobeNumber, Math.abs(_cents), 1);
+        mHowSharpOrFlatText.setLength(0);
+        if (mStrobeNumber.charAt(mStrobeNumber.length() - 1) != '0' || mStrobeNumber.charAt(0) != '.') {
+            mHowSharpOrFlatText.append(_cents < 0 ? '-' : '+');
         }
+        //setFixed leaves out a zero integer part
+        if (mStrobeNumber.charAt(0) == '.') {
+            mHowSharpOrFlatText.append('0');
+        }
+        mHowSharpOrFlatText.append(mStrobeNumber);
     }
 
     /**
@@ -394,42 +1089,7 @@ public class TunerScreen implements Screen {
      */
     private void updateNoteWheelRotation() {
         double rotation = 0;
-        if (mTargetNote.equals("A")) {
-            mTargetRotation = 0;
-        }
-        if (mTargetNote.equals("A#")) {
-            mTargetRotation = 30;
-        }
-        if (mTargetNote.equals("B")) {
-            mTargetRotation = 60;
-        }
-        if (mTargetNote.equals("C")) {
-            mTargetRotation = 90;
-        }
-        if (mTargetNote.equals("C#")) {
-            mTargetRotation = 120;
-        }
-        if (mTargetNote.equals("D")) {
-            mTargetRotation = 150;
-        }
-        if (mTargetNote.equals("D#")) {
-            mTargetRotation = 180;
-        }
-        if (mTargetNote.equals("E")) {
-            mTargetRotation = -150;
-        }
-        if (mTargetNote.equals("F")) {
-            mTargetRotation = -120;
-        }
-        if (mTargetNote.equals("F#")) {
-            mTargetRotation = -90;
-        }
-        if (mTargetNote.equals("G")) {
-            mTargetRotation = -60;
-        }
-        if (mTargetNote.equals("G#")) {
-            mTargetRotation = -30;
-        }
+        mTargetRotation = mTargetNote.getWheelRotation();
 
         if (mSharpOrFlat.equals("flat")) {
             rotation = mTargetRotation - ((30.0 / 100.0) * mOffsetInCents);
@@ -470,14 +1130,12 @@ public class TunerScreen implements Screen {
                 if (mOffsetInCents >= 1) {
                     mSharpOrFlatSymbol.setScale((float) (basicScaleValue * 0.5) + minScale);
                     mSharpOrFlatSymbol.setAlpha(1);
-                    mSharpOrFlatSymbol.setTexture((Texture) mTuner.getAssetManager().get("images/flat_symbol.png"));
+                    setRegionIfChanged(mSharpOrFlatSymbol, mFlatSymbolRegion);
                     //change colour of the centre image if the cents are within a certain limit
                     if (mOffsetInCents <= acceptableInTuneLimit) {
-                        mHowSharpOrFlatCenter.setTexture((Texture) mTuner.getAssetManager()
-                                .get("images/cents_sharp_or_flat_center_green.png"));
+                        setRegionIfChanged(mHowSharpOrFlatCenter, mCenterInTuneRegion);
                     } else {
-                        mHowSharpOrFlatCenter.setTexture((Texture) mTuner.getAssetManager()
-                                .get("images/cents_sharp_or_flat_center.png"));
+                        setRegionIfChanged(mHowSharpOrFlatCenter, mCenterRegion);
                     }
                 } else if (mOffsetInCents == 0) {
                     mSharpOrFlatSymbol.setAlpha(0);
@@ -491,14 +1149,12 @@ public class TunerScreen implements Screen {
                 if (mOffsetInCents >= 1) {
                     mSharpOrFlatSymbol.setScale((float) (basicScaleValue * 0.5) + minScale);
                     mSharpOrFlatSymbol.setAlpha(1);
-                    mSharpOrFlatSymbol.setTexture((Texture) mTuner.getAssetManager().get("images/sharp_symbol.png"));
+                    setRegionIfChanged(mSharpOrFlatSymbol, mSharpSymbolRegion);
                     //change colour of the centre image if the cents are within a certain limit
                     if (mOffsetInCents <= acceptableInTuneLimit) {
-                        mHowSharpOrFlatCenter.setTexture((Texture) mTuner.getAssetManager()
-                                .get("images/cents_sharp_or_flat_center_green.png"));
+                        setRegionIfChanged(mHowSharpOrFlatCenter, mCenterInTuneRegion);
                     } else {
-                        mHowSharpOrFlatCenter.setTexture((Texture) mTuner.getAssetManager()
-                                .get("images/cents_sharp_or_flat_center.png"));
+                        setRegionIfChanged(mHowSharpOrFlatCenter, mCenterRegion);
                     }
                 } else if (mOffsetInCents == 0) {
                     mSharpOrFlatSymbol.setAlpha(0);
@@ -509,18 +1165,25 @@ public class TunerScreen implements Screen {
         else {
             mHowSharp.setScale(0);
             mHowFlat.setScale(0);
-            mHowSharpOrFlatText = "0";
+            FixedPointFormat.setInteger(mHowSharpOrFlatText, '\0', 0);
             mSharpOrFlatSymbol.setAlpha(0);
-            mHowSharpOrFlatCenter.setTexture((Texture) mTuner.getAssetManager().get("images/cents_sharp_or_flat_center.png"));
+            setRegionIfChanged(mHowSharpOrFlatCenter, mCenterRegion);
         }
     }
 
     /**
-     * @param _num          double. The number for which we return the base 2 logarithm
-     * @return double.      The base 2 logarithm of a number
+     * Sets the region of a sprite only if it is not already showing that region, so that the
+     * texture coordinates are not rewritten every frame while the state of the tuner stays the same.
+     * Every region comes from the same atlas, so swapping regions never changes the texture.
+     *
+     * @param _sprite {@link Sprite}. The sprite to update.
+     * @param _region {@link TextureRegion}. The region the sprite should be showing.
      */
-    private double log2(double _num) {
-        return (Math.log(_num) / Math.log(2));
+    private void setRegionIfChanged(Sprite _sprite, TextureRegion _region) {
+        if (_sprite.getTexture() != _region.getTexture()
+                || _sprite.getU() != _region.getU() || _sprite.getV() != _region.getV()) {
+            _sprite.setRegion(_region);
+        }
     }
 
     /**
@@ -529,6 +1192,7 @@ public class TunerScreen implements Screen {
      */
     @Override
     public void resize(int _width, int _height) {
+        mRenderScheduler.requestFrame();
     }
 
     /**
@@ -536,24 +1200,96 @@ public class TunerScreen implements Screen {
      */
     @Override
     public void pause() {
-        if (mAudioDispatcher != null) {
-            mAudioDispatcher.stop();
-            mAudioDispatcher = null;
+        if (mAudioEngine != null) {
+            mAudioEngine.stop();
+        }
+        if (Gdx.app.getLogLevel() >= Application.LOG_DEBUG) {
+            exportLatencyMetrics(Gdx.files.local(LATENCY_METRICS_FILE));
+        }
+        //the app may be killed while paused, so the session so far is written out
+        SessionLogWriter sessionLog = mSessionLog;
+        if (sessionLog != null) {
+            try {
+                sessionLog.flush();
+            } catch (IOException e) {
+                Gdx.app.error("TunerScreen", "Could not write session log " + sessionLog.getFile(), e);
+            }
         }
     }
 
     /**
-     * Starts the tuner running in its own thread if need be if needed
+     * Starts adding every pitch frame to a session log, which can be read back with
+     * {@link com.fraserjohnstone.tuner.utils.SessionLogReader}. A log which already exists is added
+     * to. Any log already being written is closed first. Frames are not logged in strum mode.
+     *
+     * @param _file {@link FileHandle}. The log to write.
+     * @return boolean. False if the log could not be opened
+     */
+    public synchronized boolean startSessionLog(FileHandle _file) {
+        stopSessionLog();
+        try {
+            mSessionLog = new SessionLogWriter(_file.file(), SESSION_LOG_CAPACITY);
+            return true;
+        } catch (IOException e) {
+            Gdx.app.error("TunerScreen", "Could not open session log " + _file.path(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Stops adding pitch frames to the session log, and writes out and closes the log
+     */
+    public synchronized void stopSessionLog() {
+        SessionLogWriter sessionLog = mSessionLog;
+        if (sessionLog == null) {
+            return;
+        }
+        mSessionLog = null;
+        try {
+            sessionLog.close();
+        } catch (IOException e) {
+            Gdx.app.error("TunerScreen", "Could not write session log " + sessionLog.getFile(), e);
+        }
+    }
+
+    /**
+     * Writes the latency metrics gathered so far to a file as CSV, see {@link LatencyMetrics#write(Writer)}
+     *
+     * @param _file {@link FileHandle}. The file to write, which is replaced if it exists.
+     */
+    public void exportLatencyMetrics(FileHandle _file) {
+        Writer writer = _file.writer(false);
+        try {
+            mLatencyMetrics.write(writer);
+        } catch (IOException e) {
+            Gdx.app.error("TunerScreen", "Could not write latency metrics to " + _file.path(), e);
+        } finally {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                //nothing more can be done
+            }
+        }
+    }
+
+    /**
+     * Starts the tuner running in its own thread if it is not already running
      */
     @Override
     public void resume() {
-        if (mAudioDispatcher == null) {
-            initTuner();
-        }
+        initTuner();
+        mRenderScheduler.requestFrame();
     }
 
+    /**
+     * Returns to continuous rendering for whichever screen is shown next
+     */
     @Override
     public void hide() {
+        mRenderScheduler.disable();
+        if (Gdx.input.getInputProcessor() == mMenuInput) {
+            Gdx.input.setInputProcessor(null);
+        }
     }
 
     /**
@@ -562,9 +1298,145 @@ public class TunerScreen implements Screen {
      */
     @Override
     public void dispose() {
-        if (mAudioDispatcher != null) {
-            mAudioDispatcher.stop();
-            mAudioDispatcher = null;
+        if (mAudioEngine != null) {
+            mAudioEngine.stop();
         }
+        stopSessionLog();
+    }
+
+    /**
+     * Getters and Setters
+     */
+
+    public ChromaticScale getChromaticScale() {
+        return mChromaticScale;
+    }
+
+    /**
+     * Changes the notes the tuner tunes to. May be called from any thread; the scale is picked up
+     * by the next frame. Use {@link ChromaticScale#get(Temperament, double)} to build the scale off
+     * the render thread.
+     *
+     * @param _chromaticScale {@link ChromaticScale}. The temperament and reference pitch to use.
+     */
+    public void setChromaticScale(ChromaticScale _chromaticScale) {
+        mPendingChromaticScale = _chromaticScale;
+        mRenderScheduler.requestFrame();
+    }
+
+    public AudioSource getAudioSource() {
+        return mAudioSource;
+    }
+
+    /**
+     * Changes where the audio is read from, for example to a
+     * {@link com.fraserjohnstone.tuner.audio.SyntheticAudioSource} so the tuner can be run without a
+     * microphone. Must be called from the render thread. A tuner which has been started is restarted
+     * with the new source.
+     *
+     * @param _audioSource {@link AudioSource}. Where the audio is read from.
+     */
+    public void setAudioSource(AudioSource _audioSource) {
+        mAudioSource = _audioSource;
+        if (mAudioEngine != null) {
+            releaseAudioEngine();
+            initTuner();
+        }
+    }
+
+    public InstrumentProfile getInstrumentProfile() {
+        return mInstrumentProfile;
+    }
+
+    /**
+     * Changes the instrument being tuned. May be called from any thread; the tuner is restarted for
+     * the new instrument by the next frame.
+     *
+     * @param _instrumentProfile {@link InstrumentProfile}. The instrument being tuned.
+     */
+    public void setInstrumentProfile(InstrumentProfile _instrumentProfile) {
+        mPendingInstrumentProfile = _instrumentProfile;
+        mRenderScheduler.requestFrame();
+    }
+
+    public boolean isStrumMode() {
+        return mStrumMode;
+    }
+
+    /**
+     * Turns strum mode, which measures every string of the instrument at once, on or off. May be
+     * called from any thread; the tuner is restarted in the new mode by the next frame. Strum mode
+     * has no effect while the instrument has no strings ({@link InstrumentProfile#CHROMATIC}).
+     *
+     * @param _strumMode boolean. True to show every string rather than the nearest note.
+     */
+    public void setStrumMode(boolean _strumMode) {
+        mPendingStrumMode = Boolean.valueOf(_strumMode);
+        mRenderScheduler.requestFrame();
+    }
+
+    public boolean isStrobeMode() {
+        return mStrobeMode;
+    }
+
+    /**
+     * Turns strobe mode on or off. May be called from any thread. Strobe mode is shown in place of the
+     * how sharp or flat bars, and not at all in strum mode.
+     *
+     * @param _strobeMode boolean. True to show a strobe and the offset to a tenth of a cent.
+     */
+    public void setStrobeMode(boolean _strobeMode) {
+        mStrobeMode = _strobeMode;
+        mRenderScheduler.requestFrame();
+    }
+
+    /**
+     * @return {@link SessionLogWriter}. The session log being written, or null if there is none
+     */
+    public SessionLogWriter getSessionLog() {
+        return mSessionLog;
+    }
+
+    public LatencyMetrics getLatencyMetrics() {
+        return mLatencyMetrics;
+    }
+
+    public void setLatencyOverlayVisible(boolean _visible) {
+        mLatencyOverlayVisible = _visible;
+        mRenderScheduler.requestFrame();
+    }
+
+    public long getDroppedPitchFrames() {
+        return mPitchFrames.getDroppedFrames();
+    }
+
+    public long getCoalescedPitchFrames() {
+        return mCoalescedFrames;
+    }
+
+    /**
+     * @return int. The number of frames drawn in the last second. Should be 0 while it is quiet.
+     */
+    public int getFramesPerSecond() {
+        return mRenderScheduler.getFramesPerSecond();
+    }
+
+    public long getFramesRendered() {
+        return mRenderScheduler.getFramesRendered();
+    }
+
+    /**
+     * @return int. The number of draw calls made to draw the last frame. Should be 1, as the whole
+     * screen is drawn from one texture atlas.
+     */
+    public int getRenderCalls() {
+        return mTuner.getSpriteBatch().getLastRenderCalls();
+    }
+
+    /**
+     * @return int. The number of textures bound to draw the last frame. Should be 1.
+     */
+    public int getTextureSwitches() {
+        return mTuner.getSpriteBatch().getLastTextureSwitches();
     }
 }
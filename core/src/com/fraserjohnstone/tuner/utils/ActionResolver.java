@@ -1,12 +1,29 @@
 package com.fraserjohnstone.tuner.utils;
 
 
+import com.fraserjohnstone.tuner.audio.AudioSource;
 import com.fraserjohnstone.tuner.screens.SplashScreen;
 
 /**
  * This interface allows the libGDX application to communicate directly with the android system,
- * in this case to request runtime user permissions.
+ * in this case to request runtime user permissions, to find out which version of the app is
+ * running on which device and to record from its microphone.
  */
 public interface ActionResolver {
     void requestPermissions(SplashScreen _splashScreen);
+
+    /**
+     * @return String. The version name and code of the installed app
+     */
+    String getAppVersion();
+
+    /**
+     * @return String. The make, model and OS version of the device
+     */
+    String getDeviceName();
+
+    /**
+     * @return {@link AudioSource}. Where the tuner reads audio from, the microphone of the device
+     */
+    AudioSource createAudioSource();
 }
@@ -1,41 +1,121 @@
 package com.fraserjohnstone.tuner.utils;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
- * Upon instantiation this class will hold a {@link Note} instance for each musical note name.
+ * Holds the frequency of every note of every octave from octave 0 to octave 8, generated from a
+ * {@link Temperament} and the frequency of A4. Upon instantiation this class also holds a
+ * {@link Note} instance for each step of the octave.
+ * <p>
+ * The frequencies are kept in flat arrays ordered by pitch (octave * steps per octave + step), along
+ * with their base 2 logarithms, so that {@link NoteQuantizer} and others can use them directly. The
+ * arrays are shared rather than copied and must not be modified.
+ * <p>
+ * Scales are immutable. {@link #get(Temperament, double)} keeps the most recently used scales in a
+ * small cache, so that switching back to a temperament already used is only a lookup, and a scale
+ * can be built away from the audio and render threads and handed to them once it is ready.
  */
 public class ChromaticScale {
+
+    public static final double DEFAULT_REFERENCE_HERTZ = 440.0;
+    public static final int NUMBER_OF_OCTAVES = 9;
+
+    //the octave of the reference pitch
+    private static final int REFERENCE_OCTAVE = 4;
+    //the number of scales kept by get()
+    private static final int CACHE_SIZE = 8;
+
+    //most recently used scales, least recently used first
+    private static final LinkedHashMap<ScaleKey, ChromaticScale> sCache =
+            new LinkedHashMap<ScaleKey, ChromaticScale>(CACHE_SIZE * 2, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<ScaleKey, ChromaticScale> _eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            };
+
+    private final Temperament mTemperament;
+    private final double mReferenceHertz;
+    private final int mStepsPerOctave;
+    //the index of A4 within mHertzTable
+    private final int mReferenceIndex;
+
+    //frequencies of every note of every octave, ordered by pitch (octave * steps + step)
+    private final double[] mHertzTable;
+    //base 2 logarithm of each of the frequencies in mHertzTable
+    private final double[] mLog2Table;
+    //the twelve tone note closest to each step of the octave
+    private final PitchClass[] mPitchClasses;
+
     //array to hold all of the notes
-    private Note[] noteArray = new Note[12];
+    private Note[] noteArray;
 
     /**
-     * Class constructor
+     * Class constructor. Twelve tone equal temperament with A4 at 440Hz.
      */
     public ChromaticScale() {
-        //fill all notes with hertz and string rep
-        Note C = new Note(16.35, 32.70, 65.41, 130.80, 261.60, 523.30, 1047.00, 2093.00, 4186.00, "C");
-        noteArray[0] = C;
-        Note Cs = new Note(17.32, 34.65, 69.30, 138.60, 277.20, 554.40, 1109.00, 2217.00, 4435.00, "C#");
-        noteArray[1] = Cs;
-        Note D = new Note(18.35, 36.71, 73.42, 146.80, 293.70, 587.30, 1175.00, 2349.00, 4699.00, "D");
-        noteArray[2] = D;
-        Note Ds = new Note(19.45, 38.89, 77.78, 155.60, 311.10, 622.30, 1245.00, 2489.00, 4978.00, "D#");
-        noteArray[3] = Ds;
-        Note E = new Note(20.60, 41.20, 82.41, 164.80, 329.60, 659.30, 1319.00, 2637.00, 5274.00, "E");
-        noteArray[4] = E;
-        Note F = new Note(21.83, 43.65, 87.31, 174.60, 349.20, 698.50, 1397.00, 2794.00, 5588.00, "F");
-        noteArray[5] = F;
-        Note Fs = new Note(23.12, 46.25, 92.50, 185.00, 370.00, 740.00, 1480.00, 2960.00, 5920.00, "F#");
-        noteArray[6] = Fs;
-        Note G = new Note(24.50, 49.00, 98.00, 196.00, 392.00, 784.00, 1568.00, 3136.00, 6272.00, "G");
-        noteArray[7] = G;
-        Note Gs = new Note(25.96, 51.91, 103.80, 207.70, 415.30, 830.60, 1661.00, 3322.00, 6645.00, "G#");
-        noteArray[8] = Gs;
-        Note A = new Note(27.50, 55.00, 110.00, 220.00, 440.00, 880.00, 1760.00, 3520.00, 7040.00, "A");
-        noteArray[9] = A;
-        Note As = new Note(29.14, 58.27, 116.50, 233.10, 466.20, 932.30, 1865.00, 3729.00, 7459.00, "A#");
-        noteArray[10] = As;
-        Note B = new Note(30.87, 61.74, 123.50, 246.90, 493.90, 987.80, 1976.00, 3951.00, 7902.00, "B");
-        noteArray[11] = B;
+        this(Temperament.EQUAL, DEFAULT_REFERENCE_HERTZ);
+    }
+
+    /**
+     * Class constructor
+     *
+     * @param _temperament    {@link Temperament}. How the octave is divided.
+     * @param _referenceHertz double. The frequency of A4 in hertz.
+     */
+    public ChromaticScale(Temperament _temperament, double _referenceHertz) {
+        if (!(_referenceHertz > 0)) {
+            throw new IllegalArgumentException("Reference pitch must be positive: " + _referenceHertz);
+        }
+        mTemperament = _temperament;
+        mReferenceHertz = _referenceHertz;
+        mStepsPerOctave = _temperament.getStepsPerOctave();
+
+        //the step nearest A, as the twelve tone A is 9/12 of the way up the octave
+        int referenceStep = (int) Math.round(mStepsPerOctave * 9.0 / 12.0) % mStepsPerOctave;
+        mReferenceIndex = REFERENCE_OCTAVE * mStepsPerOctave + referenceStep;
+        double referenceCents = _temperament.getCentsAboveC(referenceStep);
+
+        mHertzTable = new double[NUMBER_OF_OCTAVES * mStepsPerOctave];
+        mLog2Table = new double[mHertzTable.length];
+        mPitchClasses = new PitchClass[mStepsPerOctave];
+        noteArray = new Note[mStepsPerOctave];
+
+        double log2Reference = Math.log(_referenceHertz) / Math.log(2);
+        for (int step = 0; step < mStepsPerOctave; step++) {
+            double cents = _temperament.getCentsAboveC(step) - referenceCents;
+            double[] octaves = new double[NUMBER_OF_OCTAVES];
+            for (int octave = 0; octave < NUMBER_OF_OCTAVES; octave++) {
+                double log2Hertz = log2Reference + (octave - REFERENCE_OCTAVE) + cents / 1200;
+                int index = octave * mStepsPerOctave + step;
+                mLog2Table[index] = log2Hertz;
+                mHertzTable[index] = Math.pow(2, log2Hertz);
+                octaves[octave] = mHertzTable[index];
+            }
+            mPitchClasses[step] = _temperament.getPitchClass(step);
+            noteArray[step] = new Note(octaves, mPitchClasses[step].toString());
+        }
+    }
+
+    /**
+     * Returns the scale for a temperament and reference pitch, building it only if it is not one of
+     * the most recently used scales. Safe to call from any thread.
+     *
+     * @param _temperament    {@link Temperament}. How the octave is divided.
+     * @param _referenceHertz double. The frequency of A4 in hertz.
+     * @return {@link ChromaticScale}
+     */
+    public static ChromaticScale get(Temperament _temperament, double _referenceHertz) {
+        ScaleKey key = new ScaleKey(_temperament, _referenceHertz);
+        synchronized (sCache) {
+            ChromaticScale scale = sCache.get(key);
+            if (scale == null) {
+                scale = new ChromaticScale(_temperament, _referenceHertz);
+                sCache.put(key, scale);
+            }
+            return scale;
+        }
     }
 
     /**
@@ -44,4 +124,81 @@ public class ChromaticScale {
     public Note[] getNoteArray() {
         return noteArray;
     }
+
+    public Temperament getTemperament() {
+        return mTemperament;
+    }
+
+    /**
+     * @return double. The frequency of A4 in hertz
+     */
+    public double getReferenceHertz() {
+        return mReferenceHertz;
+    }
+
+    public int getStepsPerOctave() {
+        return mStepsPerOctave;
+    }
+
+    /**
+     * @return int. The index of A4 within {@link #getHertzTable()}
+     */
+    public int getReferenceIndex() {
+        return mReferenceIndex;
+    }
+
+    /**
+     * @return double[]. The frequency of every note, ordered by pitch. Must not be modified.
+     */
+    public double[] getHertzTable() {
+        return mHertzTable;
+    }
+
+    /**
+     * @return double[]. The base 2 logarithm of every frequency in {@link #getHertzTable()}. Must not
+     * be modified.
+     */
+    public double[] getLog2Table() {
+        return mLog2Table;
+    }
+
+    /**
+     * @param _step int. A step of the octave, counted from C.
+     * @return {@link PitchClass}. The twelve tone note closest to _step
+     */
+    public PitchClass getPitchClass(int _step) {
+        return mPitchClasses[_step];
+    }
+
+    /**
+     * The temperament and reference pitch a scale is cached under
+     */
+    private static class ScaleKey {
+        private final Temperament mTemperament;
+        private final double mReferenceHertz;
+
+        ScaleKey(Temperament _temperament, double _referenceHertz) {
+            mTemperament = _temperament;
+            mReferenceHertz = _referenceHertz;
+        }
+
+        @Override
+        public boolean equals(Object _other) {
+            if (this == _other) {
+                return true;
+            }
+            if (!(_other instanceof ScaleKey)) {
+                return false;
+            }
+            ScaleKey other = (ScaleKey) _other;
+            return mTemperament.equals(other.mTemperament) && Double.doubleToLongBits(mReferenceHertz)
+                    == Double.doubleToLongBits(other.mReferenceHertz);
+        }
+
+        @Override
+        public int hashCode() {
+            long bits = Double.doubleToLongBits(mReferenceHertz);
+            return mTemperament.hashCode() * 31 + (int) (bits ^ (bits >>> 32));
+        }
+    }
 }
@@ -0,0 +1,126 @@
+package com.fraserjohnstone.tuner.utils;
+
+/**
+ * This class writes numbers into an existing {@link StringBuilder} without creating any
+ * intermediate objects, so that text which changes every frame can be updated without putting
+ * pressure on the garbage collector.
+ */
+public class FixedPointFormat {
+
+    //powers of ten used to scale values to a fixed number of decimal places
+    private static final long[] POWERS_OF_TEN = new long[]{
+            1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L
+    };
+
+    //splits a double into two halves whose products are exact, 2^27 + 1
+    private static final double SPLITTER = 134217729.0;
+
+    /**
+     * Replaces the contents of _builder with _value written to a fixed number of decimal places.
+     * Like {@link java.text.DecimalFormat} with the pattern "#.00", the integer part is left out
+     * when it is zero, and the value is rounded half even from its exact binary value, so 0.125 is
+     * written as ".12" and 0.375 as ".38". Unlike DecimalFormat, a negative value which rounds to
+     * zero is written without a sign.
+     *
+     * @param _builder       {@link StringBuilder}. The builder to write into.
+     * @param _value         double. The value to write.
+     * @param _decimalPlaces int. The number of decimal places, from 0 to 6.
+     */
+    public static void setFixed(StringBuilder _builder, double _value, int _decimalPlaces) {
+        _builder.setLength(0);
+
+        long scale = POWERS_OF_TEN[_decimalPlaces];
+        long scaled = roundHalfEven(Math.abs(_value), scale);
+        if (_value < 0 && scaled != 0) {
+            _builder.append('-');
+        }
+
+        long integerPart = scaled / scale;
+        if (integerPart != 0) {
+            appendDigits(_builder, integerPart);
+        }
+
+        if (_decimalPlaces > 0) {
+            _builder.append('.');
+            long fraction = scaled % scale;
+            for (int i = _decimalPlaces - 1; i >= 0; i--) {
+                _builder.append((char) ('0' + ((fraction / POWERS_OF_TEN[i]) % 10)));
+            }
+        }
+    }
+
+    /**
+     * Rounds _value * _scale to the nearest whole number, and ties to the even one, as
+     * {@link java.math.RoundingMode#HALF_EVEN} would for the exact product. The product of two
+     * doubles is usually not exact, so its rounding error is found without allocating by splitting
+     * both factors in half (Dekker's product), and decides which way a product that looks like a tie
+     * goes.
+     *
+     * @param _value double. The value to round. Must not be negative.
+     * @param _scale long. The power of ten to scale by.
+     * @return long. The rounded product
+     */
+    private static long roundHalfEven(double _value, long _scale) {
+        double scale = _scale;
+        double product = _value * scale;
+
+        //the exact product is product + error
+        double valueSplit = SPLITTER * _value;
+        double valueHigh = valueSplit - (valueSplit - _value);
+        double valueLow = _value - valueHigh;
+        double scaleSplit = SPLITTER * scale;
+        double scaleHigh = scaleSplit - (scaleSplit - scale);
+        double scaleLow = scale - scaleHigh;
+        double error = ((valueHigh * scaleHigh - product) + valueHigh * scaleLow + valueLow * scaleHigh)
+                + valueLow * scaleLow;
+
+        double floor = Math.floor(product);
+        long rounded = (long) floor;
+        //a product which is not on the half is further from it than its rounding error, so only the
+        //sign of the error is needed when it is
+        double aboveHalf = (product - floor) - 0.5;
+        if (aboveHalf > 0 || aboveHalf == 0 && error > 0) {
+            return rounded + 1;
+        }
+        if (aboveHalf < 0 || error < 0) {
+            return rounded;
+        }
+        return rounded % 2 == 0 ? rounded : rounded + 1;
+    }
+
+    /**
+     * Replaces the contents of _builder with _prefix followed by _value.
+     *
+     * @param _builder {@link StringBuilder}. The builder to write into.
+     * @param _prefix  char. A sign or other character written before the value. Nothing is written
+     *                 if this is the null character.
+     * @param _value   int. The value to write.
+     */
+    public static void setInteger(StringBuilder _builder, char _prefix, int _value) {
+        _builder.setLength(0);
+        if (_prefix != '\0') {
+            _builder.append(_prefix);
+        }
+        if (_value < 0) {
+            _builder.append('-');
+        }
+        appendDigits(_builder, Math.abs((long) _value));
+    }
+
+    /**
+     * Appends the decimal digits of a non negative value to _builder.
+     *
+     * @param _builder {@link StringBuilder}. The builder to write into.
+     * @param _value   long. The value to write. Must not be negative.
+     */
+    private static void appendDigits(StringBuilder _builder, long _value) {
+        long divisor = 1;
+        while (_value / divisor >= 10) {
+            divisor *= 10;
+        }
+        while (divisor > 0) {
+            _builder.append((char) ('0' + ((_value / divisor) % 10)));
+            divisor /= 10;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.fraserjohnstone.tuner.utils;
+
+/**
+ * The range of pitches an instrument needs to be tuned over, taken from the notes of its open
+ * strings with a margin either side for strings which are well out of tune and for the harmonics
+ * players tune with.
+ * <p>
+ * Knowing the range lets the tuner do less work: the lowest pitch decides how long the analysis
+ * window has to be, the highest pitch decides how far the audio can be decimated, and pitches found
+ * outside the range, which are almost always octave errors, can be thrown away. See
+ * {@link com.fraserjohnstone.tuner.audio.AnalysisSettings} and {@link NoteQuantizer#setRange(double, double)}.
+ * <p>
+ * The string pitches are those of twelve tone equal temperament with A4 at 440Hz. The margin is wide
+ * enough to cover other temperaments and reference pitches.
+ */
+public class InstrumentProfile {
+
+    private static final int NOTES_PER_OCTAVE = 12;
+    //index of A4 counting from C0 (octave 4 * 12 + A)
+    private static final int A4_INDEX = 57;
+    private static final double A4_HERTZ = 440.0;
+
+    //margin below the lowest string and above the highest string, in semitones
+    private static final int SEMITONES_BELOW = 3;
+    private static final int SEMITONES_ABOVE = 5;
+
+    //every note from A0 to C8, the range of a piano
+    public static final InstrumentProfile CHROMATIC = new InstrumentProfile("Chromatic", new double[0],
+            hertz(PitchClass.A, 0), hertz(PitchClass.C, 8));
+
+    public static final InstrumentProfile GUITAR_STANDARD = forStrings("Guitar",
+            hertz(PitchClass.E, 2), hertz(PitchClass.A, 2), hertz(PitchClass.D, 3),
+            hertz(PitchClass.G, 3), hertz(PitchClass.B, 3), hertz(PitchClass.E, 4));
+    public static final InstrumentProfile GUITAR_DROP_D = forStrings("Guitar (drop D)",
+            hertz(PitchClass.D, 2), hertz(PitchClass.A, 2), hertz(PitchClass.D, 3),
+            hertz(PitchClass.G, 3), hertz(PitchClass.B, 3), hertz(PitchClass.E, 4));
+    public static final InstrumentProfile BASS_4 = forStrings("Bass (4 string)",
+            hertz(PitchClass.E, 1), hertz(PitchClass.A, 1), hertz(PitchClass.D, 2), hertz(PitchClass.G, 2));
+    public static final InstrumentProfile BASS_5 = forStrings("Bass (5 string)",
+            hertz(PitchClass.B, 0), hertz(PitchClass.E, 1), hertz(PitchClass.A, 1),
+            hertz(PitchClass.D, 2), hertz(PitchClass.G, 2));
+    public static final InstrumentProfile VIOLIN = forStrings("Violin",
+            hertz(PitchClass.G, 3), hertz(PitchClass.D, 4), hertz(PitchClass.A, 4), hertz(PitchClass.E, 5));
+    public static final InstrumentProfile VIOLA = forStrings("Viola",
+            hertz(PitchClass.C, 3), hertz(PitchClass.G, 3), hertz(PitchClass.D, 4), hertz(PitchClass.A, 4));
+    public static final InstrumentProfile CELLO = forStrings("Cello",
+            hertz(PitchClass.C, 2), hertz(PitchClass.G, 2), hertz(PitchClass.D, 3), hertz(PitchClass.A, 3));
+    //re-entrant tuning, with the G string above the C string
+    public static final InstrumentProfile UKULELE = forStrings("Ukulele",
+            hertz(PitchClass.G, 4), hertz(PitchClass.C, 4), hertz(PitchClass.E, 4), hertz(PitchClass.A, 4));
+
+    private final String mName;
+    private final double[] mStringHertz;
+    private final double mMinHertz;
+    private final double mMaxHertz;
+
+    /**
+     * Class constructor
+     *
+     * @param _name        String. The name shown for the profile.
+     * @param _stringHertz double[]. The pitch of each open string in hertz, in string order.
+     * @param _minHertz    double. The lowest pitch to detect.
+     * @param _maxHertz    double. The highest pitch to detect.
+     */
+    public InstrumentProfile(String _name, double[] _stringHertz, double _minHertz, double _maxHertz) {
+        if (!(_minHertz > 0) || !(_maxHertz > _minHertz)) {
+            throw new IllegalArgumentException("Invalid pitch range: " + _minHertz + " to " + _maxHertz);
+        }
+        mName = _name;
+        mStringHertz = _stringHertz.clone();
+        mMinHertz = _minHertz;
+        mMaxHertz = _maxHertz;
+    }
+
+    /**
+     * Creates a profile for a custom tuning, covering the strings with the usual margin either side.
+     *
+     * @param _name        String. The name shown for the profile.
+     * @param _stringHertz double... The pitch of each open string in hertz, in string order.
+     * @return {@link InstrumentProfile}
+     */
+    public static InstrumentProfile forStrings(String _name, double... _stringHertz) {
+        if (_stringHertz.length == 0) {
+            throw new IllegalArgumentException("A profile needs at least one string");
+        }
+        double lowest = _stringHertz[0];
+        double highest = _stringHertz[0];
+        for (int i = 1; i < _stringHertz.length; i++) {
+            lowest = Math.min(lowest, _stringHertz[i]);
+            highest = Math.max(highest, _stringHertz[i]);
+        }
+        return new InstrumentProfile(_name, _stringHertz,
+                lowest * Math.pow(2, -SEMITONES_BELOW / (double) NOTES_PER_OCTAVE),
+                highest * Math.pow(2, SEMITONES_ABOVE / (double) NOTES_PER_OCTAVE));
+    }
+
+    /**
+     * @return {@link InstrumentProfile}[]. Every profile defined here, {@link #CHROMATIC} first, in
+     * the order the tuner screen's menu moves through them
+     */
+    public static InstrumentProfile[] getPresets() {
+        return new InstrumentProfile[]{CHROMATIC, GUITAR_STANDARD, GUITAR_DROP_D, BASS_4, BASS_5, VIOLIN,
+                VIOLA, CELLO, UKULELE};
+    }
+
+    /**
+     * @param _pitchClass {@link PitchClass}. The note.
+     * @param _octave     int. The octave, where C4 is middle C.
+     * @return double. The pitch of the note in twelve tone equal temperament with A4 at 440Hz
+     */
+    public static double hertz(PitchClass _pitchClass, int _octave) {
+        int index = _octave * NOTES_PER_OCTAVE + _pitchClass.ordinal();
+        return A4_HERTZ * Math.pow(2, (index - A4_INDEX) / (double) NOTES_PER_OCTAVE);
+    }
+
+    /**
+     * @param _hertz double. A pitch in hertz.
+     * @return boolean. True if _hertz is inside the range of the profile
+     */
+    public boolean contains(double _hertz) {
+        return _hertz >= mMinHertz && _hertz <= mMaxHertz;
+    }
+
+    @Override
+    public String toString() {
+        return mName;
+    }
+
+    /**
+     * Getters and Setters
+     */
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * @return double[]. The pitch of each open string in hertz. Empty for {@link #CHROMATIC}. Must
+     * not be modified.
+     */
+    public double[] getStringHertz() {
+        return mStringHertz;
+    }
+
+    public double getMinHertz() {
+        return mMinHertz;
+    }
+
+    public double getMaxHertz() {
+        return mMaxHertz;
+    }
+}
@@ -0,0 +1,67 @@
+package com.fraserjohnstone.tuner.utils;
+
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+
+/**
+ * A {@link SpriteBatch} which counts its draw calls and texture switches, so that a change which
+ * breaks up the batching of a screen shows up as a number rather than as a slower frame.
+ * <p>
+ * {@link SpriteBatch#renderCalls} already counts the draw calls between {@link #begin()} and
+ * {@link #end()}. This class adds the number of times the batch had to switch to a different
+ * texture in the same span, and keeps the counts of the last complete batch so they can be read
+ * at any point during the next frame.
+ */
+public class InstrumentedSpriteBatch extends SpriteBatch {
+
+    private int mTextureSwitches;
+    private int mLastRenderCalls;
+    private int mLastTextureSwitches;
+    private long mTotalTextureSwitches;
+
+    @Override
+    public void begin() {
+        super.begin();
+        mTextureSwitches = 0;
+    }
+
+    @Override
+    public void end() {
+        super.end();
+        mLastRenderCalls = renderCalls;
+        mLastTextureSwitches = mTextureSwitches;
+    }
+
+    @Override
+    protected void switchTexture(Texture _texture) {
+        super.switchTexture(_texture);
+        mTextureSwitches++;
+        mTotalTextureSwitches++;
+    }
+
+    /**
+     * Getters and Setters
+     */
+
+    /**
+     * @return int. The number of draw calls made by the last complete batch
+     */
+    public int getLastRenderCalls() {
+        return mLastRenderCalls;
+    }
+
+    /**
+     * @return int. The number of textures used by the last complete batch. The first texture of a
+     * batch counts as a switch, so a batch drawn from a single texture returns 1.
+     */
+    public int getLastTextureSwitches() {
+        return mLastTextureSwitches;
+    }
+
+    /**
+     * @return long. The number of texture switches since the batch was created
+     */
+    public long getTotalTextureSwitches() {
+        return mTotalTextureSwitches;
+    }
+}
@@ -0,0 +1,134 @@
+package com.fraserjohnstone.tuner.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram of durations with a fixed set of buckets, so that recording a value never
+ * allocates or blocks and can be done from the audio thread.
+ * <p>
+ * Durations are recorded in nanoseconds and kept in microseconds. Below 8 microseconds every value
+ * has its own bucket, and above that each doubling of the duration is split into 8 buckets, so a
+ * percentile read back from the histogram is at most 12.5% above the true value. Durations longer
+ * than about two minutes all go into the last bucket. The largest value is kept exactly.
+ * <p>
+ * Any thread may record values. Percentiles are read by walking the buckets, which is cheap but
+ * not atomic with respect to values being recorded at the same time; this is good enough for
+ * diagnostics.
+ */
+public class LatencyHistogram {
+
+    private static final long NANOS_PER_MICRO = 1000L;
+
+    //each doubling of the duration is split into 2^SUB_BUCKET_BITS buckets
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    //durations of 2^MAX_BITS microseconds or more go into the last bucket
+    private static final int MAX_BITS = 27;
+    private static final int BUCKET_COUNT = (MAX_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mMaxNanos = new AtomicLong();
+
+    /**
+     * Records one duration. Negative durations are recorded as zero.
+     *
+     * @param _nanos long. The duration in nanoseconds.
+     */
+    public void record(long _nanos) {
+        long nanos = Math.max(_nanos, 0);
+        mBuckets.incrementAndGet(bucketOf(nanos / NANOS_PER_MICRO));
+        mCount.incrementAndGet();
+
+        long max = mMaxNanos.get();
+        while (nanos > max && !mMaxNanos.compareAndSet(max, nanos)) {
+            max = mMaxNanos.get();
+        }
+    }
+
+    /**
+     * Forgets every value recorded so far
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mBuckets.set(i, 0);
+        }
+        mCount.set(0);
+        mMaxNanos.set(0);
+    }
+
+    /**
+     * @param _fraction double. The fraction of values at or below the result, from 0 to 1.
+     * @return long. The duration in nanoseconds which _fraction of the recorded values do not
+     * exceed, rounded up to the top of its bucket but never more than the largest value. 0 if
+     * nothing has been recorded.
+     */
+    public long getPercentileNanos(double _fraction) {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += mBuckets.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(_fraction * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mBuckets.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i) * NANOS_PER_MICRO, mMaxNanos.get());
+            }
+        }
+        return mMaxNanos.get();
+    }
+
+    /**
+     * @param _micros long. A duration in microseconds. Must not be negative.
+     * @return int. The index of the bucket holding _micros
+     */
+    private static int bucketOf(long _micros) {
+        if (_micros < SUB_BUCKETS) {
+            return (int) _micros;
+        }
+        int highestBit = 63 - Long.numberOfLeadingZeros(_micros);
+        if (highestBit >= MAX_BITS) {
+            return BUCKET_COUNT - 1;
+        }
+        int shift = highestBit - SUB_BUCKET_BITS;
+        int subBucket = (int) (_micros >> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @param _bucket int. The index of a bucket.
+     * @return long. The largest duration in microseconds which goes into _bucket
+     */
+    private static long upperBoundOf(int _bucket) {
+        if (_bucket < SUB_BUCKETS) {
+            return _bucket;
+        }
+        int shift = _bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + _bucket % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * Getters and Setters
+     */
+
+    /**
+     * @return long. The number of values recorded
+     */
+    public long getCount() {
+        return mCount.get();
+    }
+
+    /**
+     * @return long. The largest value recorded, in nanoseconds
+     */
+    public long getMaxNanos() {
+        return mMaxNanos.get();
+    }
+}
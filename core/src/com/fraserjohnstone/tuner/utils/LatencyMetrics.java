@@ -0,0 +1,162 @@
+package com.fraserjohnstone.tuner.utils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the time from the moment a buffer of audio is handed to the audio processors until a
+ * reading based on it is on the screen, split into the {@link Stage}s it passes through, along
+ * with counters for the ways the pipeline can fall behind.
+ * <p>
+ * The audio thread calls {@link #bufferDelivered(long)} when the dispatcher hands over a buffer and
+ * {@link #bufferFinished(long, long)} once every processor has finished with it, and the pitch
+ * detection handler reads the delivery time back with {@link #getBufferDeliveredNanos()} so that it
+ * can be passed along with the pitch frame. The render thread records the later stages with
+ * {@link #record(Stage, long)}.
+ * <p>
+ * Every stage is kept in a {@link LatencyHistogram}, so nothing is allocated while recording. The
+ * figures can be written out as CSV with {@link #write(Writer)}.
+ */
+public class LatencyMetrics {
+
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /**
+     * The parts of the path from a buffer of audio to the screen
+     */
+    public enum Stage {
+        //the dispatcher hands over a buffer until the pitch detection handler has finished with it
+        DELIVERY_TO_PITCH,
+        //the pitch frame is produced until the render thread takes it in TunerScreen.update()
+        PITCH_TO_UPDATE,
+        //the render thread takes the frame until the frame showing it has been drawn
+        UPDATE_TO_PRESENT,
+        //the whole path, for the newest pitch frame taken in each drawn frame
+        DELIVERY_TO_PRESENT
+    }
+
+    private final LatencyHistogram[] mHistograms = new LatencyHistogram[Stage.values().length];
+
+    //only used by the audio thread
+    private long mBufferDeliveredNanos;
+
+    //counters
+    private final AtomicLong mBufferOverruns = new AtomicLong();
+    private final AtomicLong mDroppedFrames = new AtomicLong();
+
+    /**
+     * Class constructor
+     */
+    public LatencyMetrics() {
+        for (int i = 0; i < mHistograms.length; i++) {
+            mHistograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Marks the time a buffer was handed to the audio processors. Must be called from the audio
+     * thread.
+     *
+     * @param _nanos long. See {@link System#nanoTime()}.
+     */
+    public void bufferDelivered(long _nanos) {
+        mBufferDeliveredNanos = _nanos;
+    }
+
+    /**
+     * Marks the time every audio processor had finished with the buffer. If that took longer than
+     * the audio between buffers lasts, the capture thread is falling behind the microphone and the
+     * buffer is counted as an overrun. Must be called from the audio thread.
+     *
+     * @param _nanos    long. See {@link System#nanoTime()}.
+     * @param _hopNanos long. The length of the audio between the start of this buffer and the next.
+     */
+    public void bufferFinished(long _nanos, long _hopNanos) {
+        if (_nanos - mBufferDeliveredNanos > _hopNanos) {
+            mBufferOverruns.incrementAndGet();
+        }
+    }
+
+    /**
+     * Records the time taken by one stage
+     *
+     * @param _stage {@link Stage}
+     * @param _nanos long. The duration in nanoseconds.
+     */
+    public void record(Stage _stage, long _nanos) {
+        mHistograms[_stage.ordinal()].record(_nanos);
+    }
+
+    /**
+     * Counts a pitch frame which was lost because the render thread had fallen behind
+     */
+    public void recordDroppedFrame() {
+        mDroppedFrames.incrementAndGet();
+    }
+
+    /**
+     * Forgets every duration and count recorded so far
+     */
+    public void reset() {
+        for (int i = 0; i < mHistograms.length; i++) {
+            mHistograms[i].reset();
+        }
+        mBufferOverruns.set(0);
+        mDroppedFrames.set(0);
+    }
+
+    /**
+     * Writes the count, p50, p99 and maximum in milliseconds of every stage as CSV, followed by
+     * the counters
+     *
+     * @param _writer {@link Writer}. Where the CSV is written. It is not closed.
+     * @throws IOException if the writer fails
+     */
+    public void write(Writer _writer) throws IOException {
+        _writer.write("stage,count,p50_ms,p99_ms,max_ms\n");
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram histogram = mHistograms[stage.ordinal()];
+            _writer.write(String.format(Locale.US, "%s,%d,%.3f,%.3f,%.3f\n",
+                    stage, histogram.getCount(),
+                    histogram.getPercentileNanos(0.5) / NANOS_PER_MILLI,
+                    histogram.getPercentileNanos(0.99) / NANOS_PER_MILLI,
+                    histogram.getMaxNanos() / NANOS_PER_MILLI));
+        }
+        _writer.write("buffer_overruns," + getBufferOverruns() + "\n");
+        _writer.write("dropped_frames," + getDroppedFrames() + "\n");
+        _writer.flush();
+    }
+
+    /**
+     * Getters and Setters
+     */
+
+    /**
+     * @return long. The time the audio thread was handed the buffer it is working on. Only
+     * meaningful on the audio thread.
+     */
+    public long getBufferDeliveredNanos() {
+        return mBufferDeliveredNanos;
+    }
+
+    public LatencyHistogram getHistogram(Stage _stage) {
+        return mHistograms[_stage.ordinal()];
+    }
+
+    /**
+     * @return long. The number of buffers which took longer to process than the audio between
+     * buffers lasts
+     */
+    public long getBufferOverruns() {
+        return mBufferOverruns.get();
+    }
+
+    /**
+     * @return long. The number of pitch frames lost because the render thread had fallen behind
+     */
+    public long getDroppedFrames() {
+        return mDroppedFrames.get();
+    }
+}
@@ -0,0 +1,205 @@
+package com.fraserjohnstone.tuner.utils;
+
+/**
+ * This class maps a frequency in Hertz to the closest musical note held by a {@link ChromaticScale},
+ * giving the {@link PitchClass}, the octave and the signed offset in cents.
+ * <p>
+ * Rather than comparing the frequency against every note of every octave, the position of the
+ * frequency on the equally divided octave is calculated directly with a single logarithm. Only that
+ * note and its two neighbours are then compared in Hertz, which gives exactly the same answer as a
+ * full scan of the {@link ChromaticScale} in constant time, as long as no note of the temperament
+ * is more than half a step away from its equally divided position.
+ * <p>
+ * The notes considered can be limited to the range of an instrument with
+ * {@link #setRange(double, double)}, so that a pitch is always shown against a note the instrument
+ * can play.
+ * <p>
+ * The lookup tables are those of the {@link ChromaticScale}, so {@link #setChromaticScale(ChromaticScale)}
+ * changes the temperament or reference pitch without copying or allocating anything.
+ * <p>
+ * The result of the last call to {@link #quantize(double)} is held in this instance so that no
+ * objects are created per call. Instances are therefore not thread safe.
+ */
+public class NoteQuantizer {
+
+    private static final double LOG_2 = Math.log(2);
+
+    private ChromaticScale mChromaticScale;
+    //frequencies of every note of every octave, ordered by pitch (octave * steps + step)
+    private double[] mHertzTable;
+    private int mStepsPerOctave;
+    private int mNumberOfOctaves;
+    //index and base 2 logarithm of A4 within the tables
+    private int mReferenceIndex;
+    private double mLog2ReferenceHertz;
+
+    //range of notes considered, set by setRange()
+    private double mMinHertz = 0;
+    private double mMaxHertz = Double.POSITIVE_INFINITY;
+    private int mLowestIndex;
+    private int mHighestIndex;
+
+    //result of the last call to quantize()
+    private int mNoteIndex = -1;
+    private double mCents;
+
+    /**
+     * Class constructor
+     *
+     * @param _chromaticScale {@link ChromaticScale}. The note definitions to quantize to.
+     */
+    public NoteQuantizer(ChromaticScale _chromaticScale) {
+        setChromaticScale(_chromaticScale);
+    }
+
+    /**
+     * Quantizes to a different scale from the next call to {@link #quantize(double)}. Nothing is
+     * copied or allocated.
+     *
+     * @param _chromaticScale {@link ChromaticScale}. The note definitions to quantize to.
+     */
+    public void setChromaticScale(ChromaticScale _chromaticScale) {
+        mChromaticScale = _chromaticScale;
+        mHertzTable = _chromaticScale.getHertzTable();
+        mStepsPerOctave = _chromaticScale.getStepsPerOctave();
+        mNumberOfOctaves = mHertzTable.length / mStepsPerOctave;
+        mReferenceIndex = _chromaticScale.getReferenceIndex();
+        mLog2ReferenceHertz = Math.log(_chromaticScale.getReferenceHertz()) / LOG_2;
+        updateRange();
+        mNoteIndex = -1;
+        mCents = 0;
+    }
+
+    /**
+     * Limits the notes considered to those closest to the pitches from _minHertz to _maxHertz, for
+     * example the range of an {@link InstrumentProfile}. The range is kept when the scale changes.
+     *
+     * @param _minHertz double. The lowest pitch, or 0 for no lower limit.
+     * @param _maxHertz double. The highest pitch, or {@link Double#POSITIVE_INFINITY} for no upper
+     *                  limit.
+     */
+    public void setRange(double _minHertz, double _maxHertz) {
+        mMinHertz = _minHertz;
+        mMaxHertz = _maxHertz;
+        updateRange();
+    }
+
+    /**
+     * Works out the first and last index of the table in the range set by {@link #setRange}
+     */
+    private void updateRange() {
+        mLowestIndex = 0;
+        mHighestIndex = mHertzTable.length - 1;
+        if (mMinHertz > 0 && !Double.isInfinite(mMinHertz)) {
+            mLowestIndex = findClosest(mMinHertz, Math.log(mMinHertz) / LOG_2);
+        }
+        if (mMaxHertz > 0 && !Double.isInfinite(mMaxHertz)) {
+            mHighestIndex = Math.max(mLowestIndex, findClosest(mMaxHertz, Math.log(mMaxHertz) / LOG_2));
+        }
+    }
+
+    /**
+     * Finds the closest note to the given frequency. The result can then be read with
+     * {@link #getPitchClass()}, {@link #getOctave()}, {@link #getCents()} and
+     * {@link #getTargetHertz()}.
+     *
+     * @param _htz double. The frequency to quantize in hertz. Must be greater than zero.
+     * @return int. The index of the closest note (octave * steps per octave + step), or -1 if the
+     * frequency is not a valid pitch
+     */
+    public int quantize(double _htz) {
+        if (!(_htz > 0) || Double.isInfinite(_htz)) {
+            mNoteIndex = -1;
+            mCents = 0;
+            return mNoteIndex;
+        }
+
+        double log2Htz = Math.log(_htz) / LOG_2;
+        int closest = findClosest(_htz, log2Htz);
+
+        mNoteIndex = closest;
+        //worked out from the ratio, as the full scan did, rather than from the difference of the
+        //logarithms, so that an offset of exactly half a cent is shown rounded the same way
+        mCents = -1200 * (Math.log(mHertzTable[closest] / _htz) / LOG_2);
+        return mNoteIndex;
+    }
+
+    /**
+     * @param _htz     double. The frequency in hertz. Must be greater than zero.
+     * @param _log2Htz double. The base 2 logarithm of _htz.
+     * @return int. The index of the closest note to _htz between mLowestIndex and mHighestIndex
+     */
+    private int findClosest(double _htz, double _log2Htz) {
+        //estimate the note from the equally divided octave and clamp it to the range
+        int estimate = (int) Math.round(mStepsPerOctave * (_log2Htz - mLog2ReferenceHertz))
+                + mReferenceIndex;
+        estimate = clamp(estimate, mLowestIndex, mHighestIndex);
+
+        //the notes of the temperament need not be equally spaced, and the closest note in hertz
+        //is not always the closest in cents, so it can be one either side of the estimate.
+        //Neighbours are compared in the same order as a full scan of the scale so that ties are
+        //resolved identically.
+        int closest = estimate;
+        double smallestDiff = Math.abs(_htz - mHertzTable[estimate]);
+        int lower = Math.max(estimate - 1, mLowestIndex);
+        int upper = Math.min(estimate + 1, mHighestIndex);
+        for (int i = lower; i <= upper; i++) {
+            double diff = Math.abs(_htz - mHertzTable[i]);
+            if (diff < smallestDiff || (diff == smallestDiff && scanOrder(i) < scanOrder(closest))) {
+                smallestDiff = diff;
+                closest = i;
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * @param _value int
+     * @param _min   int
+     * @param _max   int
+     * @return int. _value limited to the range _min to _max inclusive
+     */
+    private static int clamp(int _value, int _min, int _max) {
+        return Math.max(_min, Math.min(_max, _value));
+    }
+
+    /**
+     * @param _index int. An index into the flattened note table
+     * @return int. The position at which a note by note, octave by octave scan would reach _index
+     */
+    private int scanOrder(int _index) {
+        return ((_index % mStepsPerOctave) * mNumberOfOctaves) + (_index / mStepsPerOctave);
+    }
+
+    /**
+     * Getters and Setters
+     */
+
+    public ChromaticScale getChromaticScale() {
+        return mChromaticScale;
+    }
+
+    public int getNoteIndex() {
+        return mNoteIndex;
+    }
+
+    public PitchClass getPitchClass() {
+        return mNoteIndex < 0 ? null : mChromaticScale.getPitchClass(mNoteIndex % mStepsPerOctave);
+    }
+
+    public int getOctave() {
+        return mNoteIndex < 0 ? -1 : mNoteIndex / mStepsPerOctave;
+    }
+
+    /**
+     * @return double. The signed offset in cents from the closest note. Negative values are flat
+     * and positive values are sharp.
+     */
+    public double getCents() {
+        return mCents;
+    }
+
+    public double getTargetHertz() {
+        return mNoteIndex < 0 ? 0 : mHertzTable[mNoteIndex];
+    }
+}
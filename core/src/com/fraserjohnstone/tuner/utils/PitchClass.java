@@ -0,0 +1,62 @@
+package com.fraserjohnstone.tuner.utils;
+
+/**
+ * Each constant of this enum represents one of the twelve musical note names of the chromatic
+ * scale, in the same order as {@link ChromaticScale#getNoteArray()}. Each constant also carries the
+ * rotation of the note wheel (in degrees) that brings that note to the top of the wheel, so the UI
+ * no longer has to compare note names as strings.
+ */
+public enum PitchClass {
+    C("C", 90),
+    C_SHARP("C#", 120),
+    D("D", 150),
+    D_SHARP("D#", 180),
+    E("E", -150),
+    F("F", -120),
+    F_SHARP("F#", -90),
+    G("G", -60),
+    G_SHARP("G#", -30),
+    A("A", 0),
+    A_SHARP("A#", 30),
+    B("B", 60);
+
+    //cached copy of values() so that lookups by index do not allocate a new array each time
+    private static final PitchClass[] VALUES = values();
+
+    private final String mStringRepresentation;
+    private final double mWheelRotation;
+
+    /**
+     * Enum constructor
+     *
+     * @param _stringRepresentation String. The name of this note (C, C#, etc)
+     * @param _wheelRotation        double. The note wheel rotation in degrees for this note
+     */
+    PitchClass(String _stringRepresentation, double _wheelRotation) {
+        mStringRepresentation = _stringRepresentation;
+        mWheelRotation = _wheelRotation;
+    }
+
+    /**
+     * @param _index int. The index of the note within the octave, where 0 is C and 11 is B
+     * @return PitchClass. The pitch class at the given index
+     */
+    public static PitchClass fromIndex(int _index) {
+        return VALUES[_index];
+    }
+
+    /**
+     * @return double. The rotation in degrees of the note wheel when this note is targeted
+     */
+    public double getWheelRotation() {
+        return mWheelRotation;
+    }
+
+    /**
+     * @return String. The name of this note (C, C#, etc)
+     */
+    @Override
+    public String toString() {
+        return mStringRepresentation;
+    }
+}
@@ -4,31 +4,42 @@ import java.util.Random;
 
 /**
  * This class generates random Integers and floats, with or without including negative values.
+ * <p>
+ * Every instance draws from its own generator. Two instances created with the same seed give the
+ * same numbers in the same order, so anything made from them (such as the noise of a
+ * {@link com.fraserjohnstone.tuner.audio.ToneGenerator}) is the same on every run.
  */
-class RandomNum {
+public class RandomNum {
+
+    private final Random mRandom;
+
+    /**
+     * Class constructor
+     *
+     * @param _seed long. The seed of the generator.
+     */
+    public RandomNum(long _seed) {
+        mRandom = new Random(_seed);
+    }
 
     /**
      * @param _min int
      * @param _max int
      */
-    private static int randInt(int _min, int _max) {
-        Random rand = new Random();
-        int randomNum = rand.nextInt((_max - _min) + 1) + _min;
-        return randomNum;
+    private int randInt(int _min, int _max) {
+        return mRandom.nextInt((_max - _min) + 1) + _min;
     }
 
     /**
      * @param _min int
      * @param _max int
      */
-    public static int randIntPossNeg(int _min, int _max) {
-        Random rand = new Random();
-        int randomNum = rand.nextInt((_max - _min) + 1) + _min;
+    public int randIntPossNeg(int _min, int _max) {
+        int randomNum = randInt(_min, _max);
 
         //get either a 1 or a 2 to decide if its going to be negative
-        int x = RandomNum.randInt(1, 2);
-        if (x == 1) {
-        } else {
+        int x = randInt(1, 2);
+        if (x != 1) {
             randomNum = randomNum * (-1);
         }
 
@@ -39,23 +50,19 @@ class RandomNum {
      * @param _min float
      * @param _max float
      */
-    public static float randFloat(float _min, float _max) {
-        Random rand = new Random();
-        float randomNum = rand.nextFloat() * (_max - _min) + _min;
-
-        return randomNum;
+    public float randFloat(float _min, float _max) {
+        return mRandom.nextFloat() * (_max - _min) + _min;
     }
 
     /**
      * @param _min float
      * @param _max float
      */
-    public static float randFloatPossNeg(float _min, float _max) {
-        Random rand = new Random();
-        float randomNum = rand.nextFloat() * (_max - _min) + _min;
+    public float randFloatPossNeg(float _min, float _max) {
+        float randomNum = randFloat(_min, _max);
 
         //get either a 1 or a 2 to decide if its going to be negative
-        int x = RandomNum.randInt(1, 2);
+        int x = randInt(1, 2);
         if (x != 1) {
             randomNum = randomNum * (-1);
         }
@@ -0,0 +1,113 @@
+package com.fraserjohnstone.tuner.utils;
+
+import com.badlogic.gdx.Application;
+import com.badlogic.gdx.Gdx;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Decides when a {@link com.badlogic.gdx.Screen} is drawn. While enabled, continuous rendering is
+ * turned off and a frame is only drawn when one is asked for with {@link #requestFrame()}, for
+ * example when new data arrives or an animation has another step to show. Input events ask for a
+ * frame by themselves (libGDX does this whenever continuous rendering is off).
+ * <p>
+ * {@link #requestFrame()} may be called from any thread and as often as needed: requests made
+ * before the next frame is drawn are combined into one, so the audio thread pays for a single
+ * atomic check on most calls.
+ * <p>
+ * The scheduler also counts the frames that are drawn, so that it can be checked that nothing is
+ * drawn while nothing changes. With the log level set to debug the count is logged after every
+ * second in which a frame was drawn.
+ */
+public class RenderScheduler {
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+    private static final String LOG_TAG = "RenderScheduler";
+
+    //set when a frame has been requested but not yet started
+    private final AtomicBoolean mFramePending = new AtomicBoolean();
+
+    private boolean mEnabled;
+
+    //frame counters
+    private volatile long mFramesRendered;
+    private volatile int mFramesPerSecond;
+    private volatile long mSecondStartNanos;
+    private int mFramesThisSecond;
+
+    /**
+     * Turns continuous rendering off so that frames are only drawn when requested, and requests
+     * the first frame. Must be called on the render thread.
+     */
+    public void enable() {
+        mEnabled = true;
+        Gdx.graphics.setContinuousRendering(false);
+        mFramePending.set(false);
+        requestFrame();
+    }
+
+    /**
+     * Turns continuous rendering back on. Must be called on the render thread.
+     */
+    public void disable() {
+        mEnabled = false;
+        Gdx.graphics.setContinuousRendering(true);
+    }
+
+    /**
+     * Asks for a frame to be drawn. May be called from any thread.
+     */
+    public void requestFrame() {
+        if (!mFramePending.getAndSet(true)) {
+            Gdx.graphics.requestRendering();
+        }
+    }
+
+    /**
+     * Must be called at the start of every frame, on the render thread. Requests made after this
+     * call will cause another frame to be drawn.
+     */
+    public void frameStarted() {
+        mFramePending.set(false);
+
+        long now = System.nanoTime();
+        if (now - mSecondStartNanos >= NANOS_PER_SECOND) {
+            //a whole second or more without a frame counts as one second with no frames
+            mFramesPerSecond = now - mSecondStartNanos < 2 * NANOS_PER_SECOND ? mFramesThisSecond : 0;
+            mFramesThisSecond = 0;
+            mSecondStartNanos = now;
+            if (Gdx.app.getLogLevel() >= Application.LOG_DEBUG) {
+                Gdx.app.debug(LOG_TAG, "frames per second: " + mFramesPerSecond
+                        + ", frames rendered: " + mFramesRendered);
+            }
+        }
+        mFramesThisSecond++;
+        mFramesRendered++;
+    }
+
+    /**
+     * Getters and Setters
+     */
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * @return long. The number of frames drawn since the scheduler was created
+     */
+    public long getFramesRendered() {
+        return mFramesRendered;
+    }
+
+    /**
+     * @return int. The number of frames drawn in the last complete second, or 0 if no frame has
+     * been drawn for more than a second
+     */
+    public int getFramesPerSecond() {
+        if (System.nanoTime() - mSecondStartNanos >= 2 * NANOS_PER_SECOND) {
+            return 0;
+        }
+        return mFramesPerSecond;
+    }
+}
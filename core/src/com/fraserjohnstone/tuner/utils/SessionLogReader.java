@@ -0,0 +1,153 @@
+package com.fraserjohnstone.tuner.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a session log written by {@link SessionLogWriter}.
+ * <p>
+ * The whole file is memory mapped, so any record can be read straight from the page cache without
+ * copying it or reading the records before it, and a scan over every record of a long session is
+ * only as slow as the memory it touches. Records are numbered from 0 in the order they were added,
+ * which is also the order of their timestamps, so {@link #findRecord(long)} can look one up by time.
+ * <p>
+ * The records are those in the file when it was opened; records added by a writer afterwards are
+ * not seen. Nothing is allocated once the reader has been created, apart from by
+ * {@link #writeCsv(Writer)}.
+ */
+public class SessionLogReader {
+
+    private final MappedByteBuffer mBuffer;
+    private final long mStartMillis;
+    private final int mRecordCount;
+
+    /**
+     * Class constructor
+     *
+     * @param _file {@link File}. The log to read.
+     * @throws IOException if the file cannot be read, is not a session log, or holds more records
+     *                     than can be mapped at once
+     */
+    public SessionLogReader(File _file) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(_file, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(_file + " is too long to map");
+            }
+            //the mapping stays valid once the file has been closed
+            mBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } finally {
+            file.close();
+        }
+        mBuffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (mBuffer.capacity() < SessionLogWriter.HEADER_SIZE
+                || mBuffer.getInt(0) != SessionLogWriter.MAGIC
+                || mBuffer.getShort(4) != SessionLogWriter.VERSION
+                || mBuffer.getShort(6) != SessionLogWriter.RECORD_SIZE) {
+            throw new IOException(_file + " is not a session log");
+        }
+        mStartMillis = mBuffer.getLong(8);
+        //a partly written record at the end is left out
+        mRecordCount = (mBuffer.capacity() - SessionLogWriter.HEADER_SIZE) / SessionLogWriter.RECORD_SIZE;
+    }
+
+    /**
+     * @param _record int. The number of a record.
+     * @return int. The position of the record in the file
+     */
+    private int offset(int _record) {
+        if (_record < 0 || _record >= mRecordCount) {
+            throw new IndexOutOfBoundsException("Record " + _record + " of " + mRecordCount);
+        }
+        return SessionLogWriter.HEADER_SIZE + _record * SessionLogWriter.RECORD_SIZE;
+    }
+
+    /**
+     * @param _timestampNanos long. A time in nanoseconds since the start of the log.
+     * @return int. The first record at or after _timestampNanos, or {@link #getRecordCount()} if
+     * every record is before it
+     */
+    public int findRecord(long _timestampNanos) {
+        int low = 0;
+        int high = mRecordCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (getTimestampNanos(middle) < _timestampNanos) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Writes every record as CSV, one line per record with a line of column names first. Unpitched
+     * frames have a hertz of {@link SessionLogWriter#NO_PITCH} and a note index of -1.
+     *
+     * @param _writer {@link Writer}. Where the CSV is written. It is not closed.
+     * @throws IOException if the writer fails
+     */
+    public void writeCsv(Writer _writer) throws IOException {
+        _writer.write("timestamp_ns,hertz,probability,cents,note_index\n");
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < mRecordCount; i++) {
+            line.setLength(0);
+            line.append(getTimestampNanos(i)).append(',')
+                    .append(getHertz(i)).append(',')
+                    .append(getProbability(i)).append(',')
+                    .append(getCents(i)).append(',')
+                    .append(getNoteIndex(i)).append('\n');
+            _writer.append(line);
+        }
+        _writer.flush();
+    }
+
+    /**
+     * Getters and Setters
+     */
+
+    /**
+     * @return long. The time the log was created, in epoch milliseconds. Every timestamp is relative
+     * to it.
+     */
+    public long getStartMillis() {
+        return mStartMillis;
+    }
+
+    public int getRecordCount() {
+        return mRecordCount;
+    }
+
+    /**
+     * @param _record int. The number of a record.
+     * @return long. The time of the record in nanoseconds since the start of the log
+     */
+    public long getTimestampNanos(int _record) {
+        return mBuffer.getLong(offset(_record));
+    }
+
+    public float getHertz(int _record) {
+        return mBuffer.getFloat(offset(_record) + 8);
+    }
+
+    public float getProbability(int _record) {
+        return mBuffer.getFloat(offset(_record) + 12);
+    }
+
+    public float getCents(int _record) {
+        return mBuffer.getFloat(offset(_record) + 16);
+    }
+
+    public int getNoteIndex(int _record) {
+        return mBuffer.getInt(offset(_record) + 20);
+    }
+}
@@ -0,0 +1,306 @@
+package com.fraserjohnstone.tuner.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Appends every pitch frame of a tuning session to a compact binary log, so long sessions can be
+ * kept and analysed later with {@link SessionLogReader}.
+ * <p>
+ * The log is a {@link #HEADER_SIZE} byte header followed by fixed size records, all little endian:
+ * <pre>
+ * header: int magic, short version, short record size, long start of the log (epoch milliseconds)
+ * record: long timestamp (nanoseconds since the start), float hertz, float probability,
+ *         float cents, int note index
+ * </pre>
+ * Records are only ever added to the end, so a log can be opened again and added to, and a partly
+ * written record at the end (left by the app being killed) is cut off when it is.
+ * <p>
+ * The audio thread (the single producer) adds records with {@link #append}, which writes them into
+ * a preallocated ring buffer and never blocks or allocates. If the buffer fills up, new records are
+ * dropped and counted. A background thread writes the buffer to the file every
+ * {@link #FLUSH_INTERVAL_NANOS}, or sooner once the buffer is half full, so the audio thread never
+ * waits for the file.
+ */
+public class SessionLogWriter {
+
+    //first four bytes of every session log, "TUNL"
+    static final int MAGIC = 0x54554E4C;
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 24;
+
+    //value written as the hertz of a frame in which no pitch was detected
+    public static final float NO_PITCH = -1;
+
+    //longest time a record waits in the buffer before it is written to the file
+    private static final long FLUSH_INTERVAL_NANOS = 1000000000L;
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    private final File mFile;
+    private final RandomAccessFile mRandomAccessFile;
+    private final FileChannel mChannel;
+    private final long mStartMillis;
+    //added to System.nanoTime() to give the nanoseconds since the start of the log
+    private final long mTimestampOffsetNanos;
+
+    private final int mCapacity;
+    private final int mMask;
+    //record storage, written by the producer
+    private final ByteBuffer mRing;
+    //view of mRing used to write it to the file, only used by drain()
+    private final ByteBuffer mRingView;
+
+    //index of the next record to be written. Only written by the producer.
+    private final AtomicLong mHead = new AtomicLong();
+    //index of the next record to be written to the file. Only written by drain().
+    private final AtomicLong mTail = new AtomicLong();
+    //number of records dropped because the buffer was full. Only written by the producer.
+    private final AtomicLong mDroppedRecords = new AtomicLong();
+
+    //producer side state
+    private long mCachedTail;
+    //tail when the background thread was last woken early, so it is only woken once each time the
+    //buffer is half full
+    private long mWokenAtTail = -1;
+
+    private final Thread mFlusher;
+    private volatile boolean mClosed = false;
+    //first error writing to the file, after which nothing more is written
+    private volatile IOException mError;
+
+    /**
+     * Class constructor. Opens _file, creating it if it does not exist and adding to the end of it
+     * if it does, and starts the background thread which writes to it.
+     *
+     * @param _file     {@link File}. The log to write.
+     * @param _capacity int. The maximum number of records held before they are written to the file.
+     *                  Rounded up to a power of two.
+     * @throws IOException if the file cannot be opened, or exists and is not a session log
+     */
+    public SessionLogWriter(File _file, int _capacity) throws IOException {
+        int capacity = 2;
+        while (capacity < _capacity) {
+            capacity <<= 1;
+        }
+        mCapacity = capacity;
+        mMask = capacity - 1;
+        mRing = ByteBuffer.allocateDirect(capacity * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        mRingView = mRing.duplicate();
+
+        mFile = _file;
+        mRandomAccessFile = new RandomAccessFile(_file, "rw");
+        mChannel = mRandomAccessFile.getChannel();
+        try {
+            mStartMillis = openForAppend();
+        } catch (IOException e) {
+            mRandomAccessFile.close();
+            throw e;
+        }
+        mTimestampOffsetNanos = (System.currentTimeMillis() - mStartMillis) * NANOS_PER_MILLI
+                - System.nanoTime();
+
+        mFlusher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!mClosed) {
+                    LockSupport.parkNanos(this, FLUSH_INTERVAL_NANOS);
+                    drain();
+                }
+            }
+        }, "Session Log Writer");
+        mFlusher.setDaemon(true);
+        mFlusher.start();
+    }
+
+    /**
+     * Writes the header of an empty file, or checks the header of an existing one, and moves to the
+     * end of the last whole record
+     *
+     * @return long. The start of the log in epoch milliseconds.
+     * @throws IOException if the file cannot be read or written, or is not a session log
+     */
+    private long openForAppend() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        long size = mChannel.size();
+        if (size == 0) {
+            long startMillis = System.currentTimeMillis();
+            header.putInt(MAGIC).putShort(VERSION).putShort((short) RECORD_SIZE).putLong(startMillis);
+            header.flip();
+            writeFully(header, 0);
+            mChannel.position(HEADER_SIZE);
+            return startMillis;
+        }
+
+        while (header.hasRemaining() && mChannel.read(header, header.position()) >= 0) {
+            //keep reading until the header is full or the file ends
+        }
+        header.flip();
+        if (header.remaining() < HEADER_SIZE || header.getInt(0) != MAGIC
+                || header.getShort(4) != VERSION || header.getShort(6) != RECORD_SIZE) {
+            throw new IOException(mFile + " is not a session log");
+        }
+        long end = HEADER_SIZE + (size - HEADER_SIZE) / RECORD_SIZE * RECORD_SIZE;
+        mChannel.truncate(end);
+        mChannel.position(end);
+        return header.getLong(8);
+    }
+
+    /**
+     * Adds a record to the buffer. Must only be called from the producer thread.
+     *
+     * @param _timestampNanos long. The time of the frame, see {@link System#nanoTime()}.
+     * @param _hertz          float. The detected pitch, or {@link #NO_PITCH}.
+     * @param _probability    float. The probability reported by the pitch detector.
+     * @param _cents          float. The signed offset from the closest note, positive when sharp.
+     * @param _noteIndex      int. The index of the closest note in its {@link ChromaticScale}, or -1.
+     * @return boolean. False if the buffer was full and the record was dropped
+     */
+    public boolean append(long _timestampNanos, float _hertz, float _probability, float _cents,
+                          int _noteIndex) {
+        long head = mHead.get();
+
+        if (head - mCachedTail >= mCapacity / 2) {
+            mCachedTail = mTail.get();
+            if (head - mCachedTail >= mCapacity) {
+                mDroppedRecords.lazySet(mDroppedRecords.get() + 1);
+                return false;
+            }
+            if (head - mCachedTail >= mCapacity / 2 && mCachedTail != mWokenAtTail) {
+                //write the buffer out now rather than at the end of the interval
+                mWokenAtTail = mCachedTail;
+                LockSupport.unpark(mFlusher);
+            }
+        }
+
+        int offset = (int) (head & mMask) * RECORD_SIZE;
+        mRing.putLong(offset, _timestampNanos + mTimestampOffsetNanos);
+        mRing.putFloat(offset + 8, _hertz);
+        mRing.putFloat(offset + 12, _probability);
+        mRing.putFloat(offset + 16, _cents);
+        mRing.putInt(offset + 20, _noteIndex);
+
+        //publish the record to the background thread
+        mHead.lazySet(head + 1);
+        return true;
+    }
+
+    /**
+     * Writes every record in the buffer to the file. Called by the background thread, and by
+     * {@link #flush()} and {@link #close()} from any other thread.
+     */
+    private synchronized void drain() {
+        if (mError != null) {
+            return;
+        }
+        long head = mHead.get();
+        long tail = mTail.get();
+        try {
+            while (tail < head) {
+                int slot = (int) (tail & mMask);
+                //up to the end of the ring, and the rest from its start next time round
+                int records = (int) Math.min(head - tail, mCapacity - slot);
+                mRingView.limit((slot + records) * RECORD_SIZE);
+                mRingView.position(slot * RECORD_SIZE);
+                writeFully(mRingView, -1);
+                tail += records;
+                //release the records back to the producer
+                mTail.lazySet(tail);
+            }
+        } catch (IOException e) {
+            mError = e;
+        }
+    }
+
+    /**
+     * @param _buffer   {@link ByteBuffer}. The bytes to write.
+     * @param _position long. Where to write them in the file, or -1 for the current position.
+     * @throws IOException if the file cannot be written
+     */
+    private void writeFully(ByteBuffer _buffer, long _position) throws IOException {
+        while (_buffer.hasRemaining()) {
+            if (_position < 0) {
+                mChannel.write(_buffer);
+            } else {
+                _position += mChannel.write(_buffer, _position);
+            }
+        }
+    }
+
+    /**
+     * Writes every record added so far to the file and waits for the file to be stored, for example
+     * before the app is paused. May be called from any thread.
+     *
+     * @throws IOException if the file could not be written
+     */
+    public void flush() throws IOException {
+        drain();
+        if (mError != null) {
+            throw mError;
+        }
+        mChannel.force(false);
+    }
+
+    /**
+     * Stops the background thread, writes every record added so far and closes the file. No more
+     * records may be added. May be called from any thread.
+     *
+     * @throws IOException if the file could not be written
+     */
+    public void close() throws IOException {
+        mClosed = true;
+        LockSupport.unpark(mFlusher);
+        try {
+            mFlusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            flush();
+        } finally {
+            mRandomAccessFile.close();
+        }
+    }
+
+    /**
+     * Getters and Setters
+     */
+
+    public File getFile() {
+        return mFile;
+    }
+
+    public long getStartMillis() {
+        return mStartMillis;
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    public long getDroppedRecords() {
+        return mDroppedRecords.get();
+    }
+
+    /**
+     * @return long. The number of records written to the file since it was opened. Records still in
+     * the buffer are not counted.
+     */
+    public long getRecordsWritten() {
+        return mTail.get();
+    }
+
+    /**
+     * @return IOException. The error which stopped records being written to the file, or null if
+     * there has been none
+     */
+    public IOException getError() {
+        return mError;
+    }
+}
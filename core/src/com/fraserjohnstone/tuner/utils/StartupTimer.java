@@ -0,0 +1,71 @@
+package com.fraserjohnstone.tuner.utils;
+
+import com.badlogic.gdx.Gdx;
+
+/**
+ * Measures how long the application takes to start. {@link #start()} is called at the top of
+ * {@link com.fraserjohnstone.tuner.Tuner#create()} and every {@link Milestone} after that records
+ * the time since, the first time it is reached. Each milestone is logged as it is reached, and the
+ * times can be read back with {@link #getMillis(Milestone)}.
+ */
+public class StartupTimer {
+
+    private static final String LOG_TAG = "Startup";
+
+    /**
+     * The points in start up which are timed
+     */
+    public enum Milestone {
+        //the first frame of the splash screen, before its textures are ready
+        FIRST_FRAME,
+        //the first frame in which the splash screen's images were drawn
+        SPLASH_DRAWN,
+        //the asset manager has finished loading the tuner's assets
+        ASSETS_LOADED,
+        //the detector for the device has been chosen, by the calibration or from a saved choice.
+        //Start up does not wait for it, so it may come after TUNER_SHOWN.
+        DETECTOR_CHOSEN,
+        //TunerScreen.show() has finished
+        TUNER_SHOWN
+    }
+
+    private static long sStartNanos;
+    private static final long[] sMilestoneNanos = new long[Milestone.values().length];
+
+    static {
+        start();
+    }
+
+    /**
+     * Starts timing, forgetting any milestones from a previous start
+     */
+    public static void start() {
+        sStartNanos = System.nanoTime();
+        for (int i = 0; i < sMilestoneNanos.length; i++) {
+            sMilestoneNanos[i] = -1;
+        }
+    }
+
+    /**
+     * Records the time taken to reach _milestone, if it has not been reached already
+     *
+     * @param _milestone {@link Milestone}
+     */
+    public static void mark(Milestone _milestone) {
+        if (sMilestoneNanos[_milestone.ordinal()] >= 0) {
+            return;
+        }
+        sMilestoneNanos[_milestone.ordinal()] = System.nanoTime() - sStartNanos;
+        Gdx.app.log(LOG_TAG, _milestone + ": " + getMillis(_milestone) + " ms");
+    }
+
+    /**
+     * @param _milestone {@link Milestone}
+     * @return double. The milliseconds from {@link #start()} to _milestone, or -1 if it has not
+     * been reached
+     */
+    public static double getMillis(Milestone _milestone) {
+        long nanos = sMilestoneNanos[_milestone.ordinal()];
+        return nanos < 0 ? -1 : nanos / 1e6;
+    }
+}
@@ -0,0 +1,209 @@
+package com.fraserjohnstone.tuner.utils;
+
+import java.util.Arrays;
+
+/**
+ * A temperament divides the octave into steps and says how far above the tonic, in cents, each
+ * step lies. A {@link ChromaticScale} is generated from a temperament and a reference pitch for A4.
+ * <p>
+ * The twelve note temperaments (equal, just, Pythagorean, quarter comma meantone and Werckmeister
+ * III) are tuned from a tonic {@link PitchClass}; equal temperament sounds the same from any tonic.
+ * {@link #edo(int)} gives an equal division of the octave into any number of steps, whose first
+ * step is C.
+ * <p>
+ * Instances are immutable, and two temperaments with the same name, tonic and steps are equal, so
+ * they can be used to look up a cached {@link ChromaticScale}.
+ */
+public class Temperament {
+
+    private static final int NOTES_PER_OCTAVE = 12;
+    private static final double CENTS_PER_OCTAVE = 1200;
+
+    //5 limit just intonation, with the minor seventh at 9/5
+    private static final double[] JUST_RATIOS = new double[]{
+            1, 16.0 / 15, 9.0 / 8, 6.0 / 5, 5.0 / 4, 4.0 / 3, 45.0 / 32, 3.0 / 2, 8.0 / 5, 5.0 / 3, 9.0 / 5, 15.0 / 8
+    };
+    //pure fifths from a fourth below the tonic to five fifths above it
+    private static final double[] PYTHAGOREAN_RATIOS = new double[]{
+            1, 256.0 / 243, 9.0 / 8, 32.0 / 27, 81.0 / 64, 4.0 / 3, 729.0 / 512, 3.0 / 2, 128.0 / 81, 27.0 / 16,
+            16.0 / 9, 243.0 / 128
+    };
+    //Werckmeister III in cents above C, as Werckmeister gave it
+    private static final double[] WERCKMEISTER_III_CENTS = new double[]{
+            0, 90.225, 192.180, 294.135, 390.225, 498.045, 588.270, 696.090, 792.180, 888.270, 996.090, 1092.180
+    };
+    //the fifth of quarter comma meantone, a quarter of a pure major third of two octaves
+    private static final double MEANTONE_FIFTH_CENTS = CENTS_PER_OCTAVE * log2(5) / 4;
+    //the fifths below the tonic in meantone, leaving eight fifths above it (Eb to G# from C)
+    private static final int MEANTONE_FIFTHS_BELOW = 3;
+
+    public static final Temperament EQUAL = equal();
+
+    private final String mName;
+    private final int mTonic;
+    private final double[] mCentsAboveTonic;
+
+    /**
+     * Class constructor
+     *
+     * @param _name            String. The name of the temperament.
+     * @param _tonic           int. The step the temperament is tuned from, where 0 is C.
+     * @param _centsAboveTonic double[]. The cents above the tonic of each step, starting with the
+     *                         tonic itself at 0.
+     */
+    private Temperament(String _name, int _tonic, double[] _centsAboveTonic) {
+        mName = _name;
+        mTonic = _tonic;
+        mCentsAboveTonic = _centsAboveTonic;
+    }
+
+    /**
+     * @return {@link Temperament}. Twelve tone equal temperament
+     */
+    private static Temperament equal() {
+        double[] cents = new double[NOTES_PER_OCTAVE];
+        for (int i = 0; i < cents.length; i++) {
+            cents[i] = i * CENTS_PER_OCTAVE / NOTES_PER_OCTAVE;
+        }
+        return new Temperament("Equal", 0, cents);
+    }
+
+    /**
+     * @param _tonic {@link PitchClass}. The note the intervals are pure from.
+     * @return {@link Temperament}. 5 limit just intonation
+     */
+    public static Temperament just(PitchClass _tonic) {
+        return new Temperament("Just", _tonic.ordinal(), ratiosToCents(JUST_RATIOS));
+    }
+
+    /**
+     * @param _tonic {@link PitchClass}. The note the fifths are pure from.
+     * @return {@link Temperament}. Pythagorean tuning
+     */
+    public static Temperament pythagorean(PitchClass _tonic) {
+        return new Temperament("Pythagorean", _tonic.ordinal(), ratiosToCents(PYTHAGOREAN_RATIOS));
+    }
+
+    /**
+     * @param _tonic {@link PitchClass}. The note the chain of fifths is centred on.
+     * @return {@link Temperament}. Quarter comma meantone, with pure major thirds
+     */
+    public static Temperament meantone(PitchClass _tonic) {
+        double[] cents = new double[NOTES_PER_OCTAVE];
+        for (int fifths = -MEANTONE_FIFTHS_BELOW; fifths < NOTES_PER_OCTAVE - MEANTONE_FIFTHS_BELOW; fifths++) {
+            int step = ((fifths * 7) % NOTES_PER_OCTAVE + NOTES_PER_OCTAVE) % NOTES_PER_OCTAVE;
+            double value = (fifths * MEANTONE_FIFTH_CENTS) % CENTS_PER_OCTAVE;
+            cents[step] = value < 0 ? value + CENTS_PER_OCTAVE : value;
+        }
+        return new Temperament("Meantone", _tonic.ordinal(), cents);
+    }
+
+    /**
+     * @param _tonic {@link PitchClass}. The note that takes the place of C.
+     * @return {@link Temperament}. Werckmeister III, transposed to _tonic
+     */
+    public static Temperament werckmeister(PitchClass _tonic) {
+        return new Temperament("Werckmeister III", _tonic.ordinal(), WERCKMEISTER_III_CENTS.clone());
+    }
+
+    /**
+     * @param _divisions int. The number of equal steps in an octave. Must be at least 1.
+     * @return {@link Temperament}. The equal division of the octave into _divisions steps
+     */
+    public static Temperament edo(int _divisions) {
+        if (_divisions < 1) {
+            throw new IllegalArgumentException("An octave needs at least one step: " + _divisions);
+        }
+        if (_divisions == NOTES_PER_OCTAVE) {
+            return EQUAL;
+        }
+        double[] cents = new double[_divisions];
+        for (int i = 0; i < cents.length; i++) {
+            cents[i] = i * CENTS_PER_OCTAVE / _divisions;
+        }
+        return new Temperament(_divisions + "-EDO", 0, cents);
+    }
+
+    /**
+     * @param _step int. A step of the octave, counted from C.
+     * @return double. The cents of _step above C. Steps below the tonic are tuned from the tonic of
+     * the octave below, so the result grows with _step.
+     */
+    public double getCentsAboveC(int _step) {
+        int steps = mCentsAboveTonic.length;
+        double cents = mCentsAboveTonic[(_step - mTonic + steps) % steps] + mTonic * CENTS_PER_OCTAVE / steps;
+        return _step < mTonic ? cents - CENTS_PER_OCTAVE : cents;
+    }
+
+    /**
+     * @param _step int. A step of the octave, counted from C.
+     * @return {@link PitchClass}. The twelve tone note closest to _step
+     */
+    public PitchClass getPitchClass(int _step) {
+        int index = (int) Math.round(getCentsAboveC(_step) * NOTES_PER_OCTAVE / CENTS_PER_OCTAVE);
+        return PitchClass.fromIndex((index % NOTES_PER_OCTAVE + NOTES_PER_OCTAVE) % NOTES_PER_OCTAVE);
+    }
+
+    private static double[] ratiosToCents(double[] _ratios) {
+        double[] cents = new double[_ratios.length];
+        for (int i = 0; i < _ratios.length; i++) {
+            cents[i] = CENTS_PER_OCTAVE * log2(_ratios[i]);
+        }
+        return cents;
+    }
+
+    private static double log2(double _value) {
+        return Math.log(_value) / Math.log(2);
+    }
+
+    @Override
+    public boolean equals(Object _other) {
+        if (this == _other) {
+            return true;
+        }
+        if (!(_other instanceof Temperament)) {
+            return false;
+        }
+        Temperament other = (Temperament) _other;
+        return mTonic == other.mTonic && mName.equals(other.mName)
+                && Arrays.equals(mCentsAboveTonic, other.mCentsAboveTonic);
+    }
+
+    @Override
+    public int hashCode() {
+        return (mName.hashCode() * 31 + mTonic) * 31 + Arrays.hashCode(mCentsAboveTonic);
+    }
+
+    /**
+     * @return String. The name of the temperament and its tonic, for example "Just (D)"
+     */
+    @Override
+    public String toString() {
+        if (mCentsAboveTonic.length != NOTES_PER_OCTAVE) {
+            return mName;
+        }
+        return mName + " (" + PitchClass.fromIndex(mTonic) + ")";
+    }
+
+    /**
+     * Getters and Setters
+     */
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * @return int. The number of steps in an octave
+     */
+    public int getStepsPerOctave() {
+        return mCentsAboveTonic.length;
+    }
+
+    /**
+     * @return int. The step the temperament is tuned from, where 0 is C
+     */
+    public int getTonic() {
+        return mTonic;
+    }
+}
@@ -0,0 +1,127 @@
+package com.fraserjohnstone.tuner.headless;
+
+import com.fraserjohnstone.tuner.audio.DspKernels;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Command line tool which runs the tuner's pitch detection over every WAV file in a directory,
+ * spreading the files across a thread pool. A summary of each file is written as CSV and the overall
+ * throughput is reported at the end.
+ * <p>
+ * Usage: {@code BatchAnalyser <wav directory> [output csv] [threads]}. The summary is written to
+ * standard output if no output file is given, and one thread per available processor is used if
+ * the number of threads is not given.
+ */
+public class BatchAnalyser {
+
+    /**
+     * @param _args String[]. See the class documentation.
+     */
+    public static void main(String[] _args) throws IOException, InterruptedException {
+        if (_args.length < 1) {
+            System.err.println("Usage: BatchAnalyser <wav directory> [output csv] [threads]");
+            System.exit(1);
+        }
+
+        File directory = new File(_args[0]);
+        if (!directory.isDirectory()) {
+            System.err.println(directory + " is not a directory");
+            System.exit(1);
+        }
+        int threads = _args.length > 2
+                ? Integer.parseInt(_args[2])
+                : Runtime.getRuntime().availableProcessors();
+
+        List<File> files = new ArrayList<File>();
+        findWavFiles(directory, files);
+
+        PrintWriter out = _args.length > 1
+                ? new PrintWriter(new OutputStreamWriter(new FileOutputStream(_args[1]), "UTF-8"))
+                : new PrintWriter(System.out);
+        try {
+            run(files, threads, out);
+        } finally {
+            out.flush();
+            if (_args.length > 1) {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Analyses the files on a pool of _threads threads and writes the summaries to _out in the same
+     * order as _files.
+     *
+     * @param _files   List. The files to analyse.
+     * @param _threads int. The number of analysis threads.
+     * @param _out     {@link PrintWriter}. Where the CSV summary is written.
+     */
+    private static void run(List<File> _files, int _threads, PrintWriter _out) throws InterruptedException {
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(_threads);
+        List<Future<FileSummary>> results = new ArrayList<Future<FileSummary>>();
+        for (int i = 0; i < _files.size(); i++) {
+            results.add(pool.submit(new FileAnalysis(_files.get(i))));
+        }
+        pool.shutdown();
+
+        _out.println(FileSummary.CSV_HEADER);
+        int failed = 0;
+        double audioSeconds = 0;
+        for (int i = 0; i < results.size(); i++) {
+            FileSummary summary;
+            try {
+                summary = results.get(i).get();
+            } catch (ExecutionException e) {
+                summary = new FileSummary(_files.get(i).getPath());
+                summary.setError("analysis failed: " + e.getCause());
+            }
+            if (summary.isFailed()) {
+                failed++;
+            }
+            audioSeconds += summary.getAudioSeconds();
+            _out.println(summary.toCsvRow());
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        System.err.println(String.format(Locale.US,
+                "Analysed %d files (%d failed), %.1f s of audio in %.2f s on %d threads with %s kernels: "
+                        + "%.1f files/s, %.1f audio-seconds/s",
+                _files.size(), failed, audioSeconds, elapsedSeconds, _threads, DspKernels.getDefault(),
+                _files.size() / elapsedSeconds, audioSeconds / elapsedSeconds));
+    }
+
+    /**
+     * Adds every .wav file in _directory and its sub directories to _files, in name order.
+     *
+     * @param _directory {@link File}. The directory to search.
+     * @param _files     List. Receives the files found.
+     */
+    private static void findWavFiles(File _directory, List<File> _files) {
+        File[] children = _directory.listFiles();
+        if (children == null) {
+            return;
+        }
+        Arrays.sort(children);
+        for (int i = 0; i < children.length; i++) {
+            if (children[i].isDirectory()) {
+                findWavFiles(children[i], _files);
+            } else if (children[i].getName().toLowerCase(Locale.US).endsWith(".wav")) {
+                _files.add(children[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.fraserjohnstone.tuner.headless;
+
+import com.fraserjohnstone.tuner.audio.AnalysisSettings;
+import com.fraserjohnstone.tuner.utils.ChromaticScale;
+import com.fraserjohnstone.tuner.utils.InstrumentProfile;
+import com.fraserjohnstone.tuner.utils.NoteQuantizer;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+import be.tarsos.dsp.AudioDispatcher;
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.pitch.PitchDetectionHandler;
+import be.tarsos.dsp.pitch.PitchDetectionResult;
+
+/**
+ * Runs the tuner's pitch detection over a single audio file on the calling thread. The file is
+ * analysed by the chain of processors the tuner uses with {@link InstrumentProfile#CHROMATIC}, its
+ * profile when none has been chosen, built by
+ * {@link AnalysisSettings#createPitchChain(float, InstrumentProfile, PitchDetectionHandler)}: the
+ * same buffer, decimation, pitch detector and refinement, so each pitch is the one the tuner would
+ * be given for the same sound. The tuner's noise gate and smoothing are left out: buffers quieter
+ * than {@link AnalysisSettings#SILENCE_THRESHOLD} are not counted as pitched, and the summary takes
+ * the median pitch rather than a smoothed one.
+ */
+class FileAnalysis implements Callable<FileSummary> {
+
+    private final File mFile;
+
+    //pitch of every pitched buffer, grown as needed
+    private float[] mPitches = new float[1024];
+    private int mPitchedFrames;
+    private int mFrames;
+
+    /**
+     * Class constructor
+     *
+     * @param _file {@link File}. The file to analyse.
+     */
+    FileAnalysis(File _file) {
+        mFile = _file;
+    }
+
+    @Override
+    public FileSummary call() {
+        FileSummary summary = new FileSummary(mFile.getPath());
+
+        WavFileAudioSource source;
+        try {
+            source = new WavFileAudioSource(mFile);
+        } catch (Exception e) {
+            summary.setError("unreadable: " + e.getMessage());
+            return summary;
+        }
+
+        float sampleRate = source.getSampleRate();
+        AudioDispatcher dispatcher = source.createDispatcher((int) sampleRate,
+                AnalysisSettings.getBufferSize(InstrumentProfile.CHROMATIC, sampleRate),
+                AnalysisSettings.getOverlap(InstrumentProfile.CHROMATIC, sampleRate));
+        if (dispatcher == null) {
+            summary.setError("unsupported audio format");
+            return summary;
+        }
+
+        AudioProcessor[] chain = AnalysisSettings.createPitchChain(sampleRate, InstrumentProfile.CHROMATIC,
+                new PitchDetectionHandler() {
+                    @Override
+                    public void handlePitch(PitchDetectionResult _result, AudioEvent _audioEvent) {
+                        mFrames++;
+                        double rms = AudioEvent.calculateRMS(_audioEvent.getFloatBuffer());
+                        if (_result.getPitch() != -1 && !AnalysisSettings.isSilence(rms)) {
+                            addPitch(_result.getPitch());
+                        }
+                    }
+                });
+        for (int i = 0; i < chain.length; i++) {
+            dispatcher.addAudioProcessor(chain[i]);
+        }
+        dispatcher.run();
+
+        summary.set(sampleRate, dispatcher.secondsProcessed(), mFrames, mPitches,
+                mPitchedFrames, new NoteQuantizer(new ChromaticScale()));
+        return summary;
+    }
+
+    /**
+     * @param _pitch float. The pitch of a pitched buffer in hertz
+     */
+    private void addPitch(float _pitch) {
+        if (mPitchedFrames == mPitches.length) {
+            mPitches = Arrays.copyOf(mPitches, mPitches.length * 2);
+        }
+        mPitches[mPitchedFrames++] = _pitch;
+    }
+}
@@ -0,0 +1,93 @@
+package com.fraserjohnstone.tuner.headless;
+
+import com.fraserjohnstone.tuner.utils.NoteQuantizer;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * The result of analysing one audio file: how much audio it contained, how many buffers had a pitch
+ * and the note and cents of the median detected pitch.
+ */
+class FileSummary {
+
+    public static final String CSV_HEADER =
+            "file,sample_rate,audio_seconds,frames,pitched_frames,median_hz,note,octave,cents,error";
+
+    private final String mPath;
+    private float mSampleRate;
+    private double mAudioSeconds;
+    private int mFrames;
+    private int mPitchedFrames;
+    private double mMedianHertz = -1;
+    private String mNote = "";
+    private int mOctave = -1;
+    private double mCents;
+    private String mError = "";
+
+    /**
+     * Class constructor
+     *
+     * @param _path String. The path of the analysed file.
+     */
+    FileSummary(String _path) {
+        mPath = _path;
+    }
+
+    /**
+     * Fills in the summary from the pitches detected in the file.
+     *
+     * @param _sampleRate    float. The sample rate of the file
+     * @param _audioSeconds  double. The length of audio analysed
+     * @param _frames        int. The number of buffers analysed
+     * @param _pitches       float[]. The pitch of each pitched buffer
+     * @param _pitchedFrames int. The number of values used in _pitches
+     * @param _quantizer     {@link NoteQuantizer}. Used to find the note of the median pitch
+     */
+    void set(float _sampleRate, double _audioSeconds, int _frames, float[] _pitches, int _pitchedFrames,
+             NoteQuantizer _quantizer) {
+        mSampleRate = _sampleRate;
+        mAudioSeconds = _audioSeconds;
+        mFrames = _frames;
+        mPitchedFrames = _pitchedFrames;
+
+        if (_pitchedFrames > 0) {
+            float[] sorted = Arrays.copyOf(_pitches, _pitchedFrames);
+            Arrays.sort(sorted);
+            mMedianHertz = sorted[_pitchedFrames / 2];
+            if (_quantizer.quantize(mMedianHertz) >= 0) {
+                mNote = _quantizer.getPitchClass().toString();
+                mOctave = _quantizer.getOctave();
+                mCents = _quantizer.getCents();
+            }
+        }
+    }
+
+    /**
+     * @param _error String. Why the file could not be analysed
+     */
+    void setError(String _error) {
+        mError = _error.replace(',', ';');
+    }
+
+    /**
+     * @return String. This summary as a row matching {@link #CSV_HEADER}
+     */
+    String toCsvRow() {
+        return String.format(Locale.US, "%s,%.0f,%.3f,%d,%d,%.3f,%s,%d,%.2f,%s",
+                mPath.replace(',', '_'), mSampleRate, mAudioSeconds, mFrames, mPitchedFrames,
+                mMedianHertz, mNote, mOctave, mCents, mError);
+    }
+
+    /**
+     * Getters and Setters
+     */
+
+    public boolean isFailed() {
+        return mError.length() > 0;
+    }
+
+    public double getAudioSeconds() {
+        return mAudioSeconds;
+    }
+}
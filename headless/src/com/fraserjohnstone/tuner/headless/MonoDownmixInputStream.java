@@ -0,0 +1,75 @@
+package com.fraserjohnstone.tuner.headless;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads signed 16 bit little endian PCM with any number of interleaved channels and returns it as
+ * a single channel by averaging the channels of each frame.
+ */
+class MonoDownmixInputStream extends InputStream {
+
+    private final InputStream mSource;
+    private final int mChannels;
+    private final byte[] mFrame;
+
+    /**
+     * Class constructor
+     *
+     * @param _source   {@link InputStream}. Signed 16 bit little endian PCM.
+     * @param _channels int. The number of interleaved channels in _source.
+     */
+    MonoDownmixInputStream(InputStream _source, int _channels) {
+        mSource = _source;
+        mChannels = _channels;
+        mFrame = new byte[_channels * 2];
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+    }
+
+    /**
+     * Reads whole mono samples only, so _len is rounded down to an even number of bytes.
+     */
+    @Override
+    public int read(byte[] _buffer, int _offset, int _len) throws IOException {
+        int written = 0;
+        while (written + 2 <= _len) {
+            if (!readFrame()) {
+                break;
+            }
+            int sum = 0;
+            for (int c = 0; c < mChannels; c++) {
+                sum += (short) ((mFrame[c * 2] & 0xff) | (mFrame[c * 2 + 1] << 8));
+            }
+            int sample = sum / mChannels;
+            _buffer[_offset + written] = (byte) sample;
+            _buffer[_offset + written + 1] = (byte) (sample >> 8);
+            written += 2;
+        }
+        return written == 0 && _len >= 2 ? -1 : written;
+    }
+
+    /**
+     * @return boolean. True if a whole frame was read into mFrame, false at the end of the stream
+     */
+    private boolean readFrame() throws IOException {
+        int read = 0;
+        while (read < mFrame.length) {
+            int count = mSource.read(mFrame, read, mFrame.length - read);
+            if (count == -1) {
+                return false;
+            }
+            read += count;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mSource.close();
+    }
+}
@@ -0,0 +1,44 @@
+package com.fraserjohnstone.tuner.headless;
+
+import com.fraserjohnstone.tuner.utils.SessionLogReader;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Command line tool which converts a session log written by the tuner (see
+ * {@link com.fraserjohnstone.tuner.utils.SessionLogWriter}) to CSV.
+ * <p>
+ * Usage: {@code SessionLogConverter <session log> [output csv]}. The CSV is written to standard
+ * output if no output file is given.
+ */
+public class SessionLogConverter {
+
+    /**
+     * @param _args String[]. See the class documentation.
+     */
+    public static void main(String[] _args) throws IOException {
+        if (_args.length < 1) {
+            System.err.println("Usage: SessionLogConverter <session log> [output csv]");
+            System.exit(1);
+        }
+
+        SessionLogReader reader = new SessionLogReader(new File(_args[0]));
+        Writer out = new BufferedWriter(_args.length > 1
+                ? new OutputStreamWriter(new FileOutputStream(_args[1]), "UTF-8")
+                : new OutputStreamWriter(System.out, "UTF-8"));
+        try {
+            reader.writeCsv(out);
+        } finally {
+            out.flush();
+            if (_args.length > 1) {
+                out.close();
+            }
+        }
+        System.err.println(reader.getRecordCount() + " records converted");
+    }
+}
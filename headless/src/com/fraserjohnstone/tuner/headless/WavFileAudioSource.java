@@ -0,0 +1,75 @@
+package com.fraserjohnstone.tuner.headless;
+
+import com.fraserjohnstone.tuner.audio.AudioSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import be.tarsos.dsp.AudioDispatcher;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+import be.tarsos.dsp.io.UniversalAudioInputStream;
+
+/**
+ * An {@link AudioSource} which reads a WAV file using javax.sound. Any PCM WAV file is converted
+ * to signed 16 bit mono at its own sample rate, so the sample rate passed to
+ * {@link #createDispatcher(int, int, int)} is ignored and {@link #getSampleRate()} should be used
+ * instead.
+ */
+public class WavFileAudioSource implements AudioSource {
+
+    private final File mFile;
+    private final float mSampleRate;
+
+    /**
+     * Class constructor
+     *
+     * @param _file {@link File}. The WAV file to read.
+     * @throws IOException                   if the file can not be read
+     * @throws UnsupportedAudioFileException if the file is not a supported audio file
+     */
+    public WavFileAudioSource(File _file) throws IOException, UnsupportedAudioFileException {
+        mFile = _file;
+        mSampleRate = AudioSystem.getAudioFileFormat(_file).getFormat().getSampleRate();
+    }
+
+    @Override
+    public AudioDispatcher createDispatcher(int _sampleRate, int _bufferSize, int _overlap) {
+        try {
+            AudioInputStream fileStream = AudioSystem.getAudioInputStream(mFile);
+            int channels = fileStream.getFormat().getChannels();
+            AudioFormat pcmFormat = new AudioFormat(mSampleRate, 16, channels, true, false);
+            InputStream pcm = AudioSystem.getAudioInputStream(pcmFormat, fileStream);
+            if (channels > 1) {
+                pcm = new MonoDownmixInputStream(pcm, channels);
+            }
+
+            TarsosDSPAudioFormat format = new TarsosDSPAudioFormat(mSampleRate, 16, 1, true, false);
+            return new AudioDispatcher(new UniversalAudioInputStream(pcm, format), _bufferSize, _overlap);
+        } catch (IOException e) {
+            return null;
+        } catch (UnsupportedAudioFileException e) {
+            return null;
+        } catch (IllegalArgumentException e) {
+            //thrown by AudioSystem when there is no conversion to 16 bit PCM
+            return null;
+        }
+    }
+
+    /**
+     * Getters and Setters
+     */
+
+    public File getFile() {
+        return mFile;
+    }
+
+    public float getSampleRate() {
+        return mSampleRate;
+    }
+}
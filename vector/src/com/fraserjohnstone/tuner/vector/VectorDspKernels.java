@@ -0,0 +1,157 @@
+package com.fraserjohnstone.tuner.vector;
+
+import com.fraserjohnstone.tuner.audio.DspKernels;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link DspKernels} written with the jdk.incubator.vector API, so that the JIT compiles each loop to
+ * SIMD instructions of the widest size the CPU has (4 floats with SSE, 8 with AVX2, 16 with AVX-512).
+ * {@link DspKernels#getDefault()} loads this class by name, so nothing in core depends on it and the
+ * Android build never sees it.
+ * <p>
+ * The difference function splits its sums over the lanes of a vector, adds them together at the end
+ * and uses fused multiply and adds, so its results differ from the scalar kernel in the last few bits.
+ * The other kernels do the same operations in the same order as the scalar ones (the running sum of
+ * the normalisation is still added one lag at a time) and give exactly the same results.
+ * KernelBenchmark reports the largest difference.
+ */
+public class VectorDspKernels extends DspKernels {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+
+    //0, 1, 2 ... for the lag of each lane
+    private static final FloatVector LANE_INDEX = FloatVector.fromArray(SPECIES, laneIndex(), 0);
+    //0, 2, 4 ... to gather every other value of interleaved real and imaginary parts
+    private static final int[] EVEN_INDEX = evenIndex();
+
+    /**
+     * Class constructor
+     *
+     * @throws UnsupportedOperationException if the CPU has no SIMD registers of at least 4 floats, in
+     *                                       which case the scalar kernels are faster
+     */
+    public VectorDspKernels() {
+        if (LANES < 4) {
+            throw new UnsupportedOperationException("No SIMD support: " + SPECIES);
+        }
+    }
+
+    /**
+     * @return float[]. 0 to LANES - 1
+     */
+    private static float[] laneIndex() {
+        float[] index = new float[LANES];
+        for (int i = 0; i < LANES; i++) {
+            index[i] = i;
+        }
+        return index;
+    }
+
+    /**
+     * @return int[]. 0, 2, 4 ... to 2 * (LANES - 1)
+     */
+    private static int[] evenIndex() {
+        int[] index = new int[LANES];
+        for (int i = 0; i < LANES; i++) {
+            index[i] = 2 * i;
+        }
+        return index;
+    }
+
+    @Override
+    public void difference(float[] _audioBuffer, int _start, int _length, float[] _difference) {
+        int end = _start + _length;
+        int vectorEnd = _start + (_length - _length % (2 * LANES));
+        _difference[0] = 0;
+        for (int tau = 1; tau < _difference.length; tau++) {
+            //two sums, so that each fused multiply and add does not have to wait for the one before it
+            FloatVector sum0 = FloatVector.zero(SPECIES);
+            FloatVector sum1 = FloatVector.zero(SPECIES);
+            int j = _start;
+            for (; j < vectorEnd; j += 2 * LANES) {
+                FloatVector delta0 = FloatVector.fromArray(SPECIES, _audioBuffer, j)
+                        .sub(FloatVector.fromArray(SPECIES, _audioBuffer, j + tau));
+                FloatVector delta1 = FloatVector.fromArray(SPECIES, _audioBuffer, j + LANES)
+                        .sub(FloatVector.fromArray(SPECIES, _audioBuffer, j + LANES + tau));
+                sum0 = delta0.fma(delta0, sum0);
+                sum1 = delta1.fma(delta1, sum1);
+            }
+            float sum = sum0.add(sum1).reduceLanes(VectorOperators.ADD);
+            for (; j < end; j++) {
+                float delta = _audioBuffer[j] - _audioBuffer[j + tau];
+                sum += delta * delta;
+            }
+            _difference[tau] = sum;
+        }
+    }
+
+    @Override
+    public void cumulativeMeanNormalise(float[] _difference) {
+        _difference[0] = 1;
+        float runningSum = 0;
+        int tau = 1;
+        for (; tau + LANES <= _difference.length; tau += LANES) {
+            FloatVector difference = FloatVector.fromArray(SPECIES, _difference, tau);
+
+            //the running sums are added one at a time, as in the scalar kernel, and written over the
+            //differences, which are kept in the vector
+            for (int i = tau; i < tau + LANES; i++) {
+                runningSum += _difference[i];
+                _difference[i] = runningSum;
+            }
+            FloatVector sums = FloatVector.fromArray(SPECIES, _difference, tau);
+
+            FloatVector normalised = difference.mul(LANE_INDEX.add(tau)).div(sums);
+            VectorMask<Float> noSum = sums.compare(VectorOperators.LE, 0f);
+            normalised.blend(1f, noSum).intoArray(_difference, tau);
+        }
+        for (; tau < _difference.length; tau++) {
+            runningSum += _difference[tau];
+            _difference[tau] = runningSum > 0 ? _difference[tau] * tau / runningSum : 1;
+        }
+    }
+
+    @Override
+    public void applyWindow(float[] _samples, float[] _window, int _length) {
+        int vectorEnd = SPECIES.loopBound(_length);
+        int i = 0;
+        for (; i < vectorEnd; i += LANES) {
+            FloatVector.fromArray(SPECIES, _samples, i)
+                    .mul(FloatVector.fromArray(SPECIES, _window, i))
+                    .intoArray(_samples, i);
+        }
+        for (; i < _length; i++) {
+            _samples[i] *= _window[i];
+        }
+    }
+
+    @Override
+    public void magnitudeSpectrum(float[] _spectrum, int _size, float[] _magnitudes) {
+        int bins = _size / 2;
+        //the real and imaginary parts are gathered into vectors of their own. Bin 0 is not complex, so
+        //its slot is overwritten afterwards.
+        int k = 0;
+        for (; k + LANES <= bins; k += LANES) {
+            FloatVector re = FloatVector.fromArray(SPECIES, _spectrum, 2 * k, EVEN_INDEX, 0);
+            FloatVector im = FloatVector.fromArray(SPECIES, _spectrum, 2 * k + 1, EVEN_INDEX, 0);
+            re.mul(re).add(im.mul(im)).sqrt().intoArray(_magnitudes, k);
+        }
+        _magnitudes[0] = Math.abs(_spectrum[0]);
+        _magnitudes[bins] = Math.abs(_spectrum[1]);
+        for (k = Math.max(k, 1); k < bins; k++) {
+            float re = _spectrum[2 * k];
+            float im = _spectrum[2 * k + 1];
+            _magnitudes[k] = (float) Math.sqrt(re * re + im * im);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "vector (" + SPECIES.vectorBitSize() + " bit)";
+    }
+}